@@ -0,0 +1,75 @@
+package org.maia.graphics3d;
+
+/**
+ * The precision in which bulk geometrical data is stored
+ *
+ * <p>
+ * By default, all geometry is stored in double precision. Single precision halves the memory taken up by vertex
+ * coordinates, compiled scene geometry and depth buffers, which pays off for large scenes whose rendering is bound by
+ * memory bandwidth rather than arithmetic. Computations are still carried out in double precision, so only the stored
+ * values are rounded.
+ * </p>
+ * <p>
+ * The precision applies to data created after it is set. Objects created in single precision keep it, as do the meshes
+ * they derive from their vertices, so the setting is best made before building the scene.
+ * </p>
+ *
+ * @see org.maia.graphics3d.model.object.PackedMesh3D
+ * @see org.maia.graphics3d.model.scene.CompiledSceneGeometry
+ * @see org.maia.graphics3d.render.view.ColorDepthBuffer
+ */
+public class GeometryPrecision {
+
+	private static GeometryPrecision instance;
+
+	private volatile boolean singlePrecision;
+
+	private GeometryPrecision() {
+	}
+
+	public static GeometryPrecision getInstance() {
+		if (instance == null) {
+			setInstance(new GeometryPrecision());
+		}
+		return instance;
+	}
+
+	private static synchronized void setInstance(GeometryPrecision precision) {
+		if (instance == null) {
+			instance = precision;
+		}
+	}
+
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Rounds a lower bound to single precision, such that the rounded value does not exceed it
+	 *
+	 * @param value
+	 *            The lower bound
+	 * @return The rounded lower bound
+	 */
+	public static float roundDown(double value) {
+		float rounded = (float) value;
+		return rounded > value ? Math.nextDown(rounded) : rounded;
+	}
+
+	/**
+	 * Rounds an upper bound to single precision, such that the rounded value is not below it
+	 *
+	 * @param value
+	 *            The upper bound
+	 * @return The rounded upper bound
+	 */
+	public static float roundUp(double value) {
+		float rounded = (float) value;
+		return rounded < value ? Math.nextUp(rounded) : rounded;
+	}
+
+}
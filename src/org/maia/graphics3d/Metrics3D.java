@@ -28,6 +28,12 @@ public class Metrics3D {
 
 	private long eyeRayWithObjectIntersections;
 
+	private long eyeRayWithObjectIntersectionSkips;
+
+	private long eyeRayVisibilityBufferHits;
+
+	private long viewPlaneIndexOccludedObjects;
+
 	private long lightRayWithObjectIntersectionChecks;
 
 	private long lightRayWithObjectIntersections;
@@ -82,6 +88,11 @@ public class Metrics3D {
 		builder.append("\tEye ray object intersection checks: ").append(format(eyeRayWithObjectIntersectionChecks))
 				.append("\n");
 		builder.append("\tEye ray object intersections: ").append(format(eyeRayWithObjectIntersections)).append("\n");
+		builder.append("\tEye ray object intersection skips: ").append(format(eyeRayWithObjectIntersectionSkips))
+				.append("\n");
+		builder.append("\tEye ray visibility buffer hits: ").append(format(eyeRayVisibilityBufferHits)).append("\n");
+		builder.append("\tView plane index occluded objects: ").append(format(viewPlaneIndexOccludedObjects))
+				.append("\n");
 		builder.append("\tPoint to light source traversals: ").append(format(surfacePositionToLightSourceTraversals))
 				.append("\n");
 		builder.append("\tLight ray object intersection checks: ").append(format(lightRayWithObjectIntersectionChecks))
@@ -108,6 +119,9 @@ public class Metrics3D {
 		lineWithPlaneIntersections = 0;
 		eyeRayWithObjectIntersectionChecks = 0;
 		eyeRayWithObjectIntersections = 0;
+		eyeRayWithObjectIntersectionSkips = 0;
+		eyeRayVisibilityBufferHits = 0;
+		viewPlaneIndexOccludedObjects = 0;
 		lightRayWithObjectIntersectionChecks = 0;
 		lightRayWithObjectIntersections = 0;
 		boundingBoxComputations = 0;
@@ -119,10 +133,18 @@ public class Metrics3D {
 		pointTransformations++;
 	}
 
+	public void incrementPointTransformations(long points) {
+		pointTransformations += points;
+	}
+
 	public void incrementPointNormalizations() {
 		pointNormalizations++;
 	}
 
+	public void incrementPointNormalizations(long points) {
+		pointNormalizations += points;
+	}
+
 	public void incrementMatrixMultiplications() {
 		matrixMultiplications++;
 	}
@@ -159,6 +181,22 @@ public class Metrics3D {
 		eyeRayWithObjectIntersections++;
 	}
 
+	public void incrementEyeRayWithObjectIntersectionSkips() {
+		eyeRayWithObjectIntersectionSkips++;
+	}
+
+	public void incrementEyeRayWithObjectIntersectionSkips(long skips) {
+		eyeRayWithObjectIntersectionSkips += skips;
+	}
+
+	public void incrementEyeRayVisibilityBufferHits() {
+		eyeRayVisibilityBufferHits++;
+	}
+
+	public void incrementViewPlaneIndexOccludedObjects(long objects) {
+		viewPlaneIndexOccludedObjects += objects;
+	}
+
 	public void incrementLightRayWithObjectIntersectionChecks() {
 		lightRayWithObjectIntersectionChecks++;
 	}
@@ -223,6 +261,18 @@ public class Metrics3D {
 		return eyeRayWithObjectIntersections;
 	}
 
+	public long getEyeRayWithObjectIntersectionSkips() {
+		return eyeRayWithObjectIntersectionSkips;
+	}
+
+	public long getEyeRayVisibilityBufferHits() {
+		return eyeRayVisibilityBufferHits;
+	}
+
+	public long getViewPlaneIndexOccludedObjects() {
+		return viewPlaneIndexOccludedObjects;
+	}
+
 	public long getLightRayWithObjectIntersectionChecks() {
 		return lightRayWithObjectIntersectionChecks;
 	}
@@ -1,8 +1,8 @@
 package org.maia.graphics3d.geometry;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.maia.graphics3d.transform.TransformMatrix3D;
 
@@ -33,7 +33,7 @@ public class BezierCurve3D implements Curve3D {
 
 	public static final int MAXIMUM_CONTROL_POINTS = 40;
 
-	private static Map<Integer, Long> cachedBinomialCoefficients = new HashMap<Integer, Long>(100);
+	private static Map<Integer, Long> cachedBinomialCoefficients = new ConcurrentHashMap<Integer, Long>(100);
 
 	public BezierCurve3D(List<Point3D> controlPoints) {
 		checkParameters(controlPoints);
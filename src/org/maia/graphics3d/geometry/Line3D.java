@@ -12,6 +12,10 @@ public class Line3D {
 
 	private Vector3D unitDirectionVector;
 
+	private boolean directionVectorValid;
+
+	private boolean unitDirectionVectorValid;
+
 	public Line3D(Point3D p1, Point3D p2) {
 		this.p1 = p1;
 		this.p2 = p2;
@@ -48,30 +52,85 @@ public class Line3D {
 		return false;
 	}
 
+	/**
+	 * Returns the direction of this line, from <code>p1</code> to <code>p2</code>
+	 * 
+	 * <p>
+	 * The returned vector is reused by this line, and is updated when the line changes.
+	 * </p>
+	 * 
+	 * @return The direction vector
+	 */
 	public Vector3D getDirection() {
-		if (directionVector == null) {
-			double dx = getP2().getX() - getP1().getX();
-			double dy = getP2().getY() - getP1().getY();
-			double dz = getP2().getZ() - getP1().getZ();
-			directionVector = new Vector3D(dx, dy, dz);
+		if (!directionVectorValid) {
+			if (directionVector == null) {
+				directionVector = new Vector3D(0, 0, 0);
+			}
+			setToDirection(directionVector);
+			directionVectorValid = true;
 		}
 		return directionVector;
 	}
 
+	/**
+	 * Returns the direction of this line as a unit vector
+	 * 
+	 * <p>
+	 * The returned vector is reused by this line, and is updated when the line changes.
+	 * </p>
+	 * 
+	 * @return The unit direction vector
+	 */
 	public Vector3D getUnitDirection() {
-		if (unitDirectionVector == null) {
-			double dx = getP2().getX() - getP1().getX();
-			double dy = getP2().getY() - getP1().getY();
-			double dz = getP2().getZ() - getP1().getZ();
-			unitDirectionVector = new Vector3D(dx, dy, dz);
+		if (!unitDirectionVectorValid) {
+			if (unitDirectionVector == null) {
+				unitDirectionVector = new Vector3D(0, 0, 0);
+			}
+			setToDirection(unitDirectionVector);
 			unitDirectionVector.makeUnitVector();
+			unitDirectionVectorValid = true;
 		}
 		return unitDirectionVector;
 	}
 
+	private void setToDirection(Vector3D vector) {
+		vector.setX(getP2().getX() - getP1().getX());
+		vector.setY(getP2().getY() - getP1().getY());
+		vector.setZ(getP2().getZ() - getP1().getZ());
+	}
+
 	public Point3D intersect(Plane3D plane) {
+		double r = intersectAtRelativePosition(plane);
+		return Double.isNaN(r) ? null : getPointAtRelativePosition(r);
+	}
+
+	/**
+	 * Intersects this line with a plane, without creating a new point
+	 * 
+	 * @param plane
+	 *            The plane
+	 * @param target
+	 *            The point receiving the intersection, if any
+	 * @return <code>true</code> if this line intersects the plane, in which case <code>target</code> holds the
+	 *         intersecting point, <code>false</code> otherwise
+	 * @see #intersect(Plane3D)
+	 */
+	public boolean intersect(Plane3D plane, Point3D target) {
+		double r = intersectAtRelativePosition(plane);
+		if (Double.isNaN(r))
+			return false;
+		Point3D p1 = getP1();
+		Point3D p2 = getP2();
+		target.setX((1.0 - r) * p1.getX() + r * p2.getX());
+		target.setY((1.0 - r) * p1.getY() + r * p2.getY());
+		target.setZ((1.0 - r) * p1.getZ() + r * p2.getZ());
+		target.setW(1.0);
+		return true;
+	}
+
+	private double intersectAtRelativePosition(Plane3D plane) {
 		Metrics3D.getInstance().incrementLineWithPlaneIntersections();
-		Point3D result = null;
+		double result = Double.NaN;
 		Vector3D v = getDirection();
 		Vector3D n = plane.getNormalUnitVector();
 		double b = v.dotProduct(n);
@@ -83,7 +142,7 @@ public class Line3D {
 					* n.getZ() - p.getZ() * n.getZ();
 			double r = -a / b;
 			if (containsPointAtRelativePosition(r)) {
-				result = getPointAtRelativePosition(r);
+				result = r;
 			}
 		}
 		return result;
@@ -104,7 +163,7 @@ public class Line3D {
 		}
 	}
 
-	protected boolean containsPointAtRelativePosition(double r) {
+	public boolean containsPointAtRelativePosition(double r) {
 		return true; // open ended line, subclasses may override this
 	}
 
@@ -127,8 +186,8 @@ public class Line3D {
 	}
 
 	public void invalidateDerivedProperties() {
-		directionVector = null;
-		unitDirectionVector = null;
+		directionVectorValid = false;
+		unitDirectionVectorValid = false;
 	}
 
 }
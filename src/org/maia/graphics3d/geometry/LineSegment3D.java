@@ -35,7 +35,7 @@ public class LineSegment3D extends Line3D {
 	}
 
 	@Override
-	protected boolean containsPointAtRelativePosition(double r) {
+	public boolean containsPointAtRelativePosition(double r) {
 		if (r < 0) {
 			return !isClosedAtP1();
 		} else if (r > 1.0) {
@@ -0,0 +1,35 @@
+package org.maia.graphics3d.model;
+
+/**
+ * A <code>Memoise</code> that accounts for the memory taken up by its memoised data
+ *
+ * @see MemoiseAccountant
+ */
+public interface AccountableMemoise extends Memoise {
+
+	/**
+	 * Returns the approximate memory footprint of the memoised data currently held
+	 *
+	 * @return The size in bytes
+	 */
+	long getMemoisedBytes();
+
+	/**
+	 * Returns the epoch in which the memoised data was last used
+	 *
+	 * @return The epoch, as issued by {@link MemoiseAccountant#getEpoch()}
+	 */
+	int getLastUseEpoch();
+
+	/**
+	 * Tells whether this object is read-only, as it is while its scene is being rendered
+	 *
+	 * <p>
+	 * The memoised data of a read-only object is not evicted, as a rendering relies on it remaining valid.
+	 * </p>
+	 *
+	 * @return <code>true</code> if this object is read-only
+	 */
+	boolean isReadOnly();
+
+}
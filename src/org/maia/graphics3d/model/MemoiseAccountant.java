@@ -0,0 +1,312 @@
+package org.maia.graphics3d.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.text.NumberFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Keeps account of the memoised data of objects, and evicts the least recently used data when the heap runs full
+ *
+ * <p>
+ * Time is divided into <em>epochs</em>. Objects stamp their memoised data with the current epoch whenever they use it,
+ * and every eviction round starts a new epoch. An eviction releases the memory of the objects that were used longest
+ * ago, until the requested number of bytes is freed.
+ * </p>
+ * <p>
+ * When monitoring, evictions are driven by the collection usage thresholds of the heap memory pools. Once the usage of
+ * a pool after garbage collection exceeds the <em>high-water mark</em>, memoised data is evicted to bring the usage
+ * back down to the <em>low-water mark</em>. Both marks are fractions of the maximum size of the pool. Only objects
+ * that have used their memoised data while monitoring are accounted for.
+ * </p>
+ * <p>
+ * Evictions may take place concurrently with the use of the memoised data. Accountable objects should therefore
+ * tolerate their memory being released at any time, transparently recomputing what they need. Read-only objects are
+ * exempt, so the objects of a scene that is prepared for rendering keep their memoised data until the preparation is
+ * released.
+ * </p>
+ */
+public class MemoiseAccountant implements NotificationListener {
+
+	private static MemoiseAccountant instance;
+
+	private Map<AccountableMemoise, Boolean> accountables; // weak keys, guarded by this
+
+	private volatile int epoch;
+
+	private volatile boolean monitoring;
+
+	private double highWaterMark;
+
+	private double lowWaterMark;
+
+	private Collection<MemoryPoolMXBean> monitoredPools;
+
+	private long evictions;
+
+	private long evictedBytes;
+
+	/**
+	 * Default high-water mark, as a fraction of the maximum size of a memory pool
+	 */
+	public static final double DEFAULT_HIGH_WATER_MARK = 0.85;
+
+	/**
+	 * Default low-water mark, as a fraction of the maximum size of a memory pool
+	 */
+	public static final double DEFAULT_LOW_WATER_MARK = 0.7;
+
+	private static NumberFormat numberFormat;
+
+	static {
+		numberFormat = NumberFormat.getNumberInstance();
+		numberFormat.setGroupingUsed(true);
+	}
+
+	private MemoiseAccountant() {
+		this.accountables = new WeakHashMap<AccountableMemoise, Boolean>();
+		this.highWaterMark = DEFAULT_HIGH_WATER_MARK;
+		this.lowWaterMark = DEFAULT_LOW_WATER_MARK;
+		this.monitoredPools = new Vector<MemoryPoolMXBean>();
+	}
+
+	public static MemoiseAccountant getInstance() {
+		if (instance == null) {
+			setInstance(new MemoiseAccountant());
+		}
+		return instance;
+	}
+
+	private static synchronized void setInstance(MemoiseAccountant accountant) {
+		if (instance == null) {
+			instance = accountant;
+		}
+	}
+
+	/**
+	 * Starts monitoring the heap memory pools, evicting memoised data when their usage crosses the high-water mark
+	 *
+	 * @see #setHighWaterMark(double)
+	 * @see #setLowWaterMark(double)
+	 */
+	public synchronized void startMonitoring() {
+		if (isMonitoring())
+			return;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (MemoryType.HEAP.equals(pool.getType()) && pool.isCollectionUsageThresholdSupported()
+					&& pool.getUsage().getMax() > 0) {
+				monitoredPools.add(pool);
+			}
+		}
+		applyThresholds();
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+		monitoring = true;
+	}
+
+	public synchronized void stopMonitoring() {
+		if (!isMonitoring())
+			return;
+		try {
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+		} catch (ListenerNotFoundException e) {
+			// not listening
+		}
+		for (MemoryPoolMXBean pool : monitoredPools) {
+			pool.setCollectionUsageThreshold(0L); // disables the threshold
+		}
+		monitoredPools.clear();
+		monitoring = false;
+	}
+
+	private void applyThresholds() {
+		for (MemoryPoolMXBean pool : monitoredPools) {
+			pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * getHighWaterMark()));
+		}
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+			MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+			MemoryUsage usage = info.getUsage();
+			long excess = usage.getUsed() - (long) (usage.getMax() * getLowWaterMark());
+			if (excess > 0) {
+				evict(excess);
+			}
+		}
+	}
+
+	/**
+	 * Registers an object whose memoised data is to be accounted for
+	 *
+	 * <p>
+	 * Objects remain registered for as long as they are referenced elsewhere, so registering once suffices.
+	 * </p>
+	 *
+	 * @param accountable
+	 *            The object
+	 */
+	public synchronized void register(AccountableMemoise accountable) {
+		accountables.put(accountable, Boolean.TRUE);
+	}
+
+	/**
+	 * Evicts the memoised data of the least recently used objects, and starts a new epoch
+	 *
+	 * <p>
+	 * Read-only objects are skipped, as their memoised data may be in use by a rendering.
+	 * </p>
+	 *
+	 * @param bytes
+	 *            The number of bytes to free up
+	 * @return The approximate number of bytes freed up, which may be less than <code>bytes</code> when all memoised
+	 *         data of writable objects was evicted
+	 */
+	public long evict(long bytes) {
+		List<EvictionCandidate> candidates = new Vector<EvictionCandidate>();
+		for (AccountableMemoise accountable : getAccountables()) {
+			candidates.add(new EvictionCandidate(accountable)); // snapshots the epoch, as it may change while sorting
+		}
+		Collections.sort(candidates, new Comparator<EvictionCandidate>() {
+
+			@Override
+			public int compare(EvictionCandidate c1, EvictionCandidate c2) {
+				return Integer.compare(c1.getLastUseEpoch(), c2.getLastUseEpoch());
+			}
+		});
+		long freed = 0;
+		int released = 0;
+		for (int i = 0; i < candidates.size() && freed < bytes; i++) {
+			AccountableMemoise accountable = candidates.get(i).getAccountable();
+			if (accountable.isReadOnly())
+				continue; // in use by a rendering
+			long size = accountable.getMemoisedBytes();
+			if (size > 0) {
+				accountable.releaseMemory();
+				freed += size;
+				released++;
+			}
+		}
+		synchronized (this) {
+			evictions += released;
+			evictedBytes += freed;
+			epoch++;
+		}
+		return freed;
+	}
+
+	/**
+	 * Returns the approximate memory footprint of all memoised data that is accounted for
+	 *
+	 * @return The size in bytes
+	 */
+	public long getAccountedBytes() {
+		long bytes = 0;
+		for (AccountableMemoise accountable : getAccountables()) {
+			bytes += accountable.getMemoisedBytes();
+		}
+		return bytes;
+	}
+
+	private synchronized List<AccountableMemoise> getAccountables() {
+		return new Vector<AccountableMemoise>(accountables.keySet());
+	}
+
+	public synchronized int getNumberOfAccountables() {
+		return accountables.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("Memoise accountant {\n");
+		builder.append("\tMonitoring: ").append(isMonitoring()).append("\n");
+		builder.append("\tWater marks: ").append(getLowWaterMark()).append(" - ").append(getHighWaterMark())
+				.append("\n");
+		builder.append("\tEpoch: ").append(format(getEpoch())).append("\n");
+		builder.append("\tAccounted objects: ").append(format(getNumberOfAccountables())).append("\n");
+		builder.append("\tAccounted memory: ").append(format(getAccountedBytes() / 1024L)).append(" KB\n");
+		builder.append("\tEvictions: ").append(format(getEvictions())).append("\n");
+		builder.append("\tEvicted memory: ").append(format(getEvictedBytes() / 1024L)).append(" KB\n");
+		builder.append("}");
+		return builder.toString();
+	}
+
+	private String format(long value) {
+		return numberFormat.format(value);
+	}
+
+	public int getEpoch() {
+		return epoch;
+	}
+
+	public boolean isMonitoring() {
+		return monitoring;
+	}
+
+	public double getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public synchronized void setHighWaterMark(double highWaterMark) {
+		if (highWaterMark <= 0 || highWaterMark > 1.0)
+			throw new IllegalArgumentException("High-water mark must be in (0, 1]: " + highWaterMark);
+		this.highWaterMark = highWaterMark;
+		applyThresholds();
+	}
+
+	public double getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	public synchronized void setLowWaterMark(double lowWaterMark) {
+		if (lowWaterMark < 0 || lowWaterMark > 1.0)
+			throw new IllegalArgumentException("Low-water mark must be in [0, 1]: " + lowWaterMark);
+		this.lowWaterMark = lowWaterMark;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getEvictedBytes() {
+		return evictedBytes;
+	}
+
+	private static class EvictionCandidate {
+
+		private AccountableMemoise accountable;
+
+		private int lastUseEpoch;
+
+		public EvictionCandidate(AccountableMemoise accountable) {
+			this.accountable = accountable;
+			this.lastUseEpoch = accountable.getLastUseEpoch();
+		}
+
+		public AccountableMemoise getAccountable() {
+			return accountable;
+		}
+
+		public int getLastUseEpoch() {
+			return lastUseEpoch;
+		}
+
+	}
+
+}
@@ -0,0 +1,1347 @@
+package org.maia.graphics3d.model;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.maia.graphics3d.model.object.MultipartObject3D;
+import org.maia.graphics3d.model.object.PackedMesh3D;
+import org.maia.graphics3d.model.object.PolygonTriangulation;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.render.shading.FlatShadingModel;
+
+/**
+ * Imports polygon meshes from OBJ, STL and PLY files as composite objects of faces
+ *
+ * <p>
+ * Files are read through memory-mapped buffers in a single pass, parsing numbers straight from the bytes without
+ * creating strings. The vertices are collected in a flat array of coordinates, from which every face copies its own
+ * vertices into a packed mesh, so no <code>Point3D</code> objects are created along the way.
+ * </p>
+ * <p>
+ * Faces do not share their vertices in the imported object. A vertex is stored once for every face it belongs to,
+ * which for a closed triangle mesh comes down to about 6 copies per vertex. This follows the object model, where
+ * every face owns its mesh, so that it can be transformed and moved off-heap on its own. The flat array is only held
+ * during the import.
+ * </p>
+ * <p>
+ * OBJ and STL files larger than the chunk size are split into chunks at line boundaries, which are parsed in
+ * parallel. PLY files are parsed sequentially, as their data is not delimited by keywords. For all formats, the faces
+ * are then created in parallel.
+ * </p>
+ * <p>
+ * Faces become <code>SimpleFace3D</code> objects of a uniform color. They keep the vertex order of the file, which for
+ * all three formats is counter-clockwise when seen from the outside, as for the solids built by
+ * <code>ModelBuilderUtils</code>. Faces with more than 3 vertices that are not convex are triangulated, and
+ * degenerate faces are skipped. Texture coordinates, normals, materials and vertex colors are ignored.
+ * </p>
+ * <p>
+ * An importer keeps the statistics of its last import, including the throughput in faces per second. It should not
+ * be used by multiple threads at the same time.
+ * </p>
+ *
+ * @see PackedMesh3D#PackedMesh3D(double[], int[], int, int, List)
+ */
+public class MeshFileImporter {
+
+	private Color color;
+
+	private FlatShadingModel shadingModel;
+
+	private int numberOfThreads;
+
+	private int chunkSizeInBytes;
+
+	private boolean closedSolid;
+
+	private int importedFaceCount;
+
+	private int importedVertexCount;
+
+	private int skippedFaceCount;
+
+	private long importTimeMillis;
+
+	/**
+	 * Default size of the chunks in which large files are parsed in parallel
+	 */
+	public static final int DEFAULT_CHUNK_SIZE_IN_BYTES = 8 * 1024 * 1024;
+
+	private static final int FACES_PER_BATCH = 16 * 1024;
+
+	private static final double APPROXIMATE_ZERO = 0.000001;
+
+	private static NumberFormat numberFormat;
+
+	static {
+		numberFormat = NumberFormat.getNumberInstance();
+		numberFormat.setGroupingUsed(true);
+	}
+
+	public MeshFileImporter(Color color, FlatShadingModel shadingModel) {
+		this(color, shadingModel, Runtime.getRuntime().availableProcessors());
+	}
+
+	public MeshFileImporter(Color color, FlatShadingModel shadingModel, int numberOfThreads) {
+		this.color = color;
+		this.shadingModel = shadingModel;
+		this.numberOfThreads = Math.max(numberOfThreads, 1);
+		this.chunkSizeInBytes = DEFAULT_CHUNK_SIZE_IN_BYTES;
+	}
+
+	/**
+	 * Imports a mesh from a file, in the format designated by its extension
+	 *
+	 * @param filePath
+	 *            The path to a file with extension <code>.obj</code>, <code>.stl</code> or <code>.ply</code>
+	 * @return A composite object of the faces of the mesh
+	 * @throws IOException
+	 *             When the file cannot be read, or is malformed
+	 * @throws IllegalArgumentException
+	 *             When the file format is not supported
+	 */
+	public MultipartObject3D<SimpleFace3D> importMesh(String filePath) throws IOException {
+		String name = filePath.toLowerCase();
+		if (name.endsWith(".obj")) {
+			return importObj(filePath);
+		} else if (name.endsWith(".stl")) {
+			return importStl(filePath);
+		} else if (name.endsWith(".ply")) {
+			return importPly(filePath);
+		} else {
+			throw new IllegalArgumentException("Unsupported mesh file format: " + filePath);
+		}
+	}
+
+	/**
+	 * Imports a mesh from a Wavefront OBJ file
+	 *
+	 * <p>
+	 * Only the vertex (<code>v</code>) and face (<code>f</code>) statements are taken into account, with both
+	 * absolute and relative vertex references.
+	 * </p>
+	 *
+	 * @param filePath
+	 *            The path to the file
+	 * @return A composite object of the faces of the mesh
+	 * @throws IOException
+	 *             When the file cannot be read, or is malformed
+	 */
+	public MultipartObject3D<SimpleFace3D> importObj(String filePath) throws IOException {
+		long time = System.currentTimeMillis();
+		final FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		try {
+			List<long[]> chunks = splitIntoChunks(channel, 0, channel.size(), null);
+			List<Callable<ObjChunk>> tasks = new Vector<Callable<ObjChunk>>(chunks.size());
+			for (final long[] chunk : chunks) {
+				tasks.add(new Callable<ObjChunk>() {
+
+					@Override
+					public ObjChunk call() throws Exception {
+						return parseObjChunk(channel, chunk[0], chunk[1]);
+					}
+				});
+			}
+			MeshData mesh = mergeObjChunks(runTasks(tasks));
+			return completeImport(mesh, time);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Imports a mesh from a binary or ASCII STL file
+	 *
+	 * @param filePath
+	 *            The path to the file
+	 * @return A composite object of the faces of the mesh
+	 * @throws IOException
+	 *             When the file cannot be read, or is malformed
+	 */
+	public MultipartObject3D<SimpleFace3D> importStl(String filePath) throws IOException {
+		long time = System.currentTimeMillis();
+		FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		try {
+			if (isBinaryStl(channel)) {
+				return importBinaryStl(channel, time);
+			} else {
+				return importAsciiStl(channel, time);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	private boolean isBinaryStl(FileChannel channel) throws IOException {
+		// The header of a binary file may start with "solid" too, so the size is decisive
+		long size = channel.size();
+		if (size < 84)
+			return false;
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 80, 4).order(ByteOrder.LITTLE_ENDIAN);
+		long triangles = buffer.getInt(0) & 0xffffffffL;
+		return size == 84L + 50L * triangles;
+	}
+
+	private MultipartObject3D<SimpleFace3D> importBinaryStl(final FileChannel channel, long time) throws IOException {
+		int triangles = (int) ((channel.size() - 84L) / 50L);
+		int trianglesPerChunk = Math.max(getChunkSizeInBytes() / 50, 1);
+		final AtomicInteger skipped = new AtomicInteger();
+		List<Callable<List<SimpleFace3D>>> tasks = new Vector<Callable<List<SimpleFace3D>>>();
+		for (int from = 0; from < triangles; from += trianglesPerChunk) {
+			final int chunkFrom = from;
+			final int chunkTo = Math.min(from + trianglesPerChunk, triangles);
+			tasks.add(new Callable<List<SimpleFace3D>>() {
+
+				@Override
+				public List<SimpleFace3D> call() throws Exception {
+					return parseBinaryStlChunk(channel, chunkFrom, chunkTo, skipped);
+				}
+			});
+		}
+		MultipartObject3D<SimpleFace3D> object = new MultipartObject3D<SimpleFace3D>();
+		for (List<SimpleFace3D> faces : runTasks(tasks)) {
+			object.addParts(faces);
+		}
+		object.setClosedSolid(isClosedSolid());
+		recordImport(object.getParts().size(), 3 * triangles, skipped.get(), time);
+		return object;
+	}
+
+	private List<SimpleFace3D> parseBinaryStlChunk(FileChannel channel, int fromTriangle, int toTriangle,
+			AtomicInteger skipped) throws IOException {
+		List<SimpleFace3D> faces = new Vector<SimpleFace3D>(toTriangle - fromTriangle);
+		MappedScanner scanner = new MappedScanner(channel, 84L + 50L * fromTriangle, 84L + 50L * toTriangle,
+				ByteOrder.LITTLE_ENDIAN);
+		double[] coordinates = new double[9];
+		int[] triangle = new int[] { 0, 1, 2 };
+		while (scanner.nextRecord()) {
+			scanner.skipBytes(12); // normal
+			for (int i = 0; i < 9; i++) {
+				coordinates[i] = scanner.readFloat();
+			}
+			scanner.skipBytes(2); // attributes
+			if (!addFace(coordinates, triangle, 0, 3, faces)) {
+				skipped.incrementAndGet();
+			}
+		}
+		return faces;
+	}
+
+	private MultipartObject3D<SimpleFace3D> importAsciiStl(final FileChannel channel, long time) throws IOException {
+		List<long[]> chunks = splitIntoChunks(channel, 0, channel.size(), "endfacet");
+		List<Callable<DoubleList>> tasks = new Vector<Callable<DoubleList>>(chunks.size());
+		for (final long[] chunk : chunks) {
+			tasks.add(new Callable<DoubleList>() {
+
+				@Override
+				public DoubleList call() throws Exception {
+					return parseAsciiStlChunk(channel, chunk[0], chunk[1]);
+				}
+			});
+		}
+		DoubleList vertices = new DoubleList();
+		for (DoubleList chunkVertices : runTasks(tasks)) {
+			vertices.addAll(chunkVertices);
+		}
+		int vertexCount = vertices.size() / 3;
+		MeshData mesh = new MeshData(vertices.toArray(), vertexCount);
+		for (int i = 0; i < vertexCount; i++) {
+			mesh.getFaceIndices().add(i);
+			if (i % 3 == 2) {
+				mesh.getFaceSizes().add(3);
+			}
+		}
+		return completeImport(mesh, time);
+	}
+
+	private DoubleList parseAsciiStlChunk(FileChannel channel, long start, long end) throws IOException {
+		DoubleList vertices = new DoubleList();
+		MappedScanner scanner = new MappedScanner(channel, start, end, ByteOrder.LITTLE_ENDIAN);
+		while (scanner.nextRecord()) {
+			scanner.skipBlanks();
+			if (scanner.matchKeyword("vertex")) {
+				vertices.add(scanner.parseDouble());
+				vertices.add(scanner.parseDouble());
+				vertices.add(scanner.parseDouble());
+			}
+			scanner.skipLine();
+		}
+		if (vertices.size() % 9 != 0)
+			throw new IOException("Malformed STL file: facet without 3 vertices");
+		return vertices;
+	}
+
+	/**
+	 * Imports a mesh from an ASCII or binary PLY file
+	 *
+	 * <p>
+	 * The <code>x</code>, <code>y</code> and <code>z</code> properties of the <code>vertex</code> element and the
+	 * <code>vertex_indices</code> list property of the <code>face</code> element are taken into account. Other
+	 * elements and properties are skipped.
+	 * </p>
+	 *
+	 * @param filePath
+	 *            The path to the file
+	 * @return A composite object of the faces of the mesh
+	 * @throws IOException
+	 *             When the file cannot be read, or is malformed
+	 */
+	public MultipartObject3D<SimpleFace3D> importPly(String filePath) throws IOException {
+		long time = System.currentTimeMillis();
+		Path path = Paths.get(filePath);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			PlyHeader header = new PlyHeader();
+			MappedScanner scanner = new MappedScanner(channel, 0, channel.size(), header.getByteOrder());
+			header.parse(scanner);
+			scanner.setByteOrder(header.getByteOrder());
+			MeshData mesh = null;
+			for (PlyElement element : header.getElements()) {
+				if (element.getName().equals("vertex")) {
+					mesh = new MeshData(parsePlyVertices(scanner, header, element), element.getCount());
+				} else if (element.getName().equals("face")) {
+					if (mesh == null)
+						throw new IOException("Malformed PLY file: faces before vertices");
+					parsePlyFaces(scanner, header, element, mesh);
+				} else {
+					for (int i = 0; i < element.getCount(); i++) {
+						parsePlyRecord(scanner, header, element, null, null, -1);
+					}
+				}
+			}
+			if (mesh == null)
+				throw new IOException("Malformed PLY file: no vertices");
+			return completeImport(mesh, time);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private double[] parsePlyVertices(MappedScanner scanner, PlyHeader header, PlyElement element)
+			throws IOException {
+		int[] xyz = new int[] { element.getPropertyIndex("x"), element.getPropertyIndex("y"),
+				element.getPropertyIndex("z") };
+		if (xyz[0] < 0 || xyz[1] < 0 || xyz[2] < 0)
+			throw new IOException("Malformed PLY file: vertices without x, y and z");
+		double[] coordinates = new double[3 * element.getCount()];
+		double[] values = new double[element.getPropertyCount()];
+		for (int i = 0; i < element.getCount(); i++) {
+			parsePlyRecord(scanner, header, element, values, null, -1);
+			coordinates[3 * i] = values[xyz[0]];
+			coordinates[3 * i + 1] = values[xyz[1]];
+			coordinates[3 * i + 2] = values[xyz[2]];
+		}
+		return coordinates;
+	}
+
+	private void parsePlyFaces(MappedScanner scanner, PlyHeader header, PlyElement element, MeshData mesh)
+			throws IOException {
+		int indicesProperty = element.getPropertyIndex("vertex_indices");
+		if (indicesProperty < 0) {
+			indicesProperty = element.getPropertyIndex("vertex_index");
+		}
+		if (indicesProperty < 0 || !element.getProperties().get(indicesProperty).isList())
+			throw new IOException("Malformed PLY file: faces without vertex indices");
+		IntList faceIndices = mesh.getFaceIndices();
+		for (int i = 0; i < element.getCount(); i++) {
+			int before = faceIndices.size();
+			parsePlyRecord(scanner, header, element, null, faceIndices, indicesProperty);
+			mesh.getFaceSizes().add(faceIndices.size() - before);
+		}
+		mesh.validateFaceIndices();
+	}
+
+	private void parsePlyRecord(MappedScanner scanner, PlyHeader header, PlyElement element, double[] values,
+			IntList listValues, int listProperty) throws IOException {
+		boolean ascii = header.isAscii();
+		if (!scanner.nextRecord())
+			throw new IOException("Malformed PLY file: unexpected end of file");
+		List<PlyProperty> properties = element.getProperties();
+		for (int j = 0; j < properties.size(); j++) {
+			PlyProperty property = properties.get(j);
+			if (property.isList()) {
+				int n = (int) readPlyValue(scanner, ascii, property.getCountType());
+				for (int k = 0; k < n; k++) {
+					double value = readPlyValue(scanner, ascii, property.getType());
+					if (j == listProperty) {
+						listValues.add((int) value); // other lists, like texture coordinates, are skipped
+					}
+				}
+			} else {
+				double value = readPlyValue(scanner, ascii, property.getType());
+				if (values != null) {
+					values[j] = value;
+				}
+			}
+		}
+		if (ascii) {
+			scanner.skipLine();
+		}
+	}
+
+	private double readPlyValue(MappedScanner scanner, boolean ascii, char type) throws IOException {
+		if (ascii)
+			return scanner.parseDouble();
+		switch (type) {
+		case 'b':
+			return scanner.readByte();
+		case 'B':
+			return scanner.readByte() & 0xff;
+		case 's':
+			return scanner.readShort();
+		case 'S':
+			return scanner.readShort() & 0xffff;
+		case 'i':
+			return scanner.readInt();
+		case 'I':
+			return scanner.readInt() & 0xffffffffL;
+		case 'f':
+			return scanner.readFloat();
+		default:
+			return scanner.readDouble();
+		}
+	}
+
+	private List<long[]> splitIntoChunks(FileChannel channel, long start, long end, String afterLineKeyword)
+			throws IOException {
+		List<long[]> chunks = new Vector<long[]>();
+		long chunkStart = start;
+		while (chunkStart < end) {
+			long chunkEnd = end;
+			if (end - chunkStart > getChunkSizeInBytes()) {
+				chunkEnd = findChunkBoundary(channel, chunkStart + getChunkSizeInBytes(), end, afterLineKeyword);
+			}
+			chunks.add(new long[] { chunkStart, chunkEnd });
+			chunkStart = chunkEnd;
+		}
+		return chunks;
+	}
+
+	private long findChunkBoundary(FileChannel channel, long position, long end, String afterLineKeyword)
+			throws IOException {
+		MappedScanner scanner = new MappedScanner(channel, position - 1, end, ByteOrder.LITTLE_ENDIAN);
+		scanner.skipLine(); // to the start of the next line
+		if (afterLineKeyword != null) {
+			boolean found = false;
+			while (!found && scanner.nextRecord()) {
+				scanner.skipBlanks();
+				found = scanner.matchKeyword(afterLineKeyword);
+				scanner.skipLine();
+			}
+		}
+		return scanner.getPosition();
+	}
+
+	private ObjChunk parseObjChunk(FileChannel channel, long start, long end) throws IOException {
+		ObjChunk chunk = new ObjChunk();
+		DoubleList vertices = chunk.getVertices();
+		IntList faceIndices = chunk.getFaceIndices();
+		MappedScanner scanner = new MappedScanner(channel, start, end, ByteOrder.LITTLE_ENDIAN);
+		while (scanner.nextRecord()) {
+			scanner.skipBlanks();
+			if (scanner.matchKeyword("v")) {
+				vertices.add(scanner.parseDouble());
+				vertices.add(scanner.parseDouble());
+				vertices.add(scanner.parseDouble());
+			} else if (scanner.matchKeyword("f")) {
+				int n = 0;
+				scanner.skipBlanks();
+				while (!scanner.isAtLineEnd()) {
+					int index = (int) scanner.parseLong();
+					if (index > 0) {
+						faceIndices.add(index - 1);
+					} else if (index < 0) {
+						chunk.markRelativeIndex(faceIndices.size());
+						faceIndices.add(vertices.size() / 3 + index); // may precede this chunk
+					} else {
+						throw new IOException("Malformed OBJ file: vertex index 0");
+					}
+					scanner.skipToken(); // texture and normal indices
+					scanner.skipBlanks();
+					n++;
+				}
+				chunk.getFaceSizes().add(n);
+			}
+			scanner.skipLine();
+		}
+		return chunk;
+	}
+
+	private MeshData mergeObjChunks(List<ObjChunk> chunks) throws IOException {
+		DoubleList vertices = new DoubleList();
+		int[] vertexOffsets = new int[chunks.size()];
+		for (int i = 0; i < chunks.size(); i++) {
+			vertexOffsets[i] = vertices.size() / 3;
+			vertices.addAll(chunks.get(i).getVertices());
+		}
+		MeshData mesh = new MeshData(vertices.toArray(), vertices.size() / 3);
+		for (int i = 0; i < chunks.size(); i++) {
+			ObjChunk chunk = chunks.get(i);
+			IntList indices = chunk.getFaceIndices();
+			BitSet relative = chunk.getRelativeIndices();
+			for (int j = 0; j < indices.size(); j++) {
+				int index = indices.get(j);
+				if (relative != null && relative.get(j)) {
+					index += vertexOffsets[i];
+				}
+				mesh.getFaceIndices().add(index);
+			}
+			mesh.getFaceSizes().addAll(chunk.getFaceSizes());
+		}
+		mesh.validateFaceIndices();
+		return mesh;
+	}
+
+	private MultipartObject3D<SimpleFace3D> completeImport(final MeshData mesh, long time) throws IOException {
+		final int[] faceOffsets = mesh.deriveFaceOffsets();
+		final int[] faceIndices = mesh.getFaceIndices().toArray();
+		final int faceCount = mesh.getFaceSizes().size();
+		final AtomicInteger skipped = new AtomicInteger();
+		List<Callable<List<SimpleFace3D>>> tasks = new Vector<Callable<List<SimpleFace3D>>>();
+		for (int from = 0; from < faceCount; from += FACES_PER_BATCH) {
+			final int batchFrom = from;
+			final int batchTo = Math.min(from + FACES_PER_BATCH, faceCount);
+			tasks.add(new Callable<List<SimpleFace3D>>() {
+
+				@Override
+				public List<SimpleFace3D> call() throws Exception {
+					List<SimpleFace3D> faces = new Vector<SimpleFace3D>(batchTo - batchFrom);
+					for (int i = batchFrom; i < batchTo; i++) {
+						int offset = faceOffsets[i];
+						if (!addFace(mesh.getCoordinates(), faceIndices, offset, faceOffsets[i + 1] - offset, faces)) {
+							skipped.incrementAndGet();
+						}
+					}
+					return faces;
+				}
+			});
+		}
+		MultipartObject3D<SimpleFace3D> object = new MultipartObject3D<SimpleFace3D>();
+		for (List<SimpleFace3D> batch : runTasks(tasks)) {
+			object.addParts(batch);
+		}
+		object.setClosedSolid(isClosedSolid());
+		recordImport(object.getParts().size(), mesh.getVertexCount(), skipped.get(), time);
+		return object;
+	}
+
+	/**
+	 * Adds a face, or the triangles of a non-convex face
+	 *
+	 * @return <code>true</code> if any face was added, <code>false</code> if the face was skipped
+	 */
+	private boolean addFace(double[] coordinates, int[] vertexIndices, int offset, int vertexCount,
+			List<SimpleFace3D> faces) {
+		if (vertexCount < 3)
+			return false;
+		PackedMesh3D mesh = new PackedMesh3D(coordinates, vertexIndices, offset, vertexCount,
+				PolygonalObject3D.getPolygonEdges(vertexCount));
+		double[] normal = deriveNormal(mesh);
+		double length = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+		if (length <= APPROXIMATE_ZERO * deriveSquaredScale(mesh))
+			return false; // degenerate
+		if (vertexCount == 3 || isConvex(mesh, normal)) {
+			faces.add(new SimpleFace3D(getColor(), getShadingModel(), mesh));
+			return true;
+		}
+		PolygonTriangulation triangulation = null;
+		try {
+			triangulation = PolygonTriangulation.triangulate(mesh);
+		} catch (IllegalArgumentException e) {
+			return false; // not simple
+		}
+		boolean added = false;
+		int[] triangle = new int[3];
+		for (int i = 0; i < triangulation.getTriangleCount(); i++) {
+			for (int j = 0; j < 3; j++) {
+				triangle[j] = vertexIndices[offset + triangulation.getVertexIndex(i, j)];
+			}
+			added |= addFace(coordinates, triangle, 0, 3, faces);
+		}
+		return added;
+	}
+
+	private static double[] deriveNormal(PackedMesh3D mesh) {
+		// Newell's method, which also holds for non-convex polygons
+		int n = mesh.getVertexCount();
+		double[] normal = new double[3];
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			normal[0] += (mesh.getY(i) - mesh.getY(j)) * (mesh.getZ(i) + mesh.getZ(j));
+			normal[1] += (mesh.getZ(i) - mesh.getZ(j)) * (mesh.getX(i) + mesh.getX(j));
+			normal[2] += (mesh.getX(i) - mesh.getX(j)) * (mesh.getY(i) + mesh.getY(j));
+		}
+		return normal;
+	}
+
+	private static double deriveSquaredScale(PackedMesh3D mesh) {
+		double scale = 0;
+		for (int i = 1; i < mesh.getVertexCount(); i++) {
+			scale = Math.max(scale, Math.abs(mesh.getX(i) - mesh.getX(0)));
+			scale = Math.max(scale, Math.abs(mesh.getY(i) - mesh.getY(0)));
+			scale = Math.max(scale, Math.abs(mesh.getZ(i) - mesh.getZ(0)));
+		}
+		return scale * scale;
+	}
+
+	private static boolean isConvex(PackedMesh3D mesh, double[] normal) {
+		int n = mesh.getVertexCount();
+		for (int i = 0; i < n; i++) {
+			int p = (i + n - 1) % n;
+			int q = (i + 1) % n;
+			double ux = mesh.getX(i) - mesh.getX(p), uy = mesh.getY(i) - mesh.getY(p), uz = mesh.getZ(i) - mesh.getZ(p);
+			double vx = mesh.getX(q) - mesh.getX(i), vy = mesh.getY(q) - mesh.getY(i), vz = mesh.getZ(q) - mesh.getZ(i);
+			double turn = (uy * vz - uz * vy) * normal[0] + (uz * vx - ux * vz) * normal[1]
+					+ (ux * vy - uy * vx) * normal[2];
+			if (turn < 0)
+				return false;
+		}
+		return true;
+	}
+
+	private <T> List<T> runTasks(List<Callable<T>> tasks) throws IOException {
+		List<T> results = new Vector<T>(tasks.size());
+		int threads = Math.min(getNumberOfThreads(), tasks.size());
+		if (threads <= 1) {
+			for (Callable<T> task : tasks) {
+				results.add(runTask(task));
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new ImportThreadFactory());
+			try {
+				List<Future<T>> futures = new Vector<Future<T>>(tasks.size());
+				for (Callable<T> task : tasks) {
+					futures.add(executor.submit(task));
+				}
+				for (Future<T> future : futures) {
+					results.add(awaitTask(future));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		return results;
+	}
+
+	private <T> T runTask(Callable<T> task) throws IOException {
+		try {
+			return task.call();
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private <T> T awaitTask(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while importing", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private void recordImport(int faceCount, int vertexCount, int skippedFaceCount, long startTime) {
+		this.importedFaceCount = faceCount;
+		this.importedVertexCount = vertexCount;
+		this.skippedFaceCount = skippedFaceCount;
+		this.importTimeMillis = System.currentTimeMillis() - startTime;
+	}
+
+	@Override
+	public String toString() {
+		return "Imported " + numberFormat.format(getImportedFaceCount()) + " faces and "
+				+ numberFormat.format(getImportedVertexCount()) + " vertices in " + getImportTimeMillis() + " ms ("
+				+ numberFormat.format(Math.round(getFacesPerSecond())) + " faces per second, "
+				+ numberFormat.format(getSkippedFaceCount()) + " skipped) using " + getNumberOfThreads() + " threads";
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	public FlatShadingModel getShadingModel() {
+		return shadingModel;
+	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public int getChunkSizeInBytes() {
+		return chunkSizeInBytes;
+	}
+
+	public void setChunkSizeInBytes(int chunkSizeInBytes) {
+		this.chunkSizeInBytes = Math.max(chunkSizeInBytes, 1024);
+	}
+
+	public boolean isClosedSolid() {
+		return closedSolid;
+	}
+
+	/**
+	 * Tells whether the imported meshes are closed solids, so that the back faces can be skipped for eye rays
+	 *
+	 * @param closedSolid
+	 *            <code>true</code> when the meshes are known to be closed
+	 * @see MultipartObject3D#setClosedSolid(boolean)
+	 */
+	public void setClosedSolid(boolean closedSolid) {
+		this.closedSolid = closedSolid;
+	}
+
+	public int getImportedFaceCount() {
+		return importedFaceCount;
+	}
+
+	public int getImportedVertexCount() {
+		return importedVertexCount;
+	}
+
+	/**
+	 * Returns the number of faces skipped by the last import, being degenerate or not simple
+	 *
+	 * @return The number of faces in the file that were not imported
+	 */
+	public int getSkippedFaceCount() {
+		return skippedFaceCount;
+	}
+
+	public long getImportTimeMillis() {
+		return importTimeMillis;
+	}
+
+	/**
+	 * Returns the throughput of the last import
+	 *
+	 * @return The number of imported faces per second, including the time to read the file
+	 */
+	public double getFacesPerSecond() {
+		return getImportedFaceCount() * 1000.0 / Math.max(getImportTimeMillis(), 1L);
+	}
+
+	/**
+	 * Sequential reader of a region of a file, through a sliding memory-mapped window
+	 *
+	 * <p>
+	 * The window is moved forward at the start of a record when less than a margin is left, so a record (a line of a
+	 * text file) must not exceed that margin.
+	 * </p>
+	 */
+	private static class MappedScanner {
+
+		private FileChannel channel;
+
+		private long end;
+
+		private long windowStart;
+
+		private ByteBuffer window;
+
+		private ByteOrder byteOrder;
+
+		private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+		private static final int RECORD_MARGIN = 1024 * 1024;
+
+		private static final double[] POWERS_OF_TEN = new double[23];
+
+		static {
+			double power = 1.0;
+			for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+				POWERS_OF_TEN[i] = power;
+				power *= 10.0;
+			}
+		}
+
+		public MappedScanner(FileChannel channel, long start, long end, ByteOrder byteOrder) throws IOException {
+			this.channel = channel;
+			this.end = end;
+			this.byteOrder = byteOrder;
+			map(start);
+		}
+
+		private void map(long position) throws IOException {
+			int size = (int) Math.min(WINDOW_SIZE, end - position);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(byteOrder);
+			windowStart = position;
+		}
+
+		/**
+		 * Moves to the next record
+		 *
+		 * @return <code>true</code> if there is a next record, <code>false</code> at the end of the region
+		 */
+		public boolean nextRecord() throws IOException {
+			if (window.remaining() < RECORD_MARGIN && windowStart + window.limit() < end) {
+				map(getPosition());
+			}
+			return window.hasRemaining();
+		}
+
+		public long getPosition() {
+			return windowStart + window.position();
+		}
+
+		public void setByteOrder(ByteOrder byteOrder) {
+			this.byteOrder = byteOrder;
+			window.order(byteOrder);
+		}
+
+		public byte readByte() throws IOException {
+			checkAvailable(1);
+			return window.get();
+		}
+
+		public short readShort() throws IOException {
+			checkAvailable(2);
+			return window.getShort();
+		}
+
+		public int readInt() throws IOException {
+			checkAvailable(4);
+			return window.getInt();
+		}
+
+		public float readFloat() throws IOException {
+			checkAvailable(4);
+			return window.getFloat();
+		}
+
+		public double readDouble() throws IOException {
+			checkAvailable(8);
+			return window.getDouble();
+		}
+
+		public void skipBytes(int n) throws IOException {
+			checkAvailable(n);
+			window.position(window.position() + n);
+		}
+
+		private void checkAvailable(int n) throws IOException {
+			if (window.remaining() < n)
+				throw new IOException("Unexpected end of file");
+		}
+
+		public void skipBlanks() {
+			while (window.hasRemaining()) {
+				byte b = window.get(window.position());
+				if (b != ' ' && b != '\t')
+					return;
+				window.get();
+			}
+		}
+
+		public void skipToken() {
+			while (window.hasRemaining() && !isBlankOrLineEnd(window.get(window.position()))) {
+				window.get();
+			}
+		}
+
+		public void skipLine() {
+			while (window.hasRemaining()) {
+				if (window.get() == '\n')
+					return;
+			}
+		}
+
+		public boolean isAtLineEnd() {
+			if (!window.hasRemaining())
+				return true;
+			byte b = window.get(window.position());
+			return b == '\n' || b == '\r' || b == '#';
+		}
+
+		private static boolean isBlankOrLineEnd(byte b) {
+			return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+		}
+
+		/**
+		 * Consumes a keyword, when it is next and followed by a blank or the end of the line
+		 *
+		 * @return <code>true</code> if the keyword was consumed
+		 */
+		public boolean matchKeyword(String keyword) {
+			int p = window.position();
+			int n = keyword.length();
+			if (window.limit() - p < n)
+				return false;
+			for (int i = 0; i < n; i++) {
+				if (window.get(p + i) != keyword.charAt(i))
+					return false;
+			}
+			if (p + n < window.limit() && !isBlankOrLineEnd(window.get(p + n)))
+				return false;
+			window.position(p + n);
+			return true;
+		}
+
+		public String readToken() {
+			skipBlanks();
+			StringBuilder sb = new StringBuilder(16);
+			while (window.hasRemaining() && !isBlankOrLineEnd(window.get(window.position()))) {
+				sb.append((char) (window.get() & 0xff));
+			}
+			return sb.toString();
+		}
+
+		public long parseLong() throws IOException {
+			skipBlanks();
+			boolean negative = false;
+			if (window.hasRemaining()) {
+				byte b = window.get(window.position());
+				if (b == '-' || b == '+') {
+					negative = b == '-';
+					window.get();
+				}
+			}
+			long value = 0;
+			int digits = 0;
+			while (window.hasRemaining()) {
+				int d = window.get(window.position()) - '0';
+				if (d < 0 || d > 9)
+					break;
+				value = 10 * value + d;
+				digits++;
+				window.get();
+			}
+			if (digits == 0)
+				throw new IOException("Malformed number at byte " + getPosition());
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Parses a decimal number, with an optional fraction and exponent
+		 *
+		 * <p>
+		 * Up to 18 significant digits are taken into account, which may round the last bit differently than
+		 * <code>Double.parseDouble</code>.
+		 * </p>
+		 */
+		public double parseDouble() throws IOException {
+			skipBlanks();
+			boolean negative = false;
+			if (window.hasRemaining()) {
+				byte b = window.get(window.position());
+				if (b == '-' || b == '+') {
+					negative = b == '-';
+					window.get();
+				}
+			}
+			long mantissa = 0;
+			int significantDigits = 0;
+			int exponent = 0;
+			int digits = 0;
+			boolean fraction = false;
+			while (window.hasRemaining()) {
+				byte b = window.get(window.position());
+				if (b == '.' && !fraction) {
+					fraction = true;
+				} else if (b >= '0' && b <= '9') {
+					digits++;
+					if (significantDigits < 18) {
+						mantissa = 10 * mantissa + (b - '0');
+						if (mantissa != 0)
+							significantDigits++;
+						if (fraction)
+							exponent--;
+					} else if (!fraction) {
+						exponent++;
+					}
+				} else {
+					break;
+				}
+				window.get();
+			}
+			if (digits == 0)
+				throw new IOException("Malformed number at byte " + getPosition());
+			if (window.hasRemaining()) {
+				byte b = window.get(window.position());
+				if (b == 'e' || b == 'E') {
+					window.get();
+					exponent += (int) parseLong();
+				}
+			}
+			double value = mantissa;
+			if (exponent > 0) {
+				value *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+			} else if (exponent < 0) {
+				value /= -exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+			}
+			return negative ? -value : value;
+		}
+
+	}
+
+	private static class MeshData {
+
+		private double[] coordinates; // of all vertices, copied from by the faces
+
+		private int vertexCount;
+
+		private IntList faceIndices;
+
+		private IntList faceSizes;
+
+		public MeshData(double[] coordinates, int vertexCount) {
+			this.coordinates = coordinates;
+			this.vertexCount = vertexCount;
+			this.faceIndices = new IntList();
+			this.faceSizes = new IntList();
+		}
+
+		public void validateFaceIndices() throws IOException {
+			for (int i = 0; i < faceIndices.size(); i++) {
+				int index = faceIndices.get(i);
+				if (index < 0 || index >= vertexCount)
+					throw new IOException("Face refers to missing vertex " + index);
+			}
+		}
+
+		public int[] deriveFaceOffsets() {
+			int n = faceSizes.size();
+			int[] offsets = new int[n + 1];
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] = offsets[i] + faceSizes.get(i);
+			}
+			return offsets;
+		}
+
+		public double[] getCoordinates() {
+			return coordinates;
+		}
+
+		public int getVertexCount() {
+			return vertexCount;
+		}
+
+		public IntList getFaceIndices() {
+			return faceIndices;
+		}
+
+		public IntList getFaceSizes() {
+			return faceSizes;
+		}
+
+	}
+
+	private static class ObjChunk {
+
+		private DoubleList vertices;
+
+		private IntList faceIndices; // zero-based, relative to this chunk for relative references
+
+		private IntList faceSizes;
+
+		private BitSet relativeIndices; // lazily created, as relative references are rare
+
+		public ObjChunk() {
+			this.vertices = new DoubleList();
+			this.faceIndices = new IntList();
+			this.faceSizes = new IntList();
+		}
+
+		public void markRelativeIndex(int position) {
+			if (relativeIndices == null) {
+				relativeIndices = new BitSet();
+			}
+			relativeIndices.set(position);
+		}
+
+		public DoubleList getVertices() {
+			return vertices;
+		}
+
+		public IntList getFaceIndices() {
+			return faceIndices;
+		}
+
+		public IntList getFaceSizes() {
+			return faceSizes;
+		}
+
+		public BitSet getRelativeIndices() {
+			return relativeIndices;
+		}
+
+	}
+
+	private static class PlyHeader {
+
+		private boolean ascii;
+
+		private ByteOrder byteOrder;
+
+		private List<PlyElement> elements;
+
+		public PlyHeader() {
+			this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+			this.elements = new Vector<PlyElement>();
+		}
+
+		public void parse(MappedScanner scanner) throws IOException {
+			if (!scanner.nextRecord() || !scanner.matchKeyword("ply"))
+				throw new IOException("Malformed PLY file: missing magic number");
+			scanner.skipLine();
+			PlyElement element = null;
+			boolean ended = false;
+			while (!ended && scanner.nextRecord()) {
+				String keyword = scanner.readToken();
+				if (keyword.equals("format")) {
+					String format = scanner.readToken();
+					ascii = format.equals("ascii");
+					if (format.equals("binary_big_endian")) {
+						byteOrder = ByteOrder.BIG_ENDIAN;
+					} else if (!ascii && !format.equals("binary_little_endian"))
+						throw new IOException("Unsupported PLY format: " + format);
+				} else if (keyword.equals("element")) {
+					element = new PlyElement(scanner.readToken(), (int) scanner.parseLong());
+					elements.add(element);
+				} else if (keyword.equals("property")) {
+					if (element == null)
+						throw new IOException("Malformed PLY file: property outside of an element");
+					String type = scanner.readToken();
+					if (type.equals("list")) {
+						char countType = toTypeCode(scanner.readToken());
+						char itemType = toTypeCode(scanner.readToken());
+						element.getProperties().add(new PlyProperty(scanner.readToken(), itemType, countType));
+					} else {
+						element.getProperties().add(new PlyProperty(scanner.readToken(), toTypeCode(type), (char) 0));
+					}
+				} else if (keyword.equals("end_header")) {
+					ended = true;
+				}
+				scanner.skipLine();
+			}
+			if (!ended)
+				throw new IOException("Malformed PLY file: missing end of header");
+		}
+
+		private static char toTypeCode(String type) throws IOException {
+			if (type.equals("char") || type.equals("int8")) {
+				return 'b';
+			} else if (type.equals("uchar") || type.equals("uint8")) {
+				return 'B';
+			} else if (type.equals("short") || type.equals("int16")) {
+				return 's';
+			} else if (type.equals("ushort") || type.equals("uint16")) {
+				return 'S';
+			} else if (type.equals("int") || type.equals("int32")) {
+				return 'i';
+			} else if (type.equals("uint") || type.equals("uint32")) {
+				return 'I';
+			} else if (type.equals("float") || type.equals("float32")) {
+				return 'f';
+			} else if (type.equals("double") || type.equals("float64")) {
+				return 'd';
+			} else {
+				throw new IOException("Unsupported PLY property type: " + type);
+			}
+		}
+
+		public boolean isAscii() {
+			return ascii;
+		}
+
+		public ByteOrder getByteOrder() {
+			return byteOrder;
+		}
+
+		public List<PlyElement> getElements() {
+			return elements;
+		}
+
+	}
+
+	private static class PlyElement {
+
+		private String name;
+
+		private int count;
+
+		private List<PlyProperty> properties;
+
+		public PlyElement(String name, int count) {
+			this.name = name;
+			this.count = count;
+			this.properties = new Vector<PlyProperty>();
+		}
+
+		public int getPropertyIndex(String name) {
+			for (int i = 0; i < properties.size(); i++) {
+				if (properties.get(i).getName().equals(name))
+					return i;
+			}
+			return -1;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getPropertyCount() {
+			return properties.size();
+		}
+
+		public List<PlyProperty> getProperties() {
+			return properties;
+		}
+
+	}
+
+	private static class PlyProperty {
+
+		private String name;
+
+		private char type;
+
+		private char countType; // zero unless a list
+
+		public PlyProperty(String name, char type, char countType) {
+			this.name = name;
+			this.type = type;
+			this.countType = countType;
+		}
+
+		public boolean isList() {
+			return countType != 0;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public char getType() {
+			return type;
+		}
+
+		public char getCountType() {
+			return countType;
+		}
+
+	}
+
+	private static class IntList {
+
+		private int[] values;
+
+		private int size;
+
+		public IntList() {
+			this.values = new int[1024];
+		}
+
+		public void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		public void addAll(IntList other) {
+			for (int i = 0; i < other.size(); i++) {
+				add(other.get(i));
+			}
+		}
+
+		public int get(int index) {
+			return values[index];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+	}
+
+	private static class DoubleList {
+
+		private double[] values;
+
+		private int size;
+
+		public DoubleList() {
+			this.values = new double[3 * 1024];
+		}
+
+		public void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+
+		public void addAll(DoubleList other) {
+			if (size + other.size() > values.length) {
+				values = Arrays.copyOf(values, Math.max(2 * values.length, size + other.size()));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size());
+			size += other.size();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public double[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+	}
+
+	private static class ImportThreadFactory implements ThreadFactory {
+
+		private int threadCount;
+
+		public ImportThreadFactory() {
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Mesh import #" + (threadCount++));
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
@@ -4,13 +4,19 @@ import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import org.maia.graphics3d.model.object.BaseObject3D;
 import org.maia.graphics3d.model.object.ConvexPolygonalObject3D;
+import org.maia.graphics3d.model.object.LevelOfDetailObject3D;
 import org.maia.graphics3d.model.object.MultipartObject3D;
 import org.maia.graphics3d.model.object.PolygonalObject3D;
 import org.maia.graphics3d.model.object.SimpleFace3D;
@@ -23,6 +29,15 @@ import org.maia.graphics3d.geometry.Vector3D;
 
 public class ModelBuilderUtils {
 
+	/**
+	 * The projected size, relative to the view plane, down to which the finest level of detail is selected
+	 */
+	public static final double DEFAULT_FULL_DETAIL_PROJECTED_SIZE = 0.25;
+
+	private static final int MINIMUM_LEVEL_OF_DETAIL_VERTEX_COUNT = 8;
+
+	private static final int DECIMATION_GRID_RESOLUTION = 32;
+
 	public static PolygonalObject3D loadShapeXY(String filePath, boolean isConvex) {
 		List<Point3D> vertices = loadVerticesXY(filePath);
 		if (isConvex) {
@@ -61,6 +76,17 @@ public class ModelBuilderUtils {
 		return planarCurveToPolygonalShape(curve, targetVertexCount, isConvex);
 	}
 
+	public static LevelOfDetailObject3D smoothenPolygonalShapeWithLevelsOfDetail(final PolygonalObject3D shape,
+			int targetVertexCount) {
+		return buildLevelsOfDetail(new TessellatedObjectBuilder() {
+
+			@Override
+			public BaseObject3D build(int vertexCount) {
+				return smoothenPolygonalShape(shape, vertexCount);
+			}
+		}, targetVertexCount);
+	}
+
 	public static PolygonalObject3D planarCurveToPolygonalShape(Curve3D curve, int sampleCount, boolean isConvex) {
 		boolean includeCurveEnd = !curve.sample(0).equals(curve.sample(1.0));
 		List<Point3D> samples = sampleCurve(curve, sampleCount, includeCurveEnd);
@@ -136,6 +162,7 @@ public class ModelBuilderUtils {
 		cube.addPart(new SimpleFace3D(color, shadingModel, v.get(2), v.get(3), v.get(7), v.get(6))); // back
 		cube.addPart(new SimpleFace3D(color, shadingModel, v.get(0), v.get(3), v.get(2), v.get(1))); // bottom
 		cube.addPart(new SimpleFace3D(color, shadingModel, v.get(4), v.get(5), v.get(6), v.get(7))); // top
+		cube.setClosedSolid(true);
 		return cube;
 	}
 
@@ -172,13 +199,25 @@ public class ModelBuilderUtils {
 		return buildExtrusion(base, depth, color, shadingModel);
 	}
 
+	public static LevelOfDetailObject3D buildCylinderWithLevelsOfDetail(final double radius, final double depth,
+			int vertexCount, final Color color, final FlatShadingModel shadingModel) {
+		return buildLevelsOfDetail(new TessellatedObjectBuilder() {
+
+			@Override
+			public BaseObject3D build(int vertexCount) {
+				return buildCylinder(radius, depth, vertexCount, color, shadingModel);
+			}
+		}, vertexCount);
+	}
+
 	public static BaseObject3D buildPyramid(double radius, double depth, int vertexCount, Color color,
 			FlatShadingModel shadingModel, boolean fillBase) {
 		MultipartObject3D<SimpleFace3D> pyramid = new MultipartObject3D<SimpleFace3D>();
 		// Base
 		PolygonalObject3D base = buildCircularShapeXY(radius, vertexCount);
 		if (fillBase) {
-			pyramid.addParts(convertToFaces(base, color, shadingModel));
+			pyramid.addParts(convertToFaces(reverseShape(base), color, shadingModel));
+			pyramid.setClosedSolid(true);
 		}
 		// Hull
 		List<Point3D> vertices = base.getVerticesInWorldCoordinates();
@@ -203,14 +242,27 @@ public class ModelBuilderUtils {
 		// Outer hull
 		ring.addPart(buildLayeredObject(outerRingBack, outerRingFront, false, false, color, shadingModel));
 		// Inner hull
-		ring.addPart(buildLayeredObject(innerRingBack, innerRingFront, false, false, color, shadingModel));
+		ring.addPart(buildLayeredObject(innerRingFront, innerRingBack, false, false, color, shadingModel));
 		// Back side
-		ring.addPart(buildLayeredObject(outerRingBack, innerRingBack, false, false, color, shadingModel));
+		ring.addPart(buildLayeredObject(innerRingBack, outerRingBack, false, false, color, shadingModel));
 		// Front side
 		ring.addPart(buildLayeredObject(outerRingFront, innerRingFront, false, false, color, shadingModel));
+		ring.setClosedSolid(true);
 		return ring;
 	}
 
+	public static LevelOfDetailObject3D buildRingWithLevelsOfDetail(final double innerRadius,
+			final double outerRadius, final double depth, int vertexCount, final Color color,
+			final FlatShadingModel shadingModel) {
+		return buildLevelsOfDetail(new TessellatedObjectBuilder() {
+
+			@Override
+			public BaseObject3D build(int vertexCount) {
+				return buildRing(innerRadius, outerRadius, depth, vertexCount, color, shadingModel);
+			}
+		}, vertexCount);
+	}
+
 	public static BaseObject3D buildSphere(double radius, int vertexCount, Color color, FlatShadingModel shadingModel) {
 		double e = 0.005;
 		int nlayers = vertexCount / 2;
@@ -224,6 +276,198 @@ public class ModelBuilderUtils {
 		return buildLayeredObject(layers, true, false, color, shadingModel);
 	}
 
+	public static LevelOfDetailObject3D buildSphereWithLevelsOfDetail(final double radius, int vertexCount,
+			final Color color, final FlatShadingModel shadingModel) {
+		return buildLevelsOfDetail(new TessellatedObjectBuilder() {
+
+			@Override
+			public BaseObject3D build(int vertexCount) {
+				return buildSphere(radius, vertexCount, color, shadingModel);
+			}
+		}, vertexCount);
+	}
+
+	public static LevelOfDetailObject3D buildLevelsOfDetail(TessellatedObjectBuilder builder, int vertexCount) {
+		return buildLevelsOfDetail(builder, vertexCount, MINIMUM_LEVEL_OF_DETAIL_VERTEX_COUNT,
+				DEFAULT_FULL_DETAIL_PROJECTED_SIZE);
+	}
+
+	/**
+	 * Builds an object with levels of detail by tessellating its shape with fewer and fewer vertices
+	 *
+	 * <p>
+	 * Every next level halves the vertex count, and is selected from half the projected size of the previous level
+	 * on, which keeps the projected length of the edges about the same.
+	 * </p>
+	 *
+	 * @param builder
+	 *            Builds the shape for a vertex count
+	 * @param vertexCount
+	 *            The vertex count of the finest level
+	 * @param minimumVertexCount
+	 *            The vertex count below which no coarser level is built
+	 * @param fullDetailProjectedSize
+	 *            The projected size, relative to the view plane, down to which the finest level is selected
+	 * @return The object with its levels of detail
+	 */
+	public static LevelOfDetailObject3D buildLevelsOfDetail(TessellatedObjectBuilder builder, int vertexCount,
+			int minimumVertexCount, double fullDetailProjectedSize) {
+		LevelOfDetailObject3D object = new LevelOfDetailObject3D();
+		int n = vertexCount;
+		double projectedSize = fullDetailProjectedSize;
+		while (n / 2 >= minimumVertexCount) {
+			object.addLevel(builder.build(n), projectedSize);
+			n /= 2;
+			projectedSize /= 2;
+		}
+		object.addLevel(builder.build(n), 0);
+		return object;
+	}
+
+	public static LevelOfDetailObject3D buildLevelsOfDetailByDecimation(BaseObject3D object, int levelCount) {
+		return buildLevelsOfDetailByDecimation(object, levelCount, DEFAULT_FULL_DETAIL_PROJECTED_SIZE);
+	}
+
+	/**
+	 * Builds an object with levels of detail by decimating a given object
+	 *
+	 * <p>
+	 * The given object makes up the finest level. Every next level is decimated on a grid of half the resolution of
+	 * the previous attempt, and is selected from half the projected size of the previous level on. A decimated level
+	 * is only kept when it has fewer faces than the previous level, as splitting faces into triangles may outweigh a
+	 * fine grid. Fewer levels are built when decimation leaves no faces.
+	 * </p>
+	 *
+	 * @param object
+	 *            The object, not part of a composite object, whose individual objects are <code>SimpleFace3D</code>s
+	 * @param levelCount
+	 *            The number of levels, including the given object
+	 * @param fullDetailProjectedSize
+	 *            The projected size, relative to the view plane, down to which the finest level is selected
+	 * @return The object with its levels of detail
+	 * @see #decimate(BaseObject3D, double)
+	 */
+	public static LevelOfDetailObject3D buildLevelsOfDetailByDecimation(BaseObject3D object, int levelCount,
+			double fullDetailProjectedSize) {
+		List<BaseObject3D> levels = new Vector<BaseObject3D>(levelCount);
+		levels.add(object);
+		Box3D box = object.getBoundingBoxInWorldCoordinates();
+		double extent = Math.max(box.getWidth(), Math.max(box.getHeight(), box.getDepth()));
+		int faceCount = countIndividualObjects(object);
+		int resolution = DECIMATION_GRID_RESOLUTION;
+		while (levels.size() < levelCount && resolution >= 1) {
+			MultipartObject3D<SimpleFace3D> level = decimate(object, extent / resolution);
+			int levelFaceCount = level.getParts().size();
+			if (levelFaceCount == 0)
+				break;
+			if (levelFaceCount < faceCount) {
+				levels.add(level);
+				faceCount = levelFaceCount;
+			}
+			resolution /= 2;
+		}
+		LevelOfDetailObject3D lod = new LevelOfDetailObject3D();
+		double projectedSize = fullDetailProjectedSize;
+		for (int i = 0; i < levels.size(); i++) {
+			lod.addLevel(levels.get(i), i < levels.size() - 1 ? projectedSize : 0);
+			projectedSize /= 2;
+		}
+		return lod;
+	}
+
+	/**
+	 * Decimates an object by clustering its vertices on a regular grid
+	 *
+	 * <p>
+	 * The vertices within a grid cell merge into their average. The faces are split into triangles, of which those
+	 * that collapse or duplicate another triangle are dropped. The triangles keep the colors and shading model of the
+	 * face they stem from.
+	 * </p>
+	 *
+	 * @param object
+	 *            The object, not part of a composite object, whose individual objects are <code>SimpleFace3D</code>s
+	 * @param cellSize
+	 *            The size of a grid cell, in world coordinates
+	 * @return The decimated object, in world coordinates
+	 * @throws UnsupportedOperationException
+	 *             When the object has individual objects other than <code>SimpleFace3D</code>s
+	 */
+	public static MultipartObject3D<SimpleFace3D> decimate(BaseObject3D object, double cellSize) {
+		List<SimpleFace3D> faces = new Vector<SimpleFace3D>();
+		collectFacesToDecimate(object, faces);
+		Box3D box = object.getBoundingBoxInWorldCoordinates();
+		Map<Long, double[]> cellSums = new HashMap<Long, double[]>();
+		for (SimpleFace3D face : faces) {
+			for (Point3D vertex : face.getVerticesInWorldCoordinates()) {
+				Long cell = getDecimationCell(vertex, box, cellSize);
+				double[] sum = cellSums.get(cell);
+				if (sum == null) {
+					sum = new double[4];
+					cellSums.put(cell, sum);
+				}
+				sum[0] += vertex.getX();
+				sum[1] += vertex.getY();
+				sum[2] += vertex.getZ();
+				sum[3]++;
+			}
+		}
+		Map<Long, Point3D> cellVertices = new HashMap<Long, Point3D>(cellSums.size());
+		for (Map.Entry<Long, double[]> entry : cellSums.entrySet()) {
+			double[] sum = entry.getValue();
+			cellVertices.put(entry.getKey(), new Point3D(sum[0] / sum[3], sum[1] / sum[3], sum[2] / sum[3]));
+		}
+		MultipartObject3D<SimpleFace3D> decimated = new MultipartObject3D<SimpleFace3D>();
+		Set<List<Long>> triangles = new HashSet<List<Long>>();
+		for (SimpleFace3D face : faces) {
+			List<Point3D> vertices = face.getVerticesInWorldCoordinates();
+			Long c0 = getDecimationCell(vertices.get(0), box, cellSize);
+			for (int i = 1; i < vertices.size() - 1; i++) {
+				Long c1 = getDecimationCell(vertices.get(i), box, cellSize);
+				Long c2 = getDecimationCell(vertices.get(i + 1), box, cellSize);
+				if (c0.equals(c1) || c1.equals(c2) || c2.equals(c0))
+					continue; // collapsed
+				Long[] key = new Long[] { c0, c1, c2 };
+				Arrays.sort(key);
+				if (triangles.add(Arrays.asList(key))) {
+					decimated.addPart(new SimpleFace3D(face.getFrontColor(), face.getBackColor(),
+							face.getShadingModel(), cellVertices.get(c0), cellVertices.get(c1), cellVertices.get(c2)));
+				}
+			}
+		}
+		return decimated;
+	}
+
+	private static int countIndividualObjects(BaseObject3D object) {
+		if (object.isComposite()) {
+			int count = 0;
+			for (BaseObject3D part : object.<BaseObject3D> asCompositeObject().getParts()) {
+				count += countIndividualObjects(part);
+			}
+			return count;
+		} else {
+			return 1;
+		}
+	}
+
+	private static void collectFacesToDecimate(BaseObject3D object, List<SimpleFace3D> faces) {
+		if (object.isComposite()) {
+			for (BaseObject3D part : object.<BaseObject3D> asCompositeObject().getParts()) {
+				collectFacesToDecimate(part, faces);
+			}
+		} else if (object.getClass().equals(SimpleFace3D.class)) {
+			faces.add((SimpleFace3D) object);
+		} else {
+			throw new UnsupportedOperationException("Cannot decimate object of type " + object.getClass().getName());
+		}
+	}
+
+	private static Long getDecimationCell(Point3D vertex, Box3D box, double cellSize) {
+		long ix = (long) Math.floor((vertex.getX() - box.getX1()) / cellSize);
+		long iy = (long) Math.floor((vertex.getY() - box.getY1()) / cellSize);
+		long iz = (long) Math.floor((vertex.getZ() - box.getZ1()) / cellSize);
+		return Long.valueOf((ix << 42) | (iy << 21) | iz);
+	}
+
 	public static ConvexPolygonalObject3D buildCircularShapeXY(double radius, int vertexCount) {
 		double angleFrom = 0;
 		double angleTo = 2 * Math.PI * (1.0 - 1.0 / vertexCount);
@@ -329,8 +573,9 @@ public class ModelBuilderUtils {
 		int lc = layers.size();
 		// Sides
 		if (fillSides) {
-			object.addParts(convertToFaces(layers.get(0), color, shadingModel));
+			object.addParts(convertToFaces(reverseShape(layers.get(0)), color, shadingModel));
 			object.addParts(convertToFaces(layers.get(lc - 1), color, shadingModel));
+			object.setClosedSolid(true);
 		}
 		// Surface
 		for (int li = 0; li < lc - 1; li++) {
@@ -362,6 +607,16 @@ public class ModelBuilderUtils {
 		}
 	}
 
+	public static PolygonalObject3D reverseShape(PolygonalObject3D polygon) {
+		List<Point3D> vertices = new Vector<Point3D>(polygon.getVerticesInWorldCoordinates());
+		Collections.reverse(vertices);
+		if (polygon instanceof ConvexPolygonalObject3D) {
+			return new ConvexPolygonalObject3D(vertices);
+		} else {
+			return new PolygonalObject3D(vertices);
+		}
+	}
+
 	public static Collection<SimpleFace3D> convertToFaces(PolygonalObject3D polygon, Color color,
 			FlatShadingModel shadingModel) {
 		List<Point3D> vertices = polygon.getVerticesInWorldCoordinates();
@@ -392,4 +647,15 @@ public class ModelBuilderUtils {
 		return new Point3D(x / n, y / n, z / n);
 	}
 
+	/**
+	 * Builds an object tessellated by a given number of vertices
+	 *
+	 * @see ModelBuilderUtils#buildLevelsOfDetail(TessellatedObjectBuilder, int, int, double)
+	 */
+	public static interface TessellatedObjectBuilder {
+
+		BaseObject3D build(int vertexCount);
+
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,444 @@
+package org.maia.graphics3d.model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A store of geometrical data outside of the Java heap, in direct byte buffers
+ *
+ * <p>
+ * Scenes larger than the heap can keep their bulk data, such as the vertices of meshes, in a store. Data held off-heap
+ * does not count towards the maximum heap size, and is not traversed by the garbage collector.
+ * </p>
+ * <p>
+ * Data is allocated in {@link Block}s of doubles, floats or ints. Small blocks are carved out of shared
+ * <em>slabs</em>, which are only released when the store is closed. Large blocks get a buffer of their own, which is
+ * released when the block is released, so short-lived data like index structures can be replaced without growing the
+ * store. Closing the store releases all of its memory at once, without waiting for the garbage collector.
+ * </p>
+ * <p>
+ * A store can also adopt buffers that were allocated elsewhere, such as the regions of a memory-mapped file, and wrap
+ * their data in blocks without copying it. Adopted buffers are released along with the store.
+ * </p>
+ * <p>
+ * Blocks must not be used after they or their store are released, which is checked on every access. Releasing memory
+ * while other threads are still reading it is not guarded against, so the owner of the data, typically the
+ * <code>Scene</code>, should only release it when no rendering is in progress.
+ * </p>
+ *
+ * @see org.maia.graphics3d.model.scene.Scene#setGeometryStore(OffHeapGeometryStore)
+ * @see org.maia.graphics3d.model.scene.Scene#dispose()
+ */
+public class OffHeapGeometryStore {
+
+	private int slabSizeInBytes;
+
+	private List<ByteBuffer> slabs; // guarded by this
+
+	private ByteBuffer currentSlab;
+
+	private List<Block> dedicatedBlocks; // guarded by this
+
+	private List<ByteBuffer> adoptedBuffers; // guarded by this
+
+	private long allocatedBytes;
+
+	private volatile boolean closed;
+
+	/**
+	 * Default size of the slabs from which small blocks are allocated
+	 */
+	public static final int DEFAULT_SLAB_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+	private static final int SLAB_ALIGNMENT = 8;
+
+	private static Object unsafe; // frees direct buffers, when available
+
+	private static Method invokeCleanerMethod;
+
+	private static NumberFormat numberFormat;
+
+	static {
+		numberFormat = NumberFormat.getNumberInstance();
+		numberFormat.setGroupingUsed(true);
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			// Freeing is left to the garbage collector
+			unsafe = null;
+			invokeCleanerMethod = null;
+		}
+	}
+
+	public OffHeapGeometryStore() {
+		this(DEFAULT_SLAB_SIZE_IN_BYTES);
+	}
+
+	public OffHeapGeometryStore(int slabSizeInBytes) {
+		this.slabSizeInBytes = slabSizeInBytes;
+		this.slabs = new Vector<ByteBuffer>();
+		this.dedicatedBlocks = new Vector<Block>();
+		this.adoptedBuffers = new Vector<ByteBuffer>();
+	}
+
+	/**
+	 * Allocates a block of values in double precision
+	 *
+	 * @param count
+	 *            The number of values
+	 * @return The block, initialized to zero
+	 * @throws IllegalArgumentException
+	 *             When the block would take more than {@link Integer#MAX_VALUE} bytes, the limit of a single buffer
+	 */
+	public Block allocateDoubles(int count) {
+		return allocate(count, Block.DOUBLE_TYPE);
+	}
+
+	/**
+	 * Allocates a block of values in single precision
+	 *
+	 * <p>
+	 * The values are read and written as doubles, and rounded when stored.
+	 * </p>
+	 *
+	 * @param count
+	 *            The number of values
+	 * @return The block, initialized to zero
+	 * @throws IllegalArgumentException
+	 *             When the block would take more than {@link Integer#MAX_VALUE} bytes, the limit of a single buffer
+	 */
+	public Block allocateFloats(int count) {
+		return allocate(count, Block.FLOAT_TYPE);
+	}
+
+	/**
+	 * Allocates a block of integer values
+	 *
+	 * @param count
+	 *            The number of values
+	 * @return The block, initialized to zero
+	 * @throws IllegalArgumentException
+	 *             When the block would take more than {@link Integer#MAX_VALUE} bytes, the limit of a single buffer
+	 */
+	public Block allocateInts(int count) {
+		return allocate(count, Block.INT_TYPE);
+	}
+
+	/**
+	 * Hands over a direct buffer to this store, which releases it when closed
+	 *
+	 * @param buffer
+	 *            The buffer, typically a region of a memory-mapped file. It should not be a slice or duplicate of
+	 *            another buffer, as those cannot be released other than by the garbage collector
+	 * @see #wrapDoubles(ByteBuffer, int, int)
+	 * @see #wrapFloats(ByteBuffer, int, int)
+	 */
+	public synchronized void adoptBuffer(ByteBuffer buffer) {
+		checkOpen();
+		adoptedBuffers.add(buffer);
+	}
+
+	/**
+	 * Wraps values in double precision of an adopted buffer in a block, without copying them
+	 *
+	 * @param buffer
+	 *            The adopted buffer, whose byte order applies
+	 * @param byteOffset
+	 *            The position in <code>buffer</code> of the first value
+	 * @param count
+	 *            The number of values
+	 * @return The block, which reads from and writes to <code>buffer</code>
+	 * @see #adoptBuffer(ByteBuffer)
+	 */
+	public Block wrapDoubles(ByteBuffer buffer, int byteOffset, int count) {
+		return wrap(buffer, byteOffset, count, Block.DOUBLE_TYPE);
+	}
+
+	/**
+	 * Wraps values in single precision of an adopted buffer in a block, without copying them
+	 *
+	 * @param buffer
+	 *            The adopted buffer, whose byte order applies
+	 * @param byteOffset
+	 *            The position in <code>buffer</code> of the first value
+	 * @param count
+	 *            The number of values
+	 * @return The block, which reads from and writes to <code>buffer</code>
+	 * @see #adoptBuffer(ByteBuffer)
+	 */
+	public Block wrapFloats(ByteBuffer buffer, int byteOffset, int count) {
+		return wrap(buffer, byteOffset, count, Block.FLOAT_TYPE);
+	}
+
+	private Block wrap(ByteBuffer buffer, int byteOffset, int count, byte type) {
+		checkOpen();
+		if (byteOffset < 0 || byteOffset + (long) count * Block.getBytesPerValue(type) > buffer.capacity())
+			throw new IndexOutOfBoundsException("Block of " + count + " values at offset " + byteOffset
+					+ " exceeds buffer of capacity " + buffer.capacity());
+		return new Block(this, buffer, byteOffset, count, type, false);
+	}
+
+	private synchronized Block allocate(int count, byte type) {
+		checkOpen();
+		long bytes = (long) count * Block.getBytesPerValue(type);
+		if (count < 0 || bytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cannot allocate a block of " + count + " values taking " + bytes
+					+ " bytes, a block is limited to " + Integer.MAX_VALUE + " bytes");
+		Block block = null;
+		if (bytes > getSlabSizeInBytes() / 4) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(bytes, 1L)).order(ByteOrder.nativeOrder());
+			block = new Block(this, buffer, 0, count, type, true);
+			dedicatedBlocks.add(block);
+		} else {
+			int size = ((int) bytes + SLAB_ALIGNMENT - 1) / SLAB_ALIGNMENT * SLAB_ALIGNMENT;
+			if (currentSlab == null || currentSlab.remaining() < size) {
+				currentSlab = ByteBuffer.allocateDirect(getSlabSizeInBytes()).order(ByteOrder.nativeOrder());
+				slabs.add(currentSlab);
+			}
+			int offset = currentSlab.position();
+			currentSlab.position(offset + size);
+			block = new Block(this, currentSlab, offset, count, type, false);
+		}
+		allocatedBytes += bytes;
+		return block;
+	}
+
+	private synchronized void release(Block block) {
+		if (block.isDedicated() && dedicatedBlocks.remove(block)) {
+			allocatedBytes -= block.getSizeInBytes();
+			free(block.getBuffer());
+		}
+	}
+
+	/**
+	 * Releases all memory of this store
+	 *
+	 * <p>
+	 * Any subsequent use of the store or its blocks throws an <code>IllegalStateException</code>. Closing a closed
+	 * store has no effect.
+	 * </p>
+	 */
+	public synchronized void close() {
+		if (isClosed())
+			return;
+		closed = true;
+		for (Block block : dedicatedBlocks) {
+			free(block.getBuffer());
+		}
+		for (ByteBuffer slab : slabs) {
+			free(slab);
+		}
+		for (ByteBuffer buffer : adoptedBuffers) {
+			free(buffer);
+		}
+		dedicatedBlocks.clear();
+		slabs.clear();
+		adoptedBuffers.clear();
+		currentSlab = null;
+		allocatedBytes = 0;
+	}
+
+	private static void free(ByteBuffer buffer) {
+		if (invokeCleanerMethod != null) {
+			try {
+				invokeCleanerMethod.invoke(unsafe, buffer);
+			} catch (Exception e) {
+				// left to the garbage collector
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (isClosed())
+			throw new IllegalStateException("Geometry store is closed");
+	}
+
+	/**
+	 * Returns the number of bytes held by the blocks of this store
+	 *
+	 * @return The size in bytes, excluding the unused part of the slabs
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory reserved by this store
+	 *
+	 * @return The size in bytes, including the unused part of the slabs and the adopted buffers
+	 */
+	public synchronized long getReservedBytes() {
+		long bytes = (long) slabs.size() * getSlabSizeInBytes();
+		for (Block block : dedicatedBlocks) {
+			bytes += block.getBuffer().capacity();
+		}
+		for (ByteBuffer buffer : adoptedBuffers) {
+			bytes += buffer.capacity();
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapGeometryStore: " + numberFormat.format(getAllocatedBytes() / 1024L) + " KB allocated, "
+				+ numberFormat.format(getReservedBytes() / 1024L) + " KB reserved" + (isClosed() ? " (closed)" : "");
+	}
+
+	public int getSlabSizeInBytes() {
+		return slabSizeInBytes;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * A fixed-size array of values in an <code>OffHeapGeometryStore</code>
+	 */
+	public static class Block {
+
+		private OffHeapGeometryStore store;
+
+		private ByteBuffer buffer;
+
+		private int byteOffset;
+
+		private int count;
+
+		private byte type;
+
+		private boolean dedicated;
+
+		private boolean released;
+
+		private static final byte DOUBLE_TYPE = 0;
+
+		private static final byte FLOAT_TYPE = 1;
+
+		private static final byte INT_TYPE = 2;
+
+		private Block(OffHeapGeometryStore store, ByteBuffer buffer, int byteOffset, int count, byte type,
+				boolean dedicated) {
+			this.store = store;
+			this.buffer = buffer;
+			this.byteOffset = byteOffset;
+			this.count = count;
+			this.type = type;
+			this.dedicated = dedicated;
+		}
+
+		private static int getBytesPerValue(byte type) {
+			return type == DOUBLE_TYPE ? 8 : 4;
+		}
+
+		/**
+		 * Returns a value of this block
+		 *
+		 * @param index
+		 *            The index of the value, ranging from 0 to the size of the block minus 1
+		 * @return The value, widened to a double for blocks of floats or ints
+		 */
+		public double get(int index) {
+			checkAccess(index);
+			if (type == DOUBLE_TYPE) {
+				return buffer.getDouble(byteOffset + 8 * index);
+			} else if (type == FLOAT_TYPE) {
+				return buffer.getFloat(byteOffset + 4 * index);
+			} else {
+				return buffer.getInt(byteOffset + 4 * index);
+			}
+		}
+
+		/**
+		 * Sets a value of this block
+		 *
+		 * @param index
+		 *            The index of the value, ranging from 0 to the size of the block minus 1
+		 * @param value
+		 *            The value, which is rounded for blocks of floats and truncated for blocks of ints
+		 */
+		public void set(int index, double value) {
+			checkAccess(index);
+			if (type == DOUBLE_TYPE) {
+				buffer.putDouble(byteOffset + 8 * index, value);
+			} else if (type == FLOAT_TYPE) {
+				buffer.putFloat(byteOffset + 4 * index, (float) value);
+			} else {
+				buffer.putInt(byteOffset + 4 * index, (int) value);
+			}
+		}
+
+		public int getInt(int index) {
+			checkAccess(index);
+			if (type != INT_TYPE)
+				return (int) get(index);
+			return buffer.getInt(byteOffset + 4 * index);
+		}
+
+		public void setInt(int index, int value) {
+			checkAccess(index);
+			if (type != INT_TYPE) {
+				set(index, value);
+			} else {
+				buffer.putInt(byteOffset + 4 * index, value);
+			}
+		}
+
+		private void checkAccess(int index) {
+			if (released || store.isClosed())
+				throw new IllegalStateException("Geometry store block is released");
+			if (index < 0 || index >= count)
+				throw new IndexOutOfBoundsException("Index " + index + " out of bounds for block of size " + count);
+		}
+
+		/**
+		 * Releases the memory of this block
+		 *
+		 * <p>
+		 * The memory of a large block is returned immediately. A small block shares its memory with other blocks,
+		 * which is returned when the store is closed. Either way, the block cannot be used anymore.
+		 * </p>
+		 */
+		public void release() {
+			if (!released) {
+				released = true;
+				store.release(this);
+			}
+		}
+
+		public int size() {
+			return count;
+		}
+
+		public boolean isSinglePrecision() {
+			return type == FLOAT_TYPE;
+		}
+
+		public boolean isReleased() {
+			return released || store.isClosed();
+		}
+
+		private long getSizeInBytes() {
+			return (long) count * getBytesPerValue(type);
+		}
+
+		private ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		private boolean isDedicated() {
+			return dedicated;
+		}
+
+	}
+
+}
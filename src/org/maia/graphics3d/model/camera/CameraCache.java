@@ -0,0 +1,147 @@
+package org.maia.graphics3d.model.camera;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A cache of values that were derived for specific cameras, holding an entry for a bounded number of cameras
+ *
+ * <p>
+ * Cameras are matched by identity. Lookups do not lock, so the cache can be read concurrently by threads rendering
+ * from different cameras. When an entry is added to a cache that is full, the entry that was added longest ago is
+ * evicted.
+ * </p>
+ *
+ * @param <T>
+ *            The type of the cached values
+ */
+public class CameraCache<T> {
+
+	private volatile Entry<T>[] entries; // most recently added first, replaced on every update
+
+	private int capacity;
+
+	/**
+	 * The default maximum number of cameras having an entry in the cache
+	 */
+	public static final int DEFAULT_CAPACITY = 4;
+
+	public CameraCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public CameraCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+		this.entries = newEntries(0);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the value cached for a camera
+	 *
+	 * @param camera
+	 *            The camera
+	 * @return The cached value, or <code>null</code> if the cache holds no entry for <code>camera</code>
+	 */
+	public T get(Camera camera) {
+		Entry<T>[] entries = this.entries;
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].getCamera() == camera)
+				return entries[i].getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Caches a value for a camera, unless the cache already holds an entry for that camera
+	 *
+	 * @param camera
+	 *            The camera
+	 * @param value
+	 *            The value to cache
+	 * @return The value that is cached for <code>camera</code> after this call, being either <code>value</code> or the
+	 *         value that was cached before
+	 */
+	public synchronized T putIfAbsent(Camera camera, T value) {
+		T existing = get(camera);
+		if (existing != null)
+			return existing;
+		Entry<T>[] current = entries;
+		int n = Math.min(current.length + 1, getCapacity());
+		Entry<T>[] updated = newEntries(n);
+		updated[0] = new Entry<T>(camera, value);
+		System.arraycopy(current, 0, updated, 1, n - 1);
+		entries = updated;
+		return value;
+	}
+
+	public synchronized void remove(Camera camera) {
+		Entry<T>[] current = entries;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].getCamera() == camera) {
+				Entry<T>[] updated = newEntries(current.length - 1);
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				entries = updated;
+				return;
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries = newEntries(0);
+	}
+
+	/**
+	 * Returns the values that are currently cached
+	 *
+	 * @return A snapshot of the cached values, most recently added first
+	 */
+	public List<T> getValues() {
+		Entry<T>[] entries = this.entries;
+		if (entries.length == 0)
+			return Collections.emptyList();
+		List<T> values = new Vector<T>(entries.length);
+		for (int i = 0; i < entries.length; i++) {
+			values.add(entries[i].getValue());
+		}
+		return values;
+	}
+
+	public int size() {
+		return entries.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Entry<T>[] newEntries(int length) {
+		return (Entry<T>[]) new Entry<?>[length];
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private static class Entry<T> {
+
+		private Camera camera;
+
+		private T value;
+
+		public Entry(Camera camera, T value) {
+			this.camera = camera;
+			this.value = value;
+		}
+
+		public Camera getCamera() {
+			return camera;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+	}
+
+}
@@ -115,6 +115,31 @@ public class MovableCameraImpl extends BaseCamera implements MovableCamera {
 		return this;
 	}
 
+	/**
+	 * Restores a position and orientation of this camera exactly, as captured by its viewing matrix
+	 * 
+	 * <p>
+	 * Unlike positioning the camera, which derives its axes from a point to look at, this reproduces the viewing
+	 * matrix bit for bit, so that a restored scene renders identically.
+	 * </p>
+	 * 
+	 * @param position
+	 *            The position of the camera
+	 * @param viewingMatrix
+	 *            The viewing matrix of the camera at <code>position</code>, whose first three rows hold the unit
+	 *            vectors along the axes of the camera
+	 * @return This camera (for chaining movements)
+	 */
+	public MovableCamera restore(Point3D position, TransformMatrix3D viewingMatrix) {
+		setPosition(position);
+		setU(new Vector3D(viewingMatrix.getValue(0, 0), viewingMatrix.getValue(0, 1), viewingMatrix.getValue(0, 2)));
+		setV(new Vector3D(viewingMatrix.getValue(1, 0), viewingMatrix.getValue(1, 1), viewingMatrix.getValue(1, 2)));
+		setN(new Vector3D(viewingMatrix.getValue(2, 0), viewingMatrix.getValue(2, 1), viewingMatrix.getValue(2, 2)));
+		setViewingMatrix(viewingMatrix);
+		fireCameraHasChanged();
+		return this;
+	}
+
 	private void updateViewingMatrix() {
 		getU().makeUnitVector();
 		getV().makeUnitVector();
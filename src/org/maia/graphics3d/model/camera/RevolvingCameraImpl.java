@@ -1,6 +1,7 @@
 package org.maia.graphics3d.model.camera;
 
 import org.maia.graphics3d.transform.CompositeTransform3D;
+import org.maia.graphics3d.transform.TransformMatrix3D;
 import org.maia.graphics3d.transform.Transformation3D;
 import org.maia.graphics3d.geometry.Point3D;
 import org.maia.graphics3d.geometry.Vector3D;
@@ -39,6 +40,12 @@ public class RevolvingCameraImpl extends MovableCameraImpl implements RevolvingC
 		return updateSphericalCoordinates();
 	}
 
+	@Override
+	public RevolvingCamera restore(Point3D position, TransformMatrix3D viewingMatrix) {
+		super.restore(position, viewingMatrix);
+		return updateSphericalCoordinates();
+	}
+
 	@Override
 	public RevolvingCamera slide(double du, double dv, double dn) {
 		super.slide(du, dv, dn);
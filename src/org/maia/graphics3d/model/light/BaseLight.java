@@ -1,15 +1,36 @@
 package org.maia.graphics3d.model.light;
 
+import java.util.Collection;
+import java.util.Vector;
+
 import org.maia.graphics3d.model.camera.Camera;
 
 public abstract class BaseLight implements LightSource {
 
 	private double brightness;
 
+	private Collection<LightSourceObserver> observers = new Vector<LightSourceObserver>();
+
 	protected BaseLight(double brightness) {
 		this.brightness = brightness;
 	}
 
+	@Override
+	public void addObserver(LightSourceObserver observer) {
+		getObservers().add(observer);
+	}
+
+	@Override
+	public void removeObserver(LightSourceObserver observer) {
+		getObservers().remove(observer);
+	}
+
+	protected void fireLightSourceHasChanged() {
+		for (LightSourceObserver observer : getObservers()) {
+			observer.lightSourceHasChanged(this);
+		}
+	}
+
 	@Override
 	public void cameraHasChanged(Camera camera) {
 		// Subclasses may override this method
@@ -20,6 +41,11 @@ public abstract class BaseLight implements LightSource {
 		return brightness;
 	}
 
+	public void setBrightness(double brightness) {
+		this.brightness = brightness;
+		fireLightSourceHasChanged();
+	}
+
 	@Override
 	public boolean isPositional() {
 		// Subclasses may override this method
@@ -32,4 +58,8 @@ public abstract class BaseLight implements LightSource {
 		return false;
 	}
 
+	protected Collection<LightSourceObserver> getObservers() {
+		return observers;
+	}
+
 }
\ No newline at end of file
@@ -36,6 +36,12 @@ public class InboundLight extends BaseLight implements DirectionalLightSource {
 		return direction;
 	}
 
+	public void setDirection(Vector3D direction) {
+		this.direction = direction.getUnitVector();
+		scaledDirection = null;
+		fireLightSourceHasChanged();
+	}
+
 	@Override
 	public boolean isDirectional() {
 		return true;
@@ -27,4 +27,15 @@ public interface LightSource extends CameraObserver {
 	 */
 	boolean isDirectional();
 
+	/**
+	 * Registers an observer that is notified whenever the position, direction or brightness of this light source
+	 * changes
+	 * 
+	 * @param observer
+	 *            The observer
+	 */
+	void addObserver(LightSourceObserver observer);
+
+	void removeObserver(LightSourceObserver observer);
+
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package org.maia.graphics3d.model.light;
+
+public interface LightSourceObserver {
+
+	void lightSourceHasChanged(LightSource lightSource);
+
+}
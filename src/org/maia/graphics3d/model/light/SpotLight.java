@@ -56,6 +56,12 @@ public class SpotLight extends BaseLight implements PositionalLightSource {
 		return positionInWorld;
 	}
 
+	public void setPositionInWorld(Point3D positionInWorld) {
+		this.positionInWorld = positionInWorld;
+		invalidatePositionInCamera();
+		fireLightSourceHasChanged();
+	}
+
 	@Override
 	public boolean isStationary() {
 		return stationary;
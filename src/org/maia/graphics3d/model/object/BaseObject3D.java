@@ -10,6 +10,7 @@ import org.maia.graphics3d.geometry.LineSegment3D;
 import org.maia.graphics3d.geometry.Vector3D;
 import org.maia.graphics3d.model.CoordinateFrame;
 import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.CameraCache;
 import org.maia.graphics3d.model.scene.Scene;
 import org.maia.graphics3d.render.RenderOptions;
 import org.maia.graphics3d.render.ReusableObjectPack;
@@ -30,12 +31,13 @@ public abstract class BaseObject3D
 
 	private Box3D boundingBoxInWorldCoordinates; // cached bounding box
 
-	private Box3D boundingBoxInCameraCoordinates; // cached bounding box
+	private CameraCache<CameraState> cameraStates; // cached camera-dependent state, per camera
 
-	private Box3D boundingBoxInViewVolumeCoordinates; // cached bounding box
+	private boolean readOnly;
 
 	protected BaseObject3D() {
 		this.ownCompositeTransform = new TwoWayCompositeTransform3D();
+		this.cameraStates = new CameraCache<CameraState>();
 	}
 
 	@Override
@@ -159,6 +161,7 @@ public abstract class BaseObject3D
 
 	@Override
 	public BaseObject3D transform(TransformMatrix3D matrix) {
+		checkWritable();
 		getOwnCompositeTransform().then(matrix);
 		notifySelfHasTransformed();
 		return this;
@@ -166,6 +169,7 @@ public abstract class BaseObject3D
 
 	@Override
 	public BaseObject3D undoLastTransform() {
+		checkWritable();
 		getOwnCompositeTransform().undo();
 		notifySelfHasTransformed();
 		return this;
@@ -173,6 +177,7 @@ public abstract class BaseObject3D
 
 	@Override
 	public TransformableObject3D undoTransformsFrom(int stepIndex) {
+		checkWritable();
 		getOwnCompositeTransform().undoFrom(stepIndex);
 		notifySelfHasTransformed();
 		return this;
@@ -180,6 +185,7 @@ public abstract class BaseObject3D
 
 	@Override
 	public TransformableObject3D replaceTransformAt(int stepIndex, TransformMatrix3D matrix) {
+		checkWritable();
 		getOwnCompositeTransform().replace(stepIndex, matrix);
 		notifySelfHasTransformed();
 		return this;
@@ -187,6 +193,7 @@ public abstract class BaseObject3D
 
 	@Override
 	public BaseObject3D resetTransforms() {
+		checkWritable();
 		getOwnCompositeTransform().reset();
 		notifySelfHasTransformed();
 		return this;
@@ -197,6 +204,16 @@ public abstract class BaseObject3D
 		return getOwnCompositeTransform().getIndexOfCurrentStep();
 	}
 
+	/**
+	 * Returns the transform of this object itself, excluding the transforms of its ancestors
+	 *
+	 * @return The composite matrix of the transforms applied to this object
+	 * @see #getIndexOfCurrentTransformStep()
+	 */
+	public TransformMatrix3D getOwnTransformMatrix() {
+		return getOwnCompositeTransform().getForwardCompositeMatrix();
+	}
+
 	protected TwoWayCompositeTransform3D getOwnCompositeTransform() {
 		return ownCompositeTransform;
 	}
@@ -247,7 +264,50 @@ public abstract class BaseObject3D
 
 	@Override
 	public void cameraHasChanged(Camera camera) {
-		invalidateCameraBoundingBox();
+		invalidateCameraState(camera);
+	}
+
+	/**
+	 * Computes the derived data of this object that rendering the scene would otherwise compute lazily
+	 *
+	 * <p>
+	 * Subclasses that derive more data should override this method and call the super method. The derived data of the
+	 * parts of a composite object is not computed here.
+	 * </p>
+	 *
+	 * @param scene
+	 *            The scene that is about to be rendered, defining the camera
+	 * @see org.maia.graphics3d.model.scene.ScenePreparation
+	 */
+	public void prepareForRendering(Scene scene) {
+		Camera camera = scene.getCamera();
+		getBoundingBoxInObjectCoordinates();
+		getBoundingBoxInWorldCoordinates();
+		getBoundingBoxInCameraCoordinates(camera);
+		getBoundingBoxInViewVolumeCoordinates(camera);
+	}
+
+	/**
+	 * Tells whether this object is read-only
+	 *
+	 * <p>
+	 * A read-only object cannot be transformed, which keeps its derived data valid. Objects are typically read-only
+	 * while a scene is being rendered.
+	 * </p>
+	 *
+	 * @return <code>true</code> if this object is read-only
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	public void setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+	}
+
+	protected void checkWritable() {
+		if (isReadOnly())
+			throw new IllegalStateException("Object is read-only: " + this);
 	}
 
 	private void invalidateSelfToRootCompositeTransform() {
@@ -256,16 +316,60 @@ public abstract class BaseObject3D
 
 	private void invalidateWorldAndCameraBoundingBox() {
 		invalidateWorldBoundingBox();
-		invalidateCameraBoundingBox();
+		invalidateCameraStates();
 	}
 
 	private void invalidateWorldBoundingBox() {
 		boundingBoxInWorldCoordinates = null;
 	}
 
-	private void invalidateCameraBoundingBox() {
-		boundingBoxInCameraCoordinates = null;
-		boundingBoxInViewVolumeCoordinates = null;
+	private void invalidateCameraState(Camera camera) {
+		CameraState state = cameraStates.get(camera);
+		if (state != null) {
+			state.invalidate();
+		}
+	}
+
+	private void invalidateCameraStates() {
+		for (CameraState state : cameraStates.getValues()) {
+			state.invalidate();
+		}
+	}
+
+	/**
+	 * Discards the camera-dependent state of this object for all cameras
+	 */
+	protected void releaseCameraStates() {
+		cameraStates.clear();
+	}
+
+	/**
+	 * Returns the camera-dependent state of this object for a given camera
+	 *
+	 * <p>
+	 * The state is kept for a bounded number of cameras, so that the object can be rendered from several viewpoints
+	 * concurrently without the cameras invalidating each other's state.
+	 * </p>
+	 *
+	 * @param camera
+	 *            The camera
+	 * @return The state for <code>camera</code>, created when not cached before
+	 * @see CameraCache
+	 */
+	protected CameraState getCameraState(Camera camera) {
+		CameraState state = cameraStates.get(camera);
+		if (state == null) {
+			state = cameraStates.putIfAbsent(camera, createCameraState());
+		}
+		return state;
+	}
+
+	protected CameraState createCameraState() {
+		return new CameraState();
+	}
+
+	protected List<CameraState> getCameraStates() {
+		return cameraStates.getValues();
 	}
 
 	@Override
@@ -303,20 +407,22 @@ public abstract class BaseObject3D
 
 	@Override
 	public Box3D getBoundingBoxInCameraCoordinates(Camera camera) {
-		if (boundingBoxInCameraCoordinates == null) {
+		CameraState state = getCameraState(camera);
+		if (state.boundingBoxInCameraCoordinates == null) {
 			Metrics3D.getInstance().incrementBoundingBoxComputations();
-			boundingBoxInCameraCoordinates = deriveBoundingBoxInCameraCoordinates(camera);
+			state.boundingBoxInCameraCoordinates = deriveBoundingBoxInCameraCoordinates(camera);
 		}
-		return boundingBoxInCameraCoordinates;
+		return state.boundingBoxInCameraCoordinates;
 	}
 
 	@Override
 	public Box3D getBoundingBoxInViewVolumeCoordinates(Camera camera) {
-		if (boundingBoxInViewVolumeCoordinates == null) {
+		CameraState state = getCameraState(camera);
+		if (state.boundingBoxInViewVolumeCoordinates == null) {
 			Metrics3D.getInstance().incrementBoundingBoxComputations();
-			boundingBoxInViewVolumeCoordinates = deriveBoundingBoxInViewVolumeCoordinates(camera);
+			state.boundingBoxInViewVolumeCoordinates = deriveBoundingBoxInViewVolumeCoordinates(camera);
 		}
-		return boundingBoxInViewVolumeCoordinates;
+		return state.boundingBoxInViewVolumeCoordinates;
 	}
 
 	protected abstract Box3D deriveBoundingBoxInObjectCoordinates();
@@ -363,4 +469,46 @@ public abstract class BaseObject3D
 			Collection<ObjectSurfacePoint3D> intersections, RenderOptions options, ReusableObjectPack reusableObjects,
 			boolean applyShading, boolean rayFromEye);
 
+	/**
+	 * State of an object that depends on the camera, cached per camera
+	 *
+	 * <p>
+	 * Subclasses that cache more camera-dependent information should extend this class and override
+	 * {@link BaseObject3D#createCameraState()}.
+	 * </p>
+	 */
+	protected static class CameraState {
+
+		private Box3D boundingBoxInCameraCoordinates; // cached bounding box
+
+		private Box3D boundingBoxInViewVolumeCoordinates; // cached bounding box
+
+		private static final long BOX_BYTES = 64L;
+
+		protected CameraState() {
+		}
+
+		public void invalidate() {
+			boundingBoxInCameraCoordinates = null;
+			boundingBoxInViewVolumeCoordinates = null;
+		}
+
+		/**
+		 * Returns the approximate memory footprint of this state
+		 *
+		 * @return The size in bytes
+		 */
+		public long getEstimatedMemoryInBytes() {
+			long bytes = 64L; // including the cache entry
+			if (boundingBoxInCameraCoordinates != null) {
+				bytes += BOX_BYTES;
+			}
+			if (boundingBoxInViewVolumeCoordinates != null) {
+				bytes += BOX_BYTES;
+			}
+			return bytes;
+		}
+
+	}
+
 }
\ No newline at end of file
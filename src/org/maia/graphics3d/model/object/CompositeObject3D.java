@@ -2,8 +2,41 @@ package org.maia.graphics3d.model.object;
 
 import java.util.Collection;
 
+import org.maia.graphics3d.model.scene.Scene;
+
 public interface CompositeObject3D<T extends ComposableObject3D> extends Object3D {
 
 	Collection<T> getParts();
 
+	/**
+	 * Tells whether this object is a closed solid, meaning its polygonal parts form a closed shell with a consistent
+	 * vertex order
+	 */
+	boolean isClosedSolid();
+
+	/**
+	 * Tells whether the plane normals of the polygonal parts point to the outside of this closed solid
+	 * 
+	 * <p>
+	 * This is only meaningful when this object is a closed solid.
+	 * </p>
+	 * 
+	 * @see #isClosedSolid()
+	 */
+	boolean hasOutwardNormals();
+
+	/**
+	 * Tells whether all polygonal parts of this object, including those of nested composites, are fully opaque as
+	 * seen by the scene's camera
+	 * 
+	 * <p>
+	 * This is only meaningful when this object is a closed solid.
+	 * </p>
+	 * 
+	 * @param scene
+	 *            The scene, defining the camera
+	 * @see PolygonalObject3D#isFullyOpaque(Scene)
+	 */
+	boolean isFullyOpaque(Scene scene);
+
 }
@@ -21,15 +21,50 @@ import org.maia.graphics3d.geometry.Point3D;
  * it is a <em>simple</em> polygon, which does not intersect itself and has no holes</li>
  * </ul>
  * </p>
+ * <p>
+ * Rays are tested against the half-planes through the edges of the polygon, or directly against the triangle when the
+ * polygon has 3 vertices. Both tests are faster than the projected polygon test of <code>PolygonalObject3D</code>.
+ * </p>
  */
 public class ConvexPolygonalObject3D extends PolygonalObject3D {
 
 	public ConvexPolygonalObject3D(Point3D... vertices) {
 		super(vertices);
+		setInsidenessTest(getDefaultInsidenessTest());
 	}
 
 	public ConvexPolygonalObject3D(List<Point3D> vertices) {
 		super(vertices);
+		setInsidenessTest(getDefaultInsidenessTest());
+	}
+
+	public ConvexPolygonalObject3D(PackedMesh3D vertices) {
+		super(vertices);
+		setInsidenessTest(getDefaultInsidenessTest());
+	}
+
+	protected ConvexPolygonalObject3D(ConvexPolygonalObject3D original) {
+		super(original);
+	}
+
+	@Override
+	public ConvexPolygonalObject3D createMeshSharingCopy() {
+		return new ConvexPolygonalObject3D(this);
+	}
+
+	private PolygonInsidenessTest getDefaultInsidenessTest() {
+		if (getVertexCount() == 3) {
+			return PolygonInsidenessTest.TRIANGLE;
+		} else {
+			return PolygonInsidenessTest.EDGE_HALF_PLANES;
+		}
+	}
+
+	@Override
+	public boolean supportsInsidenessTest(PolygonInsidenessTest test) {
+		if (PolygonInsidenessTest.EDGE_HALF_PLANES.equals(test))
+			return true;
+		return super.supportsInsidenessTest(test);
 	}
 
 	@Override
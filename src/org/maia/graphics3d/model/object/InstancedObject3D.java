@@ -0,0 +1,341 @@
+package org.maia.graphics3d.model.object;
+
+import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.model.AccountableMemoise;
+import org.maia.graphics3d.model.MemoiseAccountant;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.ViewVolume;
+import org.maia.graphics3d.model.object.Mesh3D.Edge;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.render.RenderOptions;
+import org.maia.graphics3d.render.ReusableObjectPack;
+import org.maia.graphics3d.render.shading.FlatShadingModel;
+
+/**
+ * An instance of a shared <em>prototype</em> object, placed in the scene by its own transforms and optionally having
+ * its own material
+ *
+ * <p>
+ * Many instances can refer to the same prototype, whose meshes in object coordinates are shared by all of them. An
+ * instance only holds its transforms and material, so the memory taken up by a scene of instances grows with the
+ * number of unique vertices plus the number of instances, rather than with the number of instances times the number
+ * of vertices.
+ * </p>
+ * <p>
+ * To intersect with rays, an instance <em>expands</em> into a lightweight copy of the prototype's hierarchy, whose
+ * individual objects share the meshes of the prototype. The expansion is created lazily, on the first ray that reaches
+ * the instance, so the vertices of an instance are only transformed when it is hit or visible. The expansion is
+ * released along with the other memoised data of the instance.
+ * </p>
+ * <p>
+ * The prototype is not part of the scene itself. Its transforms and those of its parts define the shape of the
+ * instances, and should not change once instances are in use. The prototype's individual objects must be
+ * <code>VertexObject3D</code>s.
+ * </p>
+ *
+ * @see VertexObject3D#createMeshSharingCopy()
+ */
+public class InstancedObject3D extends BaseObject3D implements AccountableMemoise {
+
+	private BaseObject3D prototype;
+
+	private Color color;
+
+	private FlatShadingModel shadingModel;
+
+	private volatile Expansion expansion; // lazily created
+
+	private int lastUseEpoch;
+
+	private boolean accounted;
+
+	private static final List<Edge> NO_EDGES = Collections.emptyList();
+
+	/**
+	 * Creates an instance with the material of the prototype
+	 *
+	 * @param prototype
+	 *            The shared prototype object
+	 */
+	public InstancedObject3D(BaseObject3D prototype) {
+		this(prototype, null, null);
+	}
+
+	/**
+	 * Creates an instance with its own material
+	 *
+	 * @param prototype
+	 *            The shared prototype object
+	 * @param color
+	 *            The color of the faces of the instance, or <code>null</code> to keep the colors of the prototype
+	 * @param shadingModel
+	 *            The shading model of the faces of the instance, or <code>null</code> to keep the shading models of
+	 *            the prototype
+	 */
+	public InstancedObject3D(BaseObject3D prototype, Color color, FlatShadingModel shadingModel) {
+		this.prototype = prototype;
+		this.color = color;
+		this.shadingModel = shadingModel;
+	}
+
+	@Override
+	public final boolean isComposite() {
+		return false;
+	}
+
+	@Override
+	public final <T extends ComposableObject3D> CompositeObject3D<T> asCompositeObject() {
+		throw new ClassCastException();
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInObjectCoordinates() {
+		return getPrototype().getBoundingBoxInWorldCoordinates().clone();
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInWorldCoordinates() {
+		return getCornersInWorldCoordinates().deriveBoundingBox();
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInCameraCoordinates(Camera camera) {
+		return getCornersInCameraCoordinates(camera).deriveBoundingBox();
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInViewVolumeCoordinates(Camera camera) {
+		ViewVolume vv = camera.getViewVolume();
+		PackedMesh3D corners = getCornersInCameraCoordinates(camera);
+		corners.transform(vv.getProjectionMatrix(), corners, vv.isPerspectiveProjection());
+		return corners.deriveBoundingBox();
+	}
+
+	private PackedMesh3D getCornersInWorldCoordinates() {
+		// Corners of the bounding box in object coordinates, which bound the instance more tightly than the prototype
+		// bounding box in world coordinates
+		PackedMesh3D corners = new PackedMesh3D(getBoundingBoxInObjectCoordinates().getVertices(), NO_EDGES);
+		corners.transform(getSelfToRootCompositeTransform().getForwardCompositeMatrix(), corners, false);
+		return corners;
+	}
+
+	private PackedMesh3D getCornersInCameraCoordinates(Camera camera) {
+		PackedMesh3D corners = getCornersInWorldCoordinates();
+		corners.transform(camera.getViewingMatrix(), corners, false);
+		return corners;
+	}
+
+	@Override
+	protected void intersectSelfWithRay(LineSegment3D ray, Scene scene, Collection<ObjectSurfacePoint3D> intersections,
+			RenderOptions options, ReusableObjectPack reusableObjects, boolean applyShading, boolean rayFromEye) {
+		for (VertexObject3D object : getExpansion().getIndividualObjects()) {
+			object.intersectSelfWithRay(ray, scene, intersections, options, reusableObjects, applyShading, rayFromEye);
+		}
+	}
+
+	/**
+	 * Returns the individual objects of this instance, expanding the instance when needed
+	 *
+	 * <p>
+	 * The objects are copies of the prototype's individual objects that share their meshes, placed in the scene by
+	 * the transforms of this instance. They remain the same objects until the instance is transformed or its memory is
+	 * released.
+	 * </p>
+	 *
+	 * @return The individual objects
+	 */
+	public List<VertexObject3D> getIndividualObjects() {
+		return getExpansion().getIndividualObjects();
+	}
+
+	public boolean isExpanded() {
+		return expansion != null;
+	}
+
+	@Override
+	public void prepareForRendering(Scene scene) {
+		super.prepareForRendering(scene);
+		Camera camera = scene.getCamera();
+		if (getBoundingBoxInCameraCoordinates(camera).getZ1() <= camera.getViewVolume().getViewPlaneZ()) {
+			// Not before the view plane, so may be hit by eye rays
+			for (VertexObject3D object : getExpansion().getIndividualObjects()) {
+				object.prepareForRendering(scene);
+			}
+		}
+	}
+
+	private Expansion getExpansion() {
+		markUsed();
+		Expansion expansion = this.expansion; // may be released concurrently
+		if (expansion == null) {
+			synchronized (this) {
+				expansion = this.expansion;
+				if (expansion == null) {
+					expansion = createExpansion();
+					this.expansion = expansion;
+				}
+			}
+		}
+		return expansion;
+	}
+
+	private Expansion createExpansion() {
+		List<VertexObject3D> individualObjects = new Vector<VertexObject3D>();
+		BaseObject3D root = expand(getPrototype(), individualObjects);
+		root.transform(getSelfToRootCompositeTransform().getForwardCompositeMatrix());
+		return new Expansion(root, individualObjects);
+	}
+
+	private BaseObject3D expand(BaseObject3D original, List<VertexObject3D> individualObjects) {
+		BaseObject3D copy = null;
+		if (original.isComposite()) {
+			CompositeObject3D<BaseObject3D> composite = original.asCompositeObject();
+			MultipartObject3D<BaseObject3D> compositeCopy = new MultipartObject3D<BaseObject3D>();
+			for (BaseObject3D part : composite.getParts()) {
+				compositeCopy.addPart(expand(part, individualObjects));
+			}
+			compositeCopy.setClosedSolid(composite.isClosedSolid());
+			copy = compositeCopy;
+		} else if (original instanceof VertexObject3D) {
+			VertexObject3D objectCopy = ((VertexObject3D) original).createMeshSharingCopy();
+			applyMaterial(objectCopy);
+			individualObjects.add(objectCopy);
+			copy = objectCopy;
+		} else {
+			throw new UnsupportedOperationException("Cannot instance object of type " + original.getClass().getName());
+		}
+		if (original.getIndexOfCurrentTransformStep() >= 0) {
+			copy.transform(original.getOwnCompositeTransform().getForwardCompositeMatrix());
+		}
+		return copy;
+	}
+
+	private void applyMaterial(VertexObject3D object) {
+		if (object instanceof SimpleFace3D) {
+			SimpleFace3D face = (SimpleFace3D) object;
+			if (getColor() != null) {
+				face.setFrontColor(getColor());
+				face.setBackColor(getColor());
+			}
+			if (getShadingModel() != null) {
+				face.setShadingModel(getShadingModel());
+			}
+		}
+	}
+
+	private void releaseExpansion() {
+		expansion = null;
+	}
+
+	@Override
+	public void notifySelfHasTransformed() {
+		super.notifySelfHasTransformed();
+		releaseExpansion();
+	}
+
+	@Override
+	public void notifyAncestorHasTransformed() {
+		super.notifyAncestorHasTransformed();
+		releaseExpansion();
+	}
+
+	@Override
+	public void cameraHasChanged(Camera camera) {
+		super.cameraHasChanged(camera);
+		Expansion expansion = this.expansion;
+		if (expansion != null) {
+			expansion.getRoot().cameraHasChanged(camera);
+		}
+	}
+
+	@Override
+	public void releaseMemory() {
+		releaseExpansion();
+		releaseCameraStates();
+	}
+
+	@Override
+	public long getMemoisedBytes() {
+		// The expanded objects account for their own derived meshes
+		long bytes = 0;
+		Expansion expansion = this.expansion;
+		if (expansion != null) {
+			bytes += expansion.getEstimatedMemoryInBytes();
+		}
+		for (CameraState state : getCameraStates()) {
+			bytes += state.getEstimatedMemoryInBytes();
+		}
+		return bytes;
+	}
+
+	@Override
+	public int getLastUseEpoch() {
+		return lastUseEpoch;
+	}
+
+	private void markUsed() {
+		MemoiseAccountant accountant = MemoiseAccountant.getInstance();
+		if (!accountant.isMonitoring())
+			return;
+		int epoch = accountant.getEpoch();
+		if (lastUseEpoch != epoch) {
+			lastUseEpoch = epoch;
+		}
+		if (!accounted) {
+			accounted = true;
+			accountant.register(this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InstancedObject3D of " + getPrototype().getClass().getSimpleName();
+	}
+
+	public BaseObject3D getPrototype() {
+		return prototype;
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	public FlatShadingModel getShadingModel() {
+		return shadingModel;
+	}
+
+	private static class Expansion {
+
+		private BaseObject3D root;
+
+		private List<VertexObject3D> individualObjects;
+
+		private static final long OBJECT_BYTES = 400L; // including transforms and bounding boxes
+
+		public Expansion(BaseObject3D root, List<VertexObject3D> individualObjects) {
+			this.root = root;
+			this.individualObjects = individualObjects;
+		}
+
+		public long getEstimatedMemoryInBytes() {
+			return OBJECT_BYTES * (individualObjects.size() + 1);
+		}
+
+		public BaseObject3D getRoot() {
+			return root;
+		}
+
+		public List<VertexObject3D> getIndividualObjects() {
+			return individualObjects;
+		}
+
+	}
+
+}
@@ -0,0 +1,365 @@
+package org.maia.graphics3d.model.object;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.ViewVolume;
+import org.maia.graphics3d.model.object.Mesh3D.Edge;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.render.RenderOptions;
+import org.maia.graphics3d.render.ReusableObjectPack;
+
+/**
+ * A composite object that carries several levels of detail of the same shape, of which only one takes part in the
+ * scene at a time
+ *
+ * <p>
+ * The levels are ordered from the finest to the coarsest. Each level has a minimum <em>projected size</em>, being the
+ * largest side of the object's bounding box in view volume coordinates, relative to the size of the view plane. A
+ * level is selected for a camera when the object's projected size reaches its minimum, and no finer level qualifies.
+ * The coarsest level should have a minimum of zero, so that it is selected however small the object is projected.
+ * </p>
+ * <p>
+ * The selected level makes up the parts of this object, so the indices of a scene and its renderers only see the
+ * objects of that level. Selection is not automatic, but happens for a whole scene ahead of rendering, as it
+ * invalidates the scene's indices when any selection changes. The other levels are not rendered, and their memoised
+ * data is released when they get deselected. Until selected otherwise, the finest level is selected.
+ * </p>
+ * <p>
+ * The bounding box of this object bounds all of its levels, so it does not depend on the selection. It is derived
+ * from transient world meshes of the levels, which are not memoised for levels that are never rendered.
+ * </p>
+ * <p>
+ * The selection belongs to this object, not to a camera. When this object is shared by scenes with different
+ * cameras, all of them render the level selected last, and a selection for one camera releases the memoised data of
+ * the level another camera may still be rendering. Such scenes should therefore be selected and rendered one at a
+ * time.
+ * </p>
+ *
+ * @see Scene#selectLevelsOfDetail()
+ * @see org.maia.graphics3d.model.ModelBuilderUtils#buildLevelsOfDetail
+ */
+public class LevelOfDetailObject3D extends BaseObject3D implements CompositeObject3D<BaseObject3D> {
+
+	private List<BaseObject3D> levels;
+
+	private List<Double> minimumProjectedSizes;
+
+	private int selectedLevelIndex;
+
+	private Collection<BaseObject3D> selectedParts;
+
+	private static final List<Edge> NO_EDGES = Collections.emptyList();
+
+	public LevelOfDetailObject3D() {
+		this.levels = new Vector<BaseObject3D>();
+		this.minimumProjectedSizes = new Vector<Double>();
+		this.selectedParts = Collections.emptyList();
+	}
+
+	/**
+	 * Adds a level of detail, coarser than the levels added before
+	 *
+	 * @param level
+	 *            The object making up the level
+	 * @param minimumProjectedSize
+	 *            The projected size from which on the level is selected, relative to the size of the view plane
+	 * @throws IllegalArgumentException
+	 *             When the minimum projected size is negative, or exceeds the minimum of the previous level
+	 */
+	public void addLevel(BaseObject3D level, double minimumProjectedSize) {
+		checkWritable();
+		if (minimumProjectedSize < 0)
+			throw new IllegalArgumentException("Minimum projected size is negative: " + minimumProjectedSize);
+		int n = getLevelCount();
+		if (n > 0 && minimumProjectedSize > getMinimumProjectedSize(n - 1))
+			throw new IllegalArgumentException("Levels must be added from the finest to the coarsest");
+		level.setCompositeObject(this);
+		getLevels().add(level);
+		getMinimumProjectedSizes().add(minimumProjectedSize);
+		if (n == 0) {
+			selectedLevelIndex = 0;
+			selectedParts = Collections.singletonList(level);
+		}
+	}
+
+	/**
+	 * Selects the level of detail that fits the projected size of this object for a camera
+	 *
+	 * <p>
+	 * An object that straddles the view plane is considered to fill the view, and gets the finest level. An object
+	 * that lies entirely before the view plane, and thus out of sight, gets the coarsest level.
+	 * </p>
+	 *
+	 * @param camera
+	 *            The camera
+	 * @return <code>true</code> if the selection changed
+	 */
+	public boolean selectLevelOfDetail(Camera camera) {
+		int n = getLevelCount();
+		if (n <= 1)
+			return false;
+		double size = getProjectedSize(camera);
+		int index = n - 1;
+		for (int i = 0; i < n - 1; i++) {
+			if (size >= getMinimumProjectedSize(i)) {
+				index = i;
+				break;
+			}
+		}
+		return selectLevel(index);
+	}
+
+	/**
+	 * Selects a level of detail by its index
+	 *
+	 * @param levelIndex
+	 *            The index of the level, from 0 for the finest level
+	 * @return <code>true</code> if the selection changed
+	 */
+	public boolean selectLevel(int levelIndex) {
+		BaseObject3D level = getLevel(levelIndex);
+		if (levelIndex == getSelectedLevelIndex())
+			return false;
+		BaseObject3D deselected = getSelectedLevel();
+		selectedLevelIndex = levelIndex;
+		selectedParts = Collections.singletonList(level);
+		deselected.releaseMemory();
+		return true;
+	}
+
+	/**
+	 * Returns the projected size of this object for a camera
+	 *
+	 * @param camera
+	 *            The camera
+	 * @return The largest side of the bounding box in view volume coordinates, relative to the size of the view
+	 *         plane. When this object straddles the view plane, this is positive infinity. When this object lies
+	 *         entirely before the view plane, including behind the eye, this is zero
+	 */
+	public double getProjectedSize(Camera camera) {
+		Box3D cameraBox = getBoundingBoxInCameraCoordinates(camera);
+		double viewPlaneZ = camera.getViewVolume().getViewPlaneZ();
+		if (cameraBox.getZ1() > viewPlaneZ)
+			return 0;
+		if (cameraBox.getZ2() > viewPlaneZ)
+			return Double.POSITIVE_INFINITY;
+		Box3D box = getBoundingBoxInViewVolumeCoordinates(camera);
+		return Math.max(box.getWidth(), box.getHeight()) / 2.0; // the view plane spans [-1, 1]
+	}
+
+	@Override
+	public final boolean isComposite() {
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public final <T extends ComposableObject3D> CompositeObject3D<T> asCompositeObject() {
+		return (CompositeObject3D<T>) this;
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInObjectCoordinates() {
+		Box3D bbox = null;
+		for (BaseObject3D level : getLevels()) {
+			Box3D levelBox = level.getBoundingBoxInObjectCoordinates();
+			if (levelBox != null) {
+				if (bbox == null) {
+					bbox = levelBox.clone();
+				} else {
+					bbox.expandToContain(levelBox);
+				}
+			}
+		}
+		return bbox;
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInWorldCoordinates() {
+		Box3D bbox = null;
+		for (BaseObject3D level : getLevels()) {
+			bbox = expandToContainInWorldCoordinates(bbox, level);
+		}
+		return bbox;
+	}
+
+	private static Box3D expandToContainInWorldCoordinates(Box3D bbox, Object3D object) {
+		Box3D box = null;
+		if (object instanceof VertexObject3D) {
+			box = deriveTransientBoundingBoxInWorldCoordinates((VertexObject3D) object);
+		} else if (object.isComposite() && !(object instanceof LevelOfDetailObject3D)) {
+			for (Object3D part : object.asCompositeObject().getParts()) {
+				bbox = expandToContainInWorldCoordinates(bbox, part);
+			}
+		} else if (object.isBounded()) {
+			box = object.asBoundedObject().getBoundingBoxInWorldCoordinates();
+		}
+		if (box != null) {
+			if (bbox == null) {
+				bbox = box.clone();
+			} else {
+				bbox.expandToContain(box);
+			}
+		}
+		return bbox;
+	}
+
+	private static Box3D deriveTransientBoundingBoxInWorldCoordinates(VertexObject3D object) {
+		// Transforms into a mesh of its own, leaving the object's memoised world mesh untouched
+		PackedMesh3D mesh = object.getMeshInObjectCoordinates();
+		PackedMesh3D meshInWorldCoordinates = new PackedMesh3D(mesh.getVertexCount(), NO_EDGES,
+				mesh.isSinglePrecision());
+		mesh.transform(object.getSelfToRootCompositeTransform().getForwardCompositeMatrix(), meshInWorldCoordinates,
+				false);
+		return meshInWorldCoordinates.deriveBoundingBox();
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInCameraCoordinates(Camera camera) {
+		PackedMesh3D corners = getCornersInCameraCoordinates(camera);
+		return corners != null ? corners.deriveBoundingBox() : null;
+	}
+
+	@Override
+	protected Box3D deriveBoundingBoxInViewVolumeCoordinates(Camera camera) {
+		PackedMesh3D corners = getCornersInCameraCoordinates(camera);
+		if (corners == null)
+			return null;
+		ViewVolume vv = camera.getViewVolume();
+		corners.transform(vv.getProjectionMatrix(), corners, vv.isPerspectiveProjection());
+		return corners.deriveBoundingBox();
+	}
+
+	private PackedMesh3D getCornersInCameraCoordinates(Camera camera) {
+		// Derived from the world box, which saves deriving the camera meshes of every level
+		Box3D box = getBoundingBoxInWorldCoordinates();
+		if (box == null)
+			return null;
+		PackedMesh3D corners = new PackedMesh3D(box.getVertices(), NO_EDGES);
+		corners.transform(camera.getViewingMatrix(), corners, false);
+		return corners;
+	}
+
+	@Override
+	public final void intersectWithEyeRay(LineSegment3D ray, Scene scene,
+			Collection<ObjectSurfacePoint3D> intersections, RenderOptions options, ReusableObjectPack reusableObjects) {
+		for (BaseObject3D part : getParts()) {
+			part.intersectWithEyeRay(ray, scene, intersections, options, reusableObjects);
+		}
+	}
+
+	@Override
+	public final void intersectWithLightRay(LineSegment3D ray, Scene scene,
+			Collection<ObjectSurfacePoint3D> intersections, ReusableObjectPack reusableObjects) {
+		for (BaseObject3D part : getParts()) {
+			part.intersectWithLightRay(ray, scene, intersections, reusableObjects);
+		}
+	}
+
+	@Override
+	protected final void intersectSelfWithRay(LineSegment3D ray, Scene scene,
+			Collection<ObjectSurfacePoint3D> intersections, RenderOptions options, ReusableObjectPack reusableObjects,
+			boolean applyShading, boolean rayFromEye) {
+		// nothing to do, intersections only apply to parts
+	}
+
+	@Override
+	public void notifySelfHasTransformed() {
+		super.notifySelfHasTransformed();
+		fireAncestorHasTransformedOnLevels();
+	}
+
+	@Override
+	public void notifyAncestorHasTransformed() {
+		super.notifyAncestorHasTransformed();
+		fireAncestorHasTransformedOnLevels();
+	}
+
+	@Override
+	public void cameraHasChanged(Camera camera) {
+		super.cameraHasChanged(camera);
+		for (BaseObject3D level : getLevels()) {
+			level.cameraHasChanged(camera);
+		}
+	}
+
+	@Override
+	public void releaseMemory() {
+		releaseCameraStates();
+		for (BaseObject3D level : getLevels()) {
+			level.releaseMemory();
+		}
+	}
+
+	private void fireAncestorHasTransformedOnLevels() {
+		// All levels, as their cached transforms and world boxes outlive a deselection
+		for (BaseObject3D level : getLevels()) {
+			level.notifyAncestorHasTransformed();
+		}
+	}
+
+	/**
+	 * Returns the parts of this object, being the selected level of detail
+	 *
+	 * @return A collection holding the selected level, or an empty collection when this object has no levels
+	 */
+	@Override
+	public Collection<BaseObject3D> getParts() {
+		return selectedParts;
+	}
+
+	@Override
+	public boolean isClosedSolid() {
+		return false; // a level may be a closed solid of its own
+	}
+
+	@Override
+	public boolean hasOutwardNormals() {
+		return false;
+	}
+
+	@Override
+	public boolean isFullyOpaque(Scene scene) {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "LevelOfDetailObject3D at level " + getSelectedLevelIndex() + " of " + getLevelCount();
+	}
+
+	public int getLevelCount() {
+		return getLevels().size();
+	}
+
+	public BaseObject3D getLevel(int levelIndex) {
+		return getLevels().get(levelIndex);
+	}
+
+	public double getMinimumProjectedSize(int levelIndex) {
+		return getMinimumProjectedSizes().get(levelIndex);
+	}
+
+	public int getSelectedLevelIndex() {
+		return selectedLevelIndex;
+	}
+
+	public BaseObject3D getSelectedLevel() {
+		return getLevelCount() > 0 ? getLevel(getSelectedLevelIndex()) : null;
+	}
+
+	public List<BaseObject3D> getLevels() {
+		return levels;
+	}
+
+	private List<Double> getMinimumProjectedSizes() {
+		return minimumProjectedSizes;
+	}
+
+}
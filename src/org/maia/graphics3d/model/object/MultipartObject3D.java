@@ -2,10 +2,12 @@ package org.maia.graphics3d.model.object;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
 
 import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.geometry.Point3D;
 import org.maia.graphics3d.model.CoordinateFrame;
 import org.maia.graphics3d.model.camera.Camera;
 import org.maia.graphics3d.model.scene.Scene;
@@ -16,6 +18,10 @@ public class MultipartObject3D<T extends ComposableObject3D> extends BaseObject3
 
 	private Collection<T> parts;
 
+	private boolean closedSolid;
+
+	private Boolean outwardNormals; // lazily derived, in world coordinates
+
 	public MultipartObject3D() {
 		this.parts = new Vector<T>();
 	}
@@ -33,6 +39,7 @@ public class MultipartObject3D<T extends ComposableObject3D> extends BaseObject3
 
 	@SuppressWarnings("unchecked")
 	public void addPart(T part) {
+		checkWritable();
 		if (part instanceof BaseObject3D) {
 			((BaseObject3D) part).setCompositeObject((CompositeObject3D<BaseObject3D>) this);
 		}
@@ -120,12 +127,14 @@ public class MultipartObject3D<T extends ComposableObject3D> extends BaseObject3
 	@Override
 	public void notifySelfHasTransformed() {
 		super.notifySelfHasTransformed();
+		invalidateOutwardNormals();
 		fireAncestorHasTransformedOnParts();
 	}
 
 	@Override
 	public void notifyAncestorHasTransformed() {
 		super.notifyAncestorHasTransformed();
+		invalidateOutwardNormals();
 		fireAncestorHasTransformedOnParts();
 	}
 
@@ -135,6 +144,15 @@ public class MultipartObject3D<T extends ComposableObject3D> extends BaseObject3
 		fireCameraHasChangedOnParts(camera);
 	}
 
+	@Override
+	public void prepareForRendering(Scene scene) {
+		super.prepareForRendering(scene);
+		if (isClosedSolid()) {
+			hasOutwardNormals();
+			isFullyOpaque(scene);
+		}
+	}
+
 	@Override
 	public final void releaseMemory() {
 		for (Iterator<T> it = getParts().iterator(); it.hasNext();) {
@@ -163,4 +181,104 @@ public class MultipartObject3D<T extends ComposableObject3D> extends BaseObject3
 		return parts;
 	}
 
+	@Override
+	public boolean isClosedSolid() {
+		return closedSolid;
+	}
+
+	/**
+	 * Marks this object as a closed solid, or not
+	 * 
+	 * <p>
+	 * A <em>closed solid</em> is a composite whose polygonal parts, including those of nested composites, together
+	 * form a closed shell with a consistent vertex order. That is, every edge is shared by exactly two polygons that
+	 * traverse it in opposite directions. When all of its faces are fully opaque, the faces on the rear side of such a
+	 * shell can never be seen by the camera, and are skipped when tracing eye rays.
+	 * </p>
+	 * 
+	 * @param closedSolid
+	 *            <code>true</code> if this object is a closed solid
+	 * @see SimpleFace3D#isBackFaceOfClosedSolid(Scene)
+	 */
+	public void setClosedSolid(boolean closedSolid) {
+		this.closedSolid = closedSolid;
+	}
+
+	@Override
+	public boolean hasOutwardNormals() {
+		if (outwardNormals == null) {
+			outwardNormals = Boolean.valueOf(deriveSignedVolume(this) >= 0);
+		}
+		return outwardNormals.booleanValue();
+	}
+
+	private static double deriveSignedVolume(CompositeObject3D<?> composite) {
+		// Sum of the signed volumes of the tetrahedra spanned by the origin and a fan of triangles of every polygon
+		double volume = 0;
+		for (Object3D part : composite.getParts()) {
+			if (part instanceof PolygonalObject3D) {
+				List<Point3D> vertices = ((PolygonalObject3D) part).getVerticesInWorldCoordinates();
+				Point3D p0 = vertices.get(0);
+				for (int i = 1; i < vertices.size() - 1; i++) {
+					Point3D p1 = vertices.get(i);
+					Point3D p2 = vertices.get(i + 1);
+					volume += p0.getX() * (p1.getY() * p2.getZ() - p1.getZ() * p2.getY())
+							+ p0.getY() * (p1.getZ() * p2.getX() - p1.getX() * p2.getZ())
+							+ p0.getZ() * (p1.getX() * p2.getY() - p1.getY() * p2.getX());
+				}
+			} else if (part.isComposite()) {
+				volume += deriveSignedVolume(part.asCompositeObject());
+			}
+		}
+		return volume;
+	}
+
+	@Override
+	public boolean isFullyOpaque(Scene scene) {
+		MultipartCameraState state = (MultipartCameraState) getCameraState(scene.getCamera());
+		Boolean fullyOpaque = state.fullyOpaque;
+		if (fullyOpaque == null) {
+			fullyOpaque = Boolean.valueOf(deriveFullyOpaque(this, scene));
+			state.fullyOpaque = fullyOpaque;
+		}
+		return fullyOpaque.booleanValue();
+	}
+
+	private static boolean deriveFullyOpaque(CompositeObject3D<?> composite, Scene scene) {
+		for (Object3D part : composite.getParts()) {
+			if (part instanceof PolygonalObject3D) {
+				if (!((PolygonalObject3D) part).isFullyOpaque(scene))
+					return false;
+			} else if (part.isComposite()) {
+				if (!deriveFullyOpaque(part.asCompositeObject(), scene))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private void invalidateOutwardNormals() {
+		outwardNormals = null;
+	}
+
+	@Override
+	protected CameraState createCameraState() {
+		return new MultipartCameraState();
+	}
+
+	protected static class MultipartCameraState extends CameraState {
+
+		private Boolean fullyOpaque; // derived, cached
+
+		protected MultipartCameraState() {
+		}
+
+		@Override
+		public void invalidate() {
+			super.invalidate();
+			fullyOpaque = null;
+		}
+
+	}
+
 }
@@ -18,6 +18,30 @@ public class ObjectSurfacePoint3DImpl implements ObjectSurfacePoint3D {
 		this.color = color;
 	}
 
+	/**
+	 * Reinitializes this surface point, so it can be reused without creating new objects
+	 * 
+	 * @param object
+	 *            The object
+	 * @param x
+	 *            The <em>x</em>-coordinate of the position in camera coordinates
+	 * @param y
+	 *            The <em>y</em>-coordinate of the position in camera coordinates
+	 * @param z
+	 *            The <em>z</em>-coordinate of the position in camera coordinates
+	 * @param color
+	 *            The color
+	 */
+	public void reset(Object3D object, double x, double y, double z, Color color) {
+		Point3D position = getPositionInCamera();
+		position.setX(x);
+		position.setY(y);
+		position.setZ(z);
+		position.setW(1.0);
+		this.object = object;
+		this.color = color;
+	}
+
 	@Override
 	public Object3D getObject() {
 		return object;
@@ -0,0 +1,327 @@
+package org.maia.graphics3d.model.object;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.maia.graphics3d.GeometryPrecision;
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.model.OffHeapGeometryStore;
+import org.maia.graphics3d.transform.TransformMatrix3D;
+
+/**
+ * A <code>Mesh3D</code> that stores the coordinates of its vertices in a flat array of primitives
+ *
+ * <p>
+ * The vertices are stored as consecutive <em>(x, y, z)</em> triples, with an implied homogeneous coordinate
+ * <em>w</em> of 1. Transforming a mesh writes straight into the coordinate array of a target mesh, which can be reused
+ * between transformations, so no per-vertex objects are involved. The vertices are only materialized as
+ * <code>Point3D</code> objects when requested through {@link #getVertices()}, for client code that is not
+ * performance-critical.
+ * </p>
+ * <p>
+ * A mesh stores its coordinates either in double or in single precision, as set by <code>GeometryPrecision</code> at
+ * the time of creation. In single precision, the coordinates are read back as doubles and transformations are
+ * computed in double precision, so only the stored values are rounded.
+ * </p>
+ * <p>
+ * The coordinates of a mesh that is not transformed into, like the mesh of an object in object coordinates, can be
+ * moved to an <code>OffHeapGeometryStore</code>, keeping them out of the heap. Such a mesh remains fully usable, but
+ * can no longer be the target of a transformation.
+ * </p>
+ *
+ * @see GeometryPrecision
+ * @see #moveToStore(OffHeapGeometryStore)
+ */
+public class PackedMesh3D implements Mesh3D {
+
+	private double[] coordinates; // null when stored in single precision
+
+	private float[] singlePrecisionCoordinates; // null when stored in double precision
+
+	private OffHeapGeometryStore.Block storedCoordinates; // null unless moved off-heap
+
+	private int vertexCount;
+
+	private List<Edge> edges;
+
+	private List<Point3D> vertices; // lazily materialized
+
+	public PackedMesh3D(List<Point3D> vertices, List<Edge> edges) {
+		this(vertices.size(), edges);
+		for (int i = 0; i < vertexCount; i++) {
+			Point3D vertex = vertices.get(i);
+			double w = vertex.getW();
+			setCoordinate(3 * i, vertex.getX() / w);
+			setCoordinate(3 * i + 1, vertex.getY() / w);
+			setCoordinate(3 * i + 2, vertex.getZ() / w);
+		}
+	}
+
+	/**
+	 * Creates a mesh from a selection of vertices in a flat array of coordinates
+	 *
+	 * <p>
+	 * The coordinates of the selected vertices are copied, in the precision set by <code>GeometryPrecision</code>, so
+	 * no <code>Point3D</code> objects are involved. The mesh does not refer to the array afterwards.
+	 * </p>
+	 *
+	 * @param sourceCoordinates
+	 *            The coordinates of the vertices to select from, as consecutive <em>(x, y, z)</em> triples
+	 * @param vertexIndices
+	 *            The indices of the selected vertices into <code>sourceCoordinates</code>
+	 * @param offset
+	 *            The position in <code>vertexIndices</code> of the index of the first vertex of this mesh
+	 * @param vertexCount
+	 *            The number of vertices of this mesh
+	 * @param edges
+	 *            The edges of this mesh
+	 */
+	public PackedMesh3D(double[] sourceCoordinates, int[] vertexIndices, int offset, int vertexCount,
+			List<Edge> edges) {
+		this(vertexCount, edges);
+		for (int i = 0; i < vertexCount; i++) {
+			int j = 3 * vertexIndices[offset + i];
+			setCoordinate(3 * i, sourceCoordinates[j]);
+			setCoordinate(3 * i + 1, sourceCoordinates[j + 1]);
+			setCoordinate(3 * i + 2, sourceCoordinates[j + 2]);
+		}
+	}
+
+	/**
+	 * Creates a mesh whose coordinates are already stored off-heap
+	 *
+	 * <p>
+	 * The coordinates are not copied, so the mesh reads them straight from the block, in the precision of the block.
+	 * </p>
+	 *
+	 * @param storedCoordinates
+	 *            The coordinates of the vertices, as consecutive <em>(x, y, z)</em> triples
+	 * @param edges
+	 *            The edges of this mesh
+	 * @see #isStoredOffHeap()
+	 */
+	public PackedMesh3D(OffHeapGeometryStore.Block storedCoordinates, List<Edge> edges) {
+		this.storedCoordinates = storedCoordinates;
+		this.vertexCount = storedCoordinates.size() / 3;
+		this.edges = edges;
+	}
+
+	public PackedMesh3D(int vertexCount, List<Edge> edges) {
+		this(vertexCount, edges, GeometryPrecision.getInstance().isSinglePrecision());
+	}
+
+	public PackedMesh3D(int vertexCount, List<Edge> edges, boolean singlePrecision) {
+		if (singlePrecision) {
+			this.singlePrecisionCoordinates = new float[3 * vertexCount];
+		} else {
+			this.coordinates = new double[3 * vertexCount];
+		}
+		this.vertexCount = vertexCount;
+		this.edges = edges;
+	}
+
+	private void setCoordinate(int index, double value) {
+		if (coordinates != null) {
+			coordinates[index] = value;
+		} else {
+			singlePrecisionCoordinates[index] = (float) value;
+		}
+	}
+
+	/**
+	 * Transforms the vertices of this mesh into another mesh
+	 *
+	 * @param matrix
+	 *            The transformation matrix
+	 * @param target
+	 *            The mesh receiving the transformed vertices, having the same number of vertices and the same
+	 *            precision as this mesh. It may be this mesh itself
+	 * @param normalizeToUnitW
+	 *            When <code>true</code>, the transformed vertices are normalized to a unit homogeneous coordinate, as
+	 *            required for a perspective projection
+	 */
+	public void transform(TransformMatrix3D matrix, PackedMesh3D target, boolean normalizeToUnitW) {
+		if (isSinglePrecision() != target.isSinglePrecision())
+			throw new IllegalArgumentException("Target mesh has a different precision");
+		if (target.isStoredOffHeap())
+			throw new IllegalArgumentException("Target mesh is stored off-heap");
+		if (isStoredOffHeap()) {
+			// Copies into the target, then transforms in place
+			target.copyFrom(storedCoordinates);
+			target.transform(matrix, target, normalizeToUnitW);
+			return;
+		}
+		if (isSinglePrecision()) {
+			matrix.transform(singlePrecisionCoordinates, target.singlePrecisionCoordinates, getVertexCount(),
+					normalizeToUnitW);
+		} else {
+			matrix.transform(getCoordinates(), target.getCoordinates(), getVertexCount(), normalizeToUnitW);
+		}
+		target.invalidateVertices();
+	}
+
+	private void copyFrom(OffHeapGeometryStore.Block block) {
+		int n = 3 * getVertexCount();
+		if (coordinates != null) {
+			for (int i = 0; i < n; i++) {
+				coordinates[i] = block.get(i);
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				singlePrecisionCoordinates[i] = (float) block.get(i);
+			}
+		}
+	}
+
+	/**
+	 * Moves the coordinates of the vertices of this mesh out of the heap, into a store
+	 *
+	 * <p>
+	 * The mesh keeps its precision. It can still be read and transformed from, but no longer be transformed into.
+	 * Moving a mesh that is already stored off-heap has no effect.
+	 * </p>
+	 *
+	 * @param store
+	 *            The store receiving the coordinates
+	 * @see #isStoredOffHeap()
+	 */
+	public synchronized void moveToStore(OffHeapGeometryStore store) {
+		if (isStoredOffHeap())
+			return;
+		int n = 3 * getVertexCount();
+		OffHeapGeometryStore.Block block = isSinglePrecision() ? store.allocateFloats(n) : store.allocateDoubles(n);
+		for (int i = 0; i < n; i++) {
+			block.set(i, coordinates != null ? coordinates[i] : singlePrecisionCoordinates[i]);
+		}
+		storedCoordinates = block;
+		coordinates = null;
+		singlePrecisionCoordinates = null;
+	}
+
+	public Box3D deriveBoundingBox() {
+		Box3D bbox = null;
+		int n = getVertexCount();
+		if (n > 0) {
+			double x1 = getX(0), x2 = x1;
+			double y1 = getY(0), y2 = y1;
+			double z1 = getZ(0), z2 = z1;
+			for (int i = 1; i < n; i++) {
+				double x = getX(i);
+				double y = getY(i);
+				double z = getZ(i);
+				x1 = Math.min(x1, x);
+				x2 = Math.max(x2, x);
+				y1 = Math.min(y1, y);
+				y2 = Math.max(y2, y);
+				z1 = Math.min(z1, z);
+				z2 = Math.max(z2, z);
+			}
+			bbox = new Box3D(x1, x2, y1, y2, z1, z2);
+		}
+		return bbox;
+	}
+
+	@Override
+	public List<Point3D> getVertices() {
+		if (vertices == null) {
+			vertices = materializeVertices();
+		}
+		return vertices;
+	}
+
+	private List<Point3D> materializeVertices() {
+		int n = getVertexCount();
+		List<Point3D> vertices = new Vector<Point3D>(n);
+		for (int i = 0; i < n; i++) {
+			vertices.add(getVertex(i));
+		}
+		return vertices;
+	}
+
+	private void invalidateVertices() {
+		vertices = null;
+	}
+
+	public Point3D getVertex(int index) {
+		return new Point3D(getX(index), getY(index), getZ(index));
+	}
+
+	public double getX(int index) {
+		if (coordinates != null) {
+			return coordinates[3 * index];
+		} else if (singlePrecisionCoordinates != null) {
+			return singlePrecisionCoordinates[3 * index];
+		} else {
+			return storedCoordinates.get(3 * index);
+		}
+	}
+
+	public double getY(int index) {
+		if (coordinates != null) {
+			return coordinates[3 * index + 1];
+		} else if (singlePrecisionCoordinates != null) {
+			return singlePrecisionCoordinates[3 * index + 1];
+		} else {
+			return storedCoordinates.get(3 * index + 1);
+		}
+	}
+
+	public double getZ(int index) {
+		if (coordinates != null) {
+			return coordinates[3 * index + 2];
+		} else if (singlePrecisionCoordinates != null) {
+			return singlePrecisionCoordinates[3 * index + 2];
+		} else {
+			return storedCoordinates.get(3 * index + 2);
+		}
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Returns the approximate heap memory footprint of this mesh, excluding the edges which are typically shared
+	 *
+	 * @return The size in bytes, excluding the coordinates when stored off-heap
+	 */
+	public long getEstimatedMemoryInBytes() {
+		long bytes = 64L;
+		if (!isStoredOffHeap()) {
+			bytes += (isSinglePrecision() ? 4L : 8L) * 3 * vertexCount;
+		}
+		if (vertices != null) {
+			bytes += 48L + 56L * vertexCount;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the packed coordinates of the vertices of this mesh
+	 *
+	 * @return The coordinates as consecutive <em>(x, y, z)</em> triples, or <code>null</code> when this mesh is stored
+	 *         in single precision or off-heap. Client code should not modify the array
+	 * @see #isSinglePrecision()
+	 * @see #isStoredOffHeap()
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	public boolean isSinglePrecision() {
+		if (storedCoordinates != null)
+			return storedCoordinates.isSinglePrecision();
+		return coordinates == null;
+	}
+
+	public boolean isStoredOffHeap() {
+		return storedCoordinates != null;
+	}
+
+	@Override
+	public List<Edge> getEdges() {
+		return edges;
+	}
+
+}
@@ -0,0 +1,37 @@
+package org.maia.graphics3d.model.object;
+
+/**
+ * The test by which a <code>PolygonalObject3D</code> decides whether a ray hits its surface
+ *
+ * @see PolygonalObject3D#setInsidenessTest(PolygonInsidenessTest)
+ */
+public enum PolygonInsidenessTest {
+
+	/**
+	 * Intersects the ray with the plane of the polygon, then projects the hit onto one of the coordinate planes and
+	 * tests it against the projected polygon. Suits any simple polygon
+	 */
+	PROJECTED_POLYGON,
+
+	/**
+	 * Intersects the ray with the plane of the polygon, then tests the hit against the half-planes through the edges
+	 * of the polygon, in camera coordinates. Suits convex polygons only
+	 */
+	EDGE_HALF_PLANES,
+
+	/**
+	 * Intersects the ray directly with the triangle, following M&ouml;ller and Trumbore, without intersecting the
+	 * plane first. Suits triangles only
+	 */
+	TRIANGLE,
+
+	/**
+	 * Intersects the ray with the plane of the polygon, then projects the hit onto one of the coordinate planes and
+	 * tests it against the nearby triangles of a triangulation of the polygon. Suits any simple polygon, and pays off
+	 * for non-convex polygons with many vertices
+	 *
+	 * @see PolygonTriangulation
+	 */
+	TRIANGULATION;
+
+}
@@ -0,0 +1,196 @@
+package org.maia.graphics3d.model.object;
+
+/**
+ * A triangulation of a simple polygon, by ear clipping
+ *
+ * <p>
+ * The triangles are expressed as triples of vertex indices into the polygon, so a triangulation remains valid under
+ * any affine transformation of the polygon. It is computed once, in object coordinates, and can be shared by all
+ * objects sharing the same vertices.
+ * </p>
+ * <p>
+ * Ear clipping runs on the polygon projected onto the coordinate plane most parallel to it, and takes quadratic time
+ * in the number of vertices. Collinear vertices are clipped without producing a triangle. Collinearity is judged by
+ * the angle between edges rather than by area, so it does not depend on the size of the polygon nor on the length of
+ * its edges.
+ * </p>
+ *
+ * @see PolygonInsidenessTest#TRIANGULATION
+ */
+public class PolygonTriangulation {
+
+	private int[] triangles; // vertex index triples
+
+	private int triangleCount;
+
+	private static final double APPROXIMATE_ZERO = 0.000001;
+
+	private PolygonTriangulation(int[] triangles, int triangleCount) {
+		this.triangles = triangles;
+		this.triangleCount = triangleCount;
+	}
+
+	/**
+	 * Triangulates a planar, simple polygon
+	 *
+	 * @param mesh
+	 *            The vertices of the polygon, in order
+	 * @return The triangulation
+	 * @throws IllegalArgumentException
+	 *             When the polygon has less than 3 vertices, or is not simple
+	 */
+	public static PolygonTriangulation triangulate(PackedMesh3D mesh) {
+		int n = mesh.getVertexCount();
+		if (n < 3)
+			throw new IllegalArgumentException("Cannot triangulate a polygon of " + n + " vertices");
+		double[] uv = projectOntoDominantPlane(mesh);
+		// Doubly linked list of remaining vertices, in counter-clockwise order
+		int[] prev = new int[n];
+		int[] next = new int[n];
+		boolean reverse = signedArea(uv) < 0;
+		for (int i = 0; i < n; i++) {
+			int p = (i + n - 1) % n;
+			int q = (i + 1) % n;
+			prev[i] = reverse ? q : p;
+			next[i] = reverse ? p : q;
+		}
+		int[] triangles = new int[3 * (n - 2)];
+		int triangleCount = 0;
+		int remaining = n;
+		int current = 0;
+		int failures = 0; // consecutive vertices that are not an ear
+		while (remaining > 3) {
+			int p = prev[current];
+			int q = next[current];
+			double turn = cross(uv, p, current, q);
+			boolean clip = false;
+			if (isCollinear(uv, p, current, q, turn)) {
+				clip = true; // collinear, no triangle
+			} else if (turn > 0 && isEar(uv, prev, next, p, current, q)) {
+				triangles[3 * triangleCount] = p;
+				triangles[3 * triangleCount + 1] = current;
+				triangles[3 * triangleCount + 2] = q;
+				triangleCount++;
+				clip = true;
+			}
+			if (clip) {
+				next[p] = q;
+				prev[q] = p;
+				remaining--;
+				failures = 0;
+				current = p;
+			} else {
+				if (++failures > remaining)
+					throw new IllegalArgumentException("Cannot triangulate a polygon that is not simple");
+				current = q;
+			}
+		}
+		int p = prev[current];
+		int q = next[current];
+		if (!isCollinear(uv, p, current, q, cross(uv, p, current, q))) {
+			triangles[3 * triangleCount] = p;
+			triangles[3 * triangleCount + 1] = current;
+			triangles[3 * triangleCount + 2] = q;
+			triangleCount++;
+		}
+		return new PolygonTriangulation(triangles, triangleCount);
+	}
+
+	private static double[] projectOntoDominantPlane(PackedMesh3D mesh) {
+		// Newell's method gives the normal of a non-convex polygon
+		int n = mesh.getVertexCount();
+		double nx = 0, ny = 0, nz = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			nx += (mesh.getY(i) - mesh.getY(j)) * (mesh.getZ(i) + mesh.getZ(j));
+			ny += (mesh.getZ(i) - mesh.getZ(j)) * (mesh.getX(i) + mesh.getX(j));
+			nz += (mesh.getX(i) - mesh.getX(j)) * (mesh.getY(i) + mesh.getY(j));
+		}
+		double ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+		double[] uv = new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			if (az >= ax && az >= ay) {
+				uv[2 * i] = mesh.getX(i);
+				uv[2 * i + 1] = mesh.getY(i);
+			} else if (ay >= ax) {
+				uv[2 * i] = mesh.getZ(i);
+				uv[2 * i + 1] = mesh.getX(i);
+			} else {
+				uv[2 * i] = mesh.getY(i);
+				uv[2 * i + 1] = mesh.getZ(i);
+			}
+		}
+		return uv;
+	}
+
+	private static double signedArea(double[] uv) {
+		int n = uv.length / 2;
+		double area = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			area += uv[2 * i] * uv[2 * j + 1] - uv[2 * j] * uv[2 * i + 1];
+		}
+		return area / 2;
+	}
+
+	private static boolean isCollinear(double[] uv, int p, int i, int q, double turn) {
+		// The sine of the turn at i is the cross product normalised by the lengths of both edges
+		return Math.abs(turn) <= APPROXIMATE_ZERO * distance(uv, p, i) * distance(uv, i, q);
+	}
+
+	private static boolean isEar(double[] uv, int[] prev, int[] next, int p, int i, int q) {
+		// No other remaining vertex may lie inside or on the candidate triangle
+		for (int k = next[q]; k != p; k = next[k]) {
+			if (isLeftOrOn(uv, p, i, k) && isLeftOrOn(uv, i, q, k) && isLeftOrOn(uv, q, p, k)) {
+				if (!coincides(uv, k, p) && !coincides(uv, k, i) && !coincides(uv, k, q))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isLeftOrOn(double[] uv, int a, int b, int c) {
+		// Tells whether c lies left of the edge from a to b, or on it within an angular tolerance
+		return cross(uv, a, b, c) >= -APPROXIMATE_ZERO * distance(uv, a, b) * distance(uv, a, c);
+	}
+
+	private static double distance(double[] uv, int a, int b) {
+		double du = uv[2 * b] - uv[2 * a];
+		double dv = uv[2 * b + 1] - uv[2 * a + 1];
+		return Math.sqrt(du * du + dv * dv);
+	}
+
+	private static boolean coincides(double[] uv, int i, int j) {
+		return uv[2 * i] == uv[2 * j] && uv[2 * i + 1] == uv[2 * j + 1];
+	}
+
+	private static double cross(double[] uv, int a, int b, int c) {
+		double ux = uv[2 * b] - uv[2 * a];
+		double uy = uv[2 * b + 1] - uv[2 * a + 1];
+		double vx = uv[2 * c] - uv[2 * a];
+		double vy = uv[2 * c + 1] - uv[2 * a + 1];
+		return ux * vy - uy * vx;
+	}
+
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+
+	/**
+	 * Returns a vertex of a triangle
+	 *
+	 * @param triangle
+	 *            The index of the triangle, ranging from 0 to the number of triangles minus 1
+	 * @param corner
+	 *            The corner of the triangle, ranging from 0 to 2
+	 * @return The index of the vertex in the polygon
+	 */
+	public int getVertexIndex(int triangle, int corner) {
+		return triangles[3 * triangle + corner];
+	}
+
+	public long getEstimatedMemoryInBytes() {
+		return 32L + 4L * triangles.length;
+	}
+
+}
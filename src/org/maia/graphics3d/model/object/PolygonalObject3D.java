@@ -3,10 +3,10 @@ package org.maia.graphics3d.model.object;
 import java.awt.Color;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.maia.graphics2d.geometry.Point2D;
 import org.maia.graphics2d.geometry.Polygon2D;
@@ -40,35 +40,66 @@ import org.maia.util.ColorUtils;
  */
 public class PolygonalObject3D extends VertexObject3D {
 
-	private Plane3D planeCamera; // in camera coordinates
+	private static Map<Integer, List<Edge>> reusableEdgesMap = new ConcurrentHashMap<Integer, List<Edge>>();
 
-	private ProjectionState projectionState;
+	private static final double APPROXIMATE_ZERO = 0.000001;
 
-	private static Map<Integer, List<Edge>> reusableEdgesMap = new HashMap<Integer, List<Edge>>();
+	private PolygonInsidenessTest insidenessTest;
 
-	private static final double APPROXIMATE_ZERO = 0.000001;
+	private PolygonTriangulation triangulation; // computed when first needed, in object coordinates
 
 	public PolygonalObject3D(Point3D... vertices) {
 		this(Arrays.asList(vertices));
 	}
 
 	public PolygonalObject3D(List<Point3D> vertices) {
-		super(vertices, getPolygonEdges(vertices));
-		this.projectionState = createProjectionState();
+		super(vertices, getPolygonEdges(vertices.size()));
+		this.insidenessTest = PolygonInsidenessTest.PROJECTED_POLYGON;
+	}
+
+	/**
+	 * Creates a polygon from a packed mesh of its vertices
+	 *
+	 * @param vertices
+	 *            The vertices of the polygon, in order, with the edges returned by {@link #getPolygonEdges(int)}
+	 */
+	public PolygonalObject3D(PackedMesh3D vertices) {
+		super(vertices);
+		this.insidenessTest = PolygonInsidenessTest.PROJECTED_POLYGON;
+	}
+
+	protected PolygonalObject3D(PolygonalObject3D original) {
+		super(original);
+		this.insidenessTest = original.getInsidenessTest();
+		this.triangulation = original.triangulation;
+	}
+
+	@Override
+	public PolygonalObject3D createMeshSharingCopy() {
+		return new PolygonalObject3D(this);
 	}
 
-	private static List<Edge> getPolygonEdges(List<Point3D> vertices) {
-		Integer cacheKey = vertices.size();
+	/**
+	 * Returns the edges of a polygon, connecting consecutive vertices
+	 *
+	 * @param vertexCount
+	 *            The number of vertices of the polygon
+	 * @return The edges, shared by all polygons with the same number of vertices
+	 */
+	public static List<Edge> getPolygonEdges(int vertexCount) {
+		Integer cacheKey = vertexCount;
 		List<Edge> edges = reusableEdgesMap.get(cacheKey);
 		if (edges == null) {
-			edges = createPolygonEdges(vertices);
-			reusableEdgesMap.put(cacheKey, edges);
+			edges = createPolygonEdges(vertexCount);
+			List<Edge> existingEdges = reusableEdgesMap.putIfAbsent(cacheKey, edges);
+			if (existingEdges != null) {
+				edges = existingEdges; // created concurrently by another thread
+			}
 		}
 		return edges;
 	}
 
-	private static List<Edge> createPolygonEdges(List<Point3D> vertices) {
-		int n = vertices.size();
+	private static List<Edge> createPolygonEdges(int n) {
 		List<Edge> edges = new Vector<Edge>(n);
 		for (int i = 0; i < n; i++) {
 			int j = (i + 1) % n;
@@ -95,7 +126,8 @@ public class PolygonalObject3D extends VertexObject3D {
 	@Override
 	protected void intersectSelfWithRay(LineSegment3D ray, Scene scene, Collection<ObjectSurfacePoint3D> intersections,
 			RenderOptions options, ReusableObjectPack reusableObjects, boolean applyShading, boolean rayFromEye) {
-		ObjectSurfacePoint3D surfacePoint = findSurfacePointHitByRay(ray, scene, intersections, rayFromEye);
+		ObjectSurfacePoint3D surfacePoint = findSurfacePointHitByRay(ray, scene, intersections, reusableObjects,
+				rayFromEye);
 		if (surfacePoint != null) {
 			colorSurfacePointHitByRay(surfacePoint, scene, options, reusableObjects, applyShading);
 			if (surfacePoint.getColor() != null) {
@@ -105,10 +137,10 @@ public class PolygonalObject3D extends VertexObject3D {
 	}
 
 	protected ObjectSurfacePoint3D findSurfacePointHitByRay(LineSegment3D ray, Scene scene,
-			Collection<ObjectSurfacePoint3D> intersections, boolean rayFromEye) {
+			Collection<ObjectSurfacePoint3D> intersections, ReusableObjectPack reusableObjects, boolean rayFromEye) {
 		ObjectSurfacePoint3D surfacePoint = null;
-		Point3D positionInCamera = ray.intersect(getPlaneInCameraCoordinates(scene.getCamera()));
-		if (positionInCamera != null) {
+		Point3D positionInCamera = reusableObjects.getPointOnPlane();
+		if (intersectWithRay(ray, scene.getCamera(), positionInCamera)) {
 			// Early out (performance optimalization)
 			boolean earlyOut = false;
 			if (rayFromEye) {
@@ -119,40 +151,136 @@ public class PolygonalObject3D extends VertexObject3D {
 			if (!earlyOut) {
 				// Check insideness
 				if (containsPointOnPlane(positionInCamera, scene)) {
-					surfacePoint = new ObjectSurfacePoint3DImpl(this, positionInCamera, null);
+					surfacePoint = reusableObjects.obtainSurfacePoint(this, positionInCamera.getX(),
+							positionInCamera.getY(), positionInCamera.getZ(), null);
 				}
 			}
 		}
 		return surfacePoint;
 	}
 
+	private boolean intersectWithRay(LineSegment3D ray, Camera camera, Point3D target) {
+		if (PolygonInsidenessTest.TRIANGLE.equals(getInsidenessTest())) {
+			return intersectTriangleWithRay(ray, camera, target);
+		} else {
+			return ray.intersect(getPlaneInCameraCoordinates(camera), target);
+		}
+	}
+
+	private boolean intersectTriangleWithRay(LineSegment3D ray, Camera camera, Point3D target) {
+		// Moller-Trumbore, with the ray parameterized from p1 (r = 0) to p2 (r = 1)
+		Metrics3D.getInstance().incrementPointInsidePolygonChecks();
+		double[] triangle = getTriangleInCameraCoordinates(camera);
+		double e1x = triangle[3], e1y = triangle[4], e1z = triangle[5];
+		double e2x = triangle[6], e2y = triangle[7], e2z = triangle[8];
+		Point3D origin = ray.getP1();
+		Vector3D direction = ray.getDirection();
+		double dx = direction.getX(), dy = direction.getY(), dz = direction.getZ();
+		double px = dy * e2z - dz * e2y;
+		double py = dz * e2x - dx * e2z;
+		double pz = dx * e2y - dy * e2x;
+		double det = e1x * px + e1y * py + e1z * pz;
+		if (det == 0)
+			return false; // parallel to the triangle
+		double inv = 1.0 / det;
+		double sx = origin.getX() - triangle[0];
+		double sy = origin.getY() - triangle[1];
+		double sz = origin.getZ() - triangle[2];
+		double u = (sx * px + sy * py + sz * pz) * inv;
+		if (u < 0 || u > 1.0)
+			return false;
+		double qx = sy * e1z - sz * e1y;
+		double qy = sz * e1x - sx * e1z;
+		double qz = sx * e1y - sy * e1x;
+		double v = (dx * qx + dy * qy + dz * qz) * inv;
+		if (v < 0 || u + v > 1.0)
+			return false;
+		double r = (e2x * qx + e2y * qy + e2z * qz) * inv;
+		if (!ray.containsPointAtRelativePosition(r))
+			return false;
+		target.setX(origin.getX() + r * dx);
+		target.setY(origin.getY() + r * dy);
+		target.setZ(origin.getZ() + r * dz);
+		target.setW(1.0);
+		return true;
+	}
+
 	private ObjectSurfacePoint3D getOpaqueIntersectionNearestToEye(Collection<ObjectSurfacePoint3D> intersections) {
 		ObjectSurfacePoint3D nearestOpaque = null;
 		if (!intersections.isEmpty()) {
 			double nearestDepth = 0;
-			for (ObjectSurfacePoint3D intersection : intersections) {
-				double depth = -intersection.getPositionInCamera().getZ();
-				if ((nearestOpaque == null || depth < nearestDepth)
-						&& ColorUtils.isFullyOpaque(intersection.getColor())) {
-					nearestOpaque = intersection;
-					nearestDepth = depth;
+			if (intersections instanceof List) {
+				// Indexed access avoids creating an iterator for every ray
+				List<ObjectSurfacePoint3D> list = (List<ObjectSurfacePoint3D>) intersections;
+				for (int i = 0; i < list.size(); i++) {
+					ObjectSurfacePoint3D intersection = list.get(i);
+					double depth = -intersection.getPositionInCamera().getZ();
+					if ((nearestOpaque == null || depth < nearestDepth)
+							&& ColorUtils.isFullyOpaque(intersection.getColor())) {
+						nearestOpaque = intersection;
+						nearestDepth = depth;
+					}
+				}
+			} else {
+				for (ObjectSurfacePoint3D intersection : intersections) {
+					double depth = -intersection.getPositionInCamera().getZ();
+					if ((nearestOpaque == null || depth < nearestDepth)
+							&& ColorUtils.isFullyOpaque(intersection.getColor())) {
+						nearestOpaque = intersection;
+						nearestDepth = depth;
+					}
 				}
 			}
 		}
 		return nearestOpaque;
 	}
 
+	/**
+	 * Tells whether a point where a ray hits the plane of this polygon lies inside the polygon
+	 * 
+	 * <p>
+	 * With the {@link PolygonInsidenessTest#TRIANGLE} test, insideness is established while intersecting the ray, so
+	 * every point passed in lies inside. Subclasses may override this method to further restrict the surface.
+	 * </p>
+	 * 
+	 * @param positionInCamera
+	 *            The point, in camera coordinates
+	 * @param scene
+	 *            The scene
+	 * @return <code>true</code> if the point lies inside the polygon
+	 * @see #getInsidenessTest()
+	 */
 	protected boolean containsPointOnPlane(Point3D positionInCamera, Scene scene) {
+		PolygonInsidenessTest test = getInsidenessTest();
+		if (PolygonInsidenessTest.TRIANGLE.equals(test))
+			return true;
 		boolean contains = false;
 		if (insideBoundingBox(positionInCamera, scene)) {
-			ProjectionState ps = getProjectionState();
-			ps.setScene(scene);
-			contains = ps.getPolygon().contains(ps.project(positionInCamera)); // inside-test with 2D-projected polygon
+			if (PolygonInsidenessTest.EDGE_HALF_PLANES.equals(test)) {
+				contains = insideEdgeHalfPlanes(positionInCamera, scene.getCamera());
+			} else if (PolygonInsidenessTest.TRIANGULATION.equals(test)) {
+				contains = getProjectionState(scene).containsInTriangulation(positionInCamera);
+			} else {
+				ProjectionState ps = getProjectionState(scene);
+				contains = ps.contains(positionInCamera); // inside-test with 2D-projected polygon
+			}
 			Metrics3D.getInstance().incrementPointInsidePolygonChecks();
 		}
 		return contains;
 	}
 
+	private boolean insideEdgeHalfPlanes(Point3D positionInCamera, Camera camera) {
+		double[] edgePlanes = getEdgePlanesInCameraCoordinates(camera);
+		double x = positionInCamera.getX();
+		double y = positionInCamera.getY();
+		double z = positionInCamera.getZ();
+		for (int i = 0; i < edgePlanes.length; i += 4) {
+			if (edgePlanes[i] * x + edgePlanes[i + 1] * y + edgePlanes[i + 2] * z + edgePlanes[i + 3] < -APPROXIMATE_ZERO)
+				return false;
+		}
+		return true;
+	}
+
 	private boolean insideBoundingBox(Point3D positionInCamera, Scene scene) {
 		Box3D bbox = getBoundingBoxInCameraCoordinates(scene.getCamera());
 		if (bbox.getWidth() <= APPROXIMATE_ZERO || bbox.getHeight() <= APPROXIMATE_ZERO
@@ -170,6 +298,100 @@ public class PolygonalObject3D extends VertexObject3D {
 		return bbox.contains(positionInCamera);
 	}
 
+	/**
+	 * Tells whether this polygon is fully opaque over its entire surface, as seen by the scene's camera
+	 * 
+	 * <p>
+	 * When <code>true</code>, the polygon hides whatever lies behind it, which allows renderers to determine visibility
+	 * without tracing rays through it. Subclasses should override this method, as the default is a conservative
+	 * <code>false</code>.
+	 * </p>
+	 * 
+	 * @param scene
+	 *            The scene of the polygon
+	 * @return <code>true</code> if the polygon is guaranteed to be fully opaque
+	 */
+	public boolean isFullyOpaque(Scene scene) {
+		return false;
+	}
+
+	/**
+	 * Samples the shaded color of this polygon as a whole, for renderers that fill polygons with a single color
+	 * 
+	 * <p>
+	 * The color is sampled at the centroid of the polygon's vertices, and is shaded in the same way as the surface
+	 * points hit by rays.
+	 * </p>
+	 * 
+	 * @param scene
+	 *            The scene of the polygon
+	 * @param options
+	 *            The options that apply to the shading
+	 * @param reusableObjects
+	 *            Reusable objects for the calling thread
+	 * @return The shaded color, or <code>null</code> when the polygon has no color at its centroid
+	 */
+	public Color sampleFlatShadedColor(Scene scene, RenderOptions options, ReusableObjectPack reusableObjects) {
+		PackedMesh3D mesh = getMeshInCameraCoordinates(scene.getCamera());
+		int n = mesh.getVertexCount();
+		double x = 0, y = 0, z = 0;
+		for (int i = 0; i < n; i++) {
+			x += mesh.getX(i);
+			y += mesh.getY(i);
+			z += mesh.getZ(i);
+		}
+		ObjectSurfacePoint3D surfacePoint = new ObjectSurfacePoint3DImpl(this, new Point3D(x / n, y / n, z / n), null);
+		colorSurfacePointHitByRay(surfacePoint, scene, options, reusableObjects, true);
+		return surfacePoint.getColor();
+	}
+
+	/**
+	 * Colors a point on the surface of this polygon that was found to be hit by an eye ray by other means than
+	 * {@link #intersectWithEyeRay(LineSegment3D, Scene, Collection, RenderOptions, ReusableObjectPack)}
+	 * 
+	 * @param surfacePoint
+	 *            The surface point hit by the eye ray, which receives the shaded color
+	 * @param scene
+	 *            The scene of the polygon
+	 * @param options
+	 *            The options that apply to the shading
+	 * @param reusableObjects
+	 *            Reusable objects for the calling thread
+	 * @see org.maia.graphics3d.model.scene.CompiledSceneGeometry
+	 */
+	public void colorSurfacePointHitByEyeRay(ObjectSurfacePoint3D surfacePoint, Scene scene, RenderOptions options,
+			ReusableObjectPack reusableObjects) {
+		colorSurfacePointHitByRay(surfacePoint, scene, options, reusableObjects, true);
+	}
+
+	/**
+	 * Returns the base color of this polygon when it is the same over its entire surface, as seen by the scene's camera
+	 * 
+	 * <p>
+	 * A polygon with a uniform base color is also assumed to be hit wherever its geometrical shape is hit. Subclasses
+	 * should override this method, as the default is a conservative <code>null</code>.
+	 * </p>
+	 * 
+	 * @param scene
+	 *            The scene of the polygon
+	 * @return The uniform base color, or <code>null</code> if the color may vary over the surface
+	 */
+	public Color getUniformBaseColor(Scene scene) {
+		return null;
+	}
+
+	/**
+	 * Returns the projection onto a 2D plane that is used for testing whether a point on the plane of this polygon lies
+	 * inside the polygon
+	 * 
+	 * @param scene
+	 *            The scene of the polygon
+	 * @return The orthographic projection of points in camera coordinates
+	 */
+	public OrthographicProjection getInsidenessProjection(Scene scene) {
+		return getProjectionState(scene).getProjection();
+	}
+
 	protected void colorSurfacePointHitByRay(ObjectSurfacePoint3D surfacePoint, Scene scene, RenderOptions options,
 			ReusableObjectPack reusableObjects, boolean applyShading) {
 		Color color = sampleBaseColor(surfacePoint.getPositionInCamera(), scene);
@@ -191,55 +413,215 @@ public class PolygonalObject3D extends VertexObject3D {
 	}
 
 	public Plane3D getPlaneInCameraCoordinates(Camera camera) {
-		if (planeCamera == null) {
-			planeCamera = derivePlaneInCameraCoordinates(camera);
+		PolygonCameraState state = (PolygonCameraState) getCameraState(camera);
+		if (state.plane == null) {
+			state.plane = derivePlaneInCameraCoordinates(camera);
 		}
-		return planeCamera;
+		return state.plane;
 	}
 
 	private Plane3D derivePlaneInCameraCoordinates(Camera camera) {
-		List<Point3D> vertices = getVerticesInCameraCoordinates(camera);
-		return new Plane3D(vertices.get(0), vertices.get(1), vertices.get(2));
+		PackedMesh3D mesh = getMeshInCameraCoordinates(camera);
+		return new Plane3D(mesh.getVertex(0), mesh.getVertex(1), mesh.getVertex(2));
 	}
 
-	@Override
-	public void notifySelfHasTransformed() {
-		super.notifySelfHasTransformed();
-		invalidatePlane();
-		invalidateProjectionState();
+	private double[] getEdgePlanesInCameraCoordinates(Camera camera) {
+		PolygonCameraState state = (PolygonCameraState) getCameraState(camera);
+		if (state.edgePlanes == null) {
+			state.edgePlanes = deriveEdgePlanesInCameraCoordinates(camera);
+		}
+		return state.edgePlanes;
 	}
 
-	@Override
-	public void notifyAncestorHasTransformed() {
-		super.notifyAncestorHasTransformed();
-		invalidatePlane();
-		invalidateProjectionState();
+	private double[] deriveEdgePlanesInCameraCoordinates(Camera camera) {
+		// Planes through the edges and perpendicular to the polygon, with unit normals pointing inwards
+		PackedMesh3D mesh = getMeshInCameraCoordinates(camera);
+		Vector3D normal = getPlaneInCameraCoordinates(camera).getNormalUnitVector();
+		double nx = normal.getX(), ny = normal.getY(), nz = normal.getZ();
+		int n = mesh.getVertexCount();
+		double cx = 0, cy = 0, cz = 0;
+		for (int i = 0; i < n; i++) {
+			cx += mesh.getX(i);
+			cy += mesh.getY(i);
+			cz += mesh.getZ(i);
+		}
+		cx /= n;
+		cy /= n;
+		cz /= n;
+		double[] edgePlanes = new double[4 * n];
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double ex = mesh.getX(j) - mesh.getX(i);
+			double ey = mesh.getY(j) - mesh.getY(i);
+			double ez = mesh.getZ(j) - mesh.getZ(i);
+			double mx = ny * ez - nz * ey;
+			double my = nz * ex - nx * ez;
+			double mz = nx * ey - ny * ex;
+			double length = Math.sqrt(mx * mx + my * my + mz * mz);
+			if (length > 0) {
+				mx /= length;
+				my /= length;
+				mz /= length;
+			}
+			double d = -(mx * mesh.getX(i) + my * mesh.getY(i) + mz * mesh.getZ(i));
+			double sign = mx * cx + my * cy + mz * cz + d < 0 ? -1.0 : 1.0; // the centroid lies inside
+			edgePlanes[4 * i] = sign * mx;
+			edgePlanes[4 * i + 1] = sign * my;
+			edgePlanes[4 * i + 2] = sign * mz;
+			edgePlanes[4 * i + 3] = sign * d;
+		}
+		return edgePlanes;
 	}
 
-	@Override
-	public void cameraHasChanged(Camera camera) {
-		super.cameraHasChanged(camera);
-		invalidatePlane();
-		invalidateProjectionState();
+	private double[] getTriangleInCameraCoordinates(Camera camera) {
+		PolygonCameraState state = (PolygonCameraState) getCameraState(camera);
+		if (state.triangle == null) {
+			state.triangle = deriveTriangleInCameraCoordinates(camera);
+		}
+		return state.triangle;
+	}
+
+	private double[] deriveTriangleInCameraCoordinates(Camera camera) {
+		// The first vertex, followed by the edges from the first to the second and third vertex
+		PackedMesh3D mesh = getMeshInCameraCoordinates(camera);
+		double[] triangle = new double[9];
+		triangle[0] = mesh.getX(0);
+		triangle[1] = mesh.getY(0);
+		triangle[2] = mesh.getZ(0);
+		for (int i = 1; i <= 2; i++) {
+			triangle[3 * i] = mesh.getX(i) - triangle[0];
+			triangle[3 * i + 1] = mesh.getY(i) - triangle[1];
+			triangle[3 * i + 2] = mesh.getZ(i) - triangle[2];
+		}
+		return triangle;
 	}
 
 	@Override
-	public void releaseMemory() {
-		super.releaseMemory();
-		invalidatePlane();
-		invalidateProjectionState();
+	public void prepareForRendering(Scene scene) {
+		super.prepareForRendering(scene);
+		Camera camera = scene.getCamera();
+		getPlaneInCameraCoordinates(camera);
+		PolygonInsidenessTest test = getInsidenessTest();
+		if (PolygonInsidenessTest.EDGE_HALF_PLANES.equals(test)) {
+			getEdgePlanesInCameraCoordinates(camera);
+		} else if (PolygonInsidenessTest.TRIANGLE.equals(test)) {
+			getTriangleInCameraCoordinates(camera);
+		} else if (PolygonInsidenessTest.TRIANGULATION.equals(test)) {
+			getProjectionState(scene).getTriangleGrid();
+		} else {
+			getProjectionState(scene).getProjectedVertices();
+		}
 	}
 
-	private void invalidatePlane() {
-		planeCamera = null;
+	/**
+	 * Tells whether this polygon can decide on ray hits with the given test
+	 * 
+	 * @param test
+	 *            The insideness test
+	 * @return <code>true</code> if the test suits the shape of this polygon
+	 */
+	public boolean supportsInsidenessTest(PolygonInsidenessTest test) {
+		if (PolygonInsidenessTest.PROJECTED_POLYGON.equals(test))
+			return true;
+		if (PolygonInsidenessTest.TRIANGLE.equals(test))
+			return getVertexCount() == 3;
+		if (PolygonInsidenessTest.TRIANGULATION.equals(test))
+			return getVertexCount() >= 3;
+		return false;
+	}
+
+	public PolygonInsidenessTest getInsidenessTest() {
+		return insidenessTest;
+	}
+
+	/**
+	 * Sets the test by which this polygon decides whether a ray hits its surface
+	 * 
+	 * <p>
+	 * Selecting the {@link PolygonInsidenessTest#TRIANGULATION} test triangulates the polygon right away, so this is
+	 * best done when building the model. The triangulation is kept with the polygon and shared by its mesh-sharing
+	 * copies. The polygon itself remains the source of the edges and bounding boxes.
+	 * </p>
+	 * 
+	 * @param test
+	 *            The insideness test
+	 * @throws IllegalArgumentException
+	 *             When the test does not suit the shape of this polygon, or the polygon cannot be triangulated
+	 * @see #supportsInsidenessTest(PolygonInsidenessTest)
+	 */
+	public void setInsidenessTest(PolygonInsidenessTest test) {
+		if (!supportsInsidenessTest(test))
+			throw new IllegalArgumentException("Unsupported insideness test for " + getClass().getSimpleName() + ": "
+					+ test);
+		checkWritable();
+		if (PolygonInsidenessTest.TRIANGULATION.equals(test) && triangulation == null) {
+			triangulation = PolygonTriangulation.triangulate(getMeshInObjectCoordinates());
+		}
+		this.insidenessTest = test;
 	}
 
-	private void invalidateProjectionState() {
-		getProjectionState().invalidate();
+	public PolygonTriangulation getTriangulation() {
+		return triangulation;
 	}
 
-	private ProjectionState getProjectionState() {
-		return projectionState;
+	private ProjectionState getProjectionState(Scene scene) {
+		ProjectionState ps = ((PolygonCameraState) getCameraState(scene.getCamera())).projectionState;
+		ps.setScene(scene);
+		return ps;
+	}
+
+	@Override
+	protected CameraState createCameraState() {
+		return new PolygonCameraState(createProjectionState());
+	}
+
+	protected static class PolygonCameraState extends VertexCameraState {
+
+		private Plane3D plane; // in camera coordinates
+
+		private double[] edgePlanes; // per edge (nx, ny, nz, d), in camera coordinates
+
+		private double[] triangle; // (x0, y0, z0) and two edge vectors, in camera coordinates
+
+		private ProjectionState projectionState;
+
+		protected PolygonCameraState(ProjectionState projectionState) {
+			this.projectionState = projectionState;
+		}
+
+		@Override
+		public void invalidate() {
+			super.invalidate();
+			plane = null;
+			edgePlanes = null;
+			triangle = null;
+			projectionState.invalidate();
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = super.getEstimatedMemoryInBytes() + 48L; // including the projection state
+			if (plane != null) {
+				bytes += 160L;
+			}
+			if (projectionState.polygon != null) {
+				bytes += 96L + 40L * getVertexCount();
+			}
+			if (projectionState.projectedVertices != null) {
+				bytes += 16L + 16L * getVertexCount();
+			}
+			if (projectionState.triangleGrid != null) {
+				bytes += projectionState.triangleGrid.getEstimatedMemoryInBytes();
+			}
+			if (edgePlanes != null) {
+				bytes += 16L + 32L * getVertexCount();
+			}
+			if (triangle != null) {
+				bytes += 88L;
+			}
+			return bytes;
+		}
+
 	}
 
 	protected class ProjectionState {
@@ -248,6 +630,10 @@ public class PolygonalObject3D extends VertexObject3D {
 
 		private Polygon2D polygon;
 
+		private double[] projectedVertices; // (u, v) per vertex, in the same projection as the polygon
+
+		private TriangleGrid triangleGrid;
+
 		private Scene scene;
 
 		public ProjectionState() {
@@ -257,16 +643,109 @@ public class PolygonalObject3D extends VertexObject3D {
 		public void invalidate() {
 			projection = null;
 			polygon = null;
+			projectedVertices = null;
+			triangleGrid = null;
+		}
+
+		/**
+		 * Tells whether a point on the plane of the polygon lies inside the polygon, by a crossing number test on the
+		 * projected polygon
+		 * 
+		 * <p>
+		 * This test runs on arrays of primitives and does not create any objects, as it is carried out for every ray
+		 * that hits the plane.
+		 * </p>
+		 * 
+		 * @param point
+		 *            The point, in camera coordinates
+		 * @return <code>true</code> if the projected point lies inside the projected polygon
+		 */
+		public boolean contains(Point3D point) {
+			OrthographicProjection projection = getProjection();
+			double u = projectU(projection, point.getX(), point.getZ());
+			double v = projectV(projection, point.getY(), point.getZ());
+			double[] vertices = getProjectedVertices();
+			int n = vertices.length;
+			boolean inside = false;
+			for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+				double ui = vertices[i], vi = vertices[i + 1];
+				double uj = vertices[j], vj = vertices[j + 1];
+				if ((vi > v) != (vj > v) && u < (uj - ui) * (v - vi) / (vj - vi) + ui) {
+					inside = !inside;
+				}
+			}
+			return inside;
+		}
+
+		/**
+		 * Tells whether a point on the plane of the polygon lies inside the polygon, by testing the projected point
+		 * against the nearby projected triangles of the polygon's triangulation
+		 * 
+		 * @param point
+		 *            The point, in camera coordinates
+		 * @return <code>true</code> if the projected point lies inside one of the projected triangles
+		 * @see PolygonalObject3D#getTriangulation()
+		 */
+		public boolean containsInTriangulation(Point3D point) {
+			OrthographicProjection projection = getProjection();
+			double u = projectU(projection, point.getX(), point.getZ());
+			double v = projectV(projection, point.getY(), point.getZ());
+			return getTriangleGrid().contains(u, v);
+		}
+
+		private TriangleGrid getTriangleGrid() {
+			TriangleGrid grid = triangleGrid;
+			if (grid == null) {
+				grid = new TriangleGrid(getProjectedVertices(), getTriangulation());
+				triangleGrid = grid;
+			}
+			return grid;
+		}
+
+		private double[] getProjectedVertices() {
+			double[] vertices = projectedVertices;
+			if (vertices == null) {
+				OrthographicProjection projection = getProjection();
+				PackedMesh3D mesh = getMeshInCameraCoordinates(getScene().getCamera());
+				int n = mesh.getVertexCount();
+				vertices = new double[2 * n];
+				for (int i = 0; i < n; i++) {
+					vertices[2 * i] = projectU(projection, mesh.getX(i), mesh.getZ(i));
+					vertices[2 * i + 1] = projectV(projection, mesh.getY(i), mesh.getZ(i));
+				}
+				projectedVertices = vertices;
+			}
+			return vertices;
+		}
+
+		private double projectU(OrthographicProjection projection, double x, double z) {
+			if (OrthographicProjection.ONTO_YZ_PLANE.equals(projection)) {
+				return -z;
+			} else {
+				return x;
+			}
+		}
+
+		private double projectV(OrthographicProjection projection, double y, double z) {
+			if (OrthographicProjection.ONTO_XZ_PLANE.equals(projection)) {
+				return z;
+			} else {
+				return y;
+			}
 		}
 
 		public Point2D project(Point3D point) {
+			return project(point.getX(), point.getY(), point.getZ());
+		}
+
+		private Point2D project(double x, double y, double z) {
 			OrthographicProjection projection = getProjection();
 			if (OrthographicProjection.ONTO_XY_PLANE.equals(projection)) {
-				return new Point2D(point.getX(), point.getY());
+				return new Point2D(x, y);
 			} else if (OrthographicProjection.ONTO_XZ_PLANE.equals(projection)) {
-				return new Point2D(point.getX(), point.getZ());
+				return new Point2D(x, z);
 			} else if (OrthographicProjection.ONTO_YZ_PLANE.equals(projection)) {
-				return new Point2D(-point.getZ(), point.getY());
+				return new Point2D(-z, y);
 			}
 			return null;
 		}
@@ -279,6 +758,15 @@ public class PolygonalObject3D extends VertexObject3D {
 			return projected;
 		}
 
+		public List<Point2D> project(PackedMesh3D mesh) {
+			int n = mesh.getVertexCount();
+			List<Point2D> projected = new Vector<Point2D>(n);
+			for (int i = 0; i < n; i++) {
+				projected.add(project(mesh.getX(i), mesh.getY(i), mesh.getZ(i)));
+			}
+			return projected;
+		}
+
 		public OrthographicProjection getProjection() {
 			if (projection == null) {
 				projection = deriveProjection();
@@ -306,7 +794,7 @@ public class PolygonalObject3D extends VertexObject3D {
 		}
 
 		private Polygon2D derivePolygon() {
-			List<Point2D> vertices = project(getVerticesInCameraCoordinates(getScene().getCamera()));
+			List<Point2D> vertices = project(getMeshInCameraCoordinates(getScene().getCamera()));
 			return derivePolygon(vertices);
 		}
 
@@ -327,4 +815,129 @@ public class PolygonalObject3D extends VertexObject3D {
 
 	}
 
+	/**
+	 * The projected triangles of a triangulated polygon, binned in a uniform grid over their bounding rectangle
+	 * 
+	 * <p>
+	 * A point is tested against the triangles overlapping its grid cell only. The grid has about as many cells as there
+	 * are triangles, so a test takes constant time on average rather than time linear in the number of vertices.
+	 * </p>
+	 */
+	private static class TriangleGrid {
+
+		private double[] vertices; // (u, v) per vertex
+
+		private int[] corners; // vertex index triples
+
+		private double u0;
+
+		private double v0;
+
+		private double cellsPerUnitU;
+
+		private double cellsPerUnitV;
+
+		private int columns;
+
+		private int rows;
+
+		private int[] cellOffsets; // per cell, into cellTriangles, plus a terminating offset
+
+		private int[] cellTriangles;
+
+		public TriangleGrid(double[] vertices, PolygonTriangulation triangulation) {
+			int n = triangulation.getTriangleCount();
+			this.vertices = vertices;
+			this.corners = new int[3 * n];
+			for (int t = 0; t < n; t++) {
+				for (int c = 0; c < 3; c++) {
+					corners[3 * t + c] = triangulation.getVertexIndex(t, c);
+				}
+			}
+			double u1 = Double.MAX_VALUE, u2 = -Double.MAX_VALUE, v1 = Double.MAX_VALUE, v2 = -Double.MAX_VALUE;
+			for (int i = 0; i < vertices.length; i += 2) {
+				u1 = Math.min(u1, vertices[i]);
+				u2 = Math.max(u2, vertices[i]);
+				v1 = Math.min(v1, vertices[i + 1]);
+				v2 = Math.max(v2, vertices[i + 1]);
+			}
+			int size = Math.max((int) Math.ceil(Math.sqrt(n)), 1);
+			this.u0 = u1;
+			this.v0 = v1;
+			this.columns = size;
+			this.rows = size;
+			this.cellsPerUnitU = u2 > u1 ? size / (u2 - u1) : 0;
+			this.cellsPerUnitV = v2 > v1 ? size / (v2 - v1) : 0;
+			binTriangles(n);
+		}
+
+		private void binTriangles(int n) {
+			int cells = columns * rows;
+			cellOffsets = new int[cells + 1];
+			for (int pass = 0; pass < 2; pass++) {
+				int[] fill = pass == 0 ? cellOffsets : new int[cells];
+				for (int t = 0; t < n; t++) {
+					double u1 = Double.MAX_VALUE, u2 = -Double.MAX_VALUE, v1 = Double.MAX_VALUE, v2 = -Double.MAX_VALUE;
+					for (int c = 0; c < 3; c++) {
+						int i = 2 * corners[3 * t + c];
+						u1 = Math.min(u1, vertices[i]);
+						u2 = Math.max(u2, vertices[i]);
+						v1 = Math.min(v1, vertices[i + 1]);
+						v2 = Math.max(v2, vertices[i + 1]);
+					}
+					int col1 = getColumn(u1), col2 = getColumn(u2), row1 = getRow(v1), row2 = getRow(v2);
+					for (int row = row1; row <= row2; row++) {
+						for (int col = col1; col <= col2; col++) {
+							int cell = row * columns + col;
+							if (pass == 0) {
+								cellOffsets[cell + 1]++;
+							} else {
+								cellTriangles[cellOffsets[cell] + fill[cell]++] = t;
+							}
+						}
+					}
+				}
+				if (pass == 0) {
+					for (int cell = 0; cell < cells; cell++) {
+						cellOffsets[cell + 1] += cellOffsets[cell];
+					}
+					cellTriangles = new int[cellOffsets[cells]];
+				}
+			}
+		}
+
+		public boolean contains(double u, double v) {
+			int cell = getRow(v) * columns + getColumn(u);
+			for (int k = cellOffsets[cell]; k < cellOffsets[cell + 1]; k++) {
+				if (triangleContains(cellTriangles[k], u, v))
+					return true;
+			}
+			return false;
+		}
+
+		private boolean triangleContains(int t, double u, double v) {
+			int a = 2 * corners[3 * t], b = 2 * corners[3 * t + 1], c = 2 * corners[3 * t + 2];
+			double d1 = (vertices[b] - vertices[a]) * (v - vertices[a + 1]) - (vertices[b + 1] - vertices[a + 1])
+					* (u - vertices[a]);
+			double d2 = (vertices[c] - vertices[b]) * (v - vertices[b + 1]) - (vertices[c + 1] - vertices[b + 1])
+					* (u - vertices[b]);
+			double d3 = (vertices[a] - vertices[c]) * (v - vertices[c + 1]) - (vertices[a + 1] - vertices[c + 1])
+					* (u - vertices[c]);
+			return (d1 >= 0 && d2 >= 0 && d3 >= 0) || (d1 <= 0 && d2 <= 0 && d3 <= 0);
+		}
+
+		private int getColumn(double u) {
+			return Math.min(Math.max((int) ((u - u0) * cellsPerUnitU), 0), columns - 1);
+		}
+
+		private int getRow(double v) {
+			return Math.min(Math.max((int) ((v - v0) * cellsPerUnitV), 0), rows - 1);
+		}
+
+		public long getEstimatedMemoryInBytes() {
+			return 96L + 4L * (corners.length + cellOffsets.length + cellTriangles.length);
+		}
+
+	}
+
 }
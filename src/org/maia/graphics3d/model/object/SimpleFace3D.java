@@ -2,13 +2,20 @@ package org.maia.graphics3d.model.object;
 
 import java.awt.Color;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.geometry.Plane3D;
 import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.geometry.Vector3D;
+import org.maia.graphics3d.model.camera.Camera;
 import org.maia.graphics3d.model.scene.Scene;
 import org.maia.graphics3d.render.RenderOptions;
 import org.maia.graphics3d.render.ReusableObjectPack;
 import org.maia.graphics3d.render.shading.FlatShadingModel;
+import org.maia.util.ColorUtils;
 
 /**
  * A <em>simple face</em> being a finite area in a plane enclosed by a convex polygon
@@ -23,6 +30,10 @@ import org.maia.graphics3d.render.shading.FlatShadingModel;
  * A solid color applies to a <em>simple face</em>, although there can be a separate color for the front and back side
  * of the face. In addition, the color is subject to a <code>FlatShadingModel</code>.
  * </p>
+ * <p>
+ * When a <em>simple face</em> is part of a closed solid, it is not hit by eye rays when it is opaque and on the rear
+ * side of the solid as perceived by the camera.
+ * </p>
  * 
  * @see FlatShadingModel
  */
@@ -53,11 +64,106 @@ public class SimpleFace3D extends ConvexPolygonalObject3D {
 		this.shadingModel = shadingModel;
 	}
 
+	public SimpleFace3D(Color color, FlatShadingModel shadingModel, PackedMesh3D vertices) {
+		this(color, color, shadingModel, vertices);
+	}
+
+	public SimpleFace3D(Color frontColor, Color backColor, FlatShadingModel shadingModel, PackedMesh3D vertices) {
+		super(vertices);
+		this.frontColor = frontColor;
+		this.backColor = backColor;
+		this.shadingModel = shadingModel;
+	}
+
+	protected SimpleFace3D(SimpleFace3D original) {
+		super(original);
+		this.frontColor = original.getFrontColor();
+		this.backColor = original.getBackColor();
+		this.shadingModel = original.getShadingModel();
+	}
+
+	@Override
+	public SimpleFace3D createMeshSharingCopy() {
+		return new SimpleFace3D(this);
+	}
+
+	@Override
+	protected void intersectSelfWithRay(LineSegment3D ray, Scene scene, Collection<ObjectSurfacePoint3D> intersections,
+			RenderOptions options, ReusableObjectPack reusableObjects, boolean applyShading, boolean rayFromEye) {
+		if (rayFromEye && isBackFaceOfClosedSolid(scene))
+			return;
+		super.intersectSelfWithRay(ray, scene, intersections, options, reusableObjects, applyShading, rayFromEye);
+	}
+
+	@Override
+	public void prepareForRendering(Scene scene) {
+		super.prepareForRendering(scene);
+		isBackFaceOfClosedSolid(scene); // derives the orientation of the closed solid, if any
+	}
+
+	/**
+	 * Tells whether this face is hidden from the camera by the solid it belongs to
+	 * 
+	 * <p>
+	 * This is the case when this face is part of a closed solid whose faces are all fully opaque, and faces away from
+	 * the camera, relative to the outside of the solid. Such a face can never be seen, as the line of sight to it
+	 * first enters the solid through another face.
+	 * </p>
+	 * <p>
+	 * This does not hold when the solid reaches before the view plane, as then its inside may be in sight. This is
+	 * the case when the eye is inside the solid, like a room or a sky dome, or when the view plane cuts through the
+	 * solid. No face is a back face of such a solid.
+	 * </p>
+	 * 
+	 * @param scene
+	 *            The scene, defining the camera
+	 * @return <code>true</code> if this face is a back face of a closed solid
+	 * @see CompositeObject3D#isClosedSolid()
+	 */
+	public boolean isBackFaceOfClosedSolid(Scene scene) {
+		CompositeObject3D<BaseObject3D> solid = getClosedSolid();
+		if (solid == null || !solid.isFullyOpaque(scene))
+			return false;
+		Camera camera = scene.getCamera();
+		Box3D solidBox = solid.asBoundedObject().getBoundingBoxInCameraCoordinates(camera);
+		if (solidBox.getZ2() >= camera.getViewVolume().getViewPlaneZ())
+			return false; // the inside of the solid may be in sight
+		Plane3D plane = getPlaneInCameraCoordinates(camera);
+		Vector3D normal = plane.getNormalUnitVector();
+		double towardsEye;
+		if (camera.getViewVolume().isPerspectiveProjection()) {
+			Point3D p = plane.getP1(); // the eye is at the origin
+			towardsEye = -(normal.getX() * p.getX() + normal.getY() * p.getY() + normal.getZ() * p.getZ());
+		} else {
+			towardsEye = normal.getZ();
+		}
+		return (towardsEye > 0) != solid.hasOutwardNormals();
+	}
+
+	private CompositeObject3D<BaseObject3D> getClosedSolid() {
+		CompositeObject3D<BaseObject3D> composite = getCompositeObject();
+		while (composite != null && !composite.isClosedSolid()) {
+			composite = ((BaseObject3D) composite).getCompositeObject();
+		}
+		return composite;
+	}
+
 	@Override
 	protected Color sampleBaseColor(Point3D positionInCamera, Scene scene) {
 		return isFrontFacingInCamera(scene) ? getFrontColor() : getBackColor();
 	}
 
+	@Override
+	public Color getUniformBaseColor(Scene scene) {
+		return isFrontFacingInCamera(scene) ? getFrontColor() : getBackColor();
+	}
+
+	@Override
+	public boolean isFullyOpaque(Scene scene) {
+		Color color = isFrontFacingInCamera(scene) ? getFrontColor() : getBackColor();
+		return color != null && ColorUtils.isFullyOpaque(color);
+	}
+
 	protected boolean isFrontFacingInCamera(Scene scene) {
 		return getPlaneInCameraCoordinates(scene.getCamera()).getNormalUnitVector().getZ() <= 0;
 	}
@@ -72,12 +178,24 @@ public class SimpleFace3D extends ConvexPolygonalObject3D {
 		return frontColor;
 	}
 
+	public void setFrontColor(Color frontColor) {
+		this.frontColor = frontColor;
+	}
+
 	public Color getBackColor() {
 		return backColor;
 	}
 
+	public void setBackColor(Color backColor) {
+		this.backColor = backColor;
+	}
+
 	public FlatShadingModel getShadingModel() {
 		return shadingModel;
 	}
 
+	public void setShadingModel(FlatShadingModel shadingModel) {
+		this.shadingModel = shadingModel;
+	}
+
 }
\ No newline at end of file
@@ -26,6 +26,8 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 
 	private TransformMatrix3D pictureToObjectTransformMatrix;
 
+	private PictureRegion pictureRegion;
+
 	private TextureMapHandle pictureMapHandle;
 
 	private TextureMapHandle luminanceMapHandle;
@@ -34,10 +36,6 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 
 	private Mask pictureMask;
 
-	private Point3D positionInCamera; // cached from last transformation
-
-	private Point3D positionInPicture; // cached from last transformation
-
 	public SimpleTexturedFace3D(FlatShadingModel shadingModel, TextureMapHandle pictureMapHandle,
 			PictureRegion pictureRegion) {
 		this(shadingModel, pictureMapHandle, pictureRegion, null, null, null);
@@ -76,12 +74,29 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 		super(pictureColor, shadingModel, createCanonicalVertices());
 		this.objectToPictureTransformMatrix = pictureRegion.createObjectToPictureTransformMatrix();
 		this.pictureToObjectTransformMatrix = pictureRegion.createPictureToObjectTransformMatrix();
+		this.pictureRegion = pictureRegion;
 		this.pictureMapHandle = pictureMapHandle;
 		this.luminanceMapHandle = luminanceMapHandle;
 		this.transparencyMapHandle = transparencyMapHandle;
 		this.pictureMask = pictureMask;
 	}
 
+	protected SimpleTexturedFace3D(SimpleTexturedFace3D original) {
+		super(original);
+		this.objectToPictureTransformMatrix = original.getObjectToPictureTransformMatrix();
+		this.pictureToObjectTransformMatrix = original.getPictureToObjectTransformMatrix();
+		this.pictureRegion = original.getPictureRegion();
+		this.pictureMapHandle = original.getPictureMapHandle();
+		this.luminanceMapHandle = original.getLuminanceMapHandle();
+		this.transparencyMapHandle = original.getTransparencyMapHandle();
+		this.pictureMask = original.getPictureMask();
+	}
+
+	@Override
+	public SimpleTexturedFace3D createMeshSharingCopy() {
+		return new SimpleTexturedFace3D(this);
+	}
+
 	private static List<Point3D> createCanonicalVertices() {
 		// Vertices in XZ-plane
 		List<Point3D> vertices = new Vector<Point3D>(4);
@@ -99,6 +114,16 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 		return ct.getReverseCompositeMatrix();
 	}
 
+	@Override
+	public Color getUniformBaseColor(Scene scene) {
+		return null; // sampled from the texture
+	}
+
+	@Override
+	public boolean isFullyOpaque(Scene scene) {
+		return false; // texture maps and masks may be (partially) transparent
+	}
+
 	@Override
 	protected boolean containsPointOnPlane(Point3D positionInCamera, Scene scene) {
 		if (!super.containsPointOnPlane(positionInCamera, scene))
@@ -170,11 +195,19 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 	}
 
 	protected Point3D fromCameraToPictureCoordinates(Point3D point, Camera camera) {
-		if (!point.equals(positionInCamera)) {
-			positionInCamera = point.clone();
-			positionInPicture = fromObjectToPictureCoordinates(fromCameraToObjectCoordinates(point, camera));
+		return getCameraToPictureTransformMatrix(camera).transform(point);
+	}
+
+	private TransformMatrix3D getCameraToPictureTransformMatrix(Camera camera) {
+		TexturedFaceCameraState state = (TexturedFaceCameraState) getCameraState(camera);
+		TransformMatrix3D matrix = state.cameraToPictureTransformMatrix;
+		if (matrix == null) {
+			matrix = getObjectToPictureTransformMatrix()
+					.preMultiply(getSelfToRootCompositeTransform().getReverseCompositeMatrix())
+					.preMultiply(Transformation3D.getInverseMatrix(camera.getViewingMatrix()));
+			state.cameraToPictureTransformMatrix = matrix;
 		}
-		return positionInPicture;
+		return matrix;
 	}
 
 	protected Point3D fromObjectToPictureCoordinates(Point3D point) {
@@ -182,26 +215,8 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 	}
 
 	@Override
-	public void notifySelfHasTransformed() {
-		super.notifySelfHasTransformed();
-		invalidateCachedPositionMapping();
-	}
-
-	@Override
-	public void notifyAncestorHasTransformed() {
-		super.notifyAncestorHasTransformed();
-		invalidateCachedPositionMapping();
-	}
-
-	@Override
-	public void cameraHasChanged(Camera camera) {
-		super.cameraHasChanged(camera);
-		invalidateCachedPositionMapping();
-	}
-
-	private void invalidateCachedPositionMapping() {
-		this.positionInCamera = null;
-		this.positionInPicture = null;
+	protected CameraState createCameraState() {
+		return new TexturedFaceCameraState(createProjectionState());
 	}
 
 	protected TextureMap getPictureMap() {
@@ -227,22 +242,51 @@ public class SimpleTexturedFace3D extends SimpleFace3D {
 		return pictureToObjectTransformMatrix;
 	}
 
-	private TextureMapHandle getPictureMapHandle() {
+	public PictureRegion getPictureRegion() {
+		return pictureRegion;
+	}
+
+	public TextureMapHandle getPictureMapHandle() {
 		return pictureMapHandle;
 	}
 
-	private TextureMapHandle getLuminanceMapHandle() {
+	public TextureMapHandle getLuminanceMapHandle() {
 		return luminanceMapHandle;
 	}
 
-	private TextureMapHandle getTransparencyMapHandle() {
+	public TextureMapHandle getTransparencyMapHandle() {
 		return transparencyMapHandle;
 	}
 
-	protected Mask getPictureMask() {
+	public Mask getPictureMask() {
 		return pictureMask;
 	}
 
+	protected static class TexturedFaceCameraState extends PolygonCameraState {
+
+		private TransformMatrix3D cameraToPictureTransformMatrix; // derived, cached
+
+		protected TexturedFaceCameraState(ProjectionState projectionState) {
+			super(projectionState);
+		}
+
+		@Override
+		public void invalidate() {
+			super.invalidate();
+			cameraToPictureTransformMatrix = null;
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = super.getEstimatedMemoryInBytes();
+			if (cameraToPictureTransformMatrix != null) {
+				bytes += 160L;
+			}
+			return bytes;
+		}
+
+	}
+
 	public static class PictureRegion extends Rectangle2D {
 
 		public PictureRegion(int width, int height) {
@@ -4,24 +4,68 @@ import java.util.List;
 
 import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.model.AccountableMemoise;
+import org.maia.graphics3d.model.MemoiseAccountant;
 import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.ViewVolume;
 import org.maia.graphics3d.model.object.Mesh3D.Edge;
-import org.maia.graphics3d.transform.TransformMatrix3D;
+import org.maia.graphics3d.model.scene.Scene;
 import org.maia.graphics3d.transform.Transformation3D;
 
-public abstract class VertexObject3D extends BaseObject3D implements MeshObject3D {
+public abstract class VertexObject3D extends BaseObject3D implements MeshObject3D, AccountableMemoise {
 
-	private Mesh3D meshInObjectCoordinates; // base mesh
+	private PackedMesh3D meshInObjectCoordinates; // base mesh
 
-	private Mesh3D meshInWorldCoordinates; // derived, cached mesh
+	private PackedMesh3D meshInWorldCoordinates; // derived, cached mesh
 
-	private Mesh3D meshInCameraCoordinates; // derived, cached mesh
+	private boolean meshInWorldCoordinatesValid;
 
-	private Mesh3D meshInViewVolumeCoordinates; // derived, cached mesh
+	private int lastUseEpoch;
+
+	private boolean accounted;
 
 	protected VertexObject3D(List<Point3D> vertices, List<Edge> edges) {
-		this.meshInObjectCoordinates = new Mesh3DImpl(vertices, edges);
-	}
+		this(new PackedMesh3D(vertices, edges));
+	}
+
+	/**
+	 * Creates an object from its mesh in object coordinates
+	 *
+	 * @param meshInObjectCoordinates
+	 *            The mesh, which should not be changed nor shared with other objects afterwards
+	 */
+	protected VertexObject3D(PackedMesh3D meshInObjectCoordinates) {
+		this.meshInObjectCoordinates = meshInObjectCoordinates;
+	}
+
+	/**
+	 * Creates a copy of an object that shares the mesh of the original in object coordinates
+	 *
+	 * <p>
+	 * The copy takes over neither the transforms of the original, nor its membership of a composite object.
+	 * </p>
+	 *
+	 * @param original
+	 *            The object to copy
+	 * @see #createMeshSharingCopy()
+	 */
+	protected VertexObject3D(VertexObject3D original) {
+		this.meshInObjectCoordinates = original.getMeshInObjectCoordinates();
+	}
+
+	/**
+	 * Creates a copy of this object that shares its mesh in object coordinates
+	 *
+	 * <p>
+	 * The copy has the same geometry and appearance as this object, but no transforms. As the mesh in object
+	 * coordinates is shared, it should not be changed while copies are in use. Subclasses adding state that determines
+	 * the appearance of the object should override this method.
+	 * </p>
+	 *
+	 * @return The copy
+	 * @see InstancedObject3D
+	 */
+	public abstract VertexObject3D createMeshSharingCopy();
 
 	@Override
 	public final boolean isComposite() {
@@ -35,53 +79,26 @@ public abstract class VertexObject3D extends BaseObject3D implements MeshObject3
 
 	@Override
 	protected Box3D deriveBoundingBoxInObjectCoordinates() {
-		return deriveBoundingBox(getVerticesInObjectCoordinates());
+		return getMeshInObjectCoordinates().deriveBoundingBox();
 	}
 
 	@Override
 	protected Box3D deriveBoundingBoxInWorldCoordinates() {
-		return deriveBoundingBox(getVerticesInWorldCoordinates());
+		return getMeshInWorldCoordinates().deriveBoundingBox();
 	}
 
 	@Override
 	protected Box3D deriveBoundingBoxInCameraCoordinates(Camera camera) {
-		return deriveBoundingBox(getVerticesInCameraCoordinates(camera));
+		return getMeshInCameraCoordinates(camera).deriveBoundingBox();
 	}
 
 	@Override
 	protected Box3D deriveBoundingBoxInViewVolumeCoordinates(Camera camera) {
-		return deriveBoundingBox(getVerticesInViewVolumeCoordinates(camera));
-	}
-
-	private Box3D deriveBoundingBox(List<Point3D> vertices) {
-		Box3D bbox = null;
-		if (!vertices.isEmpty()) {
-			Point3D vertex = vertices.get(0);
-			double x1 = vertex.getX();
-			double x2 = x1;
-			double y1 = vertex.getY();
-			double y2 = y1;
-			double z1 = vertex.getZ();
-			double z2 = z1;
-			for (int i = 1; i < vertices.size(); i++) {
-				vertex = vertices.get(i);
-				double x = vertex.getX();
-				double y = vertex.getY();
-				double z = vertex.getZ();
-				x1 = Math.min(x1, x);
-				x2 = Math.max(x2, x);
-				y1 = Math.min(y1, y);
-				y2 = Math.max(y2, y);
-				z1 = Math.min(z1, z);
-				z2 = Math.max(z2, z);
-			}
-			bbox = new Box3D(x1, x2, y1, y2, z1, z2);
-		}
-		return bbox;
+		return getMeshInViewVolumeCoordinates(camera).deriveBoundingBox();
 	}
 
 	public int getVertexCount() {
-		return getVerticesInObjectCoordinates().size();
+		return getMeshInObjectCoordinates().getVertexCount();
 	}
 
 	public List<Point3D> getVerticesInObjectCoordinates() {
@@ -101,68 +118,62 @@ public abstract class VertexObject3D extends BaseObject3D implements MeshObject3
 	}
 
 	@Override
-	public Mesh3D getMeshInObjectCoordinates() {
+	public PackedMesh3D getMeshInObjectCoordinates() {
 		return meshInObjectCoordinates;
 	}
 
 	@Override
-	public Mesh3D getMeshInWorldCoordinates() {
-		if (meshInWorldCoordinates == null) {
-			meshInWorldCoordinates = deriveMeshInWorldCoordinates();
+	public PackedMesh3D getMeshInWorldCoordinates() {
+		markUsed();
+		PackedMesh3D mesh = meshInWorldCoordinates; // may be released concurrently
+		if (mesh == null || !meshInWorldCoordinatesValid) {
+			if (mesh == null) {
+				mesh = createDerivedMesh();
+			}
+			getMeshInObjectCoordinates().transform(getSelfToRootCompositeTransform().getForwardCompositeMatrix(),
+					mesh, false);
+			meshInWorldCoordinates = mesh;
+			meshInWorldCoordinatesValid = true;
 		}
-		return meshInWorldCoordinates;
+		return mesh;
 	}
 
 	@Override
-	public Mesh3D getMeshInCameraCoordinates(Camera camera) {
-		if (meshInCameraCoordinates == null) {
-			meshInCameraCoordinates = deriveMeshInCameraCoordinates(camera);
+	public PackedMesh3D getMeshInCameraCoordinates(Camera camera) {
+		VertexCameraState state = (VertexCameraState) getCameraState(camera);
+		if (!state.meshInCameraCoordinatesValid) {
+			if (state.meshInCameraCoordinates == null) {
+				state.meshInCameraCoordinates = createDerivedMesh();
+			}
+			getMeshInWorldCoordinates().transform(camera.getViewingMatrix(), state.meshInCameraCoordinates, false);
+			state.meshInCameraCoordinatesValid = true;
 		}
-		return meshInCameraCoordinates;
+		return state.meshInCameraCoordinates;
 	}
 
 	@Override
-	public Mesh3D getMeshInViewVolumeCoordinates(Camera camera) {
-		if (meshInViewVolumeCoordinates == null) {
-			meshInViewVolumeCoordinates = deriveMeshInViewVolumeCoordinates(camera);
+	public PackedMesh3D getMeshInViewVolumeCoordinates(Camera camera) {
+		VertexCameraState state = (VertexCameraState) getCameraState(camera);
+		if (!state.meshInViewVolumeCoordinatesValid) {
+			if (state.meshInViewVolumeCoordinates == null) {
+				state.meshInViewVolumeCoordinates = createDerivedMesh();
+			}
+			ViewVolume vv = camera.getViewVolume();
+			getMeshInCameraCoordinates(camera).transform(vv.getProjectionMatrix(), state.meshInViewVolumeCoordinates,
+					vv.isPerspectiveProjection());
+			state.meshInViewVolumeCoordinatesValid = true;
 		}
-		return meshInViewVolumeCoordinates;
-	}
-
-	private Mesh3D deriveMeshInWorldCoordinates() {
-		return new Mesh3DImpl(deriveVerticesInWorldCoordinates(), getEdges());
-	}
-
-	private Mesh3D deriveMeshInCameraCoordinates(Camera camera) {
-		return new Mesh3DImpl(deriveVerticesInCameraCoordinates(camera), getEdges());
-	}
-
-	private Mesh3D deriveMeshInViewVolumeCoordinates(Camera camera) {
-		return new Mesh3DImpl(deriveVerticesInViewVolumeCoordinates(camera), getEdges());
-	}
-
-	private List<Point3D> deriveVerticesInWorldCoordinates() {
-		return getSelfToRootCompositeTransform().getForwardCompositeMatrix()
-				.transform(getVerticesInObjectCoordinates());
-	}
-
-	private List<Point3D> deriveVerticesInCameraCoordinates(Camera camera) {
-		return camera.getViewingMatrix().transform(getVerticesInWorldCoordinates());
+		return state.meshInViewVolumeCoordinates;
 	}
 
-	private List<Point3D> deriveVerticesInViewVolumeCoordinates(Camera camera) {
-		TransformMatrix3D projectionMatrix = camera.getViewVolume().getProjectionMatrix();
-		List<Point3D> projectedVertices = projectionMatrix.transform(getVerticesInCameraCoordinates(camera));
-		if (camera.getViewVolume().isPerspectiveProjection()) {
-			applyPerspectiveDivision(projectedVertices);
-		}
-		return projectedVertices;
+	@Override
+	public void prepareForRendering(Scene scene) {
+		super.prepareForRendering(scene);
+		getMeshInViewVolumeCoordinates(scene.getCamera()); // derives the world and camera meshes along the way
 	}
 
-	private void applyPerspectiveDivision(List<Point3D> vertices) {
-		for (Point3D vertex : vertices) {
-			vertex.normalizeToUnitW();
-		}
+	private PackedMesh3D createDerivedMesh() {
+		return new PackedMesh3D(getVertexCount(), getEdges(), meshInObjectCoordinates.isSinglePrecision());
 	}
 
 	private List<Edge> getEdges() {
@@ -184,38 +195,105 @@ public abstract class VertexObject3D extends BaseObject3D implements MeshObject3
 	@Override
 	public void notifySelfHasTransformed() {
 		super.notifySelfHasTransformed();
-		invalidateWorldAndCameraMesh();
+		invalidateWorldMesh();
 	}
 
 	@Override
 	public void notifyAncestorHasTransformed() {
 		super.notifyAncestorHasTransformed();
-		invalidateWorldAndCameraMesh();
+		invalidateWorldMesh();
 	}
 
 	@Override
-	public void cameraHasChanged(Camera camera) {
-		super.cameraHasChanged(camera);
-		invalidateCameraMesh();
+	public void releaseMemory() {
+		meshInWorldCoordinates = null;
+		invalidateWorldMesh();
+		releaseCameraStates();
 	}
 
 	@Override
-	public void releaseMemory() {
-		invalidateWorldAndCameraMesh();
+	public long getMemoisedBytes() {
+		long bytes = 0;
+		PackedMesh3D mesh = meshInWorldCoordinates;
+		if (mesh != null) {
+			bytes += mesh.getEstimatedMemoryInBytes();
+		}
+		for (CameraState state : getCameraStates()) {
+			bytes += state.getEstimatedMemoryInBytes();
+		}
+		return bytes;
 	}
 
-	private void invalidateWorldAndCameraMesh() {
-		invalidateWorldMesh();
-		invalidateCameraMesh();
+	@Override
+	public int getLastUseEpoch() {
+		return lastUseEpoch;
+	}
+
+	private void markUsed() {
+		MemoiseAccountant accountant = MemoiseAccountant.getInstance();
+		if (!accountant.isMonitoring())
+			return; // epochs only matter to evictions
+		int epoch = accountant.getEpoch();
+		if (lastUseEpoch != epoch) {
+			lastUseEpoch = epoch; // spares writing to a shared cache line on every use
+		}
+		if (!accounted) {
+			accounted = true;
+			accountant.register(this);
+		}
+	}
+
+	@Override
+	protected CameraState getCameraState(Camera camera) {
+		markUsed();
+		return super.getCameraState(camera);
 	}
 
 	private void invalidateWorldMesh() {
-		meshInWorldCoordinates = null;
+		meshInWorldCoordinatesValid = false; // keeps the mesh for reuse
 	}
 
-	private void invalidateCameraMesh() {
-		meshInCameraCoordinates = null;
-		meshInViewVolumeCoordinates = null;
+	@Override
+	protected CameraState createCameraState() {
+		return new VertexCameraState();
+	}
+
+	protected static class VertexCameraState extends CameraState {
+
+		private PackedMesh3D meshInCameraCoordinates; // derived, cached mesh
+
+		private PackedMesh3D meshInViewVolumeCoordinates; // derived, cached mesh
+
+		private boolean meshInCameraCoordinatesValid;
+
+		private boolean meshInViewVolumeCoordinatesValid;
+
+		protected VertexCameraState() {
+		}
+
+		@Override
+		public void invalidate() {
+			super.invalidate();
+			meshInCameraCoordinatesValid = false; // keeps the mesh for reuse
+			meshInViewVolumeCoordinatesValid = false;
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = super.getEstimatedMemoryInBytes();
+			if (meshInCameraCoordinates != null) {
+				bytes += meshInCameraCoordinates.getEstimatedMemoryInBytes();
+			}
+			if (meshInViewVolumeCoordinates != null) {
+				bytes += meshInViewVolumeCoordinates.getEstimatedMemoryInBytes();
+			}
+			return bytes;
+		}
+
+		protected int getVertexCount() {
+			return meshInCameraCoordinates != null ? meshInCameraCoordinates.getVertexCount() : 0;
+		}
+
 	}
 
 }
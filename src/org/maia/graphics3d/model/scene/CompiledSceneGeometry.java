@@ -0,0 +1,411 @@
+package org.maia.graphics3d.model.scene;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.maia.graphics3d.GeometryPrecision;
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.Plane3D;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.geometry.Vector3D;
+import org.maia.graphics3d.model.OffHeapGeometryStore;
+import org.maia.graphics3d.model.OrthographicProjection;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PackedMesh3D;
+import org.maia.graphics3d.model.object.PolygonInsidenessTest;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+
+/**
+ * The geometry of the polygons in a <code>Scene</code>, flattened into arrays of primitives for fast eye ray
+ * intersection
+ *
+ * <p>
+ * For every compiled polygon, the arrays hold the plane equation and bounding box in camera coordinates, the
+ * projection used for insideness tests and the projected vertices. An intersection test then runs on these arrays
+ * only, without calls to the polygon object or its lazily computed caches. The polygon object is kept as a
+ * back-reference, for shading the surface points that are hit and for picking.
+ * </p>
+ * <p>
+ * Only polygons with a uniform base color are compiled, as for these the geometrical shape determines where they are
+ * hit. The back faces of closed solids are left out, as eye rays never hit them. Triangulated polygons are left out as
+ * well, as their own insideness test is faster. The geometry reflects the positions of the objects and the camera at
+ * the time of compilation. Once compiled, it can be read concurrently by multiple threads.
+ * </p>
+ * <p>
+ * In single precision, the arrays are stored as floats and read back as doubles. Bounding boxes are rounded outwards,
+ * so they still enclose their polygons.
+ * </p>
+ * <p>
+ * When the scene has a geometry store, the planes, bounding boxes and projected vertices are moved to it once
+ * compiled, and released when the geometry is disposed.
+ * </p>
+ *
+ * @see Scene#compile()
+ * @see Scene#setGeometryStore(OffHeapGeometryStore)
+ * @see PolygonalObject3D#getUniformBaseColor(Scene)
+ * @see GeometryPrecision
+ */
+public class CompiledSceneGeometry {
+
+	private int polygonCount;
+
+	private PolygonalObject3D[] polygons;
+
+	private Map<Object3D, Integer> polygonIndices;
+
+	private double[] planes; // per polygon (nx, ny, nz, d) with n.p + d = 0
+
+	private double[] boxes; // per polygon (x1, x2, y1, y2, z1, z2)
+
+	private float[] singlePrecisionPlanes;
+
+	private float[] singlePrecisionBoxes;
+
+	private byte[] projections; // per polygon
+
+	private int[] vertexOffsets; // per polygon, into projectedVertices, plus a terminating offset
+
+	private double[] projectedVertices; // (u, v) per vertex
+
+	private float[] singlePrecisionProjectedVertices;
+
+	private OffHeapGeometryStore.Block storedPlanes;
+
+	private OffHeapGeometryStore.Block storedBoxes;
+
+	private OffHeapGeometryStore.Block storedProjectedVertices;
+
+	private boolean singlePrecision;
+
+	private static final byte PROJECTION_XY = 0;
+
+	private static final byte PROJECTION_XZ = 1;
+
+	private static final byte PROJECTION_YZ = 2;
+
+	private static final double APPROXIMATE_ZERO = 0.000001;
+
+	public CompiledSceneGeometry(Scene scene) {
+		compile(scene);
+	}
+
+	private void compile(Scene scene) {
+		List<PolygonalObject3D> compilable = new Vector<PolygonalObject3D>();
+		int vertexCount = 0;
+		for (Object3D object : SceneUtils.getAllIndividualObjectsInScene(scene)) {
+			if (object instanceof PolygonalObject3D) {
+				PolygonalObject3D polygon = (PolygonalObject3D) object;
+				if (isCompilable(polygon, scene)) {
+					compilable.add(polygon);
+					vertexCount += polygon.getVertexCount();
+				}
+			}
+		}
+		int n = compilable.size();
+		this.polygonCount = n;
+		this.polygons = new PolygonalObject3D[n];
+		this.polygonIndices = new HashMap<Object3D, Integer>(n * 2);
+		this.singlePrecision = GeometryPrecision.getInstance().isSinglePrecision();
+		if (singlePrecision) {
+			this.singlePrecisionPlanes = new float[4 * n];
+			this.singlePrecisionBoxes = new float[6 * n];
+			this.singlePrecisionProjectedVertices = new float[2 * vertexCount];
+		} else {
+			this.planes = new double[4 * n];
+			this.boxes = new double[6 * n];
+			this.projectedVertices = new double[2 * vertexCount];
+		}
+		this.projections = new byte[n];
+		this.vertexOffsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			compilePolygon(i, compilable.get(i), scene);
+		}
+		vertexOffsets[n] = 2 * vertexCount;
+		if (scene.getGeometryStore() != null) {
+			moveToStore(scene.getGeometryStore());
+		}
+	}
+
+	private void moveToStore(OffHeapGeometryStore store) {
+		if (singlePrecision) {
+			storedPlanes = store.allocateFloats(singlePrecisionPlanes.length);
+			storedBoxes = store.allocateFloats(singlePrecisionBoxes.length);
+			storedProjectedVertices = store.allocateFloats(singlePrecisionProjectedVertices.length);
+			for (int i = 0; i < singlePrecisionPlanes.length; i++) {
+				storedPlanes.set(i, singlePrecisionPlanes[i]);
+			}
+			for (int i = 0; i < singlePrecisionBoxes.length; i++) {
+				storedBoxes.set(i, singlePrecisionBoxes[i]);
+			}
+			for (int i = 0; i < singlePrecisionProjectedVertices.length; i++) {
+				storedProjectedVertices.set(i, singlePrecisionProjectedVertices[i]);
+			}
+		} else {
+			storedPlanes = store.allocateDoubles(planes.length);
+			storedBoxes = store.allocateDoubles(boxes.length);
+			storedProjectedVertices = store.allocateDoubles(projectedVertices.length);
+			for (int i = 0; i < planes.length; i++) {
+				storedPlanes.set(i, planes[i]);
+			}
+			for (int i = 0; i < boxes.length; i++) {
+				storedBoxes.set(i, boxes[i]);
+			}
+			for (int i = 0; i < projectedVertices.length; i++) {
+				storedProjectedVertices.set(i, projectedVertices[i]);
+			}
+		}
+		planes = null;
+		boxes = null;
+		projectedVertices = null;
+		singlePrecisionPlanes = null;
+		singlePrecisionBoxes = null;
+		singlePrecisionProjectedVertices = null;
+	}
+
+	/**
+	 * Releases the arrays held in the geometry store of the scene, after which this geometry cannot be used anymore
+	 *
+	 * <p>
+	 * Geometry that is held on the heap is left to the garbage collector.
+	 * </p>
+	 */
+	public void dispose() {
+		if (storedPlanes != null) {
+			storedPlanes.release();
+			storedBoxes.release();
+			storedProjectedVertices.release();
+		}
+	}
+
+	private boolean isCompilable(PolygonalObject3D polygon, Scene scene) {
+		if (polygon.getUniformBaseColor(scene) == null)
+			return false;
+		if (polygon instanceof SimpleFace3D && ((SimpleFace3D) polygon).isBackFaceOfClosedSolid(scene))
+			return false;
+		if (PolygonInsidenessTest.TRIANGULATION.equals(polygon.getInsidenessTest()))
+			return false; // its own triangle grid beats the linear crossing number test
+		return true;
+	}
+
+	private void compilePolygon(int index, PolygonalObject3D polygon, Scene scene) {
+		Camera camera = scene.getCamera();
+		polygons[index] = polygon;
+		polygonIndices.put(polygon, index);
+		// Plane
+		Plane3D plane = polygon.getPlaneInCameraCoordinates(camera);
+		Vector3D normal = plane.getNormalUnitVector();
+		Point3D p = plane.getP1();
+		if (singlePrecisionPlanes != null) {
+			// The offset is derived from the rounded normal, keeping the point on the stored plane
+			float nx = (float) normal.getX(), ny = (float) normal.getY(), nz = (float) normal.getZ();
+			singlePrecisionPlanes[4 * index] = nx;
+			singlePrecisionPlanes[4 * index + 1] = ny;
+			singlePrecisionPlanes[4 * index + 2] = nz;
+			singlePrecisionPlanes[4 * index + 3] = (float) -(nx * p.getX() + ny * p.getY() + nz * p.getZ());
+		} else {
+			planes[4 * index] = normal.getX();
+			planes[4 * index + 1] = normal.getY();
+			planes[4 * index + 2] = normal.getZ();
+			planes[4 * index + 3] = -(normal.getX() * p.getX() + normal.getY() * p.getY() + normal.getZ() * p.getZ());
+		}
+		// Bounding box
+		Box3D box = polygon.getBoundingBoxInCameraCoordinates(camera);
+		if (singlePrecisionBoxes != null) {
+			singlePrecisionBoxes[6 * index] = GeometryPrecision.roundDown(box.getX1());
+			singlePrecisionBoxes[6 * index + 1] = GeometryPrecision.roundUp(box.getX2());
+			singlePrecisionBoxes[6 * index + 2] = GeometryPrecision.roundDown(box.getY1());
+			singlePrecisionBoxes[6 * index + 3] = GeometryPrecision.roundUp(box.getY2());
+			singlePrecisionBoxes[6 * index + 4] = GeometryPrecision.roundDown(box.getZ1());
+			singlePrecisionBoxes[6 * index + 5] = GeometryPrecision.roundUp(box.getZ2());
+		} else {
+			boxes[6 * index] = box.getX1();
+			boxes[6 * index + 1] = box.getX2();
+			boxes[6 * index + 2] = box.getY1();
+			boxes[6 * index + 3] = box.getY2();
+			boxes[6 * index + 4] = box.getZ1();
+			boxes[6 * index + 5] = box.getZ2();
+		}
+		// Projected vertices
+		byte projection = toProjectionCode(polygon.getInsidenessProjection(scene));
+		projections[index] = projection;
+		PackedMesh3D mesh = polygon.getMeshInCameraCoordinates(camera);
+		int offset = vertexOffsets[index]; // set by the previous polygon
+		for (int j = 0; j < mesh.getVertexCount(); j++) {
+			double u = projectU(projection, mesh.getX(j), mesh.getZ(j));
+			double v = projectV(projection, mesh.getY(j), mesh.getZ(j));
+			if (singlePrecisionProjectedVertices != null) {
+				singlePrecisionProjectedVertices[offset + 2 * j] = (float) u;
+				singlePrecisionProjectedVertices[offset + 2 * j + 1] = (float) v;
+			} else {
+				projectedVertices[offset + 2 * j] = u;
+				projectedVertices[offset + 2 * j + 1] = v;
+			}
+		}
+		vertexOffsets[index + 1] = offset + 2 * mesh.getVertexCount();
+	}
+
+	private static byte toProjectionCode(OrthographicProjection projection) {
+		if (OrthographicProjection.ONTO_XZ_PLANE.equals(projection)) {
+			return PROJECTION_XZ;
+		} else if (OrthographicProjection.ONTO_YZ_PLANE.equals(projection)) {
+			return PROJECTION_YZ;
+		} else {
+			return PROJECTION_XY;
+		}
+	}
+
+	private static double projectU(byte projection, double x, double z) {
+		return projection == PROJECTION_YZ ? -z : x;
+	}
+
+	private static double projectV(byte projection, double y, double z) {
+		return projection == PROJECTION_XZ ? z : y;
+	}
+
+	/**
+	 * Returns the index of a compiled polygon
+	 *
+	 * @param object
+	 *            An object of the scene
+	 * @return The index of the object in this geometry, or -1 if the object was not compiled
+	 */
+	public int getPolygonIndex(Object3D object) {
+		Integer index = polygonIndices.get(object);
+		return index != null ? index.intValue() : -1;
+	}
+
+	/**
+	 * Intersects an eye ray with a compiled polygon
+	 *
+	 * <p>
+	 * The eye ray starts at a point on the view plane and runs away from the eye, which is at the origin of the camera
+	 * coordinate system.
+	 * </p>
+	 *
+	 * @param index
+	 *            The index of the polygon
+	 * @param x
+	 *            The <em>x</em>-coordinate of the ray's point on the view plane, in camera coordinates
+	 * @param y
+	 *            The <em>y</em>-coordinate of the ray's point on the view plane, in camera coordinates
+	 * @param z
+	 *            The <em>z</em>-coordinate of the ray's point on the view plane, in camera coordinates
+	 * @param maxDepth
+	 *            The maximum depth of interest, as a positive distance along the negative <em>z</em>-axis. Hits
+	 *            beyond that depth are not reported
+	 * @return The factor <em>f</em> by which to scale the point on the view plane to obtain the hit position in camera
+	 *         coordinates, or <code>Double.NaN</code> when the ray does not hit the polygon
+	 */
+	public double intersectWithEyeRay(int index, double x, double y, double z, double maxDepth) {
+		double nx = getPlaneCoefficient(4 * index);
+		double ny = getPlaneCoefficient(4 * index + 1);
+		double nz = getPlaneCoefficient(4 * index + 2);
+		double b = nx * x + ny * y + nz * z;
+		if (b == 0)
+			return Double.NaN; // parallel to the plane
+		double f = -getPlaneCoefficient(4 * index + 3) / b;
+		if (f < 1.0)
+			return Double.NaN; // before the view plane
+		double hz = f * z;
+		if (-hz > maxDepth)
+			return Double.NaN;
+		double hx = f * x;
+		double hy = f * y;
+		if (!insideBoundingBox(index, hx, hy, hz))
+			return Double.NaN;
+		byte projection = projections[index];
+		double u = projectU(projection, hx, hz);
+		double v = projectV(projection, hy, hz);
+		return insidePolygon(index, u, v) ? f : Double.NaN;
+	}
+
+	private boolean insideBoundingBox(int index, double x, double y, double z) {
+		int i = 6 * index;
+		double x1 = getBoxBound(i), x2 = getBoxBound(i + 1), y1 = getBoxBound(i + 2), y2 = getBoxBound(i + 3),
+				z1 = getBoxBound(i + 4), z2 = getBoxBound(i + 5);
+		if (x2 - x1 <= APPROXIMATE_ZERO || y2 - y1 <= APPROXIMATE_ZERO || z2 - z1 <= APPROXIMATE_ZERO) {
+			// For planes perpendicular to a side of the view volume, finite precision computation requires a more
+			// conservative bounding box insideness check
+			return x + APPROXIMATE_ZERO >= x1 && x - APPROXIMATE_ZERO <= x2 && y + APPROXIMATE_ZERO >= y1
+					&& y - APPROXIMATE_ZERO <= y2 && z + APPROXIMATE_ZERO >= z1 && z - APPROXIMATE_ZERO <= z2;
+		}
+		return x >= x1 && x <= x2 && y >= y1 && y <= y2 && z >= z1 && z <= z2;
+	}
+
+	private boolean insidePolygon(int index, double u, double v) {
+		// Crossing number test
+		int from = vertexOffsets[index];
+		int to = vertexOffsets[index + 1];
+		boolean inside = false;
+		for (int i = from, j = to - 2; i < to; j = i, i += 2) {
+			double ui = getProjectedCoordinate(i), vi = getProjectedCoordinate(i + 1);
+			double uj = getProjectedCoordinate(j), vj = getProjectedCoordinate(j + 1);
+			if ((vi > v) != (vj > v) && u < (uj - ui) * (v - vi) / (vj - vi) + ui) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	private double getPlaneCoefficient(int i) {
+		if (planes != null) {
+			return planes[i];
+		} else if (singlePrecisionPlanes != null) {
+			return singlePrecisionPlanes[i];
+		} else {
+			return storedPlanes.get(i);
+		}
+	}
+
+	private double getBoxBound(int i) {
+		if (boxes != null) {
+			return boxes[i];
+		} else if (singlePrecisionBoxes != null) {
+			return singlePrecisionBoxes[i];
+		} else {
+			return storedBoxes.get(i);
+		}
+	}
+
+	private double getProjectedCoordinate(int i) {
+		if (projectedVertices != null) {
+			return projectedVertices[i];
+		} else if (singlePrecisionProjectedVertices != null) {
+			return singlePrecisionProjectedVertices[i];
+		} else {
+			return storedProjectedVertices.get(i);
+		}
+	}
+
+	public PolygonalObject3D getPolygon(int index) {
+		return polygons[index];
+	}
+
+	public int getPolygonCount() {
+		return polygonCount;
+	}
+
+	/**
+	 * Returns the approximate memory footprint of the compiled arrays
+	 *
+	 * @return The size in bytes, including the arrays held in the geometry store of the scene
+	 */
+	public long getEstimatedMemoryInBytes() {
+		long bytesPerValue = isSinglePrecision() ? 4L : 8L;
+		return bytesPerValue * (10L * polygonCount + vertexOffsets[polygonCount]) + projections.length + 4L
+				* vertexOffsets.length + 8L * polygons.length + 48L * polygonCount;
+	}
+
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	public boolean isStoredOffHeap() {
+		return storedPlanes != null;
+	}
+
+}
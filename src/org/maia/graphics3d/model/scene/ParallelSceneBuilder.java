@@ -0,0 +1,127 @@
+package org.maia.graphics3d.model.scene;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.render.RenderOptions;
+
+/**
+ * A <code>SceneBuilder</code> that creates its top-level objects in batches, running in parallel threads
+ *
+ * <p>
+ * Batches are created independently of each other, so subclasses should not share mutable state between them. The
+ * objects of all batches are added to the scene in the order of the batches, as if they were created serially.
+ * </p>
+ */
+public abstract class ParallelSceneBuilder extends SceneBuilder {
+
+	protected ParallelSceneBuilder() {
+	}
+
+	@Override
+	protected Collection<Object3D> createTopLevelObjects(final RenderOptions options) {
+		int batches = getNumberOfTopLevelObjectBatches(options);
+		int threads = Math.min(batches, getNumberOfThreads());
+		List<Object3D> objects = new Vector<Object3D>();
+		if (threads <= 1) {
+			for (int i = 0; i < batches; i++) {
+				objects.addAll(createTopLevelObjects(options, i));
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new BuilderThreadFactory());
+			try {
+				List<Future<Collection<Object3D>>> futures = new Vector<Future<Collection<Object3D>>>(batches);
+				for (int i = 0; i < batches; i++) {
+					final int batchIndex = i;
+					futures.add(executor.submit(new Callable<Collection<Object3D>>() {
+
+						@Override
+						public Collection<Object3D> call() throws Exception {
+							return createTopLevelObjects(options, batchIndex);
+						}
+					}));
+				}
+				for (Future<Collection<Object3D>> future : futures) {
+					objects.addAll(getBatch(future));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		return objects;
+	}
+
+	private Collection<Object3D> getBatch(Future<Collection<Object3D>> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building the scene", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException("Failed to create top-level objects", cause);
+		}
+	}
+
+	/**
+	 * Returns the number of batches in which the top-level objects are created
+	 *
+	 * @param options
+	 *            The options of the scene being built
+	 * @return The number of batches, at least 1
+	 */
+	protected abstract int getNumberOfTopLevelObjectBatches(RenderOptions options);
+
+	/**
+	 * Creates one batch of top-level objects
+	 *
+	 * <p>
+	 * This method is called concurrently for different batches.
+	 * </p>
+	 *
+	 * @param options
+	 *            The options of the scene being built
+	 * @param batchIndex
+	 *            The index of the batch, ranging from 0 to the number of batches minus 1
+	 * @return The objects of the batch
+	 */
+	protected abstract Collection<Object3D> createTopLevelObjects(RenderOptions options, int batchIndex);
+
+	/**
+	 * Returns the maximum number of threads creating batches in parallel
+	 *
+	 * @return The number of threads, by default the number of available processors
+	 */
+	protected int getNumberOfThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static class BuilderThreadFactory implements ThreadFactory {
+
+		private int threadCount;
+
+		public BuilderThreadFactory() {
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Scene builder #" + (threadCount++));
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
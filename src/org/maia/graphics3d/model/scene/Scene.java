@@ -7,10 +7,15 @@ import org.maia.graphics3d.Metrics3D;
 import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.model.CoordinateFrame;
 import org.maia.graphics3d.model.Memoise;
+import org.maia.graphics3d.model.OffHeapGeometryStore;
 import org.maia.graphics3d.model.camera.Camera;
 import org.maia.graphics3d.model.camera.CameraObserver;
 import org.maia.graphics3d.model.light.LightSource;
+import org.maia.graphics3d.model.light.LightSourceObserver;
+import org.maia.graphics3d.model.object.LevelOfDetailObject3D;
 import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.VertexObject3D;
+import org.maia.graphics3d.model.scene.index.SceneObjectCuller;
 import org.maia.graphics3d.model.scene.index.SceneSpatialIndex;
 import org.maia.graphics3d.model.scene.index.SceneSpatialIndexFactory;
 import org.maia.graphics3d.model.scene.index.SceneViewPlaneIndex;
@@ -18,7 +23,7 @@ import org.maia.graphics3d.render.depth.DepthBlurParameters;
 import org.maia.graphics3d.render.depth.DepthFunction;
 import org.maia.graphics3d.render.view.ColorDepthBuffer;
 
-public class Scene implements CameraObserver, Memoise {
+public class Scene implements CameraObserver, LightSourceObserver, Memoise {
 
 	/**
 	 * A descriptive name for the scene.
@@ -49,6 +54,12 @@ public class Scene implements CameraObserver, Memoise {
 
 	private SceneViewPlaneIndex viewPlaneIndex;
 
+	private SceneObjectCuller objectCuller; // shared by the indices
+
+	private CompiledSceneGeometry compiledGeometry;
+
+	private OffHeapGeometryStore geometryStore;
+
 	private ColorDepthBuffer backdrop;
 
 	private DepthFunction darknessDepthFunction;
@@ -70,11 +81,37 @@ public class Scene implements CameraObserver, Memoise {
 		invalidateBoundingBoxes();
 		invalidateSpatialIndices();
 		getTopLevelObjects().add(object);
+		moveToGeometryStore(object);
 		object.cameraHasChanged(getCamera());
 	}
 
+	/**
+	 * Adds a number of top-level objects to the scene at once
+	 * 
+	 * <p>
+	 * This is equivalent to adding the objects one by one, but invalidates the scene's cached bounding boxes and
+	 * indices only once.
+	 * </p>
+	 * 
+	 * @param objects
+	 *            The objects to add
+	 * @see #addTopLevelObject(Object3D)
+	 */
+	public void addTopLevelObjects(Collection<? extends Object3D> objects) {
+		invalidateBoundingBoxes();
+		invalidateSpatialIndices();
+		getTopLevelObjects().addAll(objects);
+		Camera camera = getCamera();
+		for (Object3D object : objects) {
+			moveToGeometryStore(object);
+			object.cameraHasChanged(camera);
+		}
+	}
+
 	public void addLightSource(LightSource lightSource) {
+		invalidateSpatialIndices(); // the culling of objects depends on the light sources
 		getLightSources().add(lightSource);
+		lightSource.addObserver(this);
 		lightSource.cameraHasChanged(getCamera());
 	}
 
@@ -101,6 +138,11 @@ public class Scene implements CameraObserver, Memoise {
 		}
 	}
 
+	@Override
+	public void lightSourceHasChanged(LightSource lightSource) {
+		invalidateSpatialIndices();
+	}
+
 	@Override
 	public void releaseMemory() {
 		invalidateSpatialIndices();
@@ -109,6 +151,62 @@ public class Scene implements CameraObserver, Memoise {
 		}
 	}
 
+	/**
+	 * Disposes the scene, releasing its indices, compiled geometry and derived data, and closing its geometry store
+	 * 
+	 * <p>
+	 * The memory held in the geometry store is returned at once, without waiting for the garbage collector. The
+	 * scene and its objects cannot be rendered anymore afterwards, so a scene should only be disposed when no
+	 * rendering is in progress.
+	 * </p>
+	 * 
+	 * @see #setGeometryStore(OffHeapGeometryStore)
+	 */
+	public void dispose() {
+		releaseMemory();
+		if (getGeometryStore() != null) {
+			getGeometryStore().close();
+		}
+	}
+
+	/**
+	 * Selects the level of detail of the scene's objects that carry several levels, by their projected size for the
+	 * scene's camera
+	 * 
+	 * <p>
+	 * Levels of detail nested in a selected level are selected as well. When any selection changes, the scene's
+	 * indices and compiled geometry are invalidated, so this should be done before they are built for rendering.
+	 * </p>
+	 * 
+	 * @return The number of objects whose selection changed
+	 * @see LevelOfDetailObject3D#selectLevelOfDetail(Camera)
+	 */
+	public int selectLevelsOfDetail() {
+		int changes = 0;
+		for (Object3D object : getTopLevelObjects()) {
+			changes += selectLevelsOfDetail(object);
+		}
+		if (changes > 0) {
+			invalidateSpatialIndices();
+		}
+		return changes;
+	}
+
+	private int selectLevelsOfDetail(Object3D object) {
+		int changes = 0;
+		if (object.isComposite()) {
+			if (object instanceof LevelOfDetailObject3D) {
+				if (((LevelOfDetailObject3D) object).selectLevelOfDetail(getCamera())) {
+					changes++;
+				}
+			}
+			for (Object3D part : object.asCompositeObject().getParts()) {
+				changes += selectLevelsOfDetail(part);
+			}
+		}
+		return changes;
+	}
+
 	public Box3D getBoundingBoxInObjectCoordinates() {
 		if (boundingBoxInObjectCoordinates == null) {
 			boundingBoxInObjectCoordinates = deriveBoundingBox(CoordinateFrame.OBJECT);
@@ -166,8 +264,34 @@ public class Scene implements CameraObserver, Memoise {
 	}
 
 	private void invalidateSpatialIndices() {
+		if (getGeometryStore() != null) {
+			// Returns their memory in the store, rather than leaving it until the store is closed
+			if (spatialIndex != null)
+				spatialIndex.dispose();
+			if (compiledGeometry != null)
+				compiledGeometry.dispose();
+		}
 		spatialIndex = null;
 		viewPlaneIndex = null;
+		objectCuller = null;
+		compiledGeometry = null;
+	}
+
+	private void moveToGeometryStore(Object3D object) {
+		OffHeapGeometryStore store = getGeometryStore();
+		if (store == null)
+			return;
+		if (object instanceof LevelOfDetailObject3D) {
+			for (Object3D level : ((LevelOfDetailObject3D) object).getLevels()) {
+				moveToGeometryStore(level); // not only the selected level
+			}
+		} else if (object.isComposite()) {
+			for (Object3D part : object.asCompositeObject().getParts()) {
+				moveToGeometryStore(part);
+			}
+		} else if (object instanceof VertexObject3D) {
+			((VertexObject3D) object).getMeshInObjectCoordinates().moveToStore(store);
+		}
 	}
 
 	public double getDistanceOutsideScene() {
@@ -180,18 +304,53 @@ public class Scene implements CameraObserver, Memoise {
 
 	public SceneSpatialIndex getSpatialIndex() {
 		if (spatialIndex == null) {
-			spatialIndex = SceneSpatialIndexFactory.getInstance().createSpatialIndex(this);
+			spatialIndex = SceneSpatialIndexFactory.getInstance().createSpatialIndex(this, getObjectCuller());
 		}
 		return spatialIndex;
 	}
 
 	public SceneViewPlaneIndex getViewPlaneIndex() {
 		if (viewPlaneIndex == null) {
-			viewPlaneIndex = SceneSpatialIndexFactory.getInstance().createViewPlaneIndex(this);
+			viewPlaneIndex = SceneSpatialIndexFactory.getInstance().createViewPlaneIndex(this, getObjectCuller());
 		}
 		return viewPlaneIndex;
 	}
 
+	private SceneObjectCuller getObjectCuller() {
+		if (objectCuller == null) {
+			objectCuller = new SceneObjectCuller(this);
+		}
+		return objectCuller;
+	}
+
+	/**
+	 * Compiles the geometry of the scene's polygons into arrays of primitives, for fast eye ray intersection
+	 * 
+	 * <p>
+	 * The compiled geometry is kept until objects are added to the scene or the camera changes. Compiling an
+	 * up-to-date scene has no effect.
+	 * </p>
+	 * 
+	 * @return The compiled geometry
+	 * @see #getCompiledGeometry()
+	 */
+	public CompiledSceneGeometry compile() {
+		if (compiledGeometry == null) {
+			compiledGeometry = new CompiledSceneGeometry(this);
+		}
+		return compiledGeometry;
+	}
+
+	/**
+	 * Returns the compiled geometry of the scene
+	 * 
+	 * @return The compiled geometry, or <code>null</code> when the scene was not compiled or has changed since
+	 * @see #compile()
+	 */
+	public CompiledSceneGeometry getCompiledGeometry() {
+		return compiledGeometry;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -232,6 +391,37 @@ public class Scene implements CameraObserver, Memoise {
 		this.darknessDepthFunction = darknessDepthFunction;
 	}
 
+	public OffHeapGeometryStore getGeometryStore() {
+		return geometryStore;
+	}
+
+	/**
+	 * Sets the store in which the scene keeps its bulk geometrical data, outside of the heap
+	 * 
+	 * <p>
+	 * The meshes of the scene's objects in object coordinates move to the store, for the objects in the scene as well
+	 * as for those added later. So do the compiled geometry and the object identifiers of an octree spatial index.
+	 * Meshes derived in world, camera or view volume coordinates stay on the heap, where they can be released under
+	 * memory pressure. Objects that are instanced, or shared with another scene, should not be moved to the store, as
+	 * the store is closed when this scene is disposed.
+	 * </p>
+	 * <p>
+	 * With a store, the indices and compiled geometry are disposed as soon as they are invalidated, returning their
+	 * memory in the store. The scene should therefore not change while rendering is in progress.
+	 * </p>
+	 * 
+	 * @param store
+	 *            The store. Data already moved to a previous store remains there
+	 * @see #dispose()
+	 */
+	public void setGeometryStore(OffHeapGeometryStore store) {
+		invalidateSpatialIndices();
+		this.geometryStore = store;
+		for (Object3D object : getTopLevelObjects()) {
+			moveToGeometryStore(object);
+		}
+	}
+
 	public DepthBlurParameters getDepthBlurParameters() {
 		return depthBlurParameters;
 	}
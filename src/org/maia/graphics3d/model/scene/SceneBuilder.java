@@ -28,9 +28,7 @@ public abstract class SceneBuilder {
 
 	public Scene build(RenderOptions options) {
 		Scene scene = createEmptyScene(options);
-		for (Object3D object : createTopLevelObjects(options)) {
-			scene.addTopLevelObject(object);
-		}
+		scene.addTopLevelObjects(createTopLevelObjects(options));
 		for (LightSource light : createLightSources(scene, options)) {
 			scene.addLightSource(light);
 		}
@@ -0,0 +1,228 @@
+package org.maia.graphics3d.model.scene;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.maia.graphics3d.model.light.DirectionalLightSource;
+import org.maia.graphics3d.model.light.LightSource;
+import org.maia.graphics3d.model.light.PositionalLightSource;
+import org.maia.graphics3d.model.object.BaseObject3D;
+import org.maia.graphics3d.model.object.Object3D;
+
+/**
+ * Prepares a <code>Scene</code> for rendering, by computing the derived data of its objects and light sources upfront
+ * and in parallel
+ *
+ * <p>
+ * Objects derive their meshes, planes and bounding boxes in camera coordinates lazily, on first use. Left to
+ * rendering, this work falls to whichever render thread happens to need the data first, making the time to render
+ * the first lines unpredictable. Preparation spreads this work over a number of threads before rendering starts.
+ * </p>
+ * <p>
+ * Once prepared, the objects of the scene are marked read-only, so their derived data remains valid throughout the
+ * rendering. Render threads that are started after the preparation see all derived data, as starting a thread
+ * publishes everything written before. The objects become writable again when the preparation is released.
+ * </p>
+ *
+ * @see BaseObject3D#prepareForRendering(Scene)
+ * @see BaseObject3D#isReadOnly()
+ */
+public class ScenePreparation {
+
+	private Scene scene;
+
+	private int numberOfThreads;
+
+	private List<BaseObject3D> objects; // composites after their parts
+
+	private boolean prepared;
+
+	private long preparationTimeMillis;
+
+	private static final int BATCHES_PER_THREAD = 8;
+
+	public ScenePreparation(Scene scene, int numberOfThreads) {
+		this.scene = scene;
+		this.numberOfThreads = Math.max(numberOfThreads, 1);
+		this.objects = new Vector<BaseObject3D>(1000);
+		for (Object3D object : scene.getTopLevelObjects()) {
+			collectObjects(object);
+		}
+	}
+
+	private void collectObjects(Object3D object) {
+		if (object.isComposite()) {
+			for (Object3D part : object.asCompositeObject().getParts()) {
+				collectObjects(part);
+			}
+		}
+		if (object instanceof BaseObject3D) {
+			getObjects().add((BaseObject3D) object);
+		}
+	}
+
+	/**
+	 * Computes the derived data of the scene, then marks its objects read-only
+	 *
+	 * <p>
+	 * Individual objects are prepared in parallel, in batches of objects that are close to each other in the
+	 * hierarchy of the scene. Composite objects are prepared afterwards, as they derive their data from their parts.
+	 * </p>
+	 *
+	 * @see #release()
+	 */
+	public synchronized void prepare() {
+		if (isPrepared())
+			return;
+		long time = System.currentTimeMillis();
+		List<BaseObject3D> individualObjects = new Vector<BaseObject3D>(getObjects().size());
+		for (BaseObject3D object : getObjects()) {
+			if (!object.isComposite()) {
+				individualObjects.add(object);
+			}
+		}
+		prepareIndividualObjects(individualObjects);
+		for (BaseObject3D object : getObjects()) {
+			if (object.isComposite()) {
+				object.prepareForRendering(getScene());
+			}
+		}
+		prepareScene();
+		for (BaseObject3D object : getObjects()) {
+			object.setReadOnly(true);
+		}
+		preparationTimeMillis = System.currentTimeMillis() - time;
+		prepared = true;
+	}
+
+	private void prepareIndividualObjects(final List<BaseObject3D> individualObjects) {
+		int n = individualObjects.size();
+		int threads = Math.min(getNumberOfThreads(), n);
+		if (threads <= 1) {
+			prepareObjects(individualObjects, 0, n);
+		} else {
+			int batches = Math.min(threads * BATCHES_PER_THREAD, n);
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new PreparationThreadFactory());
+			try {
+				List<Future<Object>> futures = new Vector<Future<Object>>(batches);
+				for (int i = 0; i < batches; i++) {
+					final int from = (int) ((long) n * i / batches);
+					final int to = (int) ((long) n * (i + 1) / batches);
+					futures.add(executor.submit(new Callable<Object>() {
+
+						@Override
+						public Object call() throws Exception {
+							prepareObjects(individualObjects, from, to);
+							return null;
+						}
+					}));
+				}
+				for (Future<Object> future : futures) {
+					awaitBatch(future);
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private void prepareObjects(List<BaseObject3D> objects, int from, int to) {
+		Scene scene = getScene();
+		for (int i = from; i < to; i++) {
+			objects.get(i).prepareForRendering(scene);
+		}
+	}
+
+	private void awaitBatch(Future<Object> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while preparing the scene", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException("Failed to prepare the scene", cause);
+		}
+	}
+
+	private void prepareScene() {
+		Scene scene = getScene();
+		scene.getBoundingBoxInWorldCoordinates();
+		scene.getBoundingBoxInCameraCoordinates();
+		scene.getBoundingBoxInViewVolumeCoordinates();
+		scene.getDistanceOutsideScene();
+		for (LightSource light : scene.getLightSources()) {
+			if (light.isPositional()) {
+				((PositionalLightSource) light).getPositionInCamera(scene);
+			}
+			if (light.isDirectional()) {
+				((DirectionalLightSource) light).getScaledDirectionOutsideOfScene(scene);
+			}
+		}
+	}
+
+	/**
+	 * Marks the objects of the scene writable again
+	 */
+	public synchronized void release() {
+		if (!isPrepared())
+			return;
+		for (BaseObject3D object : getObjects()) {
+			object.setReadOnly(false);
+		}
+		prepared = false;
+	}
+
+	@Override
+	public String toString() {
+		return "Prepared " + getObjects().size() + " objects in " + getPreparationTimeMillis() + " ms using "
+				+ getNumberOfThreads() + " threads";
+	}
+
+	public Scene getScene() {
+		return scene;
+	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	private List<BaseObject3D> getObjects() {
+		return objects;
+	}
+
+	public synchronized boolean isPrepared() {
+		return prepared;
+	}
+
+	public long getPreparationTimeMillis() {
+		return preparationTimeMillis;
+	}
+
+	private static class PreparationThreadFactory implements ThreadFactory {
+
+		private int threadCount;
+
+		public PreparationThreadFactory() {
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Scene preparation #" + (threadCount++));
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+}
@@ -0,0 +1,632 @@
+package org.maia.graphics3d.model.scene;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Vector;
+
+import org.maia.graphics2d.texture.TextureMapHandle;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.geometry.Vector3D;
+import org.maia.graphics3d.model.OffHeapGeometryStore;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.MovableCameraImpl;
+import org.maia.graphics3d.model.camera.PerspectiveViewVolume;
+import org.maia.graphics3d.model.camera.RevolvingCameraImpl;
+import org.maia.graphics3d.model.camera.ViewVolume;
+import org.maia.graphics3d.model.light.AmbientLight;
+import org.maia.graphics3d.model.light.InboundLight;
+import org.maia.graphics3d.model.light.LightSource;
+import org.maia.graphics3d.model.light.SpotLight;
+import org.maia.graphics3d.model.object.BaseObject3D;
+import org.maia.graphics3d.model.object.ConvexPolygonalObject3D;
+import org.maia.graphics3d.model.object.InstancedObject3D;
+import org.maia.graphics3d.model.object.LevelOfDetailObject3D;
+import org.maia.graphics3d.model.object.MultipartObject3D;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PackedMesh3D;
+import org.maia.graphics3d.model.object.PolygonInsidenessTest;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.model.object.SimpleTexturedFace3D;
+import org.maia.graphics3d.model.object.SimpleTexturedFace3D.PictureRegion;
+import org.maia.graphics3d.render.depth.DepthBlurParameters;
+import org.maia.graphics3d.render.depth.DepthFunction;
+import org.maia.graphics3d.render.depth.LinearScalingDepthFunction;
+import org.maia.graphics3d.render.depth.SigmoidDepthFunction;
+import org.maia.graphics3d.render.shading.FlatShadingModel;
+import org.maia.graphics3d.render.shading.FlatShadingModelImpl;
+import org.maia.graphics3d.transform.TransformMatrix3D;
+import org.maia.graphics3d.transform.Transformation3D;
+
+/**
+ * A scene snapshot file, as written by <code>SceneSnapshotWriter</code>, loaded by memory-mapping
+ *
+ * <p>
+ * Opening a snapshot maps the file into memory and reads only its header and its tables of colors, shading models and
+ * texture maps. The objects are materialized lazily, a top-level object with its composite hierarchy at a time, when
+ * first asked for by {@link #getTopLevelObject(int)}, which is the only lazy path. Creating the scene of a snapshot
+ * materializes all of its objects at once, as the indices and renderers of a scene work on its individual objects
+ * and there are no stand-in objects that materialize on demand. The meshes of the materialized objects read their
+ * vertex coordinates straight from the mapped file, which the operating system pages in on first access, so loading
+ * does not copy nor convert any vertex data. Objects sharing a color, shading model, texture map or instancing
+ * prototype in the written scene share them in the loaded scene as well.
+ * </p>
+ * <p>
+ * The mapped file is held by the geometry store of the snapshot, which is handed over to the scene created from it.
+ * The mapping is released when that scene is disposed or the snapshot is closed, whichever comes first, after which
+ * none of the materialized objects can be used anymore.
+ * </p>
+ * <p>
+ * Texture maps are written by the identifier of their handle. Snapshots with textured faces therefore need a
+ * <code>TextureMapHandleResolver</code> to turn identifiers back into handles, typically from the same texture map
+ * registry that the scene was built with.
+ * </p>
+ *
+ * @see SceneSnapshotWriter
+ * @see Scene#dispose()
+ */
+public class SceneSnapshot {
+
+	private String filePath;
+
+	private TextureMapHandleResolver textureMapHandleResolver;
+
+	private OffHeapGeometryStore geometryStore;
+
+	private ByteBuffer[] regions;
+
+	private int regionSizeInBytes;
+
+	private long sceneRecordPosition;
+
+	private long objectTablePosition;
+
+	private int[] topLevelObjectIndices;
+
+	private BaseObject3D[] objects; // lazily materialized
+
+	private int materializedObjectCount;
+
+	private Color[] colors;
+
+	private FlatShadingModel[] shadingModels;
+
+	private String[] textureIdentifiers;
+
+	private TextureMapHandle[] textureMapHandles; // lazily resolved
+
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final long MAGIC = 0x4E5344334149414DL; // "MAIA3DSN" in little-endian order
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 64;
+
+	static final int RECORD_ALIGNMENT = 8;
+
+	static final byte MULTIPART_OBJECT = 1;
+
+	static final byte INSTANCED_OBJECT = 2;
+
+	static final byte POLYGON_OBJECT = 3;
+
+	static final byte CONVEX_POLYGON_OBJECT = 4;
+
+	static final byte FACE_OBJECT = 5;
+
+	static final byte TEXTURED_FACE_OBJECT = 6;
+
+	static final byte LEVEL_OF_DETAIL_OBJECT = 7;
+
+	static final byte AMBIENT_LIGHT = 1;
+
+	static final byte INBOUND_LIGHT = 2;
+
+	static final byte SPOT_LIGHT = 3;
+
+	static final byte NO_DEPTH_FUNCTION = 0;
+
+	static final byte SIGMOID_DEPTH_FUNCTION = 1;
+
+	static final byte LINEAR_SCALING_DEPTH_FUNCTION = 2;
+
+	/**
+	 * Opens a snapshot without textured faces
+	 *
+	 * @param filePath
+	 *            The path of the snapshot file
+	 * @throws IOException
+	 *             When the file cannot be read or is not a snapshot
+	 */
+	public SceneSnapshot(String filePath) throws IOException {
+		this(filePath, null);
+	}
+
+	/**
+	 * Opens a snapshot
+	 *
+	 * @param filePath
+	 *            The path of the snapshot file
+	 * @param textureMapHandleResolver
+	 *            The resolver of the texture maps of textured faces, or <code>null</code> when there are none
+	 * @throws IOException
+	 *             When the file cannot be read or is not a snapshot
+	 */
+	public SceneSnapshot(String filePath, TextureMapHandleResolver textureMapHandleResolver) throws IOException {
+		this.filePath = filePath;
+		this.textureMapHandleResolver = textureMapHandleResolver;
+		this.geometryStore = new OffHeapGeometryStore();
+		try {
+			open();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw new IOException("Malformed scene snapshot: " + filePath, e);
+		}
+	}
+
+	private void open() throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		try {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_SIZE)
+				throw new IOException("Not a scene snapshot: " + filePath);
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(BYTE_ORDER);
+			if (header.getLong(0) != MAGIC)
+				throw new IOException("Not a scene snapshot: " + filePath);
+			if (header.getInt(8) != VERSION)
+				throw new IOException("Unsupported scene snapshot version " + header.getInt(8) + ": " + filePath);
+			regionSizeInBytes = header.getInt(12);
+			if (header.getLong(56) != fileSize)
+				throw new IOException("Truncated scene snapshot: " + filePath);
+			int regionCount = (int) ((fileSize + regionSizeInBytes - 1) / regionSizeInBytes);
+			regions = new ByteBuffer[regionCount];
+			for (int i = 0; i < regionCount; i++) {
+				long start = (long) i * regionSizeInBytes;
+				long size = Math.min(regionSizeInBytes, fileSize - start);
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(BYTE_ORDER);
+				geometryStore.adoptBuffer(regions[i]);
+			}
+			sceneRecordPosition = header.getLong(16);
+			objectTablePosition = header.getLong(32);
+			objects = new BaseObject3D[header.getInt(40)];
+			topLevelObjectIndices = new int[header.getInt(44)];
+			RecordReader reader = new RecordReader(header.getLong(48));
+			for (int i = 0; i < topLevelObjectIndices.length; i++) {
+				topLevelObjectIndices[i] = reader.readInt();
+			}
+			readTables(new RecordReader(header.getLong(24)));
+		} finally {
+			channel.close(); // the mappings remain valid
+		}
+	}
+
+	private void readTables(RecordReader reader) {
+		colors = new Color[reader.readInt()];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = new Color(reader.readInt(), true);
+		}
+		shadingModels = new FlatShadingModel[reader.readInt()];
+		for (int i = 0; i < shadingModels.length; i++) {
+			double lightReflectionFactor = reader.readDouble();
+			double lightGlossFactor = reader.readDouble();
+			shadingModels[i] = new FlatShadingModelImpl(lightReflectionFactor, lightGlossFactor);
+		}
+		textureIdentifiers = new String[reader.readInt()];
+		for (int i = 0; i < textureIdentifiers.length; i++) {
+			textureIdentifiers[i] = reader.readString();
+		}
+		textureMapHandles = new TextureMapHandle[textureIdentifiers.length];
+	}
+
+	/**
+	 * Creates the scene of this snapshot
+	 *
+	 * <p>
+	 * All objects are materialized up front, as the scene and its indices need every object in place. Although no
+	 * vertex data is copied, this takes in the order of a kilobyte of heap and a few microseconds per object, which
+	 * for large snapshots is the bulk of the loading time. To load part of a snapshot only, materialize the objects of
+	 * interest with {@link #getTopLevelObject(int)} and add them to a scene of your own instead.
+	 * </p>
+	 * <p>
+	 * The scene takes over the geometry store of this snapshot, so disposing the scene releases the mapped file. A
+	 * snapshot should create no more than one scene, as the scene shares its objects with the snapshot.
+	 * </p>
+	 *
+	 * @return The scene, with its camera, light sources and depth parameters
+	 * @throws IllegalStateException
+	 *             When the snapshot is closed
+	 * @see Scene#setGeometryStore(OffHeapGeometryStore)
+	 */
+	public Scene createScene() {
+		checkOpen();
+		RecordReader reader = new RecordReader(sceneRecordPosition);
+		String name = reader.readString();
+		Camera camera = readCamera(reader);
+		Scene scene = new Scene(name, camera);
+		scene.setGeometryStore(getGeometryStore());
+		List<Object3D> topLevelObjects = new Vector<Object3D>(getTopLevelObjectCount());
+		for (int i = 0; i < getTopLevelObjectCount(); i++) {
+			topLevelObjects.add(getTopLevelObject(i));
+		}
+		scene.addTopLevelObjects(topLevelObjects);
+		int lightCount = reader.readInt();
+		for (int i = 0; i < lightCount; i++) {
+			scene.addLightSource(readLight(reader));
+		}
+		scene.setDarknessDepthFunction(readDepthFunction(reader));
+		if (reader.readBoolean()) {
+			double relativeInflectionDepth = reader.readDouble();
+			double smoothness = reader.readDouble();
+			double maxBlurPixelRadius = reader.readDouble();
+			double maxRelativeDepthSimilarity = reader.readDouble();
+			scene.setDepthBlurParameters(new DepthBlurParameters(relativeInflectionDepth, smoothness,
+					maxBlurPixelRadius, maxRelativeDepthSimilarity));
+		}
+		return scene;
+	}
+
+	/**
+	 * Returns the name of the scene of this snapshot
+	 *
+	 * @return The name, which can be <code>null</code>
+	 */
+	public String getSceneName() {
+		checkOpen();
+		return new RecordReader(sceneRecordPosition).readString();
+	}
+
+	public int getTopLevelObjectCount() {
+		return topLevelObjectIndices.length;
+	}
+
+	/**
+	 * Returns a top-level object of this snapshot, materializing it when asked for the first time
+	 *
+	 * @param index
+	 *            The index of the object, ranging from 0 to the number of top-level objects minus 1
+	 * @return The object, including its composite hierarchy
+	 * @throws IllegalStateException
+	 *             When the snapshot is closed
+	 */
+	public synchronized Object3D getTopLevelObject(int index) {
+		checkOpen();
+		return getObject(topLevelObjectIndices[index]);
+	}
+
+	private BaseObject3D getObject(int index) {
+		BaseObject3D object = objects[index];
+		if (object == null) {
+			object = materializeObject(new RecordReader(readObjectPosition(index)));
+			objects[index] = object;
+			materializedObjectCount++;
+		}
+		return object;
+	}
+
+	private long readObjectPosition(int index) {
+		return new RecordReader(objectTablePosition + 8L * index).readLong();
+	}
+
+	private BaseObject3D materializeObject(RecordReader reader) {
+		byte type = reader.readByte();
+		TransformMatrix3D matrix = null;
+		if (reader.readBoolean()) {
+			matrix = reader.readMatrix();
+			Transformation3D.setInverseMatrix(matrix, reader.readMatrix());
+		}
+		BaseObject3D object = null;
+		if (type == MULTIPART_OBJECT) {
+			MultipartObject3D<BaseObject3D> composite = new MultipartObject3D<BaseObject3D>();
+			composite.setClosedSolid(reader.readBoolean());
+			int partCount = reader.readInt();
+			for (int i = 0; i < partCount; i++) {
+				composite.addPart(getObject(reader.readInt()));
+			}
+			object = composite;
+		} else if (type == LEVEL_OF_DETAIL_OBJECT) {
+			LevelOfDetailObject3D lod = new LevelOfDetailObject3D();
+			int levelCount = reader.readInt();
+			for (int i = 0; i < levelCount; i++) {
+				BaseObject3D level = getObject(reader.readInt());
+				lod.addLevel(level, reader.readDouble());
+			}
+			object = lod;
+		} else if (type == INSTANCED_OBJECT) {
+			BaseObject3D prototype = getObject(reader.readInt());
+			Color color = getColor(reader.readInt());
+			FlatShadingModel shadingModel = getShadingModel(reader.readInt());
+			object = new InstancedObject3D(prototype, color, shadingModel);
+		} else if (type == TEXTURED_FACE_OBJECT) {
+			PolygonInsidenessTest test = readInsidenessTest(reader);
+			double x1 = reader.readDouble();
+			double x2 = reader.readDouble();
+			double y1 = reader.readDouble();
+			double y2 = reader.readDouble();
+			PictureRegion region = new PictureRegion(x1, x2, y1, y2);
+			Color pictureColor = getColor(reader.readInt());
+			FlatShadingModel shadingModel = getShadingModel(reader.readInt());
+			TextureMapHandle pictureMapHandle = getTextureMapHandle(reader.readInt());
+			TextureMapHandle luminanceMapHandle = getTextureMapHandle(reader.readInt());
+			TextureMapHandle transparencyMapHandle = getTextureMapHandle(reader.readInt());
+			SimpleTexturedFace3D face = null;
+			if (pictureMapHandle != null) {
+				face = new SimpleTexturedFace3D(shadingModel, pictureMapHandle, region, luminanceMapHandle,
+						transparencyMapHandle, null);
+			} else {
+				face = new SimpleTexturedFace3D(pictureColor, shadingModel, region, luminanceMapHandle,
+						transparencyMapHandle, null);
+			}
+			restoreInsidenessTest(face, test);
+			object = face;
+		} else {
+			PackedMesh3D mesh = readMesh(reader);
+			PolygonInsidenessTest test = readInsidenessTest(reader);
+			PolygonalObject3D polygon = null;
+			if (type == FACE_OBJECT) {
+				Color frontColor = getColor(reader.readInt());
+				Color backColor = getColor(reader.readInt());
+				polygon = new SimpleFace3D(frontColor, backColor, getShadingModel(reader.readInt()), mesh);
+			} else if (type == CONVEX_POLYGON_OBJECT) {
+				polygon = new ConvexPolygonalObject3D(mesh);
+			} else if (type == POLYGON_OBJECT) {
+				polygon = new PolygonalObject3D(mesh);
+			} else {
+				throw new IllegalStateException("Malformed scene snapshot: object type " + type);
+			}
+			restoreInsidenessTest(polygon, test);
+			object = polygon;
+		}
+		if (matrix != null) {
+			object.transform(matrix);
+		}
+		return object;
+	}
+
+	private PackedMesh3D readMesh(RecordReader reader) {
+		long position = reader.readLong();
+		int vertexCount = reader.readInt();
+		boolean singlePrecision = reader.readBoolean();
+		ByteBuffer region = getRegion(position);
+		int offset = getOffsetInRegion(position);
+		OffHeapGeometryStore.Block block = singlePrecision
+				? getGeometryStore().wrapFloats(region, offset, 3 * vertexCount)
+				: getGeometryStore().wrapDoubles(region, offset, 3 * vertexCount);
+		return new PackedMesh3D(block, PolygonalObject3D.getPolygonEdges(vertexCount));
+	}
+
+	private PolygonInsidenessTest readInsidenessTest(RecordReader reader) {
+		return PolygonInsidenessTest.values()[reader.readByte()];
+	}
+
+	private void restoreInsidenessTest(PolygonalObject3D polygon, PolygonInsidenessTest test) {
+		if (!test.equals(polygon.getInsidenessTest())) {
+			polygon.setInsidenessTest(test);
+		}
+	}
+
+	private Camera readCamera(RecordReader reader) {
+		boolean revolving = reader.readBoolean();
+		double viewAngleInDegrees = reader.readDouble();
+		double aspectRatio = reader.readDouble();
+		double N = reader.readDouble();
+		double F = reader.readDouble();
+		ViewVolume viewVolume = PerspectiveViewVolume.createFromParameters(viewAngleInDegrees, aspectRatio, N, F);
+		Point3D position = reader.readPoint();
+		TransformMatrix3D viewingMatrix = reader.readMatrix();
+		MovableCameraImpl camera = null;
+		if (revolving) {
+			camera = new RevolvingCameraImpl(reader.readPoint(), position, viewVolume);
+		} else {
+			camera = new MovableCameraImpl(viewVolume);
+		}
+		camera.restore(position, viewingMatrix);
+		return camera;
+	}
+
+	private LightSource readLight(RecordReader reader) {
+		byte type = reader.readByte();
+		double brightness = reader.readDouble();
+		if (type == AMBIENT_LIGHT) {
+			return new AmbientLight(brightness);
+		} else if (type == INBOUND_LIGHT) {
+			return new InboundLight(reader.readVector(), brightness);
+		} else if (type == SPOT_LIGHT) {
+			Point3D position = reader.readPoint();
+			return new SpotLight(position, brightness, reader.readBoolean());
+		} else {
+			throw new IllegalStateException("Malformed scene snapshot: light type " + type);
+		}
+	}
+
+	private DepthFunction readDepthFunction(RecordReader reader) {
+		byte type = reader.readByte();
+		if (type == NO_DEPTH_FUNCTION) {
+			return null;
+		} else if (type == SIGMOID_DEPTH_FUNCTION) {
+			double nearDepth = reader.readDouble();
+			double farDepth = reader.readDouble();
+			double relativeInflectionDepth = reader.readDouble();
+			double smoothness = reader.readDouble();
+			return SigmoidDepthFunction.createFilter(nearDepth, farDepth, relativeInflectionDepth, smoothness);
+		} else if (type == LINEAR_SCALING_DEPTH_FUNCTION) {
+			double scale = reader.readDouble();
+			double lift = reader.readDouble();
+			return new LinearScalingDepthFunction(readDepthFunction(reader), scale, lift);
+		} else {
+			throw new IllegalStateException("Malformed scene snapshot: depth function type " + type);
+		}
+	}
+
+	private Color getColor(int index) {
+		return index < 0 ? null : colors[index];
+	}
+
+	private FlatShadingModel getShadingModel(int index) {
+		return index < 0 ? null : shadingModels[index];
+	}
+
+	private TextureMapHandle getTextureMapHandle(int index) {
+		if (index < 0)
+			return null;
+		TextureMapHandle handle = textureMapHandles[index];
+		if (handle == null) {
+			if (getTextureMapHandleResolver() == null)
+				throw new IllegalStateException("No texture map handle resolver for snapshot: " + filePath);
+			handle = getTextureMapHandleResolver().resolveTextureMapHandle(textureIdentifiers[index]);
+			textureMapHandles[index] = handle;
+		}
+		return handle;
+	}
+
+	private ByteBuffer getRegion(long position) {
+		return regions[(int) (position / regionSizeInBytes)];
+	}
+
+	private int getOffsetInRegion(long position) {
+		return (int) (position % regionSizeInBytes);
+	}
+
+	/**
+	 * Closes this snapshot, releasing the mapped file
+	 *
+	 * <p>
+	 * The objects materialized from this snapshot cannot be used anymore afterwards. Closing a snapshot whose scene
+	 * was disposed, or closing a closed snapshot, has no effect.
+	 * </p>
+	 */
+	public void close() {
+		getGeometryStore().close();
+	}
+
+	public boolean isClosed() {
+		return getGeometryStore().isClosed();
+	}
+
+	private void checkOpen() {
+		if (isClosed())
+			throw new IllegalStateException("Scene snapshot is closed: " + filePath);
+	}
+
+	@Override
+	public String toString() {
+		return "SceneSnapshot " + filePath + ": " + getTopLevelObjectCount() + " top-level objects, "
+				+ getMaterializedObjectCount() + " of " + objects.length + " objects materialized";
+	}
+
+	public String getFilePath() {
+		return filePath;
+	}
+
+	public TextureMapHandleResolver getTextureMapHandleResolver() {
+		return textureMapHandleResolver;
+	}
+
+	public OffHeapGeometryStore getGeometryStore() {
+		return geometryStore;
+	}
+
+	/**
+	 * Returns the number of objects materialized so far, including the parts of composite objects
+	 *
+	 * @return The number of objects
+	 */
+	public synchronized int getMaterializedObjectCount() {
+		return materializedObjectCount;
+	}
+
+	/**
+	 * Turns the identifiers of texture maps, as written in a snapshot, back into texture map handles
+	 */
+	public static interface TextureMapHandleResolver {
+
+		TextureMapHandle resolveTextureMapHandle(String identifier);
+
+	}
+
+	/**
+	 * Reads the values of a record in sequence, from the region holding the record
+	 */
+	private class RecordReader {
+
+		private ByteBuffer region;
+
+		private int offset;
+
+		public RecordReader(long position) {
+			this.region = getRegion(position);
+			this.offset = getOffsetInRegion(position);
+		}
+
+		public byte readByte() {
+			return region.get(offset++);
+		}
+
+		public boolean readBoolean() {
+			return readByte() != 0;
+		}
+
+		public int readInt() {
+			int value = region.getInt(offset);
+			offset += 4;
+			return value;
+		}
+
+		public long readLong() {
+			long value = region.getLong(offset);
+			offset += 8;
+			return value;
+		}
+
+		public double readDouble() {
+			double value = region.getDouble(offset);
+			offset += 8;
+			return value;
+		}
+
+		public Point3D readPoint() {
+			double x = readDouble();
+			double y = readDouble();
+			double z = readDouble();
+			return new Point3D(x, y, z);
+		}
+
+		public Vector3D readVector() {
+			double x = readDouble();
+			double y = readDouble();
+			double z = readDouble();
+			return new Vector3D(x, y, z);
+		}
+
+		public TransformMatrix3D readMatrix() {
+			double[] values = new double[16];
+			for (int i = 0; i < 16; i++) {
+				values[i] = readDouble();
+			}
+			return new TransformMatrix3D(values);
+		}
+
+		public String readString() {
+			int length = readInt();
+			if (length < 0)
+				return null;
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = readByte();
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+	}
+
+}
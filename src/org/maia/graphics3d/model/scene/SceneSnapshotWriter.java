@@ -0,0 +1,594 @@
+package org.maia.graphics3d.model.scene;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.maia.graphics2d.texture.TextureMapHandle;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.geometry.Vector3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.MovableCameraImpl;
+import org.maia.graphics3d.model.camera.PerspectiveViewVolume;
+import org.maia.graphics3d.model.camera.RevolvingCameraImpl;
+import org.maia.graphics3d.model.light.AmbientLight;
+import org.maia.graphics3d.model.light.InboundLight;
+import org.maia.graphics3d.model.light.LightSource;
+import org.maia.graphics3d.model.light.SpotLight;
+import org.maia.graphics3d.model.object.BaseObject3D;
+import org.maia.graphics3d.model.object.ConvexPolygonalObject3D;
+import org.maia.graphics3d.model.object.InstancedObject3D;
+import org.maia.graphics3d.model.object.LevelOfDetailObject3D;
+import org.maia.graphics3d.model.object.MultipartObject3D;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PackedMesh3D;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.model.object.SimpleTexturedFace3D;
+import org.maia.graphics3d.model.object.SimpleTexturedFace3D.PictureRegion;
+import org.maia.graphics3d.render.depth.DepthBlurParameters;
+import org.maia.graphics3d.render.depth.DepthFunction;
+import org.maia.graphics3d.render.depth.LinearScalingDepthFunction;
+import org.maia.graphics3d.render.depth.SigmoidDepthFunction;
+import org.maia.graphics3d.render.shading.FlatShadingModel;
+import org.maia.graphics3d.render.shading.FlatShadingModelImpl;
+import org.maia.graphics3d.transform.TransformMatrix3D;
+import org.maia.graphics3d.transform.Transformation3D;
+
+/**
+ * Writes a scene to a binary snapshot file, to be loaded by <code>SceneSnapshot</code>
+ *
+ * <p>
+ * A snapshot holds the top-level objects of the scene with their composite hierarchies, transforms, colors, shading
+ * models and texture map handles, as well as the camera, the light sources and the depth parameters. The vertex
+ * coordinates are written in the precision of their meshes, in a layout that the loaded meshes read from directly.
+ * Colors, shading models and texture map handles are written once, however many objects share them, and so are the
+ * prototypes of instanced objects. Objects with levels of detail are written with all of their levels.
+ * </p>
+ * <p>
+ * Only the object, light, camera and depth function classes of this library are supported, and objects whose class
+ * has additional state, like subclasses or textured faces with a picture mask, are rejected. The backdrop of the scene
+ * is not written, as it is typically derived from the render options.
+ * </p>
+ * <p>
+ * A writer should not be used by multiple threads at the same time.
+ * </p>
+ *
+ * @see SceneSnapshot
+ */
+public class SceneSnapshotWriter {
+
+	private int regionSizeInBytes;
+
+	private FileChannel channel;
+
+	private ByteBuffer outputBuffer;
+
+	private long position;
+
+	private ByteBuffer record;
+
+	private Map<Object3D, Integer> objectIndices;
+
+	private List<Long> objectPositions;
+
+	private Map<Integer, Integer> colorIndices;
+
+	private List<Integer> colors;
+
+	private Map<FlatShadingModel, Integer> shadingModelIndices;
+
+	private List<FlatShadingModelImpl> shadingModels;
+
+	private Map<String, Integer> textureIndices;
+
+	private List<String> textureIdentifiers;
+
+	/**
+	 * Default size of the regions in which a snapshot is memory-mapped when loaded
+	 */
+	public static final int DEFAULT_REGION_SIZE_IN_BYTES = 1024 * 1024 * 1024;
+
+	private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+	public SceneSnapshotWriter() {
+		setRegionSizeInBytes(DEFAULT_REGION_SIZE_IN_BYTES);
+	}
+
+	/**
+	 * Writes a snapshot of a scene
+	 *
+	 * @param scene
+	 *            The scene
+	 * @param filePath
+	 *            The path of the snapshot file, which is overwritten when it exists
+	 * @throws IOException
+	 *             When the file cannot be written
+	 * @throws IllegalArgumentException
+	 *             When the scene holds an object, light source, camera or depth function that is not supported
+	 */
+	public void write(Scene scene, String filePath) throws IOException {
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			outputBuffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(SceneSnapshot.BYTE_ORDER);
+			record = ByteBuffer.allocate(1024).order(SceneSnapshot.BYTE_ORDER);
+			position = 0;
+			objectIndices = new IdentityHashMap<Object3D, Integer>();
+			objectPositions = new Vector<Long>();
+			colorIndices = new HashMap<Integer, Integer>();
+			colors = new Vector<Integer>();
+			shadingModelIndices = new IdentityHashMap<FlatShadingModel, Integer>();
+			shadingModels = new Vector<FlatShadingModelImpl>();
+			textureIndices = new HashMap<String, Integer>();
+			textureIdentifiers = new Vector<String>();
+			writePadding(SceneSnapshot.HEADER_SIZE);
+			List<Integer> topLevelObjectIndices = new Vector<Integer>(scene.getTopLevelObjects().size());
+			for (Object3D object : scene.getTopLevelObjects()) {
+				topLevelObjectIndices.add(writeObject(object));
+			}
+			long sceneRecordPosition = writeSceneRecord(scene);
+			long tablesPosition = writeTables();
+			long objectTablePosition = writeObjectTable();
+			long topLevelTablePosition = writeTopLevelTable(topLevelObjectIndices);
+			flushOutput();
+			writeHeader(sceneRecordPosition, tablesPosition, objectTablePosition, topLevelTablePosition,
+					topLevelObjectIndices.size());
+		} finally {
+			channel.close();
+			channel = null;
+			outputBuffer = null;
+			record = null;
+			objectIndices = null;
+			objectPositions = null;
+			colorIndices = null;
+			colors = null;
+			shadingModelIndices = null;
+			shadingModels = null;
+			textureIndices = null;
+			textureIdentifiers = null;
+		}
+	}
+
+	private void writeHeader(long sceneRecordPosition, long tablesPosition, long objectTablePosition,
+			long topLevelTablePosition, int topLevelObjectCount) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(SceneSnapshot.HEADER_SIZE).order(SceneSnapshot.BYTE_ORDER);
+		header.putLong(SceneSnapshot.MAGIC);
+		header.putInt(SceneSnapshot.VERSION);
+		header.putInt(getRegionSizeInBytes());
+		header.putLong(sceneRecordPosition);
+		header.putLong(tablesPosition);
+		header.putLong(objectTablePosition);
+		header.putInt(objectPositions.size());
+		header.putInt(topLevelObjectCount);
+		header.putLong(topLevelTablePosition);
+		header.putLong(position);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+	}
+
+	private int writeObject(Object3D object) throws IOException {
+		Integer index = objectIndices.get(object);
+		if (index != null)
+			return index; // shared, like the prototype of instances
+		Class<?> type = object.getClass();
+		if (type.equals(MultipartObject3D.class)) {
+			MultipartObject3D<?> composite = (MultipartObject3D<?>) object;
+			int[] partIndices = new int[composite.getParts().size()];
+			int i = 0;
+			for (Object3D part : composite.getParts()) {
+				partIndices[i++] = writeObject(part);
+			}
+			beginObjectRecord(SceneSnapshot.MULTIPART_OBJECT, composite);
+			putBoolean(composite.isClosedSolid());
+			putInt(partIndices.length);
+			for (int j = 0; j < partIndices.length; j++) {
+				putInt(partIndices[j]);
+			}
+		} else if (type.equals(LevelOfDetailObject3D.class)) {
+			LevelOfDetailObject3D lod = (LevelOfDetailObject3D) object;
+			int n = lod.getLevelCount();
+			int[] levelIndices = new int[n];
+			for (int i = 0; i < n; i++) {
+				levelIndices[i] = writeObject(lod.getLevel(i)); // all levels, not only the selected one
+			}
+			beginObjectRecord(SceneSnapshot.LEVEL_OF_DETAIL_OBJECT, lod);
+			putInt(n);
+			for (int i = 0; i < n; i++) {
+				putInt(levelIndices[i]);
+				putDouble(lod.getMinimumProjectedSize(i));
+			}
+		} else if (type.equals(InstancedObject3D.class)) {
+			InstancedObject3D instance = (InstancedObject3D) object;
+			int prototypeIndex = writeObject(instance.getPrototype());
+			beginObjectRecord(SceneSnapshot.INSTANCED_OBJECT, instance);
+			putInt(prototypeIndex);
+			putInt(getColorIndex(instance.getColor()));
+			putInt(getShadingModelIndex(instance.getShadingModel()));
+		} else if (type.equals(SimpleTexturedFace3D.class)) {
+			SimpleTexturedFace3D face = (SimpleTexturedFace3D) object;
+			if (face.getPictureMask() != null)
+				throw new IllegalArgumentException("Unsupported picture mask in snapshot: " + face);
+			PictureRegion region = face.getPictureRegion();
+			beginObjectRecord(SceneSnapshot.TEXTURED_FACE_OBJECT, face);
+			putByte((byte) face.getInsidenessTest().ordinal()); // the vertices are canonical
+			putDouble(region.getX1());
+			putDouble(region.getX2());
+			putDouble(region.getY1());
+			putDouble(region.getY2());
+			putInt(getColorIndex(face.getFrontColor()));
+			putInt(getShadingModelIndex(face.getShadingModel()));
+			putInt(getTextureIndex(face.getPictureMapHandle()));
+			putInt(getTextureIndex(face.getLuminanceMapHandle()));
+			putInt(getTextureIndex(face.getTransparencyMapHandle()));
+		} else if (type.equals(SimpleFace3D.class)) {
+			SimpleFace3D face = (SimpleFace3D) object;
+			long meshPosition = writeMesh(face.getMeshInObjectCoordinates());
+			beginObjectRecord(SceneSnapshot.FACE_OBJECT, face);
+			putPolygon(face, meshPosition);
+			putInt(getColorIndex(face.getFrontColor()));
+			putInt(getColorIndex(face.getBackColor()));
+			putInt(getShadingModelIndex(face.getShadingModel()));
+		} else if (type.equals(ConvexPolygonalObject3D.class) || type.equals(PolygonalObject3D.class)) {
+			PolygonalObject3D polygon = (PolygonalObject3D) object;
+			long meshPosition = writeMesh(polygon.getMeshInObjectCoordinates());
+			beginObjectRecord(type.equals(PolygonalObject3D.class) ? SceneSnapshot.POLYGON_OBJECT
+					: SceneSnapshot.CONVEX_POLYGON_OBJECT, polygon);
+			putPolygon(polygon, meshPosition);
+		} else {
+			throw new IllegalArgumentException("Unsupported object type in snapshot: " + type.getName());
+		}
+		index = objectPositions.size();
+		objectPositions.add(writeRecord());
+		objectIndices.put(object, index);
+		return index;
+	}
+
+	private void beginObjectRecord(byte type, BaseObject3D object) {
+		record.clear();
+		putByte(type);
+		boolean transformed = object.getIndexOfCurrentTransformStep() > 0;
+		putBoolean(transformed);
+		if (transformed) {
+			TransformMatrix3D matrix = object.getOwnTransformMatrix();
+			putMatrix(matrix);
+			putMatrix(Transformation3D.getInverseMatrix(matrix)); // the exact reverse composite
+		}
+	}
+
+	private void putPolygon(PolygonalObject3D polygon, long meshPosition) {
+		PackedMesh3D mesh = polygon.getMeshInObjectCoordinates();
+		putLong(meshPosition);
+		putInt(mesh.getVertexCount());
+		putBoolean(mesh.isSinglePrecision());
+		putByte((byte) polygon.getInsidenessTest().ordinal());
+	}
+
+	private long writeMesh(PackedMesh3D mesh) throws IOException {
+		int n = 3 * mesh.getVertexCount();
+		boolean singlePrecision = mesh.isSinglePrecision();
+		long start = beginRecord((long) n * (singlePrecision ? 4 : 8));
+		for (int i = 0; i < mesh.getVertexCount(); i++) {
+			if (outputBuffer.remaining() < 24) {
+				flushOutput();
+			}
+			if (singlePrecision) {
+				outputBuffer.putFloat((float) mesh.getX(i));
+				outputBuffer.putFloat((float) mesh.getY(i));
+				outputBuffer.putFloat((float) mesh.getZ(i));
+			} else {
+				outputBuffer.putDouble(mesh.getX(i));
+				outputBuffer.putDouble(mesh.getY(i));
+				outputBuffer.putDouble(mesh.getZ(i));
+			}
+		}
+		position += (long) n * (singlePrecision ? 4 : 8);
+		return start;
+	}
+
+	private long writeSceneRecord(Scene scene) throws IOException {
+		record.clear();
+		putString(scene.getName());
+		putCamera(scene.getCamera());
+		putInt(scene.getLightSources().size());
+		for (LightSource light : scene.getLightSources()) {
+			putLight(light);
+		}
+		putDepthFunction(scene.getDarknessDepthFunction());
+		DepthBlurParameters blur = scene.getDepthBlurParameters();
+		putBoolean(blur != null);
+		if (blur != null) {
+			putDouble(blur.getRelativeInflectionDepth());
+			putDouble(blur.getSmoothness());
+			putDouble(blur.getMaxBlurPixelRadius());
+			putDouble(blur.getMaxRelativeDepthSimilarity());
+		}
+		return writeRecord();
+	}
+
+	private void putCamera(Camera camera) {
+		Class<?> type = camera.getClass();
+		if (!type.equals(MovableCameraImpl.class) && !type.equals(RevolvingCameraImpl.class))
+			throw new IllegalArgumentException("Unsupported camera type in snapshot: " + type.getName());
+		if (!camera.getViewVolume().getClass().equals(PerspectiveViewVolume.class))
+			throw new IllegalArgumentException("Unsupported view volume type in snapshot: "
+					+ camera.getViewVolume().getClass().getName());
+		boolean revolving = type.equals(RevolvingCameraImpl.class);
+		putBoolean(revolving);
+		PerspectiveViewVolume viewVolume = (PerspectiveViewVolume) camera.getViewVolume();
+		putDouble(viewVolume.getViewAngleInDegrees());
+		putDouble(viewVolume.getAspectRatio());
+		putDouble(viewVolume.getN());
+		putDouble(viewVolume.getF());
+		putPoint(camera.getPosition());
+		putMatrix(camera.getViewingMatrix());
+		if (revolving) {
+			putPoint(((RevolvingCameraImpl) camera).getPivotPoint());
+		}
+	}
+
+	private void putLight(LightSource light) {
+		Class<?> type = light.getClass();
+		if (type.equals(AmbientLight.class)) {
+			putByte(SceneSnapshot.AMBIENT_LIGHT);
+			putDouble(((AmbientLight) light).getBrightness());
+		} else if (type.equals(InboundLight.class)) {
+			InboundLight inbound = (InboundLight) light;
+			Vector3D direction = inbound.getDirection();
+			putByte(SceneSnapshot.INBOUND_LIGHT);
+			putDouble(inbound.getBrightness());
+			putDouble(direction.getX());
+			putDouble(direction.getY());
+			putDouble(direction.getZ());
+		} else if (type.equals(SpotLight.class)) {
+			SpotLight spot = (SpotLight) light;
+			putByte(SceneSnapshot.SPOT_LIGHT);
+			putDouble(spot.getBrightness());
+			putPoint(spot.getPositionInWorld());
+			putBoolean(spot.isStationary());
+		} else {
+			throw new IllegalArgumentException("Unsupported light type in snapshot: " + type.getName());
+		}
+	}
+
+	private void putDepthFunction(DepthFunction function) {
+		if (function == null) {
+			putByte(SceneSnapshot.NO_DEPTH_FUNCTION);
+		} else if (function.getClass().equals(SigmoidDepthFunction.class)) {
+			SigmoidDepthFunction sigmoid = (SigmoidDepthFunction) function;
+			putByte(SceneSnapshot.SIGMOID_DEPTH_FUNCTION);
+			putDouble(sigmoid.getNearDepth());
+			putDouble(sigmoid.getFarDepth());
+			putDouble(sigmoid.getRelativeInflectionDepth());
+			putDouble(sigmoid.getSmoothness());
+		} else if (function.getClass().equals(LinearScalingDepthFunction.class)) {
+			LinearScalingDepthFunction scaling = (LinearScalingDepthFunction) function;
+			putByte(SceneSnapshot.LINEAR_SCALING_DEPTH_FUNCTION);
+			putDouble(scaling.getScale());
+			putDouble(scaling.getLift());
+			putDepthFunction(scaling.getBaseFunction());
+		} else {
+			throw new IllegalArgumentException("Unsupported depth function type in snapshot: "
+					+ function.getClass().getName());
+		}
+	}
+
+	private long writeTables() throws IOException {
+		record.clear();
+		putInt(colors.size());
+		for (Integer argb : colors) {
+			putInt(argb);
+		}
+		putInt(shadingModels.size());
+		for (FlatShadingModelImpl model : shadingModels) {
+			putDouble(model.getLightReflectionFactor());
+			putDouble(model.getLightGlossFactor());
+		}
+		putInt(textureIdentifiers.size());
+		for (String identifier : textureIdentifiers) {
+			putString(identifier);
+		}
+		return writeRecord();
+	}
+
+	private long writeObjectTable() throws IOException {
+		record.clear();
+		for (Long objectPosition : objectPositions) {
+			putLong(objectPosition);
+		}
+		return writeRecord();
+	}
+
+	private long writeTopLevelTable(List<Integer> topLevelObjectIndices) throws IOException {
+		record.clear();
+		for (Integer index : topLevelObjectIndices) {
+			putInt(index);
+		}
+		return writeRecord();
+	}
+
+	private int getColorIndex(Color color) {
+		if (color == null)
+			return -1;
+		Integer argb = color.getRGB();
+		Integer index = colorIndices.get(argb);
+		if (index == null) {
+			index = colors.size();
+			colors.add(argb);
+			colorIndices.put(argb, index);
+		}
+		return index;
+	}
+
+	private int getShadingModelIndex(FlatShadingModel model) {
+		if (model == null)
+			return -1;
+		Integer index = shadingModelIndices.get(model);
+		if (index == null) {
+			if (!model.getClass().equals(FlatShadingModelImpl.class))
+				throw new IllegalArgumentException("Unsupported shading model type in snapshot: "
+						+ model.getClass().getName());
+			index = shadingModels.size();
+			shadingModels.add((FlatShadingModelImpl) model);
+			shadingModelIndices.put(model, index);
+		}
+		return index;
+	}
+
+	private int getTextureIndex(TextureMapHandle handle) {
+		if (handle == null)
+			return -1;
+		String identifier = handle.getIdentifier();
+		Integer index = textureIndices.get(identifier);
+		if (index == null) {
+			index = textureIdentifiers.size();
+			textureIdentifiers.add(identifier);
+			textureIndices.put(identifier, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Starts a record of a given length at the next aligned position that keeps it within one region
+	 *
+	 * @return The position of the record in the file
+	 */
+	private long beginRecord(long length) throws IOException {
+		if (length > getRegionSizeInBytes())
+			throw new IOException("Snapshot record of " + length + " bytes exceeds the region size");
+		long start = (position + SceneSnapshot.RECORD_ALIGNMENT - 1) / SceneSnapshot.RECORD_ALIGNMENT
+				* SceneSnapshot.RECORD_ALIGNMENT;
+		long regionOffset = start % getRegionSizeInBytes();
+		if (regionOffset + length > getRegionSizeInBytes()) {
+			start += getRegionSizeInBytes() - regionOffset;
+		}
+		writePadding(start - position);
+		return start;
+	}
+
+	private long writeRecord() throws IOException {
+		record.flip();
+		int length = record.remaining();
+		long start = beginRecord(length);
+		if (length > outputBuffer.remaining()) {
+			flushOutput();
+			while (record.remaining() > outputBuffer.capacity()) {
+				channel.write(record);
+			}
+		}
+		outputBuffer.put(record);
+		position += length;
+		record.clear();
+		return start;
+	}
+
+	private void writePadding(long bytes) throws IOException {
+		for (long i = 0; i < bytes; i++) {
+			if (!outputBuffer.hasRemaining()) {
+				flushOutput();
+			}
+			outputBuffer.put((byte) 0);
+		}
+		position += bytes;
+	}
+
+	private void flushOutput() throws IOException {
+		outputBuffer.flip();
+		while (outputBuffer.hasRemaining()) {
+			channel.write(outputBuffer);
+		}
+		outputBuffer.clear();
+	}
+
+	private void ensureRecordCapacity(int bytes) {
+		if (record.remaining() < bytes) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * record.capacity(), record.position() + bytes))
+					.order(SceneSnapshot.BYTE_ORDER);
+			record.flip();
+			larger.put(record);
+			record = larger;
+		}
+	}
+
+	private void putByte(byte value) {
+		ensureRecordCapacity(1);
+		record.put(value);
+	}
+
+	private void putBoolean(boolean value) {
+		putByte(value ? (byte) 1 : (byte) 0);
+	}
+
+	private void putInt(int value) {
+		ensureRecordCapacity(4);
+		record.putInt(value);
+	}
+
+	private void putLong(long value) {
+		ensureRecordCapacity(8);
+		record.putLong(value);
+	}
+
+	private void putDouble(double value) {
+		ensureRecordCapacity(8);
+		record.putDouble(value);
+	}
+
+	private void putPoint(Point3D point) {
+		putDouble(point.getX());
+		putDouble(point.getY());
+		putDouble(point.getZ());
+	}
+
+	private void putMatrix(TransformMatrix3D matrix) {
+		for (int row = 0; row < 4; row++) {
+			for (int col = 0; col < 4; col++) {
+				putDouble(matrix.getValue(row, col));
+			}
+		}
+	}
+
+	private void putString(String value) {
+		if (value == null) {
+			putInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			ensureRecordCapacity(bytes.length);
+			record.put(bytes);
+		}
+	}
+
+	public int getRegionSizeInBytes() {
+		return regionSizeInBytes;
+	}
+
+	/**
+	 * Sets the size of the regions in which the snapshot is memory-mapped when loaded
+	 *
+	 * <p>
+	 * No record, such as the vertex coordinates of a single mesh, can be larger than a region.
+	 * </p>
+	 *
+	 * @param regionSizeInBytes
+	 *            The region size, a multiple of 8 bytes
+	 */
+	public void setRegionSizeInBytes(int regionSizeInBytes) {
+		if (regionSizeInBytes <= 0 || regionSizeInBytes % SceneSnapshot.RECORD_ALIGNMENT != 0)
+			throw new IllegalArgumentException("Region size should be a positive multiple of "
+					+ SceneSnapshot.RECORD_ALIGNMENT + ": " + regionSizeInBytes);
+		this.regionSizeInBytes = regionSizeInBytes;
+	}
+
+}
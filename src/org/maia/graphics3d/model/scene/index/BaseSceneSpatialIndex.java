@@ -13,6 +13,8 @@ public abstract class BaseSceneSpatialIndex implements SceneSpatialIndex {
 
 	private Scene scene;
 
+	private SceneObjectCuller objectCuller; // optional
+
 	protected BaseSceneSpatialIndex(Scene scene) {
 		this.scene = scene;
 	}
@@ -27,10 +29,10 @@ public abstract class BaseSceneSpatialIndex implements SceneSpatialIndex {
 	}
 
 	protected Collection<Object3D> getIndexedObjects() {
-		Collection<Object3D> sceneObjects = SceneUtils.getAllIndividualObjectsInScene(getScene());
-		Collection<Object3D> indexedObjects = new Vector<Object3D>(sceneObjects.size());
+		Collection<Object3D> candidateObjects = getCandidateObjects();
+		Collection<Object3D> indexedObjects = new Vector<Object3D>(candidateObjects.size());
 		Box3D sceneBox = getSceneBox();
-		for (Object3D object : sceneObjects) {
+		for (Object3D object : candidateObjects) {
 			boolean overlaps = true;
 			if (object.isBounded()) {
 				Box3D objectBox = getObjectBox(object);
@@ -43,6 +45,14 @@ public abstract class BaseSceneSpatialIndex implements SceneSpatialIndex {
 		return indexedObjects;
 	}
 
+	protected Collection<Object3D> getCandidateObjects() {
+		if (getObjectCuller() != null) {
+			return getObjectCuller().getShadowCasters();
+		} else {
+			return SceneUtils.getAllIndividualObjectsInScene(getScene());
+		}
+	}
+
 	protected Box3D getSceneBox() {
 		return getScene().getBoundingBoxInCameraCoordinates();
 	}
@@ -55,4 +65,24 @@ public abstract class BaseSceneSpatialIndex implements SceneSpatialIndex {
 		return box;
 	}
 
+	public SceneObjectCuller getObjectCuller() {
+		return objectCuller;
+	}
+
+	/**
+	 * Sets a culler that restricts the objects being indexed, to be set before building the index
+	 * 
+	 * <p>
+	 * A spatial index serves to trace light rays from visible surfaces, so only the culler's shadow casters are
+	 * indexed. A view plane index serves to trace eye rays, so it indexes the culler's visible objects instead.
+	 * </p>
+	 * 
+	 * @param objectCuller
+	 *            The culler, or <code>null</code> to index all objects in the scene
+	 * @see SceneObjectCuller#getShadowCasters()
+	 */
+	public void setObjectCuller(SceneObjectCuller objectCuller) {
+		this.objectCuller = objectCuller;
+	}
+
 }
\ No newline at end of file
@@ -1,11 +1,15 @@
 package org.maia.graphics3d.model.scene.index;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
 
 import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.model.OffHeapGeometryStore;
 import org.maia.graphics3d.model.object.Object3D;
 import org.maia.graphics3d.model.object.ObjectSurfacePoint3D;
 import org.maia.graphics3d.model.scene.Scene;
@@ -13,10 +17,60 @@ import org.maia.graphics3d.render.ReusableObjectPack;
 
 public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 
+	/**
+	 * Estimated memory taken by one reference from a bin to a contained object, including its identifier
+	 */
+	protected static final int ESTIMATED_BYTES_PER_OBJECT_REFERENCE = 8;
+
+	private Map<Object3D, Integer> objectIds; // only during index construction
+
+	private Object3D[] objectsById;
+
+	private int indexedObjectCount;
+
 	protected BinnedSceneSpatialIndex(Scene scene) {
 		super(scene);
 	}
 
+	/**
+	 * Assigns dense integer identifiers to the indexed objects, in the range <code>[0, objects.size() - 1]</code>
+	 * 
+	 * <p>
+	 * The identifiers allow a line traversal to keep track of the objects it has already met, by means of a
+	 * {@link ReusableObjectMailbox}, which is far cheaper than collecting the objects in a set. Subclasses should call
+	 * this method at the start of their index construction and {@link #releaseObjectIds()} at the end of it.
+	 * </p>
+	 * 
+	 * @param objects
+	 *            The objects being indexed
+	 */
+	protected void assignObjectIds(Collection<Object3D> objects) {
+		objectIds = new IdentityHashMap<Object3D, Integer>(objects.size());
+		objectsById = new Object3D[objects.size()];
+		int id = 0;
+		for (Object3D object : objects) {
+			objectsById[id] = object;
+			objectIds.put(object, id++);
+		}
+		indexedObjectCount = id;
+	}
+
+	protected int getObjectId(Object3D object) {
+		return objectIds.get(object);
+	}
+
+	protected Object3D getObjectById(int objectId) {
+		return objectsById[objectId];
+	}
+
+	protected void releaseObjectIds() {
+		objectIds = null;
+	}
+
+	protected int getIndexedObjectCount() {
+		return indexedObjectCount;
+	}
+
 	@Override
 	public String toString() {
 		return getBinStatistics().toString();
@@ -30,14 +84,15 @@ public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 
 		private List<ObjectSurfacePoint3D> intersections;
 
-		private Set<Object3D> objects;
+		private ReusableObjectMailbox mailbox;
 
 		private ReusableObjectPack reusableObjects;
 
 		protected ObjectLineIntersectionsIterator(LineSegment3D line, ReusableObjectPack reusableObjects) {
 			this.line = line;
 			this.intersections = reusableObjects.getEmptiedIntersectionsList();
-			this.objects = reusableObjects.getEmptiedObjectsSet();
+			this.mailbox = reusableObjects.getObjectMailbox();
+			this.mailbox.startNewLine(getIndexedObjectCount());
 			this.reusableObjects = reusableObjects;
 		}
 
@@ -75,8 +130,16 @@ public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 			return intersections;
 		}
 
-		protected Set<Object3D> getObjects() {
-			return objects;
+		/**
+		 * Tells whether the line traversal meets an object for the first time
+		 * 
+		 * @param objectId
+		 *            The identifier of the object, as assigned by {@link #assignObjectIds(Collection)}
+		 * @return <code>true</code> the first time this method is called for <code>objectId</code> during the
+		 *         traversal, <code>false</code> on subsequent calls
+		 */
+		protected boolean isFirstVisit(int objectId) {
+			return mailbox.checkIn(objectId);
 		}
 
 		private ReusableObjectPack getReusableObjects() {
@@ -94,6 +157,8 @@ public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 		public String toString() {
 			StringBuilder sb = new StringBuilder();
 			sb.append(BinnedSceneSpatialIndex.this.getClass().getSimpleName() + " statistics {\n");
+			sb.append("\tParameters: ").append(getIndexParameters()).append("\n");
+			sb.append("\tEstimated memory: ").append(getEstimatedMemoryInBytes() / 1024L).append(" KB\n");
 			int n = getBinCount();
 			int m = getEmptyBins();
 			sb.append("\tBins: ").append(n).append("\n");
@@ -112,6 +177,16 @@ public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 			return sb.toString();
 		}
 
+		/**
+		 * Returns a description of the parameters with which the index was created
+		 */
+		public abstract String getIndexParameters();
+
+		/**
+		 * Returns an estimate of the memory taken by the index structure, excluding the indexed objects themselves
+		 */
+		public abstract long getEstimatedMemoryInBytes();
+
 		public abstract int getBinCount();
 
 		public abstract int getEmptyBins();
@@ -177,4 +252,109 @@ public abstract class BinnedSceneSpatialIndex extends BaseSceneSpatialIndex {
 
 	}
 
+	/**
+	 * The identifiers of the objects contained in the bins of an index, packed into a single list
+	 * 
+	 * <p>
+	 * Each bin refers to a range of the list by its offset and length, which takes far less memory than an array of
+	 * objects per bin. Once the index is built, the list can be moved to the geometry store of the scene, keeping it
+	 * out of the heap.
+	 * </p>
+	 * 
+	 * @see BinnedSceneSpatialIndex#getObjectById(int)
+	 */
+	protected static class PackedObjectIds {
+
+		private int[] ids;
+
+		private int size;
+
+		private OffHeapGeometryStore.Block storedIds; // null unless packed into a store
+
+		public PackedObjectIds() {
+			this.ids = new int[1024];
+		}
+
+		public void append(int objectId) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, 2 * size);
+			}
+			ids[size++] = objectId;
+		}
+
+		/**
+		 * Ends the construction of the list
+		 * 
+		 * @param store
+		 *            The store to move the list to, or <code>null</code> to keep it on the heap
+		 */
+		public void pack(OffHeapGeometryStore store) {
+			if (store != null) {
+				storedIds = store.allocateInts(size);
+				for (int i = 0; i < size; i++) {
+					storedIds.setInt(i, ids[i]);
+				}
+				ids = null;
+			} else {
+				ids = Arrays.copyOf(ids, size);
+			}
+		}
+
+		public int get(int index) {
+			return ids != null ? ids[index] : storedIds.getInt(index);
+		}
+
+		/**
+		 * Releases the list, after which it cannot be used anymore
+		 */
+		public void release() {
+			if (storedIds != null) {
+				storedIds.release();
+			}
+			ids = null;
+		}
+
+		public int size() {
+			return size;
+		}
+
+	}
+
+	/**
+	 * Mailbox of the objects met during a line traversal, to be reused exclusively in the context of the same thread
+	 * 
+	 * <p>
+	 * Each object identifier has a slot that is stamped with the number of the line traversal that last met the object.
+	 * Starting a new traversal merely increments that number, so there is no need to clear the mailbox in between.
+	 * </p>
+	 */
+	public static class ReusableObjectMailbox {
+
+		private int[] stamps;
+
+		private int currentStamp;
+
+		public ReusableObjectMailbox() {
+			this.stamps = new int[0];
+		}
+
+		private void startNewLine(int objectCount) {
+			if (stamps.length < objectCount) {
+				stamps = new int[objectCount];
+			}
+			if (++currentStamp == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				currentStamp = 1;
+			}
+		}
+
+		private boolean checkIn(int objectId) {
+			if (stamps[objectId] == currentStamp)
+				return false;
+			stamps[objectId] = currentStamp;
+			return true;
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.Stack;
 import java.util.Vector;
 
@@ -47,6 +46,16 @@ import org.maia.graphics3d.render.ReusableObjectPack;
  */
 public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 
+	/**
+	 * Estimated memory taken by one leaf bin, including its neighbors
+	 */
+	public static final int ESTIMATED_BYTES_PER_LEAF_BIN = 300;
+
+	/**
+	 * Estimated memory taken by one ancestor bin, including its split
+	 */
+	public static final int ESTIMATED_BYTES_PER_ANCESTOR_BIN = 140;
+
 	private SpatialBin rootBin;
 
 	private int minimumBinObjectCount;
@@ -57,6 +66,8 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 
 	private int maximumLeafBins;
 
+	private PackedObjectIds containedObjectIds; // of all leaf bins, when keeping track of bin neighbors
+
 	public NonUniformlyBinnedSceneSpatialIndex(Scene scene, int maximumLeafBins) {
 		this(scene, 1, 1, 29, maximumLeafBins);
 	}
@@ -73,6 +84,7 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 	@Override
 	public void buildIndex() {
 		setRootBin(createRootBin());
+		assignObjectIds(getRootBin().getContainedObjects());
 		int leafs = 1; // root bin is a leaf initially
 		int maxLeafs = getMaximumLeafBins();
 		ReusableObjectPack reusableObjects = new ReusableObjectPack();
@@ -87,11 +99,28 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 				leafs++; // bin no longer is a leaf, so -1 + 2
 			}
 		}
+		if (keepTrackOfBinNeighbors()) {
+			packContainedObjectIds(); // for line traversal
+		}
+		releaseObjectIds();
+	}
+
+	private void packContainedObjectIds() {
+		PackedObjectIds ids = new PackedObjectIds();
+		for (Iterator<SpatialBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+			it.next().packContainedObjects(ids);
+		}
+		ids.pack(getScene().getGeometryStore());
+		setContainedObjectIds(ids);
 	}
 
 	@Override
 	public void dispose() {
 		setRootBin(null);
+		if (getContainedObjectIds() != null) {
+			getContainedObjectIds().release();
+			setContainedObjectIds(null);
+		}
 	}
 
 	@Override
@@ -140,6 +169,14 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 		this.rootBin = rootBin;
 	}
 
+	private PackedObjectIds getContainedObjectIds() {
+		return containedObjectIds;
+	}
+
+	private void setContainedObjectIds(PackedObjectIds containedObjectIds) {
+		this.containedObjectIds = containedObjectIds;
+	}
+
 	private int getMinimumBinObjectCount() {
 		return minimumBinObjectCount;
 	}
@@ -160,6 +197,10 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 
 		private List<Object3D> containedObjects; // leafs only, 'null' for ancestors
 
+		private int containedObjectsOffset = -1; // leafs only, into the packed object identifiers once packed
+
+		private int containedObjectCount; // leafs only, once packed
+
 		private int depthInTree; // zero at root
 
 		private SpatialBin parent; // 'null' at root
@@ -444,7 +485,7 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 		}
 
 		public boolean isEmpty() {
-			return getContainedObjects().isEmpty();
+			return getContainedObjectCount() == 0;
 		}
 
 		public boolean isLeaf() {
@@ -455,11 +496,44 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 			return parent == null;
 		}
 
+		/**
+		 * Moves the identifiers of the objects contained in this leaf bin to the end of a packed list
+		 * 
+		 * <p>
+		 * From then on, the contained objects are resolved from the packed identifiers, and the bin no longer holds a
+		 * list of its own.
+		 * </p>
+		 */
+		private void packContainedObjects(PackedObjectIds ids) {
+			List<Object3D> objects = getContainedObjects();
+			containedObjectsOffset = ids.size();
+			containedObjectCount = objects.size();
+			for (Object3D object : objects) {
+				ids.append(getObjectId(object));
+			}
+			setContainedObjects(null);
+		}
+
+		private boolean isPacked() {
+			return containedObjectsOffset >= 0;
+		}
+
 		public int getContainedObjectCount() {
-			return getContainedObjects().size();
+			return isPacked() ? containedObjectCount : getContainedObjects().size();
+		}
+
+		private int getContainedObjectId(int index) {
+			return getContainedObjectIds().get(containedObjectsOffset + index);
 		}
 
 		public List<Object3D> getContainedObjects() {
+			if (isPacked()) {
+				List<Object3D> objects = new Vector<Object3D>(containedObjectCount);
+				for (int i = 0; i < containedObjectCount; i++) {
+					objects.add(getObjectById(getContainedObjectId(i)));
+				}
+				return objects;
+			}
 			return containedObjects;
 		}
 
@@ -794,7 +868,9 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 
 		private Point3D currentPosition;
 
-		private Iterator<Object3D> currentObjects;
+		private int currentObjectCount = -1; // -1 when the objects of the current bin are yet to be traversed
+
+		private int currentObjectIndex;
 
 		private double dx, dy, dz, sx, sy, sz;
 
@@ -825,20 +901,23 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 		protected void provisionIntersections(ReusableObjectPack reusableObjects) {
 			// traverse bins along the line to add objects
 			List<ObjectSurfacePoint3D> intersections = getIntersections();
-			Set<Object3D> objects = getObjects();
 			while (proceed && intersections.isEmpty()) {
-				if (currentObjects == null) {
-					currentObjects = currentBin.getContainedObjects().iterator();
+				if (currentObjectCount < 0) {
+					currentObjectCount = currentBin.getContainedObjectCount();
+					currentObjectIndex = 0;
 				}
-				if (currentObjects.hasNext()) {
-					Object3D object = currentObjects.next();
-					if (objects.add(object) && object.isRaytraceable()) {
-						object.asRaytraceableObject().intersectWithLightRay(getLine(), getScene(), intersections,
-								reusableObjects);
+				if (currentObjectIndex < currentObjectCount) {
+					int objectId = currentBin.getContainedObjectId(currentObjectIndex++);
+					if (isFirstVisit(objectId)) {
+						Object3D object = getObjectById(objectId);
+						if (object.isRaytraceable()) {
+							object.asRaytraceableObject().intersectWithLightRay(getLine(), getScene(), intersections,
+									reusableObjects);
+						}
 					}
 				} else {
 					advancePositionToNextBin(reusableObjects);
-					currentObjects = null;
+					currentObjectCount = -1;
 					proceed = currentBin != null;
 				}
 			}
@@ -915,6 +994,24 @@ public class NonUniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex
 		public NonUniformBinStatistics() {
 		}
 
+		@Override
+		public String getIndexParameters() {
+			return "maximum " + getMaximumLeafBins() + " leaf bins, maximum depth " + getMaximumBinTreeDepth();
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = 0;
+			int leafs = 0;
+			for (Iterator<SpatialBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				bytes += ESTIMATED_BYTES_PER_LEAF_BIN
+						+ it.next().getContainedObjectCount() * ESTIMATED_BYTES_PER_OBJECT_REFERENCE;
+				leafs++;
+			}
+			bytes += (leafs - 1) * ESTIMATED_BYTES_PER_ANCESTOR_BIN; // binary tree
+			return bytes;
+		}
+
 		@Override
 		public int getBinCount() {
 			int count = 0;
@@ -1,12 +1,18 @@
 package org.maia.graphics3d.model.scene.index;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Vector;
 
 import org.maia.graphics2d.geometry.Rectangle2D;
+import org.maia.graphics3d.Metrics3D;
 import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.Point3D;
 import org.maia.graphics3d.model.object.BoundedObject3D;
@@ -28,13 +34,19 @@ import org.maia.graphics3d.render.ReusableObjectPack;
  * <p>
  * The index is constructed based on the current positions and orientations of the objects in the scene and the camera.
  * It is the responsability of the client code to create a new index to reflect an updated snapshot of that scene.
+ * Objects outside of the camera's view volume, or lying entirely before the view plane, are culled from the index.
  * </p>
  */
 public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSceneSpatialIndex
 		implements SceneViewPlaneIndex {
 
 	public NonUniformlyBinnedSceneViewPlaneIndex(Scene scene, int maximumLeafBins) {
+		this(scene, maximumLeafBins, new SceneObjectCuller(scene));
+	}
+
+	public NonUniformlyBinnedSceneViewPlaneIndex(Scene scene, int maximumLeafBins, SceneObjectCuller objectCuller) {
 		super(scene, maximumLeafBins);
+		setObjectCuller(objectCuller);
 	}
 
 	@Override
@@ -51,16 +63,46 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 	}
 
 	@Override
-	public Iterator<Object3D> getViewPlaneObjects(Point3D pointOnViewPlane, ReusableObjectPack reusableObjects) {
+	public ViewPlaneObjectsIterator getViewPlaneObjects(Point3D pointOnViewPlane, ReusableObjectPack reusableObjects) {
 		Point3D pointInViewVolume = projectToViewVolume(pointOnViewPlane, reusableObjects);
 		SpatialBin leafBin = findLeafBinContaining(pointInViewVolume, reusableObjects);
 		if (leafBin != null) {
-			return new ViewPlaneObjectsIterator(leafBin, pointInViewVolume);
+			return new ViewPlaneObjectsIteratorImpl(leafBin.getContainedObjects(), pointInViewVolume);
 		} else {
 			return EmptyViewPlaneObjectsIterator.instance;
 		}
 	}
 
+	@Override
+	public OcclusionCulledView getUnoccludedView(OcclusionTest occlusionTest) {
+		Map<Object3D, Boolean> occlusions = new HashMap<Object3D, Boolean>();
+		Map<SpatialBin, List<Object3D>> unoccludedObjectsByBin = new IdentityHashMap<SpatialBin, List<Object3D>>();
+		int removed = 0;
+		for (Iterator<SpatialBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+			SpatialBin leafBin = it.next();
+			List<Object3D> objects = leafBin.getContainedObjects();
+			List<Object3D> unoccludedObjects = new Vector<Object3D>(objects.size());
+			for (Object3D object : objects) {
+				Boolean occluded = occlusions.get(object);
+				if (occluded == null) {
+					occluded = object.isBounded() && occlusionTest.isOccluded(getObjectBox(object));
+					occlusions.put(object, occluded);
+					if (occluded) {
+						removed++;
+					}
+				}
+				if (!occluded) {
+					unoccludedObjects.add(object);
+				}
+			}
+			if (unoccludedObjects.size() < objects.size()) {
+				unoccludedObjectsByBin.put(leafBin, unoccludedObjects); // the depth order is kept
+			}
+		}
+		Metrics3D.getInstance().incrementViewPlaneIndexOccludedObjects(removed);
+		return new OcclusionCulledViewImpl(unoccludedObjectsByBin, removed);
+	}
+
 	private Point3D projectToViewVolume(Point3D pointOnViewPlane, ReusableObjectPack reusableObjects) {
 		Point3D pointInViewVolume = reusableObjects.getPointInViewVolume();
 		Rectangle2D vpr = getCamera().getViewVolume().getViewPlaneRectangle();
@@ -97,15 +139,24 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 		return Box3D.canonical(); // entire canonical view volume
 	}
 
+	@Override
+	protected Collection<Object3D> getCandidateObjects() {
+		return getObjectCuller().getVisibleObjects();
+	}
+
 	@Override
 	protected Box3D getObjectBox(Object3D object) {
 		Box3D box = null;
 		if (object.isBounded()) {
-			box = object.asBoundedObject().getBoundingBoxInViewVolumeCoordinates(getCamera());
+			box = getObjectCuller().getBoundingBoxInViewVolumeCoordinates(object.asBoundedObject());
 		}
 		return box;
 	}
 
+	private double getObjectNearDepth(Object3D object) {
+		return -object.asBoundedObject().getBoundingBoxInCameraCoordinates(getCamera()).getZ2();
+	}
+
 	private class ObjectSorterByIncreasingDepth implements Comparator<Object3D> {
 
 		public ObjectSorterByIncreasingDepth() {
@@ -113,8 +164,8 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 
 		@Override
 		public int compare(Object3D o1, Object3D o2) {
-			double nearDepth1 = -o1.asBoundedObject().getBoundingBoxInCameraCoordinates(getCamera()).getZ2();
-			double nearDepth2 = -o2.asBoundedObject().getBoundingBoxInCameraCoordinates(getCamera()).getZ2();
+			double nearDepth1 = getObjectNearDepth(o1);
+			double nearDepth2 = getObjectNearDepth(o2);
 			if (nearDepth1 < nearDepth2) {
 				return -1;
 			} else if (nearDepth1 > nearDepth2) {
@@ -125,7 +176,7 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 		}
 	}
 
-	private class ViewPlaneObjectsIterator implements Iterator<Object3D> {
+	private class ViewPlaneObjectsIteratorImpl implements ViewPlaneObjectsIterator {
 
 		private List<Object3D> leafBinObjects;
 
@@ -133,9 +184,17 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 
 		private Point3D pointInViewVolume;
 
-		public ViewPlaneObjectsIterator(SpatialBin leafBin, Point3D pointInViewVolume) {
-			this.leafBinObjects = leafBin.getContainedObjects();
+		private double cutoffDepth;
+
+		public ViewPlaneObjectsIteratorImpl(List<Object3D> leafBinObjects, Point3D pointInViewVolume) {
+			this.leafBinObjects = leafBinObjects;
 			this.pointInViewVolume = pointInViewVolume;
+			this.cutoffDepth = Double.POSITIVE_INFINITY;
+		}
+
+		@Override
+		public void setCutoffDepth(double depth) {
+			this.cutoffDepth = depth;
 		}
 
 		@Override
@@ -159,9 +218,15 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 		}
 
 		private void provisionNextObject() {
-			while (currentIndex < leafBinObjects.size() && !accept(leafBinObjects.get(currentIndex))) {
+			int n = leafBinObjects.size();
+			while (currentIndex < n && !accept(leafBinObjects.get(currentIndex))) {
 				currentIndex++;
 			}
+			if (currentIndex < n && getObjectNearDepth(leafBinObjects.get(currentIndex)) > cutoffDepth) {
+				// Objects are sorted by increasing near depth, so all remaining objects lie behind the cut-off
+				Metrics3D.getInstance().incrementEyeRayWithObjectIntersectionSkips(n - currentIndex);
+				currentIndex = n;
+			}
 		}
 
 		private boolean accept(Object3D object) {
@@ -178,13 +243,78 @@ public class NonUniformlyBinnedSceneViewPlaneIndex extends NonUniformlyBinnedSce
 
 	}
 
-	private static class EmptyViewPlaneObjectsIterator implements Iterator<Object3D> {
+	private class OcclusionCulledViewImpl implements OcclusionCulledView {
+
+		private Map<SpatialBin, List<Object3D>> unoccludedObjectsByBin; // only bins having occluded objects
+
+		private int occludedObjectCount;
+
+		public OcclusionCulledViewImpl(Map<SpatialBin, List<Object3D>> unoccludedObjectsByBin,
+				int occludedObjectCount) {
+			this.unoccludedObjectsByBin = unoccludedObjectsByBin;
+			this.occludedObjectCount = occludedObjectCount;
+		}
+
+		@Override
+		public void buildIndex() {
+			throw new UnsupportedOperationException("A view is derived from a built index");
+		}
+
+		@Override
+		public void dispose() {
+			unoccludedObjectsByBin.clear();
+		}
+
+		@Override
+		public Scene getScene() {
+			return NonUniformlyBinnedSceneViewPlaneIndex.this.getScene();
+		}
+
+		@Override
+		public ViewPlaneObjectsIterator getViewPlaneObjects(Point3D pointOnViewPlane,
+				ReusableObjectPack reusableObjects) {
+			Point3D pointInViewVolume = projectToViewVolume(pointOnViewPlane, reusableObjects);
+			SpatialBin leafBin = findLeafBinContaining(pointInViewVolume, reusableObjects);
+			if (leafBin != null) {
+				List<Object3D> objects = unoccludedObjectsByBin.get(leafBin);
+				if (objects == null) {
+					objects = leafBin.getContainedObjects();
+				}
+				return new ViewPlaneObjectsIteratorImpl(objects, pointInViewVolume);
+			} else {
+				return EmptyViewPlaneObjectsIterator.instance;
+			}
+		}
+
+		@Override
+		public OcclusionCulledView getUnoccludedView(OcclusionTest occlusionTest) {
+			return NonUniformlyBinnedSceneViewPlaneIndex.this.getUnoccludedView(occlusionTest);
+		}
+
+		@Override
+		public int getOccludedObjectCount() {
+			return occludedObjectCount;
+		}
+
+		@Override
+		public String toString() {
+			return NonUniformlyBinnedSceneViewPlaneIndex.this.toString() + "\nOccluded objects: "
+					+ getOccludedObjectCount();
+		}
+
+	}
+
+	private static class EmptyViewPlaneObjectsIterator implements ViewPlaneObjectsIterator {
 
 		public static EmptyViewPlaneObjectsIterator instance = new EmptyViewPlaneObjectsIterator();
 
 		private EmptyViewPlaneObjectsIterator() {
 		}
 
+		@Override
+		public void setCutoffDepth(double depth) {
+		}
+
 		@Override
 		public boolean hasNext() {
 			return false;
@@ -0,0 +1,586 @@
+package org.maia.graphics3d.model.scene.index;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Stack;
+import java.util.Vector;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.LineSegment3D;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.ObjectSurfacePoint3D;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.render.ReusableObjectPack;
+
+/**
+ * 3D index of a <code>Scene</code>'s objects in camera coordinates as an octree of cuboids called "bins"
+ *
+ * <p>
+ * Starting from the scene's bounding box, a bin that contains more than a given number of objects is recursively
+ * subdivided into 8 equally sized octants, up to a maximum tree depth. The tessellation thus adapts to local object
+ * density, refining around clusters of small objects while leaving sparsely populated regions coarse. This makes it a
+ * good fit for scenes that combine large objects, such as ground planes, with dense clusters of detail. The maximum
+ * depth bounds the memory footprint of the index, which is dominated by large objects spanning many bins.
+ * </p>
+ * <p>
+ * Line segments are traversed parametrically without a stack. The exit point of the current leaf bin is computed from
+ * the line's parameter, after which the next leaf bin is located by ascending to the nearest ancestor that contains
+ * the exit point and descending from there.
+ * </p>
+ * <p>
+ * The leaf bins refer to their objects by identifier, as ranges of a single packed list. When the scene has a geometry
+ * store, the list is held in the store and released when the index is disposed.
+ * </p>
+ * <p>
+ * The spatial index is constructed based on the current positions and orientations of the objects in the scene and the
+ * camera. It is the responsability of the client code to create a new index to reflect an updated snapshot of that
+ * scene.
+ * </p>
+ *
+ * @see UniformlyBinnedSceneSpatialIndex
+ * @see NonUniformlyBinnedSceneSpatialIndex
+ * @see SceneSpatialIndexFactory
+ */
+public class OctreeSceneSpatialIndex extends BinnedSceneSpatialIndex {
+
+	/**
+	 * Estimated memory taken by one leaf bin
+	 */
+	public static final int ESTIMATED_BYTES_PER_LEAF_BIN = 120;
+
+	/**
+	 * Estimated memory taken by one ancestor bin, including its array of children
+	 */
+	public static final int ESTIMATED_BYTES_PER_ANCESTOR_BIN = 150;
+
+	private OctreeBin rootBin;
+
+	private PackedObjectIds containedObjectIds; // of all leaf bins
+
+	private int maximumTreeDepth;
+
+	private int maximumLeafObjects;
+
+	public OctreeSceneSpatialIndex(Scene scene, int maximumTreeDepth, int maximumLeafObjects) {
+		super(scene);
+		this.maximumTreeDepth = maximumTreeDepth;
+		this.maximumLeafObjects = maximumLeafObjects;
+	}
+
+	@Override
+	public void buildIndex() {
+		List<Object3D> objects = new Vector<Object3D>(getIndexedObjects());
+		assignObjectIds(objects);
+		setContainedObjectIds(new PackedObjectIds());
+		setRootBin(new OctreeBin(getSceneBox(), null));
+		getRootBin().fill(objects);
+		getContainedObjectIds().pack(getScene().getGeometryStore());
+		releaseObjectIds();
+	}
+
+	@Override
+	public void dispose() {
+		setRootBin(null);
+		if (getContainedObjectIds() != null) {
+			getContainedObjectIds().release();
+			setContainedObjectIds(null);
+		}
+	}
+
+	@Override
+	public BinStatistics getBinStatistics() {
+		return new OctreeBinStatistics();
+	}
+
+	@Override
+	public Iterator<ObjectSurfacePoint3D> getObjectIntersections(LineSegment3D line,
+			ReusableObjectPack reusableObjects) {
+		return new ObjectLineIntersectionsIteratorImpl(line, reusableObjects);
+	}
+
+	protected Iterator<OctreeBin> getDepthFirstLeafBinIterator() {
+		return new DepthFirstLeafBinIterator(getRootBin());
+	}
+
+	private OctreeBin getRootBin() {
+		return rootBin;
+	}
+
+	private void setRootBin(OctreeBin rootBin) {
+		this.rootBin = rootBin;
+	}
+
+	private PackedObjectIds getContainedObjectIds() {
+		return containedObjectIds;
+	}
+
+	private void setContainedObjectIds(PackedObjectIds containedObjectIds) {
+		this.containedObjectIds = containedObjectIds;
+	}
+
+	public int getMaximumTreeDepth() {
+		return maximumTreeDepth;
+	}
+
+	public int getMaximumLeafObjects() {
+		return maximumLeafObjects;
+	}
+
+	protected class OctreeBin extends Box3D {
+
+		private OctreeBin parent; // 'null' at root
+
+		private OctreeBin[] children; // ancestors only, 'null' for leafs
+
+		private int containedObjectsOffset; // leafs only, into the packed object identifiers
+
+		private int containedObjectCount; // leafs only
+
+		private int depthInTree; // zero at root
+
+		public OctreeBin(Box3D bounds, OctreeBin parent) {
+			this(bounds.getX1(), bounds.getX2(), bounds.getY1(), bounds.getY2(), bounds.getZ1(), bounds.getZ2(),
+					parent);
+		}
+
+		public OctreeBin(double x1, double x2, double y1, double y2, double z1, double z2, OctreeBin parent) {
+			super(x1, x2, y1, y2, z1, z2);
+			this.parent = parent;
+			this.depthInTree = parent != null ? parent.getDepthInTree() + 1 : 0;
+		}
+
+		private void fill(List<Object3D> objects) {
+			if (objects.size() > getMaximumLeafObjects() && getDepthInTree() < getMaximumTreeDepth()) {
+				List<List<Object3D>> octants = distributeOverOctants(objects);
+				if (reducesObjectCount(octants, objects.size())) {
+					children = new OctreeBin[8];
+					for (int i = 0; i < 8; i++) {
+						children[i] = createOctant(i);
+						children[i].fill(octants.get(i));
+					}
+					return;
+				}
+			}
+			PackedObjectIds ids = getContainedObjectIds();
+			containedObjectsOffset = ids.size();
+			containedObjectCount = objects.size();
+			for (Object3D object : objects) {
+				ids.append(getObjectId(object));
+			}
+		}
+
+		private List<List<Object3D>> distributeOverOctants(List<Object3D> objects) {
+			List<List<Object3D>> octants = new Vector<List<Object3D>>(8);
+			for (int i = 0; i < 8; i++) {
+				octants.add(new Vector<Object3D>());
+			}
+			double cx = getCenterX();
+			double cy = getCenterY();
+			double cz = getCenterZ();
+			for (Object3D object : objects) {
+				Box3D box = getObjectBox(object);
+				boolean xLow = box == null || box.getX1() <= cx;
+				boolean xHigh = box == null || box.getX2() >= cx;
+				boolean yLow = box == null || box.getY1() <= cy;
+				boolean yHigh = box == null || box.getY2() >= cy;
+				boolean zLow = box == null || box.getZ1() <= cz;
+				boolean zHigh = box == null || box.getZ2() >= cz;
+				for (int i = 0; i < 8; i++) {
+					boolean xIn = (i & 1) == 0 ? xLow : xHigh;
+					boolean yIn = (i & 2) == 0 ? yLow : yHigh;
+					boolean zIn = (i & 4) == 0 ? zLow : zHigh;
+					if (xIn && yIn && zIn) {
+						octants.get(i).add(object);
+					}
+				}
+			}
+			return octants;
+		}
+
+		private boolean reducesObjectCount(List<List<Object3D>> octants, int objectCount) {
+			// Subdividing is pointless when every octant still holds all objects
+			for (List<Object3D> octant : octants) {
+				if (octant.size() < objectCount)
+					return true;
+			}
+			return false;
+		}
+
+		private OctreeBin createOctant(int index) {
+			double cx = getCenterX();
+			double cy = getCenterY();
+			double cz = getCenterZ();
+			double x1 = (index & 1) == 0 ? getX1() : cx;
+			double x2 = (index & 1) == 0 ? cx : getX2();
+			double y1 = (index & 2) == 0 ? getY1() : cy;
+			double y2 = (index & 2) == 0 ? cy : getY2();
+			double z1 = (index & 4) == 0 ? getZ1() : cz;
+			double z2 = (index & 4) == 0 ? cz : getZ2();
+			return new OctreeBin(x1, x2, y1, y2, z1, z2, this);
+		}
+
+		/**
+		 * Finds the leaf bin that contains a point on a line, assuming the line proceeds in a given direction
+		 *
+		 * <p>
+		 * A point on the boundary between bins is assigned to the bin the line is entering, as determined by the
+		 * signs of the direction components.
+		 * </p>
+		 */
+		private OctreeBin findLeafBinContaining(double x, double y, double z, double dx, double dy, double dz) {
+			OctreeBin bin = this;
+			while (!bin.containsAlongLine(x, y, z, dx, dy, dz)) {
+				bin = bin.getParent();
+				if (bin == null)
+					return null;
+			}
+			while (!bin.isLeaf()) {
+				double cx = bin.getCenterX();
+				double cy = bin.getCenterY();
+				double cz = bin.getCenterZ();
+				int index = 0;
+				if (x > cx || (x == cx && dx >= 0))
+					index |= 1;
+				if (y > cy || (y == cy && dy >= 0))
+					index |= 2;
+				if (z > cz || (z == cz && dz >= 0))
+					index |= 4;
+				bin = bin.getChildren()[index];
+			}
+			return bin;
+		}
+
+		private boolean containsAlongLine(double x, double y, double z, double dx, double dy, double dz) {
+			return containsAlongAxis(x, getX1(), getX2(), dx) && containsAlongAxis(y, getY1(), getY2(), dy)
+					&& containsAlongAxis(z, getZ1(), getZ2(), dz);
+		}
+
+		private boolean containsAlongAxis(double c, double c1, double c2, double d) {
+			if (c1 == c2) {
+				return c == c1;
+			} else if (d > 0) {
+				return c >= c1 && c < c2;
+			} else if (d < 0) {
+				return c > c1 && c <= c2;
+			} else {
+				return c >= c1 && c <= c2;
+			}
+		}
+
+		private double getCenterX() {
+			return (getX1() + getX2()) / 2;
+		}
+
+		private double getCenterY() {
+			return (getY1() + getY2()) / 2;
+		}
+
+		private double getCenterZ() {
+			return (getZ1() + getZ2()) / 2;
+		}
+
+		public boolean isLeaf() {
+			return children == null;
+		}
+
+		public boolean isEmpty() {
+			return getContainedObjectCount() == 0;
+		}
+
+		public int getContainedObjectCount() {
+			return containedObjectCount;
+		}
+
+		private OctreeBin getParent() {
+			return parent;
+		}
+
+		private OctreeBin[] getChildren() {
+			return children;
+		}
+
+		private int getContainedObjectId(int index) {
+			return getContainedObjectIds().get(containedObjectsOffset + index);
+		}
+
+		public int getDepthInTree() {
+			return depthInTree;
+		}
+
+	}
+
+	private class ObjectLineIntersectionsIteratorImpl extends ObjectLineIntersectionsIterator {
+
+		private double x1, y1, z1, dx, dy, dz;
+
+		private double t; // line parameter at the entry of the current bin
+
+		private double tEntry, tLeave;
+
+		private OctreeBin currentBin;
+
+		private int currentObjectIndex;
+
+		public ObjectLineIntersectionsIteratorImpl(LineSegment3D line, ReusableObjectPack reusableObjects) {
+			super(line, reusableObjects);
+			Point3D p1 = line.getP1();
+			Point3D p2 = line.getP2();
+			x1 = p1.getX();
+			y1 = p1.getY();
+			z1 = p1.getZ();
+			dx = p2.getX() - x1;
+			dy = p2.getY() - y1;
+			dz = p2.getZ() - z1;
+			OctreeBin root = getRootBin();
+			t = computeEntryParameter(root);
+			if (t <= 1.0) {
+				double qx = clamp(x1 + t * dx, root.getX1(), root.getX2());
+				double qy = clamp(y1 + t * dy, root.getY1(), root.getY2());
+				double qz = clamp(z1 + t * dz, root.getZ1(), root.getZ2());
+				currentBin = root.findLeafBinContaining(qx, qy, qz, dx, dy, dz);
+			}
+		}
+
+		private double computeEntryParameter(Box3D box) {
+			tEntry = 0;
+			tLeave = 1.0;
+			if (clipToSlab(x1, dx, box.getX1(), box.getX2()) && clipToSlab(y1, dy, box.getY1(), box.getY2())
+					&& clipToSlab(z1, dz, box.getZ1(), box.getZ2())) {
+				return tEntry;
+			} else {
+				return Double.POSITIVE_INFINITY;
+			}
+		}
+
+		private boolean clipToSlab(double p, double d, double c1, double c2) {
+			if (d == 0) {
+				return p >= c1 && p <= c2;
+			} else {
+				double ta = (c1 - p) / d;
+				double tb = (c2 - p) / d;
+				tEntry = Math.max(tEntry, Math.min(ta, tb));
+				tLeave = Math.min(tLeave, Math.max(ta, tb));
+				return tEntry <= tLeave;
+			}
+		}
+
+		private double clamp(double c, double c1, double c2) {
+			return Math.max(Math.min(c, c2), c1);
+		}
+
+		@Override
+		protected void provisionIntersections(ReusableObjectPack reusableObjects) {
+			// traverse bins along the line to add objects
+			List<ObjectSurfacePoint3D> intersections = getIntersections();
+			while (currentBin != null && intersections.isEmpty()) {
+				if (currentObjectIndex < currentBin.getContainedObjectCount()) {
+					int objectId = currentBin.getContainedObjectId(currentObjectIndex++);
+					if (isFirstVisit(objectId)) {
+						Object3D object = getObjectById(objectId);
+						if (object.isRaytraceable()) {
+							object.asRaytraceableObject().intersectWithLightRay(getLine(), getScene(), intersections,
+									reusableObjects);
+						}
+					}
+				} else {
+					advanceToNextBin();
+					currentObjectIndex = 0;
+				}
+			}
+		}
+
+		private void advanceToNextBin() {
+			OctreeBin bin = currentBin;
+			double tx = dx > 0 ? (bin.getX2() - x1) / dx
+					: (dx < 0 ? (bin.getX1() - x1) / dx : Double.POSITIVE_INFINITY);
+			double ty = dy > 0 ? (bin.getY2() - y1) / dy
+					: (dy < 0 ? (bin.getY1() - y1) / dy : Double.POSITIVE_INFINITY);
+			double tz = dz > 0 ? (bin.getZ2() - z1) / dz
+					: (dz < 0 ? (bin.getZ1() - z1) / dz : Double.POSITIVE_INFINITY);
+			double tExit = Math.min(Math.min(tx, ty), tz);
+			if (tExit > 1.0 || tExit < t) {
+				currentBin = null; // end of the line
+			} else {
+				// Snap the exit coordinate(s) onto the bin boundary to avoid numerical drift
+				double qx = tx == tExit ? (dx > 0 ? bin.getX2() : bin.getX1()) : x1 + tExit * dx;
+				double qy = ty == tExit ? (dy > 0 ? bin.getY2() : bin.getY1()) : y1 + tExit * dy;
+				double qz = tz == tExit ? (dz > 0 ? bin.getZ2() : bin.getZ1()) : z1 + tExit * dz;
+				t = tExit;
+				OctreeBin nextBin = bin.findLeafBinContaining(qx, qy, qz, dx, dy, dz);
+				currentBin = nextBin != bin ? nextBin : null; // 'bin' is flat along the line
+			}
+		}
+
+	}
+
+	private class OctreeBinStatistics extends BinStatistics {
+
+		public OctreeBinStatistics() {
+		}
+
+		@Override
+		public String getIndexParameters() {
+			return "maximum depth " + getMaximumTreeDepth() + ", maximum " + getMaximumLeafObjects()
+					+ " objects per leaf bin";
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = 0;
+			int leafs = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				bytes += ESTIMATED_BYTES_PER_LEAF_BIN
+						+ it.next().getContainedObjectCount() * ESTIMATED_BYTES_PER_OBJECT_REFERENCE;
+				leafs++;
+			}
+			bytes += (leafs - 1) / 7 * ESTIMATED_BYTES_PER_ANCESTOR_BIN; // every split adds 7 leafs
+			return bytes;
+		}
+
+		@Override
+		public int getBinCount() {
+			int count = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext(); it.next()) {
+				count++;
+			}
+			return count;
+		}
+
+		@Override
+		public int getEmptyBins() {
+			int empty = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				if (it.next().isEmpty())
+					empty++;
+			}
+			return empty;
+		}
+
+		@Override
+		public int getMaximumObjectsPerBin() {
+			int max = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				max = Math.max(max, it.next().getContainedObjectCount());
+			}
+			return max;
+		}
+
+		@Override
+		public double getAverageObjectsPerBin() {
+			return computeAverageObjectsPerBin(true);
+		}
+
+		@Override
+		public double getAverageObjectsPerNonEmptyBin() {
+			return computeAverageObjectsPerBin(false);
+		}
+
+		private double computeAverageObjectsPerBin(boolean includeEmptyBins) {
+			int sum = 0;
+			int count = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				int n = it.next().getContainedObjectCount();
+				if (n == 0) {
+					if (includeEmptyBins)
+						count++;
+				} else {
+					sum += n;
+					count++;
+				}
+			}
+			if (count == 0)
+				return 0;
+			return (double) sum / count;
+		}
+
+		@Override
+		public double getAverageObjectsPerUnitSpace() {
+			double weightedSum = 0;
+			double totalVolume = 0;
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				OctreeBin bin = it.next();
+				double binVolume = bin.getWidth() * bin.getHeight() * bin.getDepth();
+				weightedSum += binVolume * bin.getContainedObjectCount();
+				totalVolume += binVolume;
+			}
+			if (totalVolume == 0)
+				return 0;
+			return weightedSum / totalVolume;
+		}
+
+		@Override
+		public ObjectsPerBinHistogram getObjectsPerBinHistogram(int classCount) {
+			int classRangeSize = (int) Math.ceil(getMaximumObjectsPerBin() / (double) classCount);
+			return new ObjectsPerBinHistogramImpl(classCount, classRangeSize);
+		}
+
+	}
+
+	private class ObjectsPerBinHistogramImpl extends ObjectsPerBinHistogram {
+
+		public ObjectsPerBinHistogramImpl(int classCount, int classRangeSize) {
+			super(classCount, classRangeSize);
+		}
+
+		@Override
+		public int[] getClassValues() {
+			int n = getClassCount();
+			int size = getClassRangeSize();
+			int[] values = new int[n];
+			for (Iterator<OctreeBin> it = getDepthFirstLeafBinIterator(); it.hasNext();) {
+				int count = it.next().getContainedObjectCount();
+				if (count > 0) {
+					// Excluding empty bins
+					int ci = Math.min((int) Math.floor(count / (double) size), n - 1);
+					values[ci]++;
+				}
+			}
+			return values;
+		}
+
+	}
+
+	private static class DepthFirstLeafBinIterator implements Iterator<OctreeBin> {
+
+		private Stack<OctreeBin> binStack;
+
+		public DepthFirstLeafBinIterator(OctreeBin rootBin) {
+			this.binStack = new Stack<OctreeBin>();
+			this.binStack.push(rootBin);
+			provisionNextLeaf();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !getBinStack().isEmpty();
+		}
+
+		@Override
+		public OctreeBin next() {
+			OctreeBin leaf = getBinStack().pop();
+			provisionNextLeaf();
+			return leaf;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void provisionNextLeaf() {
+			Stack<OctreeBin> stack = getBinStack();
+			while (!stack.isEmpty() && !stack.peek().isLeaf()) {
+				for (OctreeBin child : stack.pop().getChildren()) {
+					stack.push(child);
+				}
+			}
+		}
+
+		private Stack<OctreeBin> getBinStack() {
+			return binStack;
+		}
+
+	}
+
+}
@@ -0,0 +1,225 @@
+package org.maia.graphics3d.model.scene.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.geometry.Vector3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.ViewVolume;
+import org.maia.graphics3d.model.light.DirectionalLightSource;
+import org.maia.graphics3d.model.light.LightSource;
+import org.maia.graphics3d.model.light.PositionalLightSource;
+import org.maia.graphics3d.model.object.BoundedObject3D;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.model.scene.SceneUtils;
+import org.maia.graphics3d.transform.TransformMatrix3D;
+
+/**
+ * Culls the objects of a <code>Scene</code> that cannot contribute to the rendered image of the scene
+ *
+ * <p>
+ * An object is <em>visible</em> when its bounding box overlaps the camera's view volume, beyond the view plane, and
+ * it is not a back face of a closed solid. An object is a <em>shadow caster</em> when its bounding box overlaps the
+ * region swept by the visible objects towards any of the scene's light sources, meaning it could obscure a light ray
+ * from a visible surface. Both tests are conservative, and unbounded objects are never culled.
+ * </p>
+ * <p>
+ * The culling is based on the current positions and orientations of the objects in the scene and the camera. As it
+ * caches derived information, a new instance should be created to reflect an updated snapshot of that scene.
+ * </p>
+ */
+public class SceneObjectCuller {
+
+	private Scene scene;
+
+	private Map<Object3D, Box3D> clippedViewVolumeBoxes; // of objects crossing the view plane
+
+	private Collection<Object3D> visibleObjects; // lazily derived
+
+	private Collection<Object3D> shadowCasters; // lazily derived
+
+	private Collection<Box3D> shadowCastingRegions; // lazily derived, in camera coordinates
+
+	public SceneObjectCuller(Scene scene) {
+		this.scene = scene;
+		this.clippedViewVolumeBoxes = new HashMap<Object3D, Box3D>();
+	}
+
+	public Collection<Object3D> getVisibleObjects() {
+		if (visibleObjects == null) {
+			visibleObjects = deriveVisibleObjects();
+		}
+		return visibleObjects;
+	}
+
+	private Collection<Object3D> deriveVisibleObjects() {
+		Collection<Object3D> sceneObjects = SceneUtils.getAllIndividualObjectsInScene(getScene());
+		Collection<Object3D> objects = new Vector<Object3D>(sceneObjects.size());
+		for (Object3D object : sceneObjects) {
+			if (isVisible(object)) {
+				objects.add(object);
+			}
+		}
+		return objects;
+	}
+
+	public Collection<Object3D> getShadowCasters() {
+		if (shadowCasters == null) {
+			shadowCasters = deriveShadowCasters();
+		}
+		return shadowCasters;
+	}
+
+	private Collection<Object3D> deriveShadowCasters() {
+		Collection<Object3D> sceneObjects = SceneUtils.getAllIndividualObjectsInScene(getScene());
+		Collection<Object3D> objects = new Vector<Object3D>(sceneObjects.size());
+		for (Object3D object : sceneObjects) {
+			if (isShadowCaster(object)) {
+				objects.add(object);
+			}
+		}
+		return objects;
+	}
+
+	public boolean isVisible(Object3D object) {
+		if (!object.isBounded())
+			return true;
+		if (object instanceof SimpleFace3D && ((SimpleFace3D) object).isBackFaceOfClosedSolid(getScene()))
+			return false;
+		Box3D box = getBoundingBoxInViewVolumeCoordinates(object.asBoundedObject());
+		return box != null && box.overlaps(Box3D.canonical());
+	}
+
+	public boolean isShadowCaster(Object3D object) {
+		if (!object.isBounded())
+			return true;
+		Box3D box = object.asBoundedObject().getBoundingBoxInCameraCoordinates(getCamera());
+		if (box != null) {
+			for (Box3D region : getShadowCastingRegions()) {
+				if (box.overlaps(region))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a bounding box of an object in view volume coordinates, restricted to the part of the object that lies
+	 * beyond the view plane
+	 *
+	 * <p>
+	 * For objects crossing the view plane, the perspective projection of the object's vertices that lie before the
+	 * view plane is meaningless and so is {@link BoundedObject3D#getBoundingBoxInViewVolumeCoordinates(Camera)}.
+	 * Instead, the returned box then bounds the projection of the object's bounding box in camera coordinates, clipped
+	 * to the view plane.
+	 * </p>
+	 *
+	 * @param object
+	 *            The object
+	 * @return The bounding box in view volume coordinates, or <code>null</code> if the object lies entirely before the
+	 *         view plane
+	 */
+	public Box3D getBoundingBoxInViewVolumeCoordinates(BoundedObject3D object) {
+		Box3D cameraBox = object.getBoundingBoxInCameraCoordinates(getCamera());
+		if (cameraBox == null)
+			return null;
+		double viewPlaneZ = getCamera().getViewVolume().getViewPlaneZ();
+		if (cameraBox.getZ2() <= viewPlaneZ) {
+			return object.getBoundingBoxInViewVolumeCoordinates(getCamera());
+		} else if (cameraBox.getZ1() > viewPlaneZ) {
+			return null; // before the view plane
+		} else {
+			Box3D box = clippedViewVolumeBoxes.get(object);
+			if (box == null) {
+				box = projectToViewVolume(new Box3D(cameraBox.getX1(), cameraBox.getX2(), cameraBox.getY1(),
+						cameraBox.getY2(), cameraBox.getZ1(), viewPlaneZ));
+				clippedViewVolumeBoxes.put(object, box);
+			}
+			return box;
+		}
+	}
+
+	private Box3D projectToViewVolume(Box3D cameraBox) {
+		ViewVolume vv = getCamera().getViewVolume();
+		TransformMatrix3D projectionMatrix = vv.getProjectionMatrix();
+		Box3D box = null;
+		for (Point3D corner : cameraBox.getVertices()) {
+			Point3D p = projectionMatrix.transform(corner);
+			if (vv.isPerspectiveProjection()) {
+				p.normalizeToUnitW();
+			}
+			if (box == null) {
+				box = new Box3D(p.getX(), p.getX(), p.getY(), p.getY(), p.getZ(), p.getZ());
+			} else {
+				box.expandToContain(p);
+			}
+		}
+		return box;
+	}
+
+	private Collection<Box3D> getShadowCastingRegions() {
+		if (shadowCastingRegions == null) {
+			shadowCastingRegions = deriveShadowCastingRegions();
+		}
+		return shadowCastingRegions;
+	}
+
+	private Collection<Box3D> deriveShadowCastingRegions() {
+		Collection<Box3D> regions = new Vector<Box3D>();
+		Box3D visibleRegion = deriveVisibleRegionInCameraCoordinates();
+		if (visibleRegion != null) {
+			for (LightSource light : getScene().getLightSources()) {
+				if (light.isPositional()) {
+					// Light rays from visible surfaces converge to the light's position
+					Box3D region = visibleRegion.clone();
+					region.expandToContain(((PositionalLightSource) light).getPositionInCamera(getScene()));
+					regions.add(region);
+				} else if (light.isDirectional()) {
+					// Light rays from visible surfaces run parallel until outside of the scene
+					Vector3D v = ((DirectionalLightSource) light).getScaledDirectionOutsideOfScene(getScene());
+					Box3D region = visibleRegion.clone();
+					region.expandToContain(new Box3D(visibleRegion.getX1() - v.getX(), visibleRegion.getX2() - v.getX(),
+							visibleRegion.getY1() - v.getY(), visibleRegion.getY2() - v.getY(),
+							visibleRegion.getZ1() - v.getZ(), visibleRegion.getZ2() - v.getZ()));
+					regions.add(region);
+				}
+			}
+		}
+		return regions;
+	}
+
+	private Box3D deriveVisibleRegionInCameraCoordinates() {
+		Box3D region = null;
+		for (Object3D object : getVisibleObjects()) {
+			Box3D box = object.isBounded() ? object.asBoundedObject().getBoundingBoxInCameraCoordinates(getCamera())
+					: getScene().getBoundingBoxInCameraCoordinates();
+			if (region == null) {
+				region = box.clone();
+			} else {
+				region.expandToContain(box);
+			}
+		}
+		if (region != null) {
+			// Visible surfaces lie beyond the view plane
+			double viewPlaneZ = getCamera().getViewVolume().getViewPlaneZ();
+			region = new Box3D(region.getX1(), region.getX2(), region.getY1(), region.getY2(), region.getZ1(),
+					Math.min(region.getZ2(), viewPlaneZ));
+		}
+		return region;
+	}
+
+	public Scene getScene() {
+		return scene;
+	}
+
+	private Camera getCamera() {
+		return getScene().getCamera();
+	}
+
+}
@@ -1,14 +1,46 @@
 package org.maia.graphics3d.model.scene.index;
 
+import java.util.Collection;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.model.object.Object3D;
 import org.maia.graphics3d.model.scene.Scene;
 import org.maia.graphics3d.model.scene.index.BinnedSceneSpatialIndex.BinStatistics;
 import org.maia.util.SystemUtils;
 
+/**
+ * Factory of scene indices, sized to the scene at hand
+ * 
+ * <p>
+ * The number of bins of an index is derived from the number of objects in the scene and the scene's <em>depth
+ * complexity</em>, which is the average number of objects overlapping a line of sight. The number of bins is bounded
+ * by a memory budget per index. The chosen parameters and the resulting memory estimate are available from the
+ * index's <code>BinStatistics</code>.
+ * </p>
+ * <p>
+ * Objects that cannot contribute to the rendered image are culled upfront by a <code>SceneObjectCuller</code>. The
+ * view plane index only holds the objects in the camera's view volume, whereas the spatial index only holds the
+ * objects that can cast a shadow onto them.
+ * </p>
+ */
 public class SceneSpatialIndexFactory {
 
 	private static SceneSpatialIndexFactory instance;
 
+	private long memoryBudgetInBytes;
+
+	private static final double BINS_PER_OBJECT = 2.0;
+
+	private static final int MINIMUM_BINS = 64;
+
+	private static final int MAXIMUM_UNIFORM_BINS_PER_DIMENSION = 500;
+
+	private static final int OCTREE_MAXIMUM_LEAF_OBJECTS = 8;
+
+	private static final int OCTREE_EXTRA_DEPTH = 2; // beyond the depth of a balanced tree, to refine clusters
+
 	private SceneSpatialIndexFactory() {
+		setMemoryBudgetInBytes(Runtime.getRuntime().maxMemory() / 8L);
 	}
 
 	public static SceneSpatialIndexFactory getInstance() {
@@ -25,39 +57,189 @@ public class SceneSpatialIndexFactory {
 	}
 
 	public SceneSpatialIndex createSpatialIndex(Scene scene) {
-		SceneSpatialIndex index = null;
-		BinnedSceneSpatialIndex uniformIndex = createUniformlyBinnedIndex(scene);
-		BinnedSceneSpatialIndex nonUniformIndex = createNonUniformlyBinnedIndex(scene);
-		BinStatistics uniformStats = uniformIndex.getBinStatistics();
-		BinStatistics nonUniformStats = nonUniformIndex.getBinStatistics();
-		if (nonUniformStats.getMaximumObjectsPerBin() < uniformStats.getMaximumObjectsPerBin()
-				|| nonUniformStats.getAverageObjectsPerUnitSpace() < uniformStats.getAverageObjectsPerUnitSpace()) {
-			index = nonUniformIndex;
-			uniformIndex.dispose();
-		} else {
-			index = uniformIndex;
-			nonUniformIndex.dispose();
-		}
+		return createSpatialIndex(scene, new SceneObjectCuller(scene));
+	}
+
+	/**
+	 * Creates a spatial index, holding the shadow casters of a culler
+	 * 
+	 * @param scene
+	 *            The scene
+	 * @param culler
+	 *            The culler of the scene's objects, which may be shared with the view plane index of the same
+	 *            snapshot of the scene
+	 * @return The index
+	 * @see #createViewPlaneIndex(Scene, SceneObjectCuller)
+	 */
+	public SceneSpatialIndex createSpatialIndex(Scene scene, SceneObjectCuller culler) {
+		SceneMetrics metrics = new SceneMetrics(scene, culler.getShadowCasters());
+		BinnedSceneSpatialIndex index = createUniformlyBinnedIndex(scene, metrics, culler);
+		index = selectBestIndex(index, createNonUniformlyBinnedIndex(scene, metrics, culler));
+		index = selectBestIndex(index, createOctreeIndex(scene, metrics, culler));
 		SystemUtils.releaseMemory();
 		return index;
 	}
 
+	private BinnedSceneSpatialIndex selectBestIndex(BinnedSceneSpatialIndex index,
+			BinnedSceneSpatialIndex candidateIndex) {
+		BinStatistics stats = index.getBinStatistics();
+		BinStatistics candidateStats = candidateIndex.getBinStatistics();
+		if (candidateStats.getMaximumObjectsPerBin() < stats.getMaximumObjectsPerBin()
+				|| candidateStats.getAverageObjectsPerUnitSpace() < stats.getAverageObjectsPerUnitSpace()) {
+			index.dispose();
+			return candidateIndex;
+		} else {
+			candidateIndex.dispose();
+			return index;
+		}
+	}
+
 	public SceneViewPlaneIndex createViewPlaneIndex(Scene scene) {
-		NonUniformlyBinnedSceneViewPlaneIndex index = new NonUniformlyBinnedSceneViewPlaneIndex(scene, 250000);
+		return createViewPlaneIndex(scene, new SceneObjectCuller(scene));
+	}
+
+	/**
+	 * Creates a view plane index, holding the visible objects of a culler
+	 * 
+	 * @param scene
+	 *            The scene
+	 * @param culler
+	 *            The culler of the scene's objects, which may be shared with the spatial index of the same snapshot
+	 *            of the scene
+	 * @return The index
+	 * @see #createSpatialIndex(Scene, SceneObjectCuller)
+	 */
+	public SceneViewPlaneIndex createViewPlaneIndex(Scene scene, SceneObjectCuller culler) {
+		SceneMetrics metrics = new SceneMetrics(scene, culler.getVisibleObjects());
+		int leafBins = computeTargetBinCount(metrics, NonUniformlyBinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_LEAF_BIN
+				+ NonUniformlyBinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_ANCESTOR_BIN);
+		NonUniformlyBinnedSceneViewPlaneIndex index = new NonUniformlyBinnedSceneViewPlaneIndex(scene, leafBins,
+				culler);
 		index.buildIndex();
 		return index;
 	}
 
-	private BinnedSceneSpatialIndex createUniformlyBinnedIndex(Scene scene) {
-		BinnedSceneSpatialIndex index = new UniformlyBinnedSceneSpatialIndex(scene, 50, 50, 50);
+	private BinnedSceneSpatialIndex createUniformlyBinnedIndex(Scene scene, SceneMetrics metrics,
+			SceneObjectCuller culler) {
+		int bins = computeTargetBinCount(metrics, UniformlyBinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_BIN);
+		Box3D box = scene.getBoundingBoxInCameraCoordinates();
+		double w = Math.max(box.getWidth(), 0);
+		double h = Math.max(box.getHeight(), 0);
+		double d = Math.max(box.getDepth(), 0);
+		double side = computeUniformBinSide(w, h, d, bins);
+		int xBins = mapToUniformBinsPerDimension(w, side);
+		int yBins = mapToUniformBinsPerDimension(h, side);
+		int zBins = mapToUniformBinsPerDimension(d, side);
+		BinnedSceneSpatialIndex index = new UniformlyBinnedSceneSpatialIndex(scene, xBins, yBins, zBins);
+		index.setObjectCuller(culler);
 		index.buildIndex();
 		return index;
 	}
 
-	private BinnedSceneSpatialIndex createNonUniformlyBinnedIndex(Scene scene) {
-		BinnedSceneSpatialIndex index = new NonUniformlyBinnedSceneSpatialIndex(scene, 125000);
+	private double computeUniformBinSide(double width, double height, double depth, int bins) {
+		// Side of a cubic bin, spanning the dimensions in which the scene has an extent
+		double extent = 1.0;
+		int dimensions = 0;
+		if (width > 0) {
+			extent *= width;
+			dimensions++;
+		}
+		if (height > 0) {
+			extent *= height;
+			dimensions++;
+		}
+		if (depth > 0) {
+			extent *= depth;
+			dimensions++;
+		}
+		return dimensions > 0 ? Math.pow(extent / bins, 1.0 / dimensions) : 0;
+	}
+
+	private int mapToUniformBinsPerDimension(double length, double binSide) {
+		if (binSide > 0) {
+			return Math.max(Math.min((int) Math.ceil(length / binSide), MAXIMUM_UNIFORM_BINS_PER_DIMENSION), 1);
+		} else {
+			return 1; // a single point
+		}
+	}
+
+	private BinnedSceneSpatialIndex createNonUniformlyBinnedIndex(Scene scene, SceneMetrics metrics,
+			SceneObjectCuller culler) {
+		int leafBins = computeTargetBinCount(metrics, NonUniformlyBinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_LEAF_BIN
+				+ NonUniformlyBinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_ANCESTOR_BIN);
+		BinnedSceneSpatialIndex index = new NonUniformlyBinnedSceneSpatialIndex(scene, leafBins);
+		index.setObjectCuller(culler);
+		index.buildIndex();
+		return index;
+	}
+
+	private BinnedSceneSpatialIndex createOctreeIndex(Scene scene, SceneMetrics metrics, SceneObjectCuller culler) {
+		int leafBins = computeTargetBinCount(metrics, OctreeSceneSpatialIndex.ESTIMATED_BYTES_PER_LEAF_BIN
+				+ OctreeSceneSpatialIndex.ESTIMATED_BYTES_PER_ANCESTOR_BIN / 7);
+		int depth = (int) Math.ceil(Math.log(leafBins) / Math.log(8)) + OCTREE_EXTRA_DEPTH;
+		BinnedSceneSpatialIndex index = new OctreeSceneSpatialIndex(scene, depth, OCTREE_MAXIMUM_LEAF_OBJECTS);
+		index.setObjectCuller(culler);
 		index.buildIndex();
 		return index;
 	}
 
+	private int computeTargetBinCount(SceneMetrics metrics, int estimatedBytesPerBin) {
+		double bins = metrics.getObjectCount() * BINS_PER_OBJECT * Math.sqrt(metrics.getDepthComplexity());
+		long referenceBytes = (long) metrics.getObjectCount() * BinnedSceneSpatialIndex.ESTIMATED_BYTES_PER_OBJECT_REFERENCE;
+		double maxBins = Math.max(getMemoryBudgetInBytes() - referenceBytes, 0) / (double) estimatedBytesPerBin;
+		return (int) Math.max(Math.min(Math.min(bins, maxBins), Integer.MAX_VALUE), MINIMUM_BINS);
+	}
+
+	public long getMemoryBudgetInBytes() {
+		return memoryBudgetInBytes;
+	}
+
+	/**
+	 * Sets the memory budget for the structure of a single index
+	 * 
+	 * @param memoryBudgetInBytes
+	 *            The maximum amount of memory, in bytes, an index should take up. This is an upper bound to the number
+	 *            of bins, based on estimates, and not a strict guarantee
+	 */
+	public void setMemoryBudgetInBytes(long memoryBudgetInBytes) {
+		this.memoryBudgetInBytes = memoryBudgetInBytes;
+	}
+
+	private static class SceneMetrics {
+
+		private int objectCount;
+
+		private double depthComplexity;
+
+		public SceneMetrics(Scene scene, Collection<Object3D> objects) {
+			Box3D sceneBox = scene.getBoundingBoxInCameraCoordinates();
+			double sceneArea = sceneBox.getWidth() * sceneBox.getHeight();
+			double objectsArea = 0;
+			for (Object3D object : objects) {
+				if (object.isBounded()) {
+					Box3D box = object.asBoundedObject().getBoundingBoxInCameraCoordinates(scene.getCamera());
+					if (box != null) {
+						objectsArea += box.getWidth() * box.getHeight();
+					}
+				} else {
+					objectsArea += sceneArea;
+				}
+			}
+			this.objectCount = objects.size();
+			this.depthComplexity = sceneArea > 0 ? Math.max(objectsArea / sceneArea, 1.0) : 1.0;
+		}
+
+		public int getObjectCount() {
+			return objectCount;
+		}
+
+		/**
+		 * Returns the average number of objects overlapping a line of sight, in the scene's bounding box
+		 */
+		public double getDepthComplexity() {
+			return depthComplexity;
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package org.maia.graphics3d.model.scene.index;
 
 import java.util.Iterator;
 
+import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.Point3D;
 import org.maia.graphics3d.model.object.Object3D;
 import org.maia.graphics3d.model.object.RaytraceableObject3D;
@@ -31,6 +32,75 @@ public interface SceneViewPlaneIndex extends SceneIndex {
 	 *            Objects that can be reused in the context of the current thread
 	 * @return An iterator over a filtered list of scene objects
 	 */
-	Iterator<Object3D> getViewPlaneObjects(Point3D pointOnViewPlane, ReusableObjectPack reusableObjects);
+	ViewPlaneObjectsIterator getViewPlaneObjects(Point3D pointOnViewPlane, ReusableObjectPack reusableObjects);
+
+	/**
+	 * Returns a view of the index without the objects that are hidden from view
+	 * <p>
+	 * This is an optional pass after building the index, which is only worthwhile for scenes where opaque objects near
+	 * the view plane hide large parts of the scene. The index itself is left unchanged, as the outcome of an occlusion
+	 * test only holds for the render it was made for. The view is meant to be used for that render only, and disposed
+	 * afterwards.
+	 * </p>
+	 * 
+	 * @param occlusionTest
+	 *            The test that decides whether an object is hidden from view
+	 * @return The view, which shares the structure of this index and is valid for as long as this index is
+	 */
+	OcclusionCulledView getUnoccludedView(OcclusionTest occlusionTest);
+
+	/**
+	 * Iterator over the scene objects that potentially project onto a point on the view plane
+	 * <p>
+	 * While iterating, the client code can feed back a <em>cut-off depth</em>, typically the depth of the nearest
+	 * opaque object hit so far. The iterator is then free to skip any remaining objects that lie entirely behind that
+	 * depth, and to stop early when it knows all remaining objects do.
+	 * </p>
+	 */
+	public static interface ViewPlaneObjectsIterator extends Iterator<Object3D> {
+
+		/**
+		 * Sets the cut-off depth for the remainder of the iteration
+		 * 
+		 * @param depth
+		 *            The depth, as a positive distance from the eye in camera coordinates. Objects whose nearest point
+		 *            lies beyond this depth need no longer be returned
+		 */
+		void setCutoffDepth(double depth);
+
+	}
+
+	/**
+	 * View of a <code>SceneViewPlaneIndex</code> without the objects that are hidden from view
+	 * 
+	 * @see SceneViewPlaneIndex#getUnoccludedView(OcclusionTest)
+	 */
+	public static interface OcclusionCulledView extends SceneViewPlaneIndex {
+
+		/**
+		 * Returns the number of objects of the underlying index that are left out of this view
+		 * 
+		 * @return The number of occluded objects
+		 */
+		int getOccludedObjectCount();
+
+	}
+
+	/**
+	 * Conservative test whether an object is hidden from view by other objects
+	 */
+	public static interface OcclusionTest {
+
+		/**
+		 * Tells whether a bounding box is entirely hidden from view
+		 * 
+		 * @param boxInViewVolume
+		 *            The bounding box, in view volume coordinates
+		 * @return <code>true</code> if the box is guaranteed to be hidden from view at every point on the view plane.
+		 *         When in doubt, returns <code>false</code>
+		 */
+		boolean isOccluded(Box3D boxInViewVolume);
+
+	}
 
 }
\ No newline at end of file
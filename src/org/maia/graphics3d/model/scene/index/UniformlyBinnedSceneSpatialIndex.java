@@ -1,12 +1,11 @@
 package org.maia.graphics3d.model.scene.index;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.LineSegment3D;
@@ -30,13 +29,20 @@ import org.maia.graphics3d.render.ReusableObjectPack;
  */
 public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 
+	/**
+	 * Estimated memory taken by one non-empty bin, including its map entry
+	 */
+	public static final int ESTIMATED_BYTES_PER_BIN = 120;
+
 	private int xBins;
 
 	private int yBins;
 
 	private int zBins;
 
-	private Map<SpatialBin, Collection<Object3D>> index;
+	private Map<SpatialBin, BinObjects> index;
+
+	private PackedObjectIds containedObjectIds; // of all bins
 
 	private Box3D firstBinBoundingBox;
 
@@ -45,20 +51,37 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		this.xBins = xBins;
 		this.yBins = yBins;
 		this.zBins = zBins;
-		this.index = new HashMap<SpatialBin, Collection<Object3D>>(xBins * yBins);
+		this.index = new HashMap<SpatialBin, BinObjects>(xBins * yBins);
 	}
 
 	@Override
 	public void buildIndex() {
 		setFirstBinBoundingBox(deriveFirstBinBoundingBox());
-		for (Object3D object : getIndexedObjects()) {
-			addObject(object);
+		Collection<Object3D> objects = getIndexedObjects();
+		assignObjectIds(objects);
+		for (Object3D object : objects) {
+			addObject(object, getObjectId(object));
+		}
+		packContainedObjectIds();
+		releaseObjectIds();
+	}
+
+	private void packContainedObjectIds() {
+		PackedObjectIds ids = new PackedObjectIds();
+		for (BinObjects binObjects : getIndex().values()) {
+			binObjects.pack(ids);
 		}
+		ids.pack(getScene().getGeometryStore());
+		setContainedObjectIds(ids);
 	}
 
 	@Override
 	public void dispose() {
 		getIndex().clear();
+		if (getContainedObjectIds() != null) {
+			getContainedObjectIds().release();
+			setContainedObjectIds(null);
+		}
 	}
 
 	@Override
@@ -72,7 +95,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		return new ObjectLineIntersectionsIteratorImpl(line, reusableObjects);
 	}
 
-	private void addObject(Object3D object) {
+	private void addObject(Object3D object, int objectId) {
 		if (object.isBounded()) {
 			Box3D bbox = getObjectBox(object);
 			int x1 = mapToXbin(bbox.getX1());
@@ -84,7 +107,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int xi = x1; xi <= x2; xi++) {
 				for (int yi = y1; yi <= y2; yi++) {
 					for (int zi = z1; zi <= z2; zi++) {
-						indexObject(object, xi, yi, zi);
+						indexObject(objectId, xi, yi, zi);
 					}
 				}
 			}
@@ -93,21 +116,21 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int xi = 0; xi < getXbins(); xi++) {
 				for (int yi = 0; yi < getYbins(); yi++) {
 					for (int zi = 0; zi < getZbins(); zi++) {
-						indexObject(object, xi, yi, zi);
+						indexObject(objectId, xi, yi, zi);
 					}
 				}
 			}
 		}
 	}
 
-	private void indexObject(Object3D object, int xBin, int yBin, int zBin) {
+	private void indexObject(int objectId, int xBin, int yBin, int zBin) {
 		SpatialBin bin = SpatialBin.create(xBin, yBin, zBin);
-		Collection<Object3D> collection = getIndex().get(bin);
-		if (collection == null) {
-			collection = new HashSet<Object3D>();
-			getIndex().put(bin, collection);
+		BinObjects binObjects = getIndex().get(bin);
+		if (binObjects == null) {
+			binObjects = new BinObjects();
+			getIndex().put(bin, binObjects);
 		}
-		collection.add(object);
+		binObjects.add(objectId);
 	}
 
 	private int mapToXbin(double x) {
@@ -154,7 +177,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		return box.getZ1() + box.getDepth() * (zDir < 0 ? zBin : zBin + 1);
 	}
 
-	private Collection<Object3D> getObjectsInBin(int xBin, int yBin, int zBin) {
+	private BinObjects getObjectsInBin(int xBin, int yBin, int zBin) {
 		return getIndex().get(SpatialBin.create(xBin, yBin, zBin));
 	}
 
@@ -170,10 +193,18 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		return zBins;
 	}
 
-	private Map<SpatialBin, Collection<Object3D>> getIndex() {
+	private Map<SpatialBin, BinObjects> getIndex() {
 		return index;
 	}
 
+	private PackedObjectIds getContainedObjectIds() {
+		return containedObjectIds;
+	}
+
+	private void setContainedObjectIds(PackedObjectIds containedObjectIds) {
+		this.containedObjectIds = containedObjectIds;
+	}
+
 	private Box3D getFirstBinBoundingBox() {
 		return firstBinBoundingBox;
 	}
@@ -237,6 +268,47 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 
 	}
 
+	private class BinObjects {
+
+		private int[] objectIds; // only during index construction
+
+		private int offset; // into the packed object identifiers
+
+		private int size;
+
+		public BinObjects() {
+			this.objectIds = new int[4];
+		}
+
+		public void add(int objectId) {
+			if (size == objectIds.length) {
+				objectIds = Arrays.copyOf(objectIds, size * 2);
+			}
+			objectIds[size++] = objectId;
+		}
+
+		public void pack(PackedObjectIds ids) {
+			offset = ids.size();
+			for (int i = 0; i < size; i++) {
+				ids.append(objectIds[i]);
+			}
+			objectIds = null;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int getObjectId(int index) {
+			return getContainedObjectIds().get(offset + index);
+		}
+
+	}
+
 	private class ObjectLineIntersectionsIteratorImpl extends ObjectLineIntersectionsIterator {
 
 		private double x1, x2, xd, y1, y2, yd, z1, z2, zd;
@@ -251,7 +323,9 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 
 		private double tx, ty, tz;
 
-		private Iterator<Object3D> currentObjects;
+		private BinObjects currentObjects;
+
+		private int currentObjectIndex;
 
 		private boolean proceed;
 
@@ -295,18 +369,19 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		protected void provisionIntersections(ReusableObjectPack reusableObjects) {
 			// traverse bins along the line to add objects
 			List<ObjectSurfacePoint3D> intersections = getIntersections();
-			Set<Object3D> objects = getObjects();
 			while (proceed && intersections.isEmpty()) {
 				if (currentObjects == null && xin && yin && zin) {
-					Collection<Object3D> binObjects = getObjectsInBin(xi, yi, zi);
-					if (binObjects != null)
-						currentObjects = binObjects.iterator();
+					currentObjects = getObjectsInBin(xi, yi, zi);
+					currentObjectIndex = 0;
 				}
-				if (currentObjects != null && currentObjects.hasNext()) {
-					Object3D object = currentObjects.next();
-					if (objects.add(object) && object.isRaytraceable()) {
-						object.asRaytraceableObject().intersectWithLightRay(getLine(), getScene(), intersections,
-								reusableObjects);
+				if (currentObjects != null && currentObjectIndex < currentObjects.size()) {
+					int objectId = currentObjects.getObjectId(currentObjectIndex++);
+					if (isFirstVisit(objectId)) {
+						Object3D object = getObjectById(objectId);
+						if (object.isRaytraceable()) {
+							object.asRaytraceableObject().intersectWithLightRay(getLine(), getScene(), intersections,
+									reusableObjects);
+						}
 					}
 				} else {
 					currentObjects = null;
@@ -338,6 +413,20 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 		public UniformBinStatistics() {
 		}
 
+		@Override
+		public String getIndexParameters() {
+			return getXbins() + " x " + getYbins() + " x " + getZbins() + " bins";
+		}
+
+		@Override
+		public long getEstimatedMemoryInBytes() {
+			long bytes = 0;
+			for (BinObjects objects : getIndex().values()) {
+				bytes += ESTIMATED_BYTES_PER_BIN + objects.size() * ESTIMATED_BYTES_PER_OBJECT_REFERENCE;
+			}
+			return bytes;
+		}
+
 		@Override
 		public int getBinCount() {
 			return getXbins() * getYbins() * getZbins();
@@ -349,7 +438,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int zi = 0; zi < getZbins(); zi++) {
 				for (int yi = 0; yi < getYbins(); yi++) {
 					for (int xi = 0; xi < getXbins(); xi++) {
-						Collection<Object3D> objects = getObjectsInBin(xi, yi, zi);
+						BinObjects objects = getObjectsInBin(xi, yi, zi);
 						if (objects == null || objects.isEmpty()) {
 							empty++;
 						}
@@ -365,7 +454,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int zi = 0; zi < getZbins(); zi++) {
 				for (int yi = 0; yi < getYbins(); yi++) {
 					for (int xi = 0; xi < getXbins(); xi++) {
-						Collection<Object3D> objects = getObjectsInBin(xi, yi, zi);
+						BinObjects objects = getObjectsInBin(xi, yi, zi);
 						if (objects != null) {
 							max = Math.max(max, objects.size());
 						}
@@ -391,7 +480,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int zi = 0; zi < getZbins(); zi++) {
 				for (int yi = 0; yi < getYbins(); yi++) {
 					for (int xi = 0; xi < getXbins(); xi++) {
-						Collection<Object3D> objects = getObjectsInBin(xi, yi, zi);
+						BinObjects objects = getObjectsInBin(xi, yi, zi);
 						if (objects == null || objects.isEmpty()) {
 							if (includeEmptyBins)
 								count++;
@@ -434,7 +523,7 @@ public class UniformlyBinnedSceneSpatialIndex extends BinnedSceneSpatialIndex {
 			for (int zi = 0; zi < getZbins(); zi++) {
 				for (int yi = 0; yi < getYbins(); yi++) {
 					for (int xi = 0; xi < getXbins(); xi++) {
-						Collection<Object3D> objects = getObjectsInBin(xi, yi, zi);
+						BinObjects objects = getObjectsInBin(xi, yi, zi);
 						int count = objects != null ? objects.size() : 0;
 						if (count > 0) {
 							// Excluding empty bins
@@ -4,7 +4,6 @@ import java.awt.Color;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Vector;
@@ -14,19 +13,27 @@ import org.maia.graphics2d.geometry.Rectangle2D;
 import org.maia.graphics2d.image.ops.convolute.Convolution;
 import org.maia.graphics2d.image.ops.convolute.ConvolutionMatrix;
 import org.maia.graphics3d.Metrics3D;
+import org.maia.graphics3d.geometry.Box3D;
 import org.maia.graphics3d.geometry.LineSegment3D;
 import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.model.camera.Camera;
 import org.maia.graphics3d.model.camera.ViewVolume;
 import org.maia.graphics3d.model.object.Object3D;
 import org.maia.graphics3d.model.object.ObjectSurfacePoint3D;
-import org.maia.graphics3d.model.object.ObjectSurfacePoint3DImpl;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.scene.CompiledSceneGeometry;
 import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.model.scene.ScenePreparation;
 import org.maia.graphics3d.model.scene.SceneUtils;
 import org.maia.graphics3d.model.scene.index.SceneViewPlaneIndex;
+import org.maia.graphics3d.model.scene.index.SceneViewPlaneIndex.OcclusionCulledView;
+import org.maia.graphics3d.model.scene.index.SceneViewPlaneIndex.ViewPlaneObjectsIterator;
 import org.maia.graphics3d.render.depth.DepthBlurOperation;
 import org.maia.graphics3d.render.depth.DepthBlurOperation.DepthBlurOperationProgressTracker;
 import org.maia.graphics3d.render.depth.DepthBlurParameters;
 import org.maia.graphics3d.render.depth.DepthFunction;
+import org.maia.graphics3d.render.raster.OcclusionDepthPyramid;
+import org.maia.graphics3d.render.raster.PrimaryVisibilityBuffer;
 import org.maia.graphics3d.render.view.ColorDepthBuffer;
 import org.maia.graphics3d.render.view.ViewPort;
 import org.maia.util.ColorUtils;
@@ -47,10 +54,14 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 	@Override
 	protected void renderImpl(Scene scene, Collection<ViewPort> outputs, RenderOptions options) {
 		RenderState state = new RenderState(scene, options);
-		renderInit(state);
-		renderRaster(state, outputs);
-		if (state.shouldApplyDepthBlur()) {
-			applyDepthBlur(state, outputs);
+		try {
+			renderInit(state);
+			renderRaster(state, outputs);
+			if (state.shouldApplyDepthBlur()) {
+				applyDepthBlur(state, outputs);
+			}
+		} finally {
+			state.releaseScene();
 		}
 		System.out.println(Metrics2D.getInstance());
 		System.out.println(Metrics3D.getInstance());
@@ -61,9 +72,28 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 		int steps = state.getTotalSteps();
 		int step = state.getCurrentStep();
 		fireRenderingProgressUpdate(scene, steps, step, 0.0, STEP_LABEL_INITIALIZE);
+		if (state.getOptions().isLevelOfDetailEnabled()) {
+			scene.selectLevelsOfDetail(); // before preparing and indexing the scene
+		}
+		if (state.getOptions().isScenePreparationEnabled()) {
+			state.prepareScene(); // derive object data upfront (in parallel threads)
+			fireRenderingProgressUpdate(scene, steps, step, 0.3, STEP_LABEL_INITIALIZE);
+		}
 		scene.getSpatialIndex(); // create spatial index upfront (in single thread!)
 		fireRenderingProgressUpdate(scene, steps, step, 0.5, STEP_LABEL_INITIALIZE);
 		scene.getViewPlaneIndex(); // create view plane index upfront (in single thread!)
+		if (state.getOptions().isOcclusionCullingEnabled()) {
+			fireRenderingProgressUpdate(scene, steps, step, 0.6, STEP_LABEL_INITIALIZE);
+			state.cullOccludedObjects();
+		}
+		if (state.getOptions().isPrimaryVisibilityBufferEnabled()) {
+			fireRenderingProgressUpdate(scene, steps, step, 0.75, STEP_LABEL_INITIALIZE);
+			state.buildVisibilityBuffer();
+		}
+		if (state.getOptions().isSceneCompilationEnabled()) {
+			fireRenderingProgressUpdate(scene, steps, step, 0.9, STEP_LABEL_INITIALIZE);
+			state.compileScene();
+		}
 		fireRenderingProgressUpdate(scene, steps, step, 1.0, STEP_LABEL_INITIALIZE);
 		System.out.println(state);
 	}
@@ -156,6 +186,14 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 
 		private ColorDepthBuffer raster;
 
+		private PrimaryVisibilityBuffer visibilityBuffer; // optional
+
+		private ScenePreparation preparation; // optional
+
+		private CompiledSceneGeometry compiledGeometry; // optional
+
+		private OcclusionCulledView unoccludedView; // optional, for this render only
+
 		private ConvolutionMatrix pixelAveragingConvolutionMatrix;
 
 		private int currentStep;
@@ -208,6 +246,50 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 			currentStep++;
 		}
 
+		public void prepareScene() {
+			ScenePreparation preparation = new ScenePreparation(getScene(),
+					getOptions().getSafeNumberOfRenderThreads());
+			preparation.prepare();
+			setPreparation(preparation);
+			System.out.println(preparation);
+		}
+
+		public void releaseScene() {
+			if (getPreparation() != null) {
+				getPreparation().release();
+				setPreparation(null);
+			}
+			if (getUnoccludedView() != null) {
+				getUnoccludedView().dispose();
+				setUnoccludedView(null);
+			}
+		}
+
+		public void cullOccludedObjects() {
+			ColorDepthBuffer raster = getRaster();
+			OcclusionDepthPyramid pyramid = new OcclusionDepthPyramid(raster.getWidth(), raster.getHeight());
+			pyramid.build(getScene());
+			// The scene's index is shared with later renders, so the culling only applies to a view of it
+			OcclusionCulledView view = getScene().getViewPlaneIndex().getUnoccludedView(pyramid);
+			setUnoccludedView(view);
+			System.out.println("Culled " + view.getOccludedObjectCount() + " occluded objects behind "
+					+ pyramid.getOccluderCount() + " occluders");
+		}
+
+		public void buildVisibilityBuffer() {
+			ColorDepthBuffer raster = getRaster();
+			PrimaryVisibilityBuffer buffer = new PrimaryVisibilityBuffer(raster.getWidth(), raster.getHeight());
+			buffer.build(getScene());
+			setVisibilityBuffer(buffer);
+		}
+
+		public void compileScene() {
+			CompiledSceneGeometry geometry = getScene().compile();
+			setCompiledGeometry(geometry);
+			System.out.println("Compiled " + geometry.getPolygonCount() + " polygons into "
+					+ (geometry.getEstimatedMemoryInBytes() / 1024L) + " KB");
+		}
+
 		public synchronized boolean hasNextRenderLine() {
 			return getNextRenderLineIndex() < getPixelHeight();
 		}
@@ -264,12 +346,44 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 			return raster;
 		}
 
+		public PrimaryVisibilityBuffer getVisibilityBuffer() {
+			return visibilityBuffer;
+		}
+
+		private void setVisibilityBuffer(PrimaryVisibilityBuffer visibilityBuffer) {
+			this.visibilityBuffer = visibilityBuffer;
+		}
+
+		private ScenePreparation getPreparation() {
+			return preparation;
+		}
+
+		private void setPreparation(ScenePreparation preparation) {
+			this.preparation = preparation;
+		}
+
+		public CompiledSceneGeometry getCompiledGeometry() {
+			return compiledGeometry;
+		}
+
+		private void setCompiledGeometry(CompiledSceneGeometry compiledGeometry) {
+			this.compiledGeometry = compiledGeometry;
+		}
+
 		public ConvolutionMatrix getPixelAveragingConvolutionMatrix() {
 			return pixelAveragingConvolutionMatrix;
 		}
 
 		private SceneViewPlaneIndex getViewPlaneIndex() {
-			return getScene().getViewPlaneIndex();
+			return getUnoccludedView() != null ? getUnoccludedView() : getScene().getViewPlaneIndex();
+		}
+
+		private OcclusionCulledView getUnoccludedView() {
+			return unoccludedView;
+		}
+
+		private void setUnoccludedView(OcclusionCulledView unoccludedView) {
+			this.unoccludedView = unoccludedView;
 		}
 
 		public int getCurrentStep() {
@@ -361,7 +475,7 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 			RenderState state = getState();
 			ColorDepthBuffer raster = state.getRaster();
 			LineSegment3D ray = getDirectedRay();
-			Collection<ObjectSurfacePoint3D> intersections = getSceneIntersectionsWithRay(ray, ix, iy);
+			Collection<ObjectSurfacePoint3D> intersections = getSceneIntersectionsWithRay(ray, ix, iy, ix, iy);
 			if (!intersections.isEmpty()) {
 				sortIntersectionsByDepth();
 				raster.setColorAndDepth(ix, iy, getCombinedColor(), getNearestDepth());
@@ -388,7 +502,8 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 					int irx = ix * sppx + sj;
 					pointOnViewPlane.setX(vx0 + (sj + 0.5) / sppx * pvw);
 					LineSegment3D ray = getDirectedRay();
-					Collection<ObjectSurfacePoint3D> intersections = getSceneIntersectionsWithRay(ray, ix, iy);
+					Collection<ObjectSurfacePoint3D> intersections = getSceneIntersectionsWithRay(ray, ix, iy, irx,
+							iry);
 					if (!intersections.isEmpty()) {
 						sortIntersectionsByDepth();
 						raster.setColorAndDepth(irx, iry, getCombinedColor(), getNearestDepth());
@@ -413,22 +528,30 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 			return ray;
 		}
 
-		private Collection<ObjectSurfacePoint3D> getSceneIntersectionsWithRay(LineSegment3D ray, int ix, int iy) {
-			Collection<ObjectSurfacePoint3D> intersections = getIntersections();
+		private Collection<ObjectSurfacePoint3D> getSceneIntersectionsWithRay(LineSegment3D ray, int ix, int iy,
+				int irx, int iry) {
+			List<ObjectSurfacePoint3D> intersections = getIntersections();
 			intersections.clear();
+			ReusableObjectPack reusableObjects = getReusableObjects();
+			reusableObjects.releaseSurfacePoints(); // those of the previous ray are no longer referenced
 			// From scene objects
 			RenderState state = getState();
 			RenderOptions options = state.getOptions();
 			Scene scene = state.getScene();
 			Point3D pointOnViewPlane = getPointOnViewPlane();
-			ReusableObjectPack reusableObjects = getReusableObjects();
-			Iterator<Object3D> objectsIterator = state.getViewPlaneIndex().getViewPlaneObjects(pointOnViewPlane,
-					reusableObjects);
-			while (objectsIterator.hasNext()) {
-				Object3D object = objectsIterator.next();
-				if (object.isRaytraceable()) {
-					object.asRaytraceableObject().intersectWithEyeRay(ray, scene, intersections, options,
-							reusableObjects);
+			double maxDepth = intersectWithVisibleObject(ray, irx, iry);
+			if (intersections.isEmpty()) {
+				ViewPlaneObjectsIterator objectsIterator = state.getViewPlaneIndex()
+						.getViewPlaneObjects(pointOnViewPlane, reusableObjects);
+				if (options.isClosestHitEyeRaysEnabled()) {
+					maxDepth = intersectWithNearestObjects(ray, objectsIterator);
+				} else {
+					while (objectsIterator.hasNext()) {
+						Object3D object = objectsIterator.next();
+						if (object.isRaytraceable()) {
+							intersectWithObject(ray, object);
+						}
+					}
 				}
 			}
 			// From backdrop, if any
@@ -438,15 +561,148 @@ public class RaytraceRenderer extends BaseSceneRenderer {
 				double depth = backDrop.getDepth(ix, iy);
 				double z = -depth;
 				double zf = z / pointOnViewPlane.getZ();
-				if (zf >= 1.0) {
+				if (zf >= 1.0 && depth <= maxDepth) {
 					double x = pointOnViewPlane.getX() * zf;
 					double y = pointOnViewPlane.getY() * zf;
-					intersections.add(new ObjectSurfacePoint3DImpl(null, new Point3D(x, y, z), color));
+					intersections.add(reusableObjects.obtainSurfacePoint(null, x, y, z, color));
 				}
 			}
 			return intersections;
 		}
 
+		/**
+		 * Intersects the ray with the object recorded in the primary visibility buffer, if any
+		 * <p>
+		 * The recorded object is fully opaque and nearest to the eye, so when the ray hits it, no other objects need to
+		 * be intersected. When the buffer has no object at the sample, or when the ray misses the object due to the
+		 * finite precision of rasterization, the intersections are left empty and the client code should fall back to
+		 * a full traversal.
+		 * </p>
+		 * 
+		 * @return The depth of the hit, or <code>Double.POSITIVE_INFINITY</code> when there is none
+		 */
+		private double intersectWithVisibleObject(LineSegment3D ray, int irx, int iry) {
+			RenderState state = getState();
+			PrimaryVisibilityBuffer buffer = state.getVisibilityBuffer();
+			if (buffer != null) {
+				Object3D object = buffer.getVisibleObject(irx, iry);
+				if (object != null) {
+					List<ObjectSurfacePoint3D> intersections = getIntersections();
+					intersectWithObject(ray, object);
+					if (!intersections.isEmpty()) {
+						Metrics3D.getInstance().incrementEyeRayVisibilityBufferHits();
+						return -intersections.get(0).getPositionInCamera().getZ();
+					}
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Intersects the ray with the given objects in <em>closest-hit</em> mode
+		 * <p>
+		 * The depth of the nearest opaque hit so far acts as a shrinking extent of the ray. Objects whose bounding box
+		 * lies entirely behind that depth are skipped and hits behind it are dropped, leaving only the nearest opaque
+		 * hit and the transparent hits in front of it. The depth is also fed back to the iterator as its cut-off
+		 * depth, allowing it to terminate early.
+		 * </p>
+		 * 
+		 * @return The depth of the nearest opaque hit, or <code>Double.POSITIVE_INFINITY</code> when there is none
+		 */
+		private double intersectWithNearestObjects(LineSegment3D ray, ViewPlaneObjectsIterator objectsIterator) {
+			Camera camera = getState().getScene().getCamera();
+			List<ObjectSurfacePoint3D> intersections = getIntersections();
+			double maxDepth = Double.POSITIVE_INFINITY;
+			while (objectsIterator.hasNext()) {
+				Object3D object = objectsIterator.next();
+				if (object.isRaytraceable()) {
+					if (getNearDepth(object, camera) > maxDepth) {
+						Metrics3D.getInstance().incrementEyeRayWithObjectIntersectionSkips();
+					} else {
+						int n = intersections.size();
+						intersectWithObject(ray, object);
+						double depth = maxDepth;
+						for (int i = n; i < intersections.size(); i++) {
+							ObjectSurfacePoint3D intersection = intersections.get(i);
+							if (ColorUtils.isFullyOpaque(intersection.getColor())) {
+								depth = Math.min(depth, -intersection.getPositionInCamera().getZ());
+							}
+						}
+						if (depth < maxDepth) {
+							maxDepth = depth;
+							removeIntersectionsBehindDepth(maxDepth);
+							objectsIterator.setCutoffDepth(maxDepth);
+						}
+					}
+				}
+			}
+			return maxDepth;
+		}
+
+		/**
+		 * Intersects the ray with an object, by means of the compiled scene geometry if the object was compiled
+		 */
+		private void intersectWithObject(LineSegment3D ray, Object3D object) {
+			RenderState state = getState();
+			CompiledSceneGeometry geometry = state.getCompiledGeometry();
+			int index = geometry != null ? geometry.getPolygonIndex(object) : -1;
+			if (index >= 0) {
+				intersectWithCompiledPolygon(geometry, index);
+			} else {
+				object.asRaytraceableObject().intersectWithEyeRay(ray, state.getScene(), getIntersections(),
+						state.getOptions(), getReusableObjects());
+			}
+		}
+
+		private void intersectWithCompiledPolygon(CompiledSceneGeometry geometry, int index) {
+			Metrics3D.getInstance().incrementEyeRayWithObjectIntersectionChecks();
+			Point3D p = getPointOnViewPlane();
+			double f = geometry.intersectWithEyeRay(index, p.getX(), p.getY(), p.getZ(), getNearestOpaqueDepth());
+			if (!Double.isNaN(f)) {
+				RenderState state = getState();
+				PolygonalObject3D polygon = geometry.getPolygon(index);
+				ObjectSurfacePoint3D surfacePoint = getReusableObjects().obtainSurfacePoint(polygon, f * p.getX(),
+						f * p.getY(), f * p.getZ(), null);
+				polygon.colorSurfacePointHitByEyeRay(surfacePoint, state.getScene(), state.getOptions(),
+						getReusableObjects());
+				if (surfacePoint.getColor() != null) {
+					getIntersections().add(surfacePoint);
+					Metrics3D.getInstance().incrementEyeRayWithObjectIntersections();
+				}
+			}
+		}
+
+		private double getNearestOpaqueDepth() {
+			double depth = Double.POSITIVE_INFINITY;
+			List<ObjectSurfacePoint3D> intersections = getIntersections();
+			for (int i = 0; i < intersections.size(); i++) {
+				ObjectSurfacePoint3D intersection = intersections.get(i);
+				if (ColorUtils.isFullyOpaque(intersection.getColor())) {
+					depth = Math.min(depth, -intersection.getPositionInCamera().getZ());
+				}
+			}
+			return depth;
+		}
+
+		private double getNearDepth(Object3D object, Camera camera) {
+			if (object.isBounded()) {
+				Box3D box = object.asBoundedObject().getBoundingBoxInCameraCoordinates(camera);
+				if (box != null) {
+					return -box.getZ2();
+				}
+			}
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		private void removeIntersectionsBehindDepth(double depth) {
+			List<ObjectSurfacePoint3D> intersections = getIntersections();
+			for (int i = intersections.size() - 1; i >= 0; i--) {
+				if (-intersections.get(i).getPositionInCamera().getZ() > depth) {
+					intersections.remove(i);
+				}
+			}
+		}
+
 		private void sortIntersectionsByDepth() {
 			List<ObjectSurfacePoint3D> intersections = getIntersections();
 			if (intersections.size() > 1) {
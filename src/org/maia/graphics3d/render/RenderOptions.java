@@ -20,6 +20,18 @@ public class RenderOptions {
 
 	private boolean depthDarknessEnabled;
 
+	private boolean closestHitEyeRaysEnabled;
+
+	private boolean primaryVisibilityBufferEnabled;
+
+	private boolean occlusionCullingEnabled;
+
+	private boolean sceneCompilationEnabled;
+
+	private boolean scenePreparationEnabled;
+
+	private boolean levelOfDetailEnabled;
+
 	private Color sceneBackgroundColor;
 
 	private Color wireframeColorNear;
@@ -43,6 +55,12 @@ public class RenderOptions {
 		options.setBackdropEnabled(false);
 		options.setDepthBlurEnabled(false);
 		options.setDepthDarknessEnabled(false);
+		options.setClosestHitEyeRaysEnabled(true);
+		options.setPrimaryVisibilityBufferEnabled(false);
+		options.setOcclusionCullingEnabled(false);
+		options.setSceneCompilationEnabled(false);
+		options.setScenePreparationEnabled(false);
+		options.setLevelOfDetailEnabled(true);
 		options.setSceneBackgroundColor(Color.WHITE);
 		options.setWireframeColorNear(Color.BLACK);
 		options.setWireframeColorFar(Color.LIGHT_GRAY);
@@ -50,6 +68,30 @@ public class RenderOptions {
 		return options;
 	}
 
+	@Override
+	public RenderOptions clone() {
+		RenderOptions options = new RenderOptions();
+		options.setRenderMode(getRenderMode());
+		options.setSamplingMode(getSamplingMode());
+		options.setRenderWidth(getRenderWidth());
+		options.setRenderHeight(getRenderHeight());
+		options.setShadowsEnabled(isShadowsEnabled());
+		options.setBackdropEnabled(isBackdropEnabled());
+		options.setDepthBlurEnabled(isDepthBlurEnabled());
+		options.setDepthDarknessEnabled(isDepthDarknessEnabled());
+		options.setClosestHitEyeRaysEnabled(isClosestHitEyeRaysEnabled());
+		options.setPrimaryVisibilityBufferEnabled(isPrimaryVisibilityBufferEnabled());
+		options.setOcclusionCullingEnabled(isOcclusionCullingEnabled());
+		options.setSceneCompilationEnabled(isSceneCompilationEnabled());
+		options.setScenePreparationEnabled(isScenePreparationEnabled());
+		options.setLevelOfDetailEnabled(isLevelOfDetailEnabled());
+		options.setSceneBackgroundColor(getSceneBackgroundColor());
+		options.setWireframeColorNear(getWireframeColorNear());
+		options.setWireframeColorFar(getWireframeColorFar());
+		options.setNumberOfRenderThreads(getNumberOfRenderThreads());
+		return options;
+	}
+
 	public double getAspectRatio() {
 		return getRenderWidth() / (double) getRenderHeight();
 	}
@@ -118,6 +160,54 @@ public class RenderOptions {
 		this.depthDarknessEnabled = depthDarknessEnabled;
 	}
 
+	public boolean isClosestHitEyeRaysEnabled() {
+		return closestHitEyeRaysEnabled;
+	}
+
+	public void setClosestHitEyeRaysEnabled(boolean closestHitEyeRaysEnabled) {
+		this.closestHitEyeRaysEnabled = closestHitEyeRaysEnabled;
+	}
+
+	public boolean isPrimaryVisibilityBufferEnabled() {
+		return primaryVisibilityBufferEnabled;
+	}
+
+	public void setPrimaryVisibilityBufferEnabled(boolean primaryVisibilityBufferEnabled) {
+		this.primaryVisibilityBufferEnabled = primaryVisibilityBufferEnabled;
+	}
+
+	public boolean isOcclusionCullingEnabled() {
+		return occlusionCullingEnabled;
+	}
+
+	public void setOcclusionCullingEnabled(boolean occlusionCullingEnabled) {
+		this.occlusionCullingEnabled = occlusionCullingEnabled;
+	}
+
+	public boolean isSceneCompilationEnabled() {
+		return sceneCompilationEnabled;
+	}
+
+	public void setSceneCompilationEnabled(boolean sceneCompilationEnabled) {
+		this.sceneCompilationEnabled = sceneCompilationEnabled;
+	}
+
+	public boolean isScenePreparationEnabled() {
+		return scenePreparationEnabled;
+	}
+
+	public void setScenePreparationEnabled(boolean scenePreparationEnabled) {
+		this.scenePreparationEnabled = scenePreparationEnabled;
+	}
+
+	public boolean isLevelOfDetailEnabled() {
+		return levelOfDetailEnabled;
+	}
+
+	public void setLevelOfDetailEnabled(boolean levelOfDetailEnabled) {
+		this.levelOfDetailEnabled = levelOfDetailEnabled;
+	}
+
 	public Color getSceneBackgroundColor() {
 		return sceneBackgroundColor;
 	}
@@ -159,6 +249,8 @@ public class RenderOptions {
 
 		PROTOTYPE,
 
+		PREVIEW,
+
 		REALISTIC;
 
 	}
@@ -1,14 +1,16 @@
 package org.maia.graphics3d.render;
 
-import java.util.HashSet;
+import java.awt.Color;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.Vector;
 
 import org.maia.graphics3d.geometry.Point3D;
 import org.maia.graphics3d.model.light.LightRaySegment;
 import org.maia.graphics3d.model.object.Object3D;
 import org.maia.graphics3d.model.object.ObjectSurfacePoint3D;
+import org.maia.graphics3d.model.object.ObjectSurfacePoint3DImpl;
+import org.maia.graphics3d.model.scene.index.BinnedSceneSpatialIndex.ReusableObjectMailbox;
 import org.maia.graphics3d.model.scene.index.NonUniformlyBinnedSceneSpatialIndex.ReusableBinNeighborsIterator;
 import org.maia.graphics3d.model.scene.index.NonUniformlyBinnedSceneSpatialIndex.ReusableBinSideList;
 import org.maia.graphics3d.model.scene.index.NonUniformlyBinnedSceneViewPlaneIndex.ReusableLastVisitedLeafBin;
@@ -31,7 +33,7 @@ public class ReusableObjectPack {
 
 	private List<ObjectSurfacePoint3D> intersectionsList;
 
-	private Set<Object3D> objectsSet;
+	private ReusableObjectMailbox objectMailbox;
 
 	private ReusableBinSideList binSidesList;
 
@@ -45,15 +47,81 @@ public class ReusableObjectPack {
 
 	private Point3D pointInViewVolume;
 
+	private Point3D pointOnPlane;
+
+	private Point3D pointTowardsLight;
+
+	private ObjectSurfacePoint3DImpl[] surfacePoints; // pool, grows on demand
+
+	private int surfacePointsInUse;
+
+	/**
+	 * The maximum number of surface points in the pool. Beyond this number, surface points are created anew
+	 */
+	public static final int MAXIMUM_POOLED_SURFACE_POINTS = 1024;
+
 	public ReusableObjectPack() {
 		this.intersectionsList = new Vector<ObjectSurfacePoint3D>();
-		this.objectsSet = new HashSet<Object3D>(300);
+		this.objectMailbox = new ReusableObjectMailbox();
 		this.binSidesList = new ReusableBinSideList();
 		this.binNeighborsIterator = new ReusableBinNeighborsIterator();
 		this.lastVisitedLeafBin = new ReusableLastVisitedLeafBin();
 		this.lightRay = new LightRaySegment();
 		this.obscuredObjectsCache = new ObscuredObjectsCache();
 		this.pointInViewVolume = new Point3D();
+		this.pointOnPlane = new Point3D();
+		this.pointTowardsLight = new Point3D();
+		this.surfacePoints = new ObjectSurfacePoint3DImpl[16];
+	}
+
+	/**
+	 * Returns a surface point from the pool, for use until the pool is released
+	 * 
+	 * <p>
+	 * Surface points are handed out in sequence, so that all points obtained since the pool was last released remain
+	 * valid. The client code should release the pool once these points are no longer referenced, typically at the
+	 * start of every eye ray. Until then, the pool grows to hold at most {@link #MAXIMUM_POOLED_SURFACE_POINTS}
+	 * points, after which new points are created that are not reused.
+	 * </p>
+	 * 
+	 * @param object
+	 *            The object
+	 * @param x
+	 *            The <em>x</em>-coordinate of the position in camera coordinates
+	 * @param y
+	 *            The <em>y</em>-coordinate of the position in camera coordinates
+	 * @param z
+	 *            The <em>z</em>-coordinate of the position in camera coordinates
+	 * @param color
+	 *            The color, possibly <code>null</code>
+	 * @return The surface point
+	 * @see #releaseSurfacePoints()
+	 */
+	public ObjectSurfacePoint3D obtainSurfacePoint(Object3D object, double x, double y, double z, Color color) {
+		int i = surfacePointsInUse;
+		if (i >= MAXIMUM_POOLED_SURFACE_POINTS)
+			return new ObjectSurfacePoint3DImpl(object, new Point3D(x, y, z), color);
+		if (i == surfacePoints.length) {
+			surfacePoints = Arrays.copyOf(surfacePoints, Math.min(2 * i, MAXIMUM_POOLED_SURFACE_POINTS));
+		}
+		ObjectSurfacePoint3DImpl surfacePoint = surfacePoints[i];
+		if (surfacePoint == null) {
+			surfacePoint = new ObjectSurfacePoint3DImpl(object, new Point3D(x, y, z), color);
+			surfacePoints[i] = surfacePoint;
+		} else {
+			surfacePoint.reset(object, x, y, z, color);
+		}
+		surfacePointsInUse = i + 1;
+		return surfacePoint;
+	}
+
+	/**
+	 * Makes all surface points in the pool available for reuse
+	 * 
+	 * @see #obtainSurfacePoint(Object3D, double, double, double, Color)
+	 */
+	public void releaseSurfacePoints() {
+		surfacePointsInUse = 0;
 	}
 
 	public List<ObjectSurfacePoint3D> getEmptiedIntersectionsList() {
@@ -66,14 +134,8 @@ public class ReusableObjectPack {
 		return intersectionsList;
 	}
 
-	public Set<Object3D> getEmptiedObjectsSet() {
-		Set<Object3D> set = getObjectsSet();
-		set.clear();
-		return set;
-	}
-
-	public Set<Object3D> getObjectsSet() {
-		return objectsSet;
+	public ReusableObjectMailbox getObjectMailbox() {
+		return objectMailbox;
 	}
 
 	public ReusableBinSideList getBinSidesList() {
@@ -100,4 +162,12 @@ public class ReusableObjectPack {
 		return pointInViewVolume;
 	}
 
+	public Point3D getPointOnPlane() {
+		return pointOnPlane;
+	}
+
+	public Point3D getPointTowardsLight() {
+		return pointTowardsLight;
+	}
+
 }
\ No newline at end of file
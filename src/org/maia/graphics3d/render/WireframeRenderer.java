@@ -26,6 +26,9 @@ public class WireframeRenderer extends BaseSceneRenderer {
 	protected void renderImpl(Scene scene, Collection<ViewPort> outputs, RenderOptions options) {
 		Camera camera = scene.getCamera();
 		Rectangle2D viewPlaneBounds = camera.getViewVolume().getViewPlaneRectangle();
+		if (options.isLevelOfDetailEnabled()) {
+			scene.selectLevelsOfDetail();
+		}
 		Collection<MeshObject3D> objects = SceneUtils.getAllMeshObjectsInScene(scene);
 		int n = objects.size();
 		int i = 0;
@@ -0,0 +1,555 @@
+package org.maia.graphics3d.render;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.object.InstancedObject3D;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.model.scene.SceneUtils;
+import org.maia.graphics3d.render.raster.PolygonRasterizer;
+import org.maia.graphics3d.render.view.ViewPort;
+import org.maia.util.ColorUtils;
+
+/**
+ * Renders a scene by scan-converting its polygons into a depth buffer
+ *
+ * <p>
+ * Every polygon is filled with a single color, shaded by its own shading model at the polygon's centroid but without
+ * casting shadows. Opaque polygons hide whatever lies behind them, whereas the other polygons are blended on top of
+ * the nearest opaque polygon from back to front. Objects that are not polygonal are not rendered. The result
+ * has correct occlusion and is orders of magnitude faster to obtain than a raytraced image, which makes it suitable
+ * for previewing a scene.
+ * </p>
+ * <p>
+ * Rendering happens in two steps. First, the polygons are shaded and binned into square tiles of the raster by their
+ * bounding box in view volume coordinates. This step runs in the calling thread, as the objects' cached derivations
+ * are not thread-safe. Next, the tiles are rasterized by one or more worker threads, each tile having its own color
+ * and depth buffer. Within a tile, the polygons are rasterized in order of increasing depth, so that rasterization
+ * can stop as soon as the remaining polygons lie behind the farthest depth in the tile's buffer.
+ * </p>
+ *
+ * @see RenderOptions.RenderMode#PREVIEW
+ */
+public class ZBufferRenderer extends BaseSceneRenderer {
+
+	private static final String STEP_LABEL_PREPARE = "Preparing polygons";
+
+	private static final String STEP_LABEL_RASTERIZE = "Rasterizing";
+
+	/**
+	 * The width and height of a tile, in pixels
+	 */
+	public static final int TILE_SIZE = 64;
+
+	private static final int FACES_PER_DEPTH_CHECK = 32;
+
+	public ZBufferRenderer() {
+	}
+
+	@Override
+	protected void renderImpl(Scene scene, Collection<ViewPort> outputs, RenderOptions options) {
+		RenderState state = new RenderState(scene, options);
+		prepare(state);
+		rasterize(state, outputs);
+	}
+
+	private void prepare(RenderState state) {
+		Scene scene = state.getScene();
+		RenderOptions shadingOptions = state.getOptions().clone();
+		shadingOptions.setShadowsEnabled(false);
+		ReusableObjectPack reusableObjects = new ReusableObjectPack();
+		if (state.getOptions().isLevelOfDetailEnabled()) {
+			scene.selectLevelsOfDetail();
+		}
+		Collection<Object3D> objects = SceneUtils.getAllIndividualObjectsInScene(scene);
+		int n = objects.size();
+		int progressInterval = Math.max(n / 100, 1);
+		int i = 0;
+		fireRenderingProgressUpdate(scene, 2, 0, 0.0, STEP_LABEL_PREPARE);
+		for (Object3D object : objects) {
+			if (object instanceof PolygonalObject3D) {
+				preparePolygon((PolygonalObject3D) object, state, shadingOptions, reusableObjects);
+			} else if (object instanceof InstancedObject3D) {
+				prepareInstance((InstancedObject3D) object, state, shadingOptions, reusableObjects);
+			}
+			if (++i % progressInterval == 0) {
+				fireRenderingProgressUpdate(scene, 2, 0, i / (double) n, STEP_LABEL_PREPARE);
+			}
+		}
+		fireRenderingProgressUpdate(scene, 2, 0, 1.0, STEP_LABEL_PREPARE);
+	}
+
+	private void prepareInstance(InstancedObject3D instance, RenderState state, RenderOptions shadingOptions,
+			ReusableObjectPack reusableObjects) {
+		Camera camera = state.getScene().getCamera();
+		double viewPlaneZ = camera.getViewVolume().getViewPlaneZ();
+		Box3D cameraBox = instance.getBoundingBoxInCameraCoordinates(camera);
+		if (cameraBox.getZ1() > viewPlaneZ)
+			return; // before the view plane
+		if (cameraBox.getZ2() <= viewPlaneZ) {
+			Box3D box = instance.getBoundingBoxInViewVolumeCoordinates(camera);
+			if (box.getX2() < -1.0 || box.getX1() > 1.0 || box.getY2() < -1.0 || box.getY1() > 1.0)
+				return; // outside the view plane bounds
+		}
+		// Only visible instances get expanded
+		for (Object3D object : instance.getIndividualObjects()) {
+			if (object instanceof PolygonalObject3D) {
+				preparePolygon((PolygonalObject3D) object, state, shadingOptions, reusableObjects);
+			}
+		}
+	}
+
+	private void preparePolygon(PolygonalObject3D polygon, RenderState state, RenderOptions shadingOptions,
+			ReusableObjectPack reusableObjects) {
+		Scene scene = state.getScene();
+		Camera camera = scene.getCamera();
+		double viewPlaneZ = camera.getViewVolume().getViewPlaneZ();
+		Box3D cameraBox = polygon.getBoundingBoxInCameraCoordinates(camera);
+		if (cameraBox.getZ1() > viewPlaneZ)
+			return; // before the view plane
+		if (polygon instanceof SimpleFace3D && ((SimpleFace3D) polygon).isBackFaceOfClosedSolid(scene))
+			return; // hidden by the solid it belongs to
+		int tx1 = 0, tx2 = state.getTilesX() - 1, ty1 = 0, ty2 = state.getTilesY() - 1;
+		double nearDepth = -1.0; // at the view plane
+		if (cameraBox.getZ2() <= viewPlaneZ) {
+			Box3D box = polygon.getBoundingBoxInViewVolumeCoordinates(camera);
+			if (box.getX2() < -1.0 || box.getX1() > 1.0 || box.getY2() < -1.0 || box.getY1() > 1.0)
+				return; // outside the view plane bounds
+			tx1 = state.getTileColumn((box.getX1() + 1.0) / 2.0);
+			tx2 = state.getTileColumn((box.getX2() + 1.0) / 2.0);
+			ty1 = state.getTileRow((1.0 - box.getY2()) / 2.0);
+			ty2 = state.getTileRow((1.0 - box.getY1()) / 2.0);
+			nearDepth = box.getZ1();
+		}
+		Color color = polygon.sampleFlatShadedColor(scene, shadingOptions, reusableObjects);
+		if (color != null) {
+			Face face = new Face(polygon, color.getRGB(), ColorUtils.isFullyOpaque(color), nearDepth);
+			for (int ty = ty1; ty <= ty2; ty++) {
+				for (int tx = tx1; tx <= tx2; tx++) {
+					state.getTile(tx, ty).addFace(face);
+				}
+			}
+		}
+	}
+
+	private void rasterize(RenderState state, Collection<ViewPort> outputs) {
+		int n = state.getOptions().getSafeNumberOfRenderThreads();
+		if (n == 1) {
+			rasterizeInCurrentThread(state, outputs);
+		} else {
+			rasterizeInSeparateThreads(state, outputs, n);
+		}
+	}
+
+	private void rasterizeInCurrentThread(RenderState state, Collection<ViewPort> outputs) {
+		state.setActiveRasterWorkers(1);
+		new RasterWorker(state, outputs).run();
+	}
+
+	private synchronized void rasterizeInSeparateThreads(RenderState state, Collection<ViewPort> outputs,
+			int numberOfThreads) {
+		ThreadGroup workers = new ThreadGroup("Z-buffer workers");
+		for (int i = 0; i < numberOfThreads; i++) {
+			Thread t = new Thread(workers, new RasterWorker(state, outputs), "Z-buffer worker #" + i);
+			t.setDaemon(true);
+			t.start();
+			state.setActiveRasterWorkers(state.getActiveRasterWorkers() + 1);
+		}
+		while (state.getActiveRasterWorkers() > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// do nothing
+			}
+		}
+	}
+
+	private synchronized void notifyRasterWorkerCompletion(RasterWorker worker) {
+		RenderState state = worker.getState();
+		state.setActiveRasterWorkers(state.getActiveRasterWorkers() - 1);
+		notifyAll();
+	}
+
+	private class RenderState {
+
+		private Scene scene;
+
+		private RenderOptions options;
+
+		private int samplesPerPixelX;
+
+		private int samplesPerPixelY;
+
+		private int tilesX;
+
+		private int tilesY;
+
+		private Tile[] tiles;
+
+		private int nextTileIndex;
+
+		private int activeRasterWorkers;
+
+		public RenderState(Scene scene, RenderOptions options) {
+			this.scene = scene;
+			this.options = options;
+			this.samplesPerPixelX = options.getSamplingMode().getSamplesPerPixelX();
+			this.samplesPerPixelY = options.getSamplingMode().getSamplesPerPixelY();
+			this.tilesX = (options.getRenderWidth() + TILE_SIZE - 1) / TILE_SIZE;
+			this.tilesY = (options.getRenderHeight() + TILE_SIZE - 1) / TILE_SIZE;
+			this.tiles = new Tile[tilesX * tilesY];
+			for (int ty = 0; ty < tilesY; ty++) {
+				for (int tx = 0; tx < tilesX; tx++) {
+					int px1 = tx * TILE_SIZE;
+					int py1 = ty * TILE_SIZE;
+					int px2 = Math.min(px1 + TILE_SIZE, options.getRenderWidth()) - 1;
+					int py2 = Math.min(py1 + TILE_SIZE, options.getRenderHeight()) - 1;
+					tiles[ty * tilesX + tx] = new Tile(px1, py1, px2, py2);
+				}
+			}
+		}
+
+		public int getTileColumn(double relativeX) {
+			int px = (int) Math.floor(relativeX * getOptions().getRenderWidth());
+			return Math.max(Math.min(px / TILE_SIZE, getTilesX() - 1), 0);
+		}
+
+		public int getTileRow(double relativeY) {
+			int py = (int) Math.floor(relativeY * getOptions().getRenderHeight());
+			return Math.max(Math.min(py / TILE_SIZE, getTilesY() - 1), 0);
+		}
+
+		public Tile getTile(int tx, int ty) {
+			return tiles[ty * getTilesX() + tx];
+		}
+
+		public synchronized Tile nextTile() {
+			if (nextTileIndex < tiles.length) {
+				return tiles[nextTileIndex++];
+			} else {
+				return null;
+			}
+		}
+
+		public synchronized double getRasterizeProgress() {
+			return nextTileIndex / (double) tiles.length;
+		}
+
+		public Scene getScene() {
+			return scene;
+		}
+
+		public RenderOptions getOptions() {
+			return options;
+		}
+
+		public int getSamplesPerPixelX() {
+			return samplesPerPixelX;
+		}
+
+		public int getSamplesPerPixelY() {
+			return samplesPerPixelY;
+		}
+
+		public int getTilesX() {
+			return tilesX;
+		}
+
+		public int getTilesY() {
+			return tilesY;
+		}
+
+		public int getActiveRasterWorkers() {
+			return activeRasterWorkers;
+		}
+
+		public void setActiveRasterWorkers(int activeRasterWorkers) {
+			this.activeRasterWorkers = activeRasterWorkers;
+		}
+
+	}
+
+	private static class Tile {
+
+		private int pixelX1;
+
+		private int pixelY1;
+
+		private int pixelX2;
+
+		private int pixelY2;
+
+		private Face[] faces;
+
+		private int faceCount;
+
+		public Tile(int pixelX1, int pixelY1, int pixelX2, int pixelY2) {
+			this.pixelX1 = pixelX1;
+			this.pixelY1 = pixelY1;
+			this.pixelX2 = pixelX2;
+			this.pixelY2 = pixelY2;
+			this.faces = new Face[16];
+		}
+
+		public void addFace(Face face) {
+			if (faceCount == faces.length) {
+				faces = Arrays.copyOf(faces, faceCount * 2);
+			}
+			faces[faceCount++] = face;
+		}
+
+		public void sortFacesByNearDepth() {
+			Arrays.sort(faces, 0, faceCount, FaceSorterByNearDepth.instance);
+		}
+
+		public Face getFace(int index) {
+			return faces[index];
+		}
+
+		public int getFaceCount() {
+			return faceCount;
+		}
+
+		public int getPixelX1() {
+			return pixelX1;
+		}
+
+		public int getPixelY1() {
+			return pixelY1;
+		}
+
+		public int getPixelX2() {
+			return pixelX2;
+		}
+
+		public int getPixelY2() {
+			return pixelY2;
+		}
+
+	}
+
+	private static class Face {
+
+		private PolygonalObject3D polygon;
+
+		private int color; // in ARGB format
+
+		private boolean opaque;
+
+		private double nearDepth; // in view volume coordinates
+
+		public Face(PolygonalObject3D polygon, int color, boolean opaque, double nearDepth) {
+			this.polygon = polygon;
+			this.color = color;
+			this.opaque = opaque;
+			this.nearDepth = nearDepth;
+		}
+
+		public PolygonalObject3D getPolygon() {
+			return polygon;
+		}
+
+		public int getColor() {
+			return color;
+		}
+
+		public boolean isOpaque() {
+			return opaque;
+		}
+
+		public double getNearDepth() {
+			return nearDepth;
+		}
+
+	}
+
+	private static class FaceSorterByNearDepth implements Comparator<Face> {
+
+		public static FaceSorterByNearDepth instance = new FaceSorterByNearDepth();
+
+		@Override
+		public int compare(Face f1, Face f2) {
+			return Double.compare(f1.getNearDepth(), f2.getNearDepth());
+		}
+
+	}
+
+	private class RasterWorker implements Runnable {
+
+		private RenderState state;
+
+		private Collection<ViewPort> outputs;
+
+		private TileRasterizer rasterizer;
+
+		public RasterWorker(RenderState state, Collection<ViewPort> outputs) {
+			this.state = state;
+			this.outputs = outputs;
+			this.rasterizer = new TileRasterizer(state);
+		}
+
+		@Override
+		public void run() {
+			RenderState state = getState();
+			Tile tile = state.nextTile();
+			while (tile != null) {
+				getRasterizer().rasterize(tile);
+				renderTile(tile);
+				fireRenderingProgressUpdate(state.getScene(), 2, 1, state.getRasterizeProgress(),
+						STEP_LABEL_RASTERIZE);
+				tile = state.nextTile();
+			}
+			notifyRasterWorkerCompletion(this);
+		}
+
+		private void renderTile(Tile tile) {
+			TileRasterizer rasterizer = getRasterizer();
+			int sppx = getState().getSamplesPerPixelX();
+			int sppy = getState().getSamplesPerPixelY();
+			int spp = sppx * sppy;
+			for (int iy = tile.getPixelY1(); iy <= tile.getPixelY2(); iy++) {
+				for (int ix = tile.getPixelX1(); ix <= tile.getPixelX2(); ix++) {
+					int r = 0, g = 0, b = 0;
+					for (int sy = iy * sppy; sy < (iy + 1) * sppy; sy++) {
+						for (int sx = ix * sppx; sx < (ix + 1) * sppx; sx++) {
+							int argb = rasterizer.getColor(sx, sy);
+							r += (argb >> 16) & 0xff;
+							g += (argb >> 8) & 0xff;
+							b += argb & 0xff;
+						}
+					}
+					Color color = new Color(r / spp, g / spp, b / spp);
+					for (ViewPort output : getOutputs()) {
+						output.paintPixelInWindowCoordinates(ix, iy, color);
+					}
+				}
+			}
+		}
+
+		public RenderState getState() {
+			return state;
+		}
+
+		private Collection<ViewPort> getOutputs() {
+			return outputs;
+		}
+
+		private TileRasterizer getRasterizer() {
+			return rasterizer;
+		}
+
+	}
+
+	private static class TileRasterizer extends PolygonRasterizer {
+
+		private int backgroundColor;
+
+		private int samplesPerPixelX;
+
+		private int samplesPerPixelY;
+
+		private int tileX1; // in samples
+
+		private int tileY1; // in samples
+
+		private int tileWidth; // in samples
+
+		private int[] colors; // reusable, per sample in the tile
+
+		private double[] depths; // reusable, per sample in the tile
+
+		private Face face; // being rasterized
+
+		public TileRasterizer(RenderState state) {
+			super(state.getScene().getCamera(), state.getOptions().getRenderWidth() * state.getSamplesPerPixelX(),
+					state.getOptions().getRenderHeight() * state.getSamplesPerPixelY());
+			this.backgroundColor = state.getOptions().getSceneBackgroundColor().getRGB();
+			this.samplesPerPixelX = state.getSamplesPerPixelX();
+			this.samplesPerPixelY = state.getSamplesPerPixelY();
+			this.tileWidth = TILE_SIZE * samplesPerPixelX;
+			int tileHeight = TILE_SIZE * samplesPerPixelY;
+			this.colors = new int[tileWidth * tileHeight];
+			this.depths = new double[tileWidth * tileHeight];
+		}
+
+		public void rasterize(Tile tile) {
+			int sppx = samplesPerPixelX;
+			int sppy = samplesPerPixelY;
+			tileX1 = tile.getPixelX1() * sppx;
+			tileY1 = tile.getPixelY1() * sppy;
+			setRasterWindow(tileX1, tileY1, (tile.getPixelX2() + 1) * sppx - 1, (tile.getPixelY2() + 1) * sppy - 1);
+			Arrays.fill(colors, backgroundColor);
+			Arrays.fill(depths, Double.POSITIVE_INFINITY);
+			tile.sortFacesByNearDepth();
+			// Opaque faces first, front to back with depth test
+			double farthestDepth = Double.POSITIVE_INFINITY;
+			int n = tile.getFaceCount();
+			int opaqueCount = 0;
+			for (int i = 0; i < n; i++) {
+				face = tile.getFace(i);
+				if (face.getNearDepth() > farthestDepth) {
+					n = i; // all remaining faces are hidden
+				} else if (face.isOpaque()) {
+					rasterize(face.getPolygon());
+					if (++opaqueCount % FACES_PER_DEPTH_CHECK == 0) {
+						farthestDepth = getFarthestDepth();
+					}
+				}
+			}
+			// Other faces back to front, blended on top
+			for (int i = n - 1; i >= 0; i--) {
+				face = tile.getFace(i);
+				if (!face.isOpaque()) {
+					rasterize(face.getPolygon());
+				}
+			}
+			face = null;
+		}
+
+		private double getFarthestDepth() {
+			double farthest = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < depths.length; i++) {
+				farthest = Math.max(farthest, depths[i]);
+			}
+			return farthest;
+		}
+
+		@Override
+		protected void plotSample(int x, int y, double depth) {
+			int i = (y - tileY1) * getTileWidth() + x - tileX1;
+			if (depth < depths[i]) {
+				if (face.isOpaque()) {
+					depths[i] = depth;
+					colors[i] = face.getColor();
+				} else {
+					colors[i] = blend(face.getColor(), colors[i]);
+				}
+			}
+		}
+
+		private int blend(int front, int back) {
+			int alpha = (front >>> 24) & 0xff;
+			int r = (((front >> 16) & 0xff) * alpha + ((back >> 16) & 0xff) * (255 - alpha)) / 255;
+			int g = (((front >> 8) & 0xff) * alpha + ((back >> 8) & 0xff) * (255 - alpha)) / 255;
+			int b = ((front & 0xff) * alpha + (back & 0xff) * (255 - alpha)) / 255;
+			return 0xff000000 | (r << 16) | (g << 8) | b;
+		}
+
+		public int getColor(int x, int y) {
+			return colors[(y - tileY1) * getTileWidth() + x - tileX1];
+		}
+
+		private int getTileWidth() {
+			return tileWidth;
+		}
+
+	}
+
+}
@@ -23,7 +23,7 @@ public class LinearScalingDepthFunction implements DepthFunction {
 		return getLift() + getScale() * getBaseFunction().eval(depth);
 	}
 
-	private DepthFunction getBaseFunction() {
+	public DepthFunction getBaseFunction() {
 		return baseFunction;
 	}
 
@@ -4,8 +4,21 @@ public class SigmoidDepthFunction implements DepthFunction {
 
 	private SigmoidFunction function;
 
-	private SigmoidDepthFunction(SigmoidFunction function) {
+	private double nearDepth;
+
+	private double farDepth;
+
+	private double relativeInflectionDepth;
+
+	private double smoothness;
+
+	private SigmoidDepthFunction(SigmoidFunction function, double nearDepth, double farDepth,
+			double relativeInflectionDepth, double smoothness) {
 		this.function = function;
+		this.nearDepth = nearDepth;
+		this.farDepth = farDepth;
+		this.relativeInflectionDepth = relativeInflectionDepth;
+		this.smoothness = smoothness;
 	}
 
 	/**
@@ -36,7 +49,7 @@ public class SigmoidDepthFunction implements DepthFunction {
 		double yd = y1 - y0;
 		double s = 1.0 / yd;
 		function.scale(s).translateY(-y0 * s); // such that: ft(nearDepth) = 0 and ft(farDepth) = 1
-		return new SigmoidDepthFunction(function);
+		return new SigmoidDepthFunction(function, nearDepth, farDepth, relativeInflectionDepth, smoothness);
 	}
 
 	@Override
@@ -48,6 +61,22 @@ public class SigmoidDepthFunction implements DepthFunction {
 		return function;
 	}
 
+	public double getNearDepth() {
+		return nearDepth;
+	}
+
+	public double getFarDepth() {
+		return farDepth;
+	}
+
+	public double getRelativeInflectionDepth() {
+		return relativeInflectionDepth;
+	}
+
+	public double getSmoothness() {
+		return smoothness;
+	}
+
 	private static class SigmoidFunction {
 
 		private double a, b, c, d;
@@ -6,6 +6,7 @@ import org.maia.graphics3d.render.RenderOptions;
 import org.maia.graphics3d.render.RenderOptions.RenderMode;
 import org.maia.graphics3d.render.SceneRenderer;
 import org.maia.graphics3d.render.WireframeRenderer;
+import org.maia.graphics3d.render.ZBufferRenderer;
 
 public class DefaultRenderKit implements RenderKit {
 
@@ -17,6 +18,8 @@ public class DefaultRenderKit implements RenderKit {
 		SceneRenderer renderer = null;
 		if (RenderMode.PROTOTYPE.equals(options.getRenderMode())) {
 			renderer = createPrototypeSceneRenderer(scene, options);
+		} else if (RenderMode.PREVIEW.equals(options.getRenderMode())) {
+			renderer = createPreviewSceneRenderer(scene, options);
 		} else if (RenderMode.REALISTIC.equals(options.getRenderMode())) {
 			renderer = createRealisticSceneRenderer(scene, options);
 		}
@@ -27,6 +30,10 @@ public class DefaultRenderKit implements RenderKit {
 		return new WireframeRenderer();
 	}
 
+	protected SceneRenderer createPreviewSceneRenderer(Scene scene, RenderOptions options) {
+		return new ZBufferRenderer();
+	}
+
 	protected SceneRenderer createRealisticSceneRenderer(Scene scene, RenderOptions options) {
 		return new RaytraceRenderer();
 	}
@@ -84,6 +84,12 @@ public class MetricsPanel extends JPanel {
 		panel.add(buildMetricValueLabel(metrics3d.getEyeRayWithObjectIntersectionChecks()));
 		panel.add(buildMetricNameLabel("Eye ray object intersections"));
 		panel.add(buildMetricValueLabel(metrics3d.getEyeRayWithObjectIntersections()));
+		panel.add(buildMetricNameLabel("Eye ray object intersection skips"));
+		panel.add(buildMetricValueLabel(metrics3d.getEyeRayWithObjectIntersectionSkips()));
+		panel.add(buildMetricNameLabel("Eye ray visibility buffer hits"));
+		panel.add(buildMetricValueLabel(metrics3d.getEyeRayVisibilityBufferHits()));
+		panel.add(buildMetricNameLabel("View plane index occluded objects"));
+		panel.add(buildMetricValueLabel(metrics3d.getViewPlaneIndexOccludedObjects()));
 		panel.add(buildMetricNameLabel("Point to light source traversals"));
 		panel.add(buildMetricValueLabel(metrics3d.getSurfacePositionToLightSourceTraversals()));
 		panel.add(buildMetricNameLabel("Light ray object intersection checks"));
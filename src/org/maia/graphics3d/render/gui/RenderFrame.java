@@ -75,6 +75,8 @@ public class RenderFrame extends JFrame
 
 	private RenderButton renderButton;
 
+	private RenderPreviewAction renderPreviewAction;
+
 	private ExportImageAction exportImageAction;
 
 	private ExportImageButton exportImageButton;
@@ -123,6 +125,7 @@ public class RenderFrame extends JFrame
 		this.scrollRenderPane = createScrollRenderPane(viewWidth, viewHeight, viewBackgroundColor);
 		this.renderAction = new RenderAction();
 		this.renderButton = createRenderButton();
+		this.renderPreviewAction = new RenderPreviewAction();
 		this.exportImageAction = new ExportImageAction();
 		this.exportImageButton = createExportImageButton();
 		this.exitAction = new ExitAction();
@@ -264,6 +267,7 @@ public class RenderFrame extends JFrame
 	protected JMenu buildRenderMenu() {
 		JMenu menu = new JMenu(RenderUIResources.renderMenuTitle);
 		menu.add(new JMenuItem(getRenderAction()));
+		menu.add(new JMenuItem(getRenderPreviewAction()));
 		return menu;
 	}
 
@@ -348,6 +352,10 @@ public class RenderFrame extends JFrame
 		render(RenderMode.PROTOTYPE);
 	}
 
+	protected void renderPreview() {
+		render(RenderMode.PREVIEW);
+	}
+
 	protected void renderRealistically() {
 		render(RenderMode.REALISTIC);
 	}
@@ -501,6 +509,7 @@ public class RenderFrame extends JFrame
 	private void setRenderPanelEnabled(boolean enabled) {
 		getRenderOptionsPanel().setEnabled(enabled);
 		getRenderAction().setEnabled(enabled);
+		getRenderPreviewAction().setEnabled(enabled);
 		getExportImageAction().setEnabled(enabled);
 	}
 
@@ -552,6 +561,10 @@ public class RenderFrame extends JFrame
 		return renderButton;
 	}
 
+	private RenderPreviewAction getRenderPreviewAction() {
+		return renderPreviewAction;
+	}
+
 	private ExportImageAction getExportImageAction() {
 		return exportImageAction;
 	}
@@ -684,6 +697,20 @@ public class RenderFrame extends JFrame
 
 	}
 
+	private class RenderPreviewAction extends AbstractAction {
+
+		public RenderPreviewAction() {
+			super(RenderUIResources.renderPreviewLabel);
+			putValue(Action.SHORT_DESCRIPTION, RenderUIResources.renderPreviewToolTipText);
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent event) {
+			renderPreview();
+		}
+
+	}
+
 	private static class ExportImageButton extends JButton {
 
 		public ExportImageButton(ExportImageAction action) {
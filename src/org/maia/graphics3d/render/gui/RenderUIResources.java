@@ -31,6 +31,10 @@ public class RenderUIResources {
 
 	public static final String renderToolTipText = "Renders the 3D model on the canvas";
 
+	public static final String renderPreviewLabel = "Render preview";
+
+	public static final String renderPreviewToolTipText = "Renders a flat-shaded preview of the 3D model on the canvas";
+
 	public static final Icon exportIcon = loadIcon(iconFolder + "download32.png");
 
 	public static final String exportLabel = "Export image...";
@@ -0,0 +1,219 @@
+package org.maia.graphics3d.render.raster;
+
+import java.util.Arrays;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.model.scene.SceneUtils;
+import org.maia.graphics3d.model.scene.index.SceneViewPlaneIndex.OcclusionTest;
+
+/**
+ * Hierarchy of depth buffers holding the depth of the large opaque occluders in a scene, for conservative occlusion
+ * tests on bounding boxes
+ *
+ * <p>
+ * The base level holds, for every eye ray sample, the depth of the nearest occluder. It is eroded by one sample, so
+ * that the coverage of an occluder never exceeds the eye ray samples that actually hit it. Every next level halves
+ * the resolution, each cell holding the farthest depth of the four cells it covers at the previous level. A bounding
+ * box is tested starting from the coarse level where it spans at most two by two cells, descending only into the
+ * cells that are not conclusive.
+ * </p>
+ * <p>
+ * Occluders are the polygons that are fully opaque and whose projection covers at least a minimum share of the view
+ * plane. Once built, the pyramid can be tested concurrently by multiple threads.
+ * </p>
+ */
+public class OcclusionDepthPyramid implements OcclusionTest {
+
+	private int width;
+
+	private int height;
+
+	private float[][] levels; // level 0 at full resolution
+
+	private int[] levelWidths;
+
+	private int[] levelHeights;
+
+	private int occluderCount;
+
+	/**
+	 * Minimum share of the view plane covered by the bounding box of an occluder
+	 */
+	public static final double MINIMUM_OCCLUDER_AREA = 0.001;
+
+	private static final float DEPTH_TOLERANCE = 1.0E-5f;
+
+	public OcclusionDepthPyramid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int n = 1;
+		while ((width - 1 >> (n - 1)) > 0 || (height - 1 >> (n - 1)) > 0) {
+			n++;
+		}
+		this.levels = new float[n][];
+		this.levelWidths = new int[n];
+		this.levelHeights = new int[n];
+		int w = width, h = height;
+		for (int level = 0; level < n; level++) {
+			levels[level] = new float[w * h];
+			levelWidths[level] = w;
+			levelHeights[level] = h;
+			w = (w + 1) / 2;
+			h = (h + 1) / 2;
+		}
+	}
+
+	public void build(Scene scene) {
+		float[] depths = new float[getWidth() * getHeight()];
+		Arrays.fill(depths, Float.POSITIVE_INFINITY);
+		OccluderRasterizer rasterizer = new OccluderRasterizer(scene.getCamera(), depths);
+		occluderCount = 0;
+		for (Object3D object : SceneUtils.getAllIndividualObjectsInScene(scene)) {
+			if (object instanceof PolygonalObject3D) {
+				PolygonalObject3D polygon = (PolygonalObject3D) object;
+				if (isOccluder(polygon, scene) && rasterizer.rasterize(polygon)) {
+					occluderCount++;
+				}
+			}
+		}
+		erode(depths, levels[0]);
+		for (int level = 1; level < levels.length; level++) {
+			reduce(level);
+		}
+	}
+
+	private boolean isOccluder(PolygonalObject3D polygon, Scene scene) {
+		Camera camera = scene.getCamera();
+		Box3D cameraBox = polygon.getBoundingBoxInCameraCoordinates(camera);
+		if (cameraBox.getZ2() > camera.getViewVolume().getViewPlaneZ())
+			return false; // crossing or before the view plane
+		Box3D box = polygon.getBoundingBoxInViewVolumeCoordinates(camera);
+		double w = Math.min(box.getX2(), 1.0) - Math.max(box.getX1(), -1.0);
+		double h = Math.min(box.getY2(), 1.0) - Math.max(box.getY1(), -1.0);
+		return w > 0 && h > 0 && w * h >= MINIMUM_OCCLUDER_AREA * 4.0 && polygon.isFullyOpaque(scene);
+	}
+
+	private void erode(float[] source, float[] target) {
+		int w = getWidth();
+		int h = getHeight();
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				float depth = source[y * w + x];
+				for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, h - 1); ny++) {
+					for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, w - 1); nx++) {
+						depth = Math.max(depth, source[ny * w + nx]);
+					}
+				}
+				target[y * w + x] = depth;
+			}
+		}
+	}
+
+	private void reduce(int level) {
+		float[] source = levels[level - 1];
+		float[] target = levels[level];
+		int sw = levelWidths[level - 1];
+		int sh = levelHeights[level - 1];
+		int w = levelWidths[level];
+		int h = levelHeights[level];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				float depth = Float.NEGATIVE_INFINITY;
+				for (int sy = 2 * y; sy <= Math.min(2 * y + 1, sh - 1); sy++) {
+					for (int sx = 2 * x; sx <= Math.min(2 * x + 1, sw - 1); sx++) {
+						depth = Math.max(depth, source[sy * sw + sx]);
+					}
+				}
+				target[y * w + x] = depth;
+			}
+		}
+	}
+
+	@Override
+	public boolean isOccluded(Box3D boxInViewVolume) {
+		// Range of eye ray samples that may hit the box, widened by one sample on all sides
+		int x1 = Math.max((int) Math.ceil((boxInViewVolume.getX1() + 1.0) / 2.0 * getWidth() - 0.5) - 1, 0);
+		int x2 = Math.min((int) Math.floor((boxInViewVolume.getX2() + 1.0) / 2.0 * getWidth() - 0.5) + 1,
+				getWidth() - 1);
+		int y1 = Math.max((int) Math.ceil((1.0 - boxInViewVolume.getY2()) / 2.0 * getHeight() - 0.5) - 1, 0);
+		int y2 = Math.min((int) Math.floor((1.0 - boxInViewVolume.getY1()) / 2.0 * getHeight() - 0.5) + 1,
+				getHeight() - 1);
+		if (x1 > x2 || y1 > y2)
+			return false;
+		float nearDepth = (float) boxInViewVolume.getZ1() - DEPTH_TOLERANCE;
+		int level = 0;
+		while ((x2 >> level) - (x1 >> level) > 1 || (y2 >> level) - (y1 >> level) > 1) {
+			level++;
+		}
+		for (int cy = y1 >> level; cy <= y2 >> level; cy++) {
+			for (int cx = x1 >> level; cx <= x2 >> level; cx++) {
+				if (!isOccluded(level, cx, cy, x1, y1, x2, y2, nearDepth))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isOccluded(int level, int cx, int cy, int x1, int y1, int x2, int y2, float nearDepth) {
+		if (levels[level][cy * levelWidths[level] + cx] < nearDepth)
+			return true;
+		if (level == 0)
+			return false;
+		int childLevel = level - 1;
+		int childSpan = 1 << childLevel; // in samples
+		for (int ccy = 2 * cy; ccy <= Math.min(2 * cy + 1, levelHeights[childLevel] - 1); ccy++) {
+			if (ccy * childSpan > y2 || (ccy + 1) * childSpan - 1 < y1)
+				continue;
+			for (int ccx = 2 * cx; ccx <= Math.min(2 * cx + 1, levelWidths[childLevel] - 1); ccx++) {
+				if (ccx * childSpan > x2 || (ccx + 1) * childSpan - 1 < x1)
+					continue;
+				if (!isOccluded(childLevel, ccx, ccy, x1, y1, x2, y2, nearDepth))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * Returns the number of occluders rendered into this pyramid by the last build
+	 */
+	public int getOccluderCount() {
+		return occluderCount;
+	}
+
+	private class OccluderRasterizer extends PolygonRasterizer {
+
+		private float[] depths;
+
+		public OccluderRasterizer(Camera camera, float[] depths) {
+			super(camera, OcclusionDepthPyramid.this.getWidth(), OcclusionDepthPyramid.this.getHeight());
+			this.depths = depths;
+		}
+
+		@Override
+		protected void plotSample(int x, int y, double depth) {
+			int i = y * getWidth() + x;
+			if (depth < depths[i]) {
+				depths[i] = (float) depth;
+			}
+		}
+
+	}
+
+}
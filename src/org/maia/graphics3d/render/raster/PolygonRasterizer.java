@@ -0,0 +1,254 @@
+package org.maia.graphics3d.render.raster;
+
+import java.util.List;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.geometry.Point3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.camera.ViewVolume;
+import org.maia.graphics3d.model.object.PackedMesh3D;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.transform.TransformMatrix3D;
+
+/**
+ * Scan-converts polygons onto a raster of samples covering the camera's view plane
+ *
+ * <p>
+ * Polygons are projected in view volume coordinates, where <em>x</em> and <em>y</em> range from -1 to 1 across the
+ * view plane and <em>z</em> increases monotonically with the distance from the eye, -1 being at the view plane. A
+ * sample at column <em>i</em> and row <em>j</em> is located at the center of its raster cell, row 0 being at the top,
+ * which coincides with the sampling of eye rays by the <code>RaytraceRenderer</code>. Polygons that cross the view
+ * plane are clipped against it, whereas those lying entirely before the view plane are not rasterized at all.
+ * </p>
+ * <p>
+ * For every sample covered by a polygon, the subclass is handed the sample's position and the view volume depth of the
+ * polygon at that sample, and decides what to do with it. Instances of this class are <em>not</em> thread-safe.
+ * </p>
+ */
+public abstract class PolygonRasterizer {
+
+	private Camera camera;
+
+	private int width;
+
+	private int height;
+
+	private double[] vertexX; // reusable, in raster coordinates
+
+	private double[] vertexY; // reusable, in raster coordinates
+
+	private double[] vertexZ; // reusable, in view volume coordinates
+
+	private double[] crossings; // reusable
+
+	private int windowX1;
+
+	private int windowY1;
+
+	private int windowX2;
+
+	private int windowY2;
+
+	protected PolygonRasterizer(Camera camera, int width, int height) {
+		this.camera = camera;
+		this.width = width;
+		this.height = height;
+		this.vertexX = new double[8];
+		this.vertexY = new double[8];
+		this.vertexZ = new double[8];
+		this.crossings = new double[8];
+		setRasterWindow(0, 0, width - 1, height - 1);
+	}
+
+	/**
+	 * Restricts the samples being plotted to a rectangular window of the raster
+	 * 
+	 * <p>
+	 * By default, the window spans the entire raster. Narrowing it allows to rasterize a region of the raster, such as
+	 * a tile, without visiting the samples outside of it.
+	 * </p>
+	 * 
+	 * @param x1
+	 *            The leftmost column of the window, inclusive
+	 * @param y1
+	 *            The top row of the window, inclusive
+	 * @param x2
+	 *            The rightmost column of the window, inclusive
+	 * @param y2
+	 *            The bottom row of the window, inclusive
+	 */
+	public void setRasterWindow(int x1, int y1, int x2, int y2) {
+		this.windowX1 = Math.max(x1, 0);
+		this.windowY1 = Math.max(y1, 0);
+		this.windowX2 = Math.min(x2, getWidth() - 1);
+		this.windowY2 = Math.min(y2, getHeight() - 1);
+	}
+
+	/**
+	 * Scan-converts a polygon
+	 *
+	 * @param polygon
+	 *            The polygon to rasterize
+	 * @return <code>true</code> if the polygon could be rasterized, <code>false</code> if it lies entirely before
+	 *         the view plane or is seen edge-on
+	 */
+	public boolean rasterize(PolygonalObject3D polygon) {
+		ViewVolume vv = getCamera().getViewVolume();
+		Box3D bbox = polygon.getBoundingBoxInCameraCoordinates(getCamera());
+		double viewPlaneZ = vv.getViewPlaneZ();
+		int n;
+		if (bbox.getZ2() <= viewPlaneZ) {
+			n = loadVertices(polygon.getMeshInViewVolumeCoordinates(getCamera()));
+		} else if (bbox.getZ1() < viewPlaneZ) {
+			n = loadVerticesClippedToViewPlane(polygon.getVerticesInCameraCoordinates(getCamera()), vv);
+		} else {
+			n = 0; // before the view plane
+		}
+		return n >= 3 && scanConvert(n);
+	}
+
+	/**
+	 * Called for every sample covered by a polygon being rasterized
+	 *
+	 * @param x
+	 *            The column of the sample in the raster, between 0 and <code>getWidth() - 1</code>
+	 * @param y
+	 *            The row of the sample in the raster, between 0 and <code>getHeight() - 1</code>, with row 0 at the
+	 *            top
+	 * @param depth
+	 *            The <em>z</em>-coordinate of the polygon at the sample, in view volume coordinates
+	 */
+	protected abstract void plotSample(int x, int y, double depth);
+
+	private int loadVertices(PackedMesh3D meshInViewVolume) {
+		int n = meshInViewVolume.getVertexCount();
+		ensureVertexCapacity(n);
+		for (int i = 0; i < n; i++) {
+			loadVertex(i, meshInViewVolume.getX(i), meshInViewVolume.getY(i), meshInViewVolume.getZ(i));
+		}
+		return n;
+	}
+
+	private int loadVerticesClippedToViewPlane(List<Point3D> verticesInCamera, ViewVolume vv) {
+		int n = verticesInCamera.size();
+		ensureVertexCapacity(2 * n); // every edge contributes at most two vertices
+		TransformMatrix3D projectionMatrix = vv.getProjectionMatrix();
+		double viewPlaneZ = vv.getViewPlaneZ();
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			Point3D p = verticesInCamera.get(i);
+			Point3D q = verticesInCamera.get((i + 1) % n);
+			boolean pIn = p.getZ() <= viewPlaneZ;
+			boolean qIn = q.getZ() <= viewPlaneZ;
+			if (pIn) {
+				m = loadProjectedVertex(m, p, projectionMatrix, vv);
+			}
+			if (pIn != qIn) {
+				double r = (viewPlaneZ - p.getZ()) / (q.getZ() - p.getZ());
+				m = loadProjectedVertex(m, Point3D.interpolateBetween(p, q, r), projectionMatrix, vv);
+			}
+		}
+		return m;
+	}
+
+	private int loadProjectedVertex(int index, Point3D vertexInCamera, TransformMatrix3D projectionMatrix,
+			ViewVolume vv) {
+		Point3D vertex = projectionMatrix.transform(vertexInCamera);
+		if (vv.isPerspectiveProjection()) {
+			vertex.normalizeToUnitW();
+		}
+		loadVertex(index, vertex.getX(), vertex.getY(), vertex.getZ());
+		return index + 1;
+	}
+
+	private void loadVertex(int index, double x, double y, double z) {
+		vertexX[index] = (x + 1.0) / 2.0 * getWidth();
+		vertexY[index] = (1.0 - y) / 2.0 * getHeight();
+		vertexZ[index] = z;
+	}
+
+	private boolean scanConvert(int n) {
+		// Plane through the vertices in raster space, by Newell's method
+		double nx = 0, ny = 0, nz = 0, cx = 0, cy = 0, cz = 0;
+		double ymin = Double.POSITIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			nx += (vertexY[i] - vertexY[j]) * (vertexZ[i] + vertexZ[j]);
+			ny += (vertexZ[i] - vertexZ[j]) * (vertexX[i] + vertexX[j]);
+			nz += (vertexX[i] - vertexX[j]) * (vertexY[i] + vertexY[j]);
+			cx += vertexX[i];
+			cy += vertexY[i];
+			cz += vertexZ[i];
+			ymin = Math.min(ymin, vertexY[i]);
+			ymax = Math.max(ymax, vertexY[i]);
+		}
+		if (Math.abs(nz) < 1.0E-9)
+			return false; // seen edge-on
+		double dzdx = -nx / nz;
+		double dzdy = -ny / nz;
+		cx /= n;
+		cy /= n;
+		cz /= n;
+		// Scanlines through the sample centers
+		int row1 = Math.max((int) Math.ceil(ymin - 0.5), windowY1);
+		int row2 = Math.min((int) Math.ceil(ymax - 0.5) - 1, windowY2);
+		for (int row = row1; row <= row2; row++) {
+			double sy = row + 0.5;
+			int k = collectCrossings(n, sy);
+			for (int c = 0; c + 1 < k; c += 2) {
+				int col1 = Math.max((int) Math.ceil(crossings[c] - 0.5), windowX1);
+				int col2 = Math.min((int) Math.ceil(crossings[c + 1] - 0.5) - 1, windowX2);
+				double depth = cz + dzdx * (col1 + 0.5 - cx) + dzdy * (sy - cy);
+				for (int col = col1; col <= col2; col++) {
+					plotSample(col, row, depth);
+					depth += dzdx;
+				}
+			}
+		}
+		return true;
+	}
+
+	private int collectCrossings(int n, double sy) {
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double y1 = vertexY[i];
+			double y2 = vertexY[j];
+			if ((y1 <= sy && y2 > sy) || (y2 <= sy && y1 > sy)) {
+				double x = vertexX[i] + (sy - y1) / (y2 - y1) * (vertexX[j] - vertexX[i]);
+				// Insertion sort, as the number of crossings is small
+				int p = k++;
+				while (p > 0 && crossings[p - 1] > x) {
+					crossings[p] = crossings[p - 1];
+					p--;
+				}
+				crossings[p] = x;
+			}
+		}
+		return k;
+	}
+
+	private void ensureVertexCapacity(int n) {
+		if (vertexX.length < n) {
+			int capacity = Math.max(n, vertexX.length * 2);
+			vertexX = new double[capacity];
+			vertexY = new double[capacity];
+			vertexZ = new double[capacity];
+			crossings = new double[capacity];
+		}
+	}
+
+	public Camera getCamera() {
+		return camera;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
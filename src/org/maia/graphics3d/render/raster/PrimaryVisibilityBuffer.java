@@ -0,0 +1,198 @@
+package org.maia.graphics3d.render.raster;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.maia.graphics3d.geometry.Box3D;
+import org.maia.graphics3d.model.camera.Camera;
+import org.maia.graphics3d.model.object.Object3D;
+import org.maia.graphics3d.model.object.PolygonalObject3D;
+import org.maia.graphics3d.model.object.SimpleFace3D;
+import org.maia.graphics3d.model.scene.Scene;
+import org.maia.graphics3d.model.scene.SceneUtils;
+
+/**
+ * Raster of the nearest visible object and its depth for every eye ray sample of a scene
+ *
+ * <p>
+ * The buffer is built by scan-converting the scene's polygons in view volume coordinates, in two passes. The first
+ * pass rasterizes the polygons that are fully opaque with a depth test, recording per sample the identifier and depth
+ * of the nearest one. The second pass rasterizes all other objects against the resulting depths, and flags the samples
+ * where any of them lies in front of the nearest opaque polygon. For these samples, the visible surface may be
+ * (partially) transparent and the client code should fall back to a full eye ray traversal.
+ * </p>
+ * <p>
+ * Once built, the buffer can be read concurrently by multiple threads.
+ * </p>
+ */
+public class PrimaryVisibilityBuffer {
+
+	private int width;
+
+	private int height;
+
+	private List<Object3D> objects; // indexed by object id
+
+	private int[] objectIds; // per sample
+
+	private double[] depths; // per sample, in view volume coordinates
+
+	private boolean[] raytracingRequired; // per sample
+
+	private static final int NO_OBJECT = -1;
+
+	public PrimaryVisibilityBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.objects = new Vector<Object3D>();
+		this.objectIds = new int[width * height];
+		this.depths = new double[width * height];
+		this.raytracingRequired = new boolean[width * height];
+	}
+
+	public void build(Scene scene) {
+		clear();
+		Camera camera = scene.getCamera();
+		List<Object3D> otherObjects = new Vector<Object3D>();
+		// Pass 1 : opaque polygons
+		OpaquePolygonRasterizer opaqueRasterizer = new OpaquePolygonRasterizer(camera);
+		for (Object3D object : SceneUtils.getAllIndividualObjectsInScene(scene)) {
+			if (object instanceof SimpleFace3D && ((SimpleFace3D) object).isBackFaceOfClosedSolid(scene)) {
+				continue; // never hit by eye rays
+			} else if (object instanceof PolygonalObject3D && ((PolygonalObject3D) object).isFullyOpaque(scene)) {
+				opaqueRasterizer.setObjectId(getObjects().size());
+				if (opaqueRasterizer.rasterize((PolygonalObject3D) object)) {
+					getObjects().add(object);
+				}
+			} else {
+				otherObjects.add(object);
+			}
+		}
+		// Pass 2 : other objects
+		OtherPolygonRasterizer otherRasterizer = new OtherPolygonRasterizer(camera);
+		for (Object3D object : otherObjects) {
+			if (object instanceof PolygonalObject3D) {
+				otherRasterizer.rasterize((PolygonalObject3D) object);
+			} else {
+				flagObjectBounds(object, camera);
+			}
+		}
+	}
+
+	private void clear() {
+		getObjects().clear();
+		Arrays.fill(objectIds, NO_OBJECT);
+		Arrays.fill(depths, Double.POSITIVE_INFINITY);
+		Arrays.fill(raytracingRequired, false);
+	}
+
+	private void flagObjectBounds(Object3D object, Camera camera) {
+		// Conservatively flag all samples within the object's projected bounds
+		int x1 = 0, x2 = getWidth() - 1, y1 = 0, y2 = getHeight() - 1;
+		if (object.isBounded()) {
+			Box3D cameraBox = object.asBoundedObject().getBoundingBoxInCameraCoordinates(camera);
+			if (cameraBox != null && cameraBox.getZ1() > camera.getViewVolume().getViewPlaneZ())
+				return; // before the view plane
+			if (cameraBox != null && cameraBox.getZ2() <= camera.getViewVolume().getViewPlaneZ()) {
+				Box3D box = object.asBoundedObject().getBoundingBoxInViewVolumeCoordinates(camera);
+				x1 = Math.max((int) Math.floor((box.getX1() + 1.0) / 2.0 * getWidth()), 0);
+				x2 = Math.min((int) Math.floor((box.getX2() + 1.0) / 2.0 * getWidth()), getWidth() - 1);
+				y1 = Math.max((int) Math.floor((1.0 - box.getY2()) / 2.0 * getHeight()), 0);
+				y2 = Math.min((int) Math.floor((1.0 - box.getY1()) / 2.0 * getHeight()), getHeight() - 1);
+			}
+		}
+		for (int y = y1; y <= y2; y++) {
+			for (int x = x1; x <= x2; x++) {
+				raytracingRequired[y * getWidth() + x] = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the object that is visible at a sample
+	 *
+	 * @param x
+	 *            The column of the sample, with 0 at the left
+	 * @param y
+	 *            The row of the sample, with 0 at the top
+	 * @return The nearest object at the sample, which is fully opaque. Returns <code>null</code> when there is no such
+	 *         object or when the sample requires a full eye ray traversal
+	 * @see #isRaytracingRequired(int, int)
+	 */
+	public Object3D getVisibleObject(int x, int y) {
+		int i = y * getWidth() + x;
+		if (raytracingRequired[i])
+			return null;
+		int id = objectIds[i];
+		return id != NO_OBJECT ? getObjects().get(id) : null;
+	}
+
+	/**
+	 * Returns the depth of the nearest opaque polygon at a sample
+	 *
+	 * @return The depth in view volume coordinates, or <code>Double.POSITIVE_INFINITY</code> when there is none
+	 */
+	public double getDepth(int x, int y) {
+		return depths[y * getWidth() + x];
+	}
+
+	/**
+	 * Tells whether a sample requires a full eye ray traversal, because it may show (partially) transparent objects
+	 */
+	public boolean isRaytracingRequired(int x, int y) {
+		return raytracingRequired[y * getWidth() + x];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	private List<Object3D> getObjects() {
+		return objects;
+	}
+
+	private class OpaquePolygonRasterizer extends PolygonRasterizer {
+
+		private int objectId;
+
+		public OpaquePolygonRasterizer(Camera camera) {
+			super(camera, PrimaryVisibilityBuffer.this.getWidth(), PrimaryVisibilityBuffer.this.getHeight());
+		}
+
+		@Override
+		protected void plotSample(int x, int y, double depth) {
+			int i = y * getWidth() + x;
+			if (depth < depths[i]) {
+				depths[i] = depth;
+				objectIds[i] = objectId;
+			}
+		}
+
+		public void setObjectId(int objectId) {
+			this.objectId = objectId;
+		}
+
+	}
+
+	private class OtherPolygonRasterizer extends PolygonRasterizer {
+
+		public OtherPolygonRasterizer(Camera camera) {
+			super(camera, PrimaryVisibilityBuffer.this.getWidth(), PrimaryVisibilityBuffer.this.getHeight());
+		}
+
+		@Override
+		protected void plotSample(int x, int y, double depth) {
+			int i = y * getWidth() + x;
+			if (depth <= depths[i]) {
+				raytracingRequired[i] = true;
+			}
+		}
+
+	}
+
+}
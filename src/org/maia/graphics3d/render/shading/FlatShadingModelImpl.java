@@ -173,9 +173,13 @@ public class FlatShadingModelImpl implements FlatShadingModel {
 			ray.setLightSource(lightSource);
 		} else if (lightSource.isDirectional()) {
 			Vector3D v = ((DirectionalLightSource) lightSource).getScaledDirectionOutsideOfScene(scene);
+			Point3D pointTowardsLight = reusableObjects.getPointTowardsLight();
+			pointTowardsLight.setX(surfacePositionInCamera.getX() - v.getX());
+			pointTowardsLight.setY(surfacePositionInCamera.getY() - v.getY());
+			pointTowardsLight.setZ(surfacePositionInCamera.getZ() - v.getZ());
 			ray = reusableObjects.getLightRay();
 			ray.setP1(surfacePositionInCamera);
-			ray.setP2(surfacePositionInCamera.minus(v));
+			ray.setP2(pointTowardsLight);
 			ray.setLightSource(lightSource);
 		}
 		return ray;
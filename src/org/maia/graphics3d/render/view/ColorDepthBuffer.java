@@ -5,6 +5,7 @@ import java.awt.image.BufferedImage;
 import java.util.Arrays;
 
 import org.maia.graphics2d.image.ImageUtils;
+import org.maia.graphics3d.GeometryPrecision;
 import org.maia.graphics2d.image.ops.convolute.ConvolutionMask;
 import org.maia.graphics2d.image.ops.convolute.ConvolutionMatrix;
 import org.maia.util.ColorUtils;
@@ -17,7 +18,8 @@ public class ColorDepthBuffer {
 
 	public ColorDepthBuffer(BufferedImage image) {
 		setImage(image);
-		setDepthBuffer(new DepthBuffer(image.getWidth(), image.getHeight()));
+		setDepthBuffer(new DepthBuffer(image.getWidth(), image.getHeight(), GeometryPrecision.getInstance()
+				.isSinglePrecision()));
 	}
 
 	public ColorDepthBuffer(BufferedImage image, double depth) {
@@ -150,7 +152,9 @@ public class ColorDepthBuffer {
 
 		private int height;
 
-		private double[][] depths;
+		private double[][] depths; // null when stored in single precision
+
+		private float[][] singlePrecisionDepths; // null when stored in double precision
 
 		private double minimumDepth;
 
@@ -158,16 +162,24 @@ public class ColorDepthBuffer {
 
 		private boolean empty;
 
-		public DepthBuffer(int width, int height) {
+		public DepthBuffer(int width, int height, boolean singlePrecision) {
 			this.width = width;
 			this.height = height;
-			this.depths = new double[height][width];
+			if (singlePrecision) {
+				this.singlePrecisionDepths = new float[height][width];
+			} else {
+				this.depths = new double[height][width];
+			}
 			this.empty = true;
 		}
 
 		public void clearDepth(double depth) {
 			for (int y = 0; y < getHeight(); y++) {
-				Arrays.fill(getDepths()[y], depth);
+				if (depths != null) {
+					Arrays.fill(depths[y], depth);
+				} else {
+					Arrays.fill(singlePrecisionDepths[y], (float) depth);
+				}
 			}
 			setEmpty(false);
 			setMinimumDepth(depth);
@@ -175,7 +187,11 @@ public class ColorDepthBuffer {
 		}
 
 		public void setDepth(int x, int y, double depth) {
-			getDepths()[y][x] = depth;
+			if (depths != null) {
+				depths[y][x] = depth;
+			} else {
+				singlePrecisionDepths[y][x] = (float) depth;
+			}
 			if (isEmpty()) {
 				setEmpty(false);
 				setMinimumDepth(depth);
@@ -187,7 +203,7 @@ public class ColorDepthBuffer {
 		}
 
 		public double getDepth(int x, int y) {
-			return getDepths()[y][x];
+			return depths != null ? depths[y][x] : singlePrecisionDepths[y][x];
 		}
 
 		public int getWidth() {
@@ -198,10 +214,6 @@ public class ColorDepthBuffer {
 			return height;
 		}
 
-		private double[][] getDepths() {
-			return depths;
-		}
-
 		public double getMinimumDepth() {
 			return minimumDepth;
 		}
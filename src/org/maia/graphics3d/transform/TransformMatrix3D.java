@@ -115,6 +115,84 @@ public class TransformMatrix3D {
 		return tPoints;
 	}
 
+	/**
+	 * Transforms a packed array of points
+	 * 
+	 * @param coordinates
+	 *            The points to transform, as consecutive <em>(x, y, z)</em> triples with an implied homogeneous
+	 *            coordinate <em>w</em> of 1
+	 * @param target
+	 *            The array receiving the transformed points, in the same layout. It may be the same array as
+	 *            <code>coordinates</code>
+	 * @param pointCount
+	 *            The number of points to transform
+	 * @param normalizeToUnitW
+	 *            When <code>true</code>, the transformed points are divided by their homogeneous coordinate
+	 *            <em>w</em>. Otherwise, <em>w</em> is assumed to remain 1, which holds for affine transformations
+	 */
+	public void transform(double[] coordinates, double[] target, int pointCount, boolean normalizeToUnitW) {
+		Metrics3D.getInstance().incrementPointTransformations(pointCount);
+		double[] T = this.getValues();
+		for (int i = 0; i < 3 * pointCount; i += 3) {
+			double px = coordinates[i];
+			double py = coordinates[i + 1];
+			double pz = coordinates[i + 2];
+			double tx = T[0] * px + T[1] * py + T[2] * pz + T[3];
+			double ty = T[4] * px + T[5] * py + T[6] * pz + T[7];
+			double tz = T[8] * px + T[9] * py + T[10] * pz + T[11];
+			if (normalizeToUnitW) {
+				double tw = T[12] * px + T[13] * py + T[14] * pz + T[15];
+				if (tw != 1.0) {
+					tx /= tw;
+					ty /= tw;
+					tz /= tw;
+				}
+			}
+			target[i] = tx;
+			target[i + 1] = ty;
+			target[i + 2] = tz;
+		}
+		if (normalizeToUnitW) {
+			Metrics3D.getInstance().incrementPointNormalizations(pointCount);
+		}
+	}
+
+	/**
+	 * Transforms a packed array of points stored in single precision
+	 * 
+	 * <p>
+	 * The computation is carried out in double precision, and only the transformed points are rounded.
+	 * </p>
+	 * 
+	 * @see #transform(double[], double[], int, boolean)
+	 */
+	public void transform(float[] coordinates, float[] target, int pointCount, boolean normalizeToUnitW) {
+		Metrics3D.getInstance().incrementPointTransformations(pointCount);
+		double[] T = this.getValues();
+		for (int i = 0; i < 3 * pointCount; i += 3) {
+			double px = coordinates[i];
+			double py = coordinates[i + 1];
+			double pz = coordinates[i + 2];
+			double tx = T[0] * px + T[1] * py + T[2] * pz + T[3];
+			double ty = T[4] * px + T[5] * py + T[6] * pz + T[7];
+			double tz = T[8] * px + T[9] * py + T[10] * pz + T[11];
+			if (normalizeToUnitW) {
+				double tw = T[12] * px + T[13] * py + T[14] * pz + T[15];
+				if (tw != 1.0) {
+					tx /= tw;
+					ty /= tw;
+					tz /= tw;
+				}
+			}
+			target[i] = (float) tx;
+			target[i + 1] = (float) ty;
+			target[i + 2] = (float) tz;
+		}
+		if (normalizeToUnitW) {
+			Metrics3D.getInstance().incrementPointNormalizations(pointCount);
+		}
+	}
+
 	public boolean isAffine() {
 		double[] T = getValues();
 		return T[12] == 0 && T[13] == 0 && T[14] == 0 && T[15] == 1.0;
@@ -137,7 +215,7 @@ public class TransformMatrix3D {
 		return sb.toString();
 	}
 
-	protected double getValue(int row, int col) {
+	public double getValue(int row, int col) {
 		return getValues()[row * 4 + col];
 	}
 
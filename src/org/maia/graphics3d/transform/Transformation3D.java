@@ -211,6 +211,25 @@ public class Transformation3D {
 		return inverse;
 	}
 
+	/**
+	 * Wires two matrices as each other's inverse, such that the inverse need not be computed
+	 * 
+	 * <p>
+	 * This restores the exact inverse of a matrix that was computed before, like the reverse composite matrix of a
+	 * composite transform, which can differ slightly from the computed inverse.
+	 * </p>
+	 * 
+	 * @param matrix
+	 *            The matrix
+	 * @param inverse
+	 *            The inverse of <code>matrix</code>
+	 * @see #getInverseMatrix(TransformMatrix3D)
+	 */
+	public static void setInverseMatrix(TransformMatrix3D matrix, TransformMatrix3D inverse) {
+		inverse.setInverseMatrix(matrix);
+		matrix.setInverseMatrix(inverse);
+	}
+
 	private static TransformMatrix3D createInverseMatrix(TransformMatrix3D matrix) throws MatrixInversionException {
 		Metrics3D.getInstance().incrementMatrixInversions();
 		double det = computeDeterminant(matrix);